@@ -0,0 +1,89 @@
+package com.techyplanet.scriptdeployer.repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+
+/**
+ * History lookups done while planning, against an in-memory H2 database holding a few versions of every script. The
+ * JDBC repository runs the same queries against the same table layout as the JPA one, without starting Spring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryLookupBenchmark {
+
+	private static final String PATTERN = "R_<seq_num>_.+\\.sql";
+
+	private static final int VERSIONS = 3;
+
+	@Param({ "1000", "10000" })
+	private int scriptCount;
+
+	private DriverManagerDataSource dataSource;
+
+	private JdbcScriptHistoryRepository repository;
+
+	private final Random random = new Random(42);
+
+	@Setup
+	public void setup() {
+		dataSource = new DriverManagerDataSource("jdbc:h2:mem:history" + scriptCount + ";DB_CLOSE_DELAY=-1", "sa", "");
+		repository = new JdbcScriptHistoryRepository(new JdbcTemplate(dataSource), "");
+		repository.createTableIfMissing();
+		repository.deleteAll();
+		for (int i = 0; i < scriptCount; i++) {
+			for (int version = 1; version <= VERSIONS; version++) {
+				ScriptHistory entry = new ScriptHistory(path(i), "R", (long) i, (long) version, "checksum" + version,
+						PATTERN, new Date(0), new Date(version * 1000L), "REQ-1");
+				entry.setDurationMillis(100L * version);
+				repository.save(entry);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		new JdbcTemplate(dataSource).execute("shutdown");
+	}
+
+	@Benchmark
+	public ScriptHistory findByPath() {
+		return repository.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(path(random.nextInt(scriptCount)));
+	}
+
+	@Benchmark
+	public ScriptHistory findBySequence() {
+		return repository.findFirstBySequenceAndPatternOrderByVersionDesc((long) random.nextInt(scriptCount), PATTERN);
+	}
+
+	@Benchmark
+	public List<ScriptHistory> findDurations() {
+		return repository
+				.findTop10ByFileIdPathAndDurationMillisNotNullOrderByFileIdUpdateDateDesc(path(random.nextInt(scriptCount)));
+	}
+
+	@Benchmark
+	public ScriptHistory findLatest() {
+		return repository.findFirstByOrderByFileIdUpdateDateDesc();
+	}
+
+	private static String path(int i) {
+		return "module_" + (i % 50) + "/R_" + i + "_refresh_view.sql";
+	}
+}
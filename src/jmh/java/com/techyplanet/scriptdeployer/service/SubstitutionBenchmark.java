@@ -0,0 +1,62 @@
+package com.techyplanet.scriptdeployer.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.text.StringSubstitutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Variable substitution of a script line by line, the way FileProcessorService prepares a script before running it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SubstitutionBenchmark {
+
+	@Param({ "100", "10000" })
+	private int lineCount;
+
+	/** Share of the lines holding a variable, in percent. */
+	@Param({ "0", "10", "100" })
+	private int variablePercent;
+
+	private List<String> lines;
+
+	private StringSubstitutor substitutor;
+
+	@Setup
+	public void setup() {
+		Map<String, String> variables = new HashMap<>();
+		variables.put("schema", "APP_OWNER");
+		variables.put("tablespace", "APP_DATA");
+		substitutor = new StringSubstitutor(variables);
+		lines = new ArrayList<>(lineCount);
+		for (int i = 0; i < lineCount; i++) {
+			if (i % 100 < variablePercent) {
+				lines.add("insert into ${schema}.customer (id, name) values (" + i + ", 'customer " + i
+						+ "') -- ${tablespace}");
+			} else {
+				lines.add("insert into customer (id, name) values (" + i + ", 'customer " + i + "');");
+			}
+		}
+	}
+
+	@Benchmark
+	public void substitute(Blackhole blackhole) {
+		for (String line : lines) {
+			blackhole.consume(substitutor.replace(line));
+		}
+	}
+}
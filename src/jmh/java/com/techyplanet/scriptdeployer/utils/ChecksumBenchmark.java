@@ -0,0 +1,49 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Checksum of one script, from a few lines of DDL up to a large data load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChecksumBenchmark {
+
+	@Param({ "1024", "65536", "1048576", "16777216" })
+	private int fileSize;
+
+	private Path file;
+
+	@Setup
+	public void setup() throws IOException {
+		byte[] content = new byte[fileSize];
+		new Random(42).nextBytes(content);
+		file = Files.createTempFile("checksum-benchmark", ".sql");
+		Files.write(file, content);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public String checksum() {
+		return CommonUtils.generateFileChecksum(file);
+	}
+}
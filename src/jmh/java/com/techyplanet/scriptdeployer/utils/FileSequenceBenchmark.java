@@ -0,0 +1,33 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Sequence extraction from a script name, done once per discovered script and for every comparison of the sorter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FileSequenceBenchmark {
+
+	private final String fileRegexPattern = "S_(\\d+)_.+\\.sql";
+
+	private final String fileName = "S_20240115_create_customer_table.sql";
+
+	@Benchmark
+	public Long withSequence() {
+		return CommonUtils.getFileSequence(fileRegexPattern, fileName, true);
+	}
+
+	@Benchmark
+	public Long withoutSequence() {
+		return CommonUtils.getFileSequence("PRE__.+\\.sql", "PRE__grants.sql", false);
+	}
+}
@@ -0,0 +1,53 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Ordering of the scripts of one pattern, as done by ScriptDiscoveryUtils after listing the scripts location.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScriptSortingBenchmark {
+
+	private static final String FILE_REGEX_PATTERN = "R_(\\d+)_.+\\.sql";
+
+	@Param({ "1000", "10000", "100000" })
+	private int fileCount;
+
+	private List<File> files;
+
+	private Comparator<File> sorter;
+
+	@Setup
+	public void setup() {
+		files = new ArrayList<>(fileCount);
+		for (int i = 0; i < fileCount; i++) {
+			files.add(new File("scripts/module_" + (i % 50), "R_" + i + "_refresh_view_" + i + ".sql"));
+		}
+		Collections.shuffle(files, new Random(42));
+		sorter = CommonUtils.scriptPrioritySorter(FILE_REGEX_PATTERN, true, true);
+	}
+
+	@Benchmark
+	public List<File> sort() {
+		List<File> sorted = new ArrayList<>(files);
+		Collections.sort(sorted, sorter);
+		return sorted;
+	}
+}
@@ -0,0 +1,178 @@
+package com.techyplanet.scriptdeployer.load;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.techyplanet.scriptdeployer.ScriptDeployerApplication;
+import com.techyplanet.scriptdeployer.component.DeploymentMetrics;
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import com.techyplanet.scriptdeployer.repository.JdbcScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.utils.CommonUtils;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs the whole deployer against a generated script tree three times in a row: first run, no-op run and a run after
+ * a partial change, reporting the total time, the time spent in each stage and the peak heap of each run.
+ */
+public class LoadHarness {
+
+	private static final String[] STAGES = { DeploymentMetrics.SCAN, DeploymentMetrics.CHECKSUM,
+			DeploymentMetrics.HISTORY_LOOKUP, DeploymentMetrics.SUBSTITUTION, DeploymentMetrics.PROCESS_SPAWN,
+			DeploymentMetrics.EXECUTION, DeploymentMetrics.HISTORY_SAVE };
+
+	public static void main(String[] args) throws IOException {
+		LoadShape shape = LoadShape.parse(args);
+		Path workDir = Paths.get(shape.workDir).toAbsolutePath();
+		Path scriptsDir = workDir.resolve("files");
+		Path homeDir = workDir.resolve("deployer");
+		FileUtils.deleteDirectory(workDir.toFile());
+		Files.createDirectories(homeDir.resolve("db"));
+
+		System.out.println("Generating " + shape.describe());
+		long start = System.nanoTime();
+		ScriptTreeGenerator generator = new ScriptTreeGenerator(shape);
+		generator.generate(scriptsDir);
+		String datasourceUrl = "jdbc:h2:file:" + homeDir.resolve("db/H2") + ";AUTO_SERVER=TRUE";
+		int seeded = seedHistory(datasourceUrl, generator, shape.history);
+		System.out.printf("Generated %d scripts and %d history rows in %d ms%n", shape.files, seeded,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		List<String> deployerArgs = new ArrayList<>();
+		deployerArgs.add("--app.scripts.location=" + scriptsDir);
+		deployerArgs.add("--app.scripts.deployer.home=" + homeDir);
+		deployerArgs.add("--spring.datasource.url=" + datasourceUrl);
+		deployerArgs.add("--app.script.execute.command=" + shape.command);
+		deployerArgs.add("--app.script.execute.command.log=" + shape.command);
+		deployerArgs.add("--app.scripts.db.metadata.spool=false");
+		deployerArgs.add("--app.metrics.export=false");
+		deployerArgs.add("--app.log.level=warn");
+		deployerArgs.add("--spring.main.banner-mode=off");
+		// given last so that they win over the defaults above
+		deployerArgs.addAll(shape.deployerArgs);
+		deployerArgs.add("deploy");
+
+		List<Map<String, String>> report = new ArrayList<>();
+		report.add(run("first-run", deployerArgs));
+		report.add(run("no-op", deployerArgs));
+		int changed = generator.change(scriptsDir);
+		System.out.printf("Changed or added %d scripts%n", changed);
+		report.add(run("partial-change", deployerArgs));
+
+		Path reportFile = workDir.resolve("load-report.tsv");
+		print(report, reportFile);
+		System.out.println("Report written to " + reportFile);
+	}
+
+	private static int seedHistory(String datasourceUrl, ScriptTreeGenerator generator, int versions) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(datasourceUrl, "sa", "");
+		JdbcScriptHistoryRepository repository = new JdbcScriptHistoryRepository(new JdbcTemplate(dataSource), "");
+		repository.createTableIfMissing();
+		int rows = 0;
+		for (int prefixIndex : new int[] { 0, 2, 3 }) {
+			String prefix = ScriptTreeGenerator.PREFIXES[prefixIndex];
+			String pattern = prefix + "_<seq_num>_.+\\.sql";
+			String type = ScriptPhase.valueOf(prefix).getHistoryType();
+			for (String path : generator.getScripts(prefixIndex)) {
+				Long sequence = CommonUtils.getFileSequence(pattern.replace("<seq_num>", "(\\d+)"),
+						Paths.get(path).getFileName().toString(), true);
+				for (int version = 1; version <= versions; version++) {
+					ScriptHistory entry = new ScriptHistory(path, type, sequence, (long) version, "seeded-" + version,
+							pattern, new Date(0), new Date(version * 60_000L), "LOAD-SEED");
+					entry.setDurationMillis(5L);
+					repository.save(entry);
+					rows++;
+				}
+			}
+		}
+		return rows;
+	}
+
+	private static Map<String, String> run(String scenario, List<String> deployerArgs) {
+		System.gc();
+		List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		}
+		System.out.println("Running " + scenario);
+		long start = System.nanoTime();
+		Map<String, String> row = new LinkedHashMap<>();
+		row.put("scenario", scenario);
+		try (ConfigurableApplicationContext context = new SpringApplication(ScriptDeployerApplication.class)
+				.run(deployerArgs.toArray(new String[0]))) {
+			row.put("total ms", String.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+			List<Meter> meters = context.getBean(DeploymentMetrics.class).getMeters();
+			for (String stage : STAGES) {
+				row.put(stage + " ms", String.format("%.0f", totalMillis(meters, stage)));
+			}
+			row.put("executed", String.valueOf(count(meters, DeploymentMetrics.EXECUTION)));
+		}
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : heapPools) {
+			peakHeap += pool.getPeakUsage().getUsed();
+		}
+		row.put("peak heap MiB", String.valueOf(peakHeap / (1024 * 1024)));
+		return row;
+	}
+
+	private static double totalMillis(List<Meter> meters, String name) {
+		double total = 0;
+		for (Meter meter : meters) {
+			if (meter instanceof Timer && meter.getId().getName().equals(name)) {
+				total += ((Timer) meter).totalTime(TimeUnit.MILLISECONDS);
+			}
+		}
+		return total;
+	}
+
+	private static long count(List<Meter> meters, String name) {
+		long count = 0;
+		for (Meter meter : meters) {
+			if (meter instanceof Timer && meter.getId().getName().equals(name)) {
+				count += ((Timer) meter).count();
+			}
+		}
+		return count;
+	}
+
+	private static void print(List<Map<String, String>> report, Path reportFile) throws IOException {
+		List<String> columns = new ArrayList<>(report.get(0).keySet());
+		try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8))) {
+			pw.println(String.join("\t", columns));
+			for (Map<String, String> row : report) {
+				pw.println(String.join("\t", row.values()));
+			}
+		}
+		for (String column : columns) {
+			StringBuilder line = new StringBuilder(String.format("%-32s", column));
+			for (Map<String, String> row : report) {
+				line.append(String.format("%16s", row.get(column)));
+			}
+			System.out.println(line);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.techyplanet.scriptdeployer.load;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shape of the generated script tree and of the history seeded before the first run, read from --name=value
+ * arguments. Arguments starting with --app. or --spring. are handed over to the deployer untouched.
+ */
+public class LoadShape {
+
+	/** Total number of scripts. */
+	int files = 10_000;
+
+	/** Folder levels the scripts are nested in. */
+	int depth = 4;
+
+	/** Sub folders per folder. */
+	int fanOut = 8;
+
+	/** Share of PRE_, S_, R_ and POST_ scripts, in percent. */
+	int[] mix = { 2, 60, 33, 5 };
+
+	/** Share of small (256 B), medium (16 KiB) and large (1 MiB) scripts, in percent. */
+	int[] sizes = { 90, 9, 1 };
+
+	/** Versions of every PRE_, R_ and POST_ script recorded in the history before the first run. */
+	int history = 3;
+
+	/** Share of R_ scripts modified before the partial-change run, in percent. */
+	int changePercent = 5;
+
+	/** S_ scripts added before the partial-change run. */
+	int newScripts = 20;
+
+	/** Command running each script. */
+	String command = "true";
+
+	long seed = 42;
+
+	String workDir = "load";
+
+	final List<String> deployerArgs = new ArrayList<>();
+
+	static LoadShape parse(String... args) {
+		LoadShape shape = new LoadShape();
+		for (String arg : args) {
+			if (arg.startsWith("--app.") || arg.startsWith("--spring.")) {
+				shape.deployerArgs.add(arg);
+				continue;
+			}
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new RuntimeException(String.format("Unexpected argument [%s], expected --name=value.", arg));
+			}
+			String name = arg.substring(2, separator);
+			String value = arg.substring(separator + 1);
+			switch (name) {
+			case "files":
+				shape.files = Integer.parseInt(value);
+				break;
+			case "depth":
+				shape.depth = Integer.parseInt(value);
+				break;
+			case "fanOut":
+				shape.fanOut = Integer.parseInt(value);
+				break;
+			case "mix":
+				shape.mix = percentages(value, 4);
+				break;
+			case "sizes":
+				shape.sizes = percentages(value, 3);
+				break;
+			case "history":
+				shape.history = Integer.parseInt(value);
+				break;
+			case "changePercent":
+				shape.changePercent = Integer.parseInt(value);
+				break;
+			case "newScripts":
+				shape.newScripts = Integer.parseInt(value);
+				break;
+			case "command":
+				shape.command = value;
+				break;
+			case "seed":
+				shape.seed = Long.parseLong(value);
+				break;
+			case "workDir":
+				shape.workDir = value;
+				break;
+			default:
+				throw new RuntimeException(String.format("Unknown option [%s].", name));
+			}
+		}
+		return shape;
+	}
+
+	Map<String, String> describe() {
+		Map<String, String> description = new LinkedHashMap<>();
+		description.put("files", String.valueOf(files));
+		description.put("depth", String.valueOf(depth));
+		description.put("fanOut", String.valueOf(fanOut));
+		description.put("mix", join(mix));
+		description.put("sizes", join(sizes));
+		description.put("history", String.valueOf(history));
+		description.put("changePercent", String.valueOf(changePercent));
+		description.put("newScripts", String.valueOf(newScripts));
+		description.put("command", command);
+		description.put("seed", String.valueOf(seed));
+		return description;
+	}
+
+	private static int[] percentages(String value, int count) {
+		String[] parts = value.split(",");
+		if (parts.length != count) {
+			throw new RuntimeException(String.format("Expected %d comma separated percentages in [%s].", count, value));
+		}
+		int[] percentages = new int[count];
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			percentages[i] = Integer.parseInt(parts[i].trim());
+			total += percentages[i];
+		}
+		if (total != 100) {
+			throw new RuntimeException(String.format("Percentages [%s] must add up to 100.", value));
+		}
+		return percentages;
+	}
+
+	private static String join(int[] values) {
+		StringBuilder joined = new StringBuilder();
+		for (int value : values) {
+			joined.append(joined.length() > 0 ? "," : "").append(value);
+		}
+		return joined.toString();
+	}
+}
@@ -0,0 +1,102 @@
+package com.techyplanet.scriptdeployer.load;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes a script tree of the requested shape, the same shape for the same seed.
+ */
+public class ScriptTreeGenerator {
+
+	static final String[] PREFIXES = { "PRE", "S", "R", "POST" };
+
+	private static final int[] SIZES = { 256, 16 * 1024, 1024 * 1024 };
+
+	private final LoadShape shape;
+
+	private final Random random;
+
+	/** Relative paths of the generated scripts, by class in the order of PREFIXES. */
+	private final List<List<String>> scripts = new ArrayList<>();
+
+	private int nextSequence;
+
+	public ScriptTreeGenerator(LoadShape shape) {
+		this.shape = shape;
+		this.random = new Random(shape.seed);
+		for (int i = 0; i < PREFIXES.length; i++) {
+			scripts.add(new ArrayList<>());
+		}
+	}
+
+	public void generate(Path scriptsDir) throws IOException {
+		for (int i = 0; i < shape.files; i++) {
+			write(scriptsDir, pick(shape.mix), i);
+		}
+	}
+
+	/**
+	 * Modifies a share of the R_ scripts and adds new S_ scripts.
+	 *
+	 * @return number of scripts touched.
+	 */
+	public int change(Path scriptsDir) throws IOException {
+		List<String> repeatables = new ArrayList<>(scripts.get(2));
+		Collections.shuffle(repeatables, random);
+		int changed = repeatables.size() * shape.changePercent / 100;
+		for (String path : repeatables.subList(0, changed)) {
+			Files.writeString(scriptsDir.resolve(path), "-- changed for the partial-change run\n",
+					StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		}
+		for (int i = 0; i < shape.newScripts; i++) {
+			write(scriptsDir, 1, shape.files + i);
+		}
+		return changed + shape.newScripts;
+	}
+
+	public List<String> getScripts(int prefixIndex) {
+		return scripts.get(prefixIndex);
+	}
+
+	private void write(Path scriptsDir, int prefixIndex, int index) throws IOException {
+		StringBuilder folder = new StringBuilder();
+		int position = index;
+		for (int level = 0; level < shape.depth; level++) {
+			folder.append("level").append(level).append('_').append(position % shape.fanOut).append('/');
+			position /= shape.fanOut;
+		}
+		String path = folder + PREFIXES[prefixIndex] + "_" + (++nextSequence) + "_script_" + index + ".sql";
+		Path file = scriptsDir.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content(index, SIZES[pick(shape.sizes)]));
+		scripts.get(prefixIndex).add(path);
+	}
+
+	private byte[] content(int index, int size) {
+		StringBuilder content = new StringBuilder(size + 128);
+		int row = 0;
+		while (content.length() < size) {
+			content.append("insert into load_test (id, script, payload) values (").append(row++).append(", ")
+					.append(index).append(", '").append(Long.toHexString(random.nextLong())).append("');\n");
+		}
+		return content.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private int pick(int[] percentages) {
+		int draw = random.nextInt(100);
+		for (int i = 0; i < percentages.length; i++) {
+			draw -= percentages[i];
+			if (draw < 0) {
+				return i;
+			}
+		}
+		return percentages.length - 1;
+	}
+}
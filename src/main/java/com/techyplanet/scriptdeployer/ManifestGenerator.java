@@ -0,0 +1,109 @@
+package com.techyplanet.scriptdeployer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techyplanet.scriptdeployer.model.DiscoveredScript;
+import com.techyplanet.scriptdeployer.model.ScriptManifest;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import com.techyplanet.scriptdeployer.utils.CommonUtils;
+import com.techyplanet.scriptdeployer.utils.ManifestFileUtils;
+import com.techyplanet.scriptdeployer.utils.ScriptDiscoveryUtils;
+import com.techyplanet.scriptdeployer.utils.ScriptTagUtils;
+
+/**
+ * Build time entry point writing the manifest of a scripts directory, so that deployments of the packaged release
+ * neither scan nor hash the scripts up front. Runs without Spring, file patterns are read from the given property
+ * files, later files overriding earlier ones.
+ *
+ * <pre>
+ * ManifestGenerator &lt;scripts dir&gt; &lt;manifest file&gt; [properties file...]
+ * </pre>
+ */
+public class ManifestGenerator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ManifestGenerator.class);
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			throw new IllegalArgumentException(
+					"Usage: ManifestGenerator <scripts dir> <manifest file> [properties file...]");
+		}
+		File scriptsDir = new File(args[0]);
+		Path manifestFile = Paths.get(args[1]);
+		Properties properties = new Properties();
+		for (int i = 2; i < args.length; i++) {
+			try (Reader reader = Files.newBufferedReader(Paths.get(args[i]), StandardCharsets.ISO_8859_1)) {
+				properties.load(reader);
+			} catch (IOException ex) {
+				throw new RuntimeException(String.format("Properties file [%s] can't be read.", args[i]), ex);
+			}
+		}
+
+		ScriptManifest manifest = generate(scriptsDir, properties);
+		ManifestFileUtils.write(manifest, manifestFile);
+		LOGGER.info("{} script(s) of [{}] listed in manifest [{}]", manifest.getScripts().size(), scriptsDir,
+				manifestFile);
+	}
+
+	public static ScriptManifest generate(File scriptsDir, Properties properties) {
+		if (!scriptsDir.isDirectory()) {
+			throw new RuntimeException(String.format("Scripts directory [%s] doesn't exist.", scriptsDir));
+		}
+		String delimiter = properties.getProperty("app.scripts.file.pattern.delimiter", ",");
+		String manifestName = properties.getProperty("app.scripts.manifest", "");
+		boolean compressed = Boolean.parseBoolean(properties.getProperty("app.scripts.compressed", "false"));
+
+		List<DiscoveredScript> discoveredScripts = new ArrayList<>();
+		List<Path> paths = new ArrayList<>();
+		for (ScriptPhase phase : ScriptPhase.values()) {
+			for (DiscoveredScript discoveredScript : ScriptDiscoveryUtils.discover(scriptsDir, phase,
+					filePattern(properties, phase), delimiter, compressed)) {
+				if (!discoveredScript.getRelativePath().equals(manifestName)) {
+					discoveredScripts.add(discoveredScript);
+					paths.add(discoveredScript.getFile().toPath());
+				}
+			}
+		}
+		Map<Path, String> checksums = CommonUtils.generateFileChecksums(paths, 0, compressed);
+
+		ScriptManifest manifest = new ScriptManifest(ScriptDiscoveryUtils.patternsFingerprint(
+				filePattern(properties, ScriptPhase.PRE), filePattern(properties, ScriptPhase.S),
+				filePattern(properties, ScriptPhase.R), filePattern(properties, ScriptPhase.POST), delimiter));
+		for (DiscoveredScript s : discoveredScripts) {
+			manifest.getScripts().add(new DiscoveredScript(s.getPhase(), s.getPattern(), s.getFile(),
+					s.getRelativePath(), s.getSequence(), checksums.get(s.getFile().toPath())));
+			Set<String> tags = ScriptTagUtils.read(s.getFile().toPath(), compressed);
+			if (!tags.isEmpty()) {
+				manifest.getTags().put(s.getRelativePath(), tags);
+			}
+		}
+		return manifest;
+	}
+
+	private static String filePattern(Properties properties, ScriptPhase phase) {
+		switch (phase) {
+		case S:
+			return properties.getProperty("app.scripts.oneTime.file.pattern");
+		case R:
+			return properties.getProperty("app.scripts.repeatable.file.pattern");
+		case PRE:
+			return properties.getProperty("app.scripts.pre.run.file.pattern");
+		default:
+			return properties.getProperty("app.scripts.post.run.file.pattern");
+		}
+	}
+}
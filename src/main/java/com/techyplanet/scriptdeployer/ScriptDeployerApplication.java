@@ -1,19 +1,35 @@
 package com.techyplanet.scriptdeployer;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.DefaultApplicationArguments;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.system.ApplicationHome;
 
 import com.techyplanet.scriptdeployer.component.AppSettings;
 import com.techyplanet.scriptdeployer.component.DBSpooler;
+import com.techyplanet.scriptdeployer.component.DeployerServer;
+import com.techyplanet.scriptdeployer.component.DeploymentMetrics;
+import com.techyplanet.scriptdeployer.component.FlightRecording;
+import com.techyplanet.scriptdeployer.component.RunJournal;
+import com.techyplanet.scriptdeployer.component.RunTrace;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptSelection;
+import com.techyplanet.scriptdeployer.model.TargetDeploymentResult;
 import com.techyplanet.scriptdeployer.service.FileProcessorService;
+import com.techyplanet.scriptdeployer.service.TargetDeploymentService;
+import com.techyplanet.scriptdeployer.utils.PlanFileUtils;
 import com.techyplanet.scriptdeployer.validator.VariablesValidator;
 
 @SpringBootApplication
@@ -33,6 +49,24 @@ public class ScriptDeployerApplication implements CommandLineRunner {
 	@Autowired
 	private DBSpooler dbSpooler;
 
+	@Autowired
+	private TargetDeploymentService targetDeploymentService;
+
+	@Autowired
+	private RunJournal runJournal;
+
+	@Autowired
+	private DeploymentMetrics deploymentMetrics;
+
+	@Autowired
+	private FlightRecording flightRecording;
+
+	@Autowired
+	private RunTrace runTrace;
+
+	@Autowired
+	private DeployerServer deployerServer;
+
 	public static void main(String[] args) {
 		// Ensure application.properties placed next to the jar overrides packaged defaults
 		// even when the jar is launched from a different working directory.
@@ -59,33 +93,223 @@ public class ScriptDeployerApplication implements CommandLineRunner {
 
 	@Override
 	public void run(String... args) {
+		ApplicationArguments arguments = new DefaultApplicationArguments(args);
+		List<String> commands = arguments.getNonOptionArgs();
+		String command = commands.isEmpty() ? "deploy" : commands.get(0);
+		if ("serve".equals(command)) {
+			serve();
+			return;
+		}
 		try {
-			dbSpooler.spoolDB("before_");
-			LOGGER.info("=================================================");
-			LOGGER.info("Execution Started");
-			LOGGER.info("=================================================");
-			variablesValidator.validate();
-			File scriptsDir = Paths.get(appSettings.getScriptsLocation()).toFile();
-			fileProcessorService.processPreRunFiles(scriptsDir);
-			fileProcessorService.processOneTimeFiles(scriptsDir);
-			fileProcessorService.processRepeatableFiles(scriptsDir);
-			fileProcessorService.processPostRunFiles(scriptsDir);
-			LOGGER.info("=================================================");
-			LOGGER.info("Execution finished");
-			LOGGER.info("=================================================");
-			dbSpooler.spoolDB("after_");
-			LOGGER.info("Execution completed.");
+			execute(command, planFile(arguments), selection(arguments));
 		} catch (Exception ex) {
-			if (appSettings.isTraceRequired()) {
-				LOGGER.error(ex.getMessage(), ex);
-			} else {
-				LOGGER.error(ex.getMessage());
-			}
-			LOGGER.error("=================================================");
-			LOGGER.error("<<< Execution failed ! >>>");
-			LOGGER.error("=================================================");
+			logFailure(ex);
 			System.exit(1000);
 		}
 	}
 
+	private void execute(String command, Path planFile, ScriptSelection selection) {
+		flightRecording.start();
+		runTrace.start();
+		boolean failed = true;
+		try {
+			if (targetDeploymentService.isEnabled() && !"deploy".equals(command)) {
+				throw new RuntimeException(String.format(
+						"The [%s] command can't be used with app.targets.file, only deploy is supported.", command));
+			}
+			if (!selection.isAll() && "apply".equals(command)) {
+				throw new RuntimeException("Scripts are selected when planning, apply runs the plan as it is.");
+			}
+			switch (command) {
+			case "deploy":
+				deploy(selection);
+				break;
+			case "plan":
+				plan(planFile, selection);
+				break;
+			case "apply":
+				apply(planFile);
+				break;
+			default:
+				throw new RuntimeException(String.format(
+						"Unknown command [%s], expected one of [deploy, plan, apply, serve].", command));
+			}
+			failed = false;
+		} finally {
+			flightRecording.finish(failed);
+			runTrace.finish();
+			deploymentMetrics.export();
+		}
+	}
+
+	private void logFailure(Exception ex) {
+		if (appSettings.isTraceRequired()) {
+			LOGGER.error(ex.getMessage(), ex);
+		} else {
+			LOGGER.error(ex.getMessage());
+		}
+		LOGGER.error("=================================================");
+		LOGGER.error("<<< Execution failed ! >>>");
+		LOGGER.error("=================================================");
+	}
+
+	/**
+	 * Keeps the deployer running, taking deploy, plan and apply requests from the local API until asked to stop.
+	 */
+	private void serve() {
+		fileProcessorService.cacheChecksums();
+		deployerServer.serve((command, planFile) -> {
+			fileProcessorService.newRun();
+			try {
+				execute(command, planFile != null ? planFile : Paths.get(appSettings.getPlanFile()),
+						ScriptSelection.ALL);
+			} catch (RuntimeException ex) {
+				logFailure(ex);
+				throw ex;
+			}
+		});
+	}
+
+	private void deploy(ScriptSelection selection) {
+		if (targetDeploymentService.isEnabled()) {
+			deployTargets(selection);
+			return;
+		}
+		File scriptsDir = Paths.get(appSettings.getScriptsLocation()).toFile();
+		DeploymentPlan resumedPlan = runJournal.resume(scriptsDir);
+		if (resumedPlan == null) {
+			dbSpooler.spoolDB("before_");
+		}
+		LOGGER.info("=================================================");
+		LOGGER.info("Execution Started");
+		LOGGER.info("=================================================");
+		variablesValidator.validate();
+		if (resumedPlan != null) {
+			applyJournaled(resumedPlan, scriptsDir, true);
+		} else if (fileProcessorService.isPipelined(scriptsDir)) {
+			applyPipelined(scriptsDir, selection);
+		} else {
+			applyJournaled(fileProcessorService.plan(scriptsDir, selection), scriptsDir, false);
+		}
+		LOGGER.info("=================================================");
+		LOGGER.info("Execution finished");
+		LOGGER.info("=================================================");
+		dbSpooler.spoolDB("after_");
+		LOGGER.info("Execution completed.");
+	}
+
+	private void applyJournaled(DeploymentPlan plan, File scriptsDir, boolean resumed) {
+		if (resumed) {
+			runJournal.reopen();
+		} else {
+			runJournal.begin(plan);
+		}
+		boolean succeeded;
+		try {
+			succeeded = fileProcessorService.apply(plan, scriptsDir, runJournal);
+		} catch (RuntimeException ex) {
+			runJournal.aborted();
+			throw ex;
+		}
+		runJournal.completed(succeeded);
+		// scripts left out of a selective run are still to be looked at by the next one
+		if (succeeded && plan.getSelection() == null) {
+			fileProcessorService.recordDeployment(scriptsDir);
+		}
+	}
+
+	/**
+	 * Plans and applies in one pass, the journal getting each script as it is decided.
+	 */
+	private void applyPipelined(File scriptsDir, ScriptSelection selection) {
+		boolean succeeded;
+		try {
+			succeeded = fileProcessorService.applyPipelined(scriptsDir, selection, runJournal);
+		} catch (RuntimeException ex) {
+			runJournal.aborted();
+			throw ex;
+		}
+		runJournal.completed(succeeded);
+		if (succeeded && selection.isAll()) {
+			fileProcessorService.recordDeployment(scriptsDir);
+		}
+	}
+
+	private void deployTargets(ScriptSelection selection) {
+		LOGGER.info("=================================================");
+		LOGGER.info("Execution Started --> {}", appSettings.getTargetsFile());
+		LOGGER.info("=================================================");
+		variablesValidator.validate();
+		File scriptsDir = Paths.get(appSettings.getScriptsLocation()).toFile();
+		List<TargetDeploymentResult> results = targetDeploymentService.deploy(scriptsDir, selection);
+		long failed = results.stream().filter(r -> !r.isSucceeded()).count();
+		if (failed > 0) {
+			throw new RuntimeException(
+					String.format("Deployment failed for %d of %d target(s).", failed, results.size()));
+		}
+		LOGGER.info("Execution completed.");
+	}
+
+	private void plan(Path planFile, ScriptSelection selection) {
+		LOGGER.info("=================================================");
+		LOGGER.info("Planning Started");
+		LOGGER.info("=================================================");
+		variablesValidator.validate();
+		File scriptsDir = Paths.get(appSettings.getScriptsLocation()).toFile();
+		DeploymentPlan plan = fileProcessorService.plan(scriptsDir, selection);
+		for (PlannedScript plannedScript : plan.getScripts()) {
+			if (plannedScript.getAction() != ScriptAction.SKIP || appSettings.isLogSkipScriptEnabled()) {
+				LOGGER.info("\t<-- {} --> {}", plannedScript.getAction().getReason(), plannedScript.getPath());
+			}
+		}
+		PlanFileUtils.write(plan, planFile);
+		LOGGER.info("=================================================");
+		LOGGER.info("Plan written to {} [first run: {}, changed: {}, always: {}, reset-hash: {}, skip: {}]", planFile,
+				plan.count(ScriptAction.FIRST_RUN), plan.count(ScriptAction.CHANGED), plan.count(ScriptAction.ALWAYS),
+				plan.count(ScriptAction.RESET_HASH), plan.count(ScriptAction.SKIP));
+		LOGGER.info("=================================================");
+	}
+
+	private void apply(Path planFile) {
+		File scriptsDir = Paths.get(appSettings.getScriptsLocation()).toFile();
+		DeploymentPlan resumedPlan = runJournal.resume(scriptsDir);
+		if (resumedPlan == null) {
+			dbSpooler.spoolDB("before_");
+		}
+		LOGGER.info("=================================================");
+		LOGGER.info("Execution Started --> {}", resumedPlan != null ? appSettings.getRunJournalFile() : planFile);
+		LOGGER.info("=================================================");
+		variablesValidator.validate();
+		if (resumedPlan != null) {
+			applyJournaled(resumedPlan, scriptsDir, true);
+		} else {
+			DeploymentPlan plan = PlanFileUtils.read(planFile);
+			fileProcessorService.validatePlan(plan, scriptsDir);
+			applyJournaled(plan, scriptsDir, false);
+		}
+		LOGGER.info("=================================================");
+		LOGGER.info("Execution finished");
+		LOGGER.info("=================================================");
+		dbSpooler.spoolDB("after_");
+		LOGGER.info("Execution completed.");
+	}
+
+	private Path planFile(ApplicationArguments arguments) {
+		List<String> planFiles = arguments.getOptionValues("plan");
+		if (planFiles == null || planFiles.isEmpty() || planFiles.get(0).isEmpty()) {
+			return Paths.get(appSettings.getPlanFile());
+		}
+		return Paths.get(planFiles.get(0));
+	}
+
+	/**
+	 * @return scripts selected by the --only, --tags, --seq-range and --class options, all of them by default.
+	 */
+	private ScriptSelection selection(ApplicationArguments arguments) {
+		List<String> seqRanges = arguments.getOptionValues("seq-range");
+		return ScriptSelection.parse(arguments.getOptionValues("only"), arguments.getOptionValues("tags"),
+				seqRanges == null || seqRanges.isEmpty() ? null : seqRanges.get(0),
+				arguments.getOptionValues("class"));
+	}
+
 }
@@ -0,0 +1,51 @@
+package com.techyplanet.scriptdeployer.api;
+
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+
+/**
+ * Outcome of an embedded deployment.
+ */
+public class DeploymentResult {
+
+	private final DeploymentPlan plan;
+	private final boolean succeeded;
+	private final long durationMillis;
+
+	public DeploymentResult(DeploymentPlan plan, boolean succeeded, long durationMillis) {
+		super();
+		this.plan = plan;
+		this.succeeded = succeeded;
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * @return plan which got applied, with the decision taken for every script.
+	 */
+	public DeploymentPlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * @return true if every script which had to run got executed successfully.
+	 */
+	public boolean isSucceeded() {
+		return succeeded;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * @return number of scripts which had to run.
+	 */
+	public long getExecutedScripts() {
+		return plan.getScripts().stream().filter(s -> s.getAction().isExecutable()).count();
+	}
+
+	public long count(ScriptAction action) {
+		return plan.count(action);
+	}
+
+}
@@ -0,0 +1,309 @@
+package com.techyplanet.scriptdeployer.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringSubstitutor;
+import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.annotation.QualifierAnnotationAutowireCandidateResolver;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.env.PropertySourcesPropertyResolver;
+
+import com.techyplanet.scriptdeployer.component.AppSettings;
+import com.techyplanet.scriptdeployer.component.DeploymentMetrics;
+import com.techyplanet.scriptdeployer.component.DeploymentState;
+import com.techyplanet.scriptdeployer.component.DeploymentThrottle;
+import com.techyplanet.scriptdeployer.component.RunTrace;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.ScriptSelection;
+import com.techyplanet.scriptdeployer.repository.JournalScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.service.DeploymentListener;
+import com.techyplanet.scriptdeployer.service.DeploymentPlanner;
+import com.techyplanet.scriptdeployer.service.FileProcessorService;
+import com.techyplanet.scriptdeployer.service.ScriptExecutor;
+import com.techyplanet.scriptdeployer.validator.VariablesValidator;
+
+/**
+ * Plans and deploys scripts from a plain Java program, without a Spring application context, for applications
+ * running their schema scripts in process at startup or from test harnesses. Settings are the defaults of
+ * application.properties overridden through the builder; the history store and the script executor can be plugged
+ * in. The components are built through their constructors, as Spring builds them. Run journals, target fan-out,
+ * database spooling and the server mode stay with the command line application.
+ */
+public class ScriptDeployer implements AutoCloseable {
+
+	private static final String DEFAULTS = "application.properties";
+
+	private final AppSettings appSettings;
+
+	private final FileProcessorService fileProcessorService;
+
+	private final VariablesValidator variablesValidator;
+
+	private final ScriptHistoryRepository historyStore;
+
+	private final boolean ownsHistoryStore;
+
+	private ScriptDeployer(AppSettings appSettings, FileProcessorService fileProcessorService,
+			VariablesValidator variablesValidator, ScriptHistoryRepository historyStore, boolean ownsHistoryStore) {
+		this.appSettings = appSettings;
+		this.fileProcessorService = fileProcessorService;
+		this.variablesValidator = variablesValidator;
+		this.historyStore = historyStore;
+		this.ownsHistoryStore = ownsHistoryStore;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public DeploymentPlan plan() {
+		return plan(ScriptSelection.ALL);
+	}
+
+	/**
+	 * Decides what has to be done with each selected script, nothing gets executed or recorded.
+	 */
+	public DeploymentPlan plan(ScriptSelection selection) {
+		variablesValidator.validate();
+		fileProcessorService.newRun();
+		return fileProcessorService.plan(scriptsDir(), selection);
+	}
+
+	public DeploymentResult deploy() {
+		return deploy(ScriptSelection.ALL);
+	}
+
+	/**
+	 * Plans and applies the selected scripts, pipelined if app.pipeline.depth is set.
+	 */
+	public DeploymentResult deploy(ScriptSelection selection) {
+		long start = System.nanoTime();
+		variablesValidator.validate();
+		fileProcessorService.newRun();
+		File scriptsDir = scriptsDir();
+		DeploymentPlan plan;
+		boolean succeeded;
+		if (fileProcessorService.isPipelined(scriptsDir)) {
+			DeploymentPlan[] pipelinedPlan = new DeploymentPlan[1];
+			succeeded = fileProcessorService.applyPipelined(scriptsDir, selection, new DeploymentListener() {
+
+				@Override
+				public void planStarted(DeploymentPlan started) {
+					pipelinedPlan[0] = started;
+				}
+			});
+			plan = pipelinedPlan[0];
+		} else {
+			plan = fileProcessorService.plan(scriptsDir, selection);
+			succeeded = fileProcessorService.apply(plan, scriptsDir);
+		}
+		if (succeeded && selection.isAll()) {
+			fileProcessorService.recordDeployment(scriptsDir);
+		}
+		return new DeploymentResult(plan, succeeded, (System.nanoTime() - start) / 1_000_000L);
+	}
+
+	/**
+	 * Applies a plan computed earlier, provided the history and the planned scripts didn't change since then.
+	 */
+	public DeploymentResult apply(DeploymentPlan plan) {
+		long start = System.nanoTime();
+		variablesValidator.validate();
+		fileProcessorService.newRun();
+		File scriptsDir = scriptsDir();
+		fileProcessorService.validatePlan(plan, scriptsDir);
+		boolean succeeded = fileProcessorService.apply(plan, scriptsDir);
+		return new DeploymentResult(plan, succeeded, (System.nanoTime() - start) / 1_000_000L);
+	}
+
+	public AppSettings getAppSettings() {
+		return appSettings;
+	}
+
+	public ScriptHistoryRepository getHistoryStore() {
+		return historyStore;
+	}
+
+	/**
+	 * Closes the history store if the deployer opened it.
+	 */
+	@Override
+	public void close() {
+		if (ownsHistoryStore && historyStore instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) historyStore).close();
+			} catch (Exception ex) {
+				throw new RuntimeException("History store can't be closed.", ex);
+			}
+		}
+	}
+
+	private File scriptsDir() {
+		return Paths.get(appSettings.getScriptsLocation()).toFile();
+	}
+
+	/**
+	 * Settings and components of an embedded deployer. Without a history store, the history is kept in the journal
+	 * file app.history.journal.file; without an executor, scripts run through app.script.execute.command.
+	 */
+	public static class Builder {
+
+		private final Properties properties = new Properties();
+
+		private final Map<String, String> variables = new HashMap<>();
+
+		private ScriptHistoryRepository historyStore;
+
+		private ScriptExecutor executor;
+
+		private Builder() {
+		}
+
+		/**
+		 * Overrides a setting of application.properties, for example "app.script.execute.stopOnfail".
+		 */
+		public Builder property(String name, String value) {
+			properties.setProperty(name, value);
+			return this;
+		}
+
+		public Builder properties(Properties settings) {
+			for (String name : settings.stringPropertyNames()) {
+				properties.setProperty(name, settings.getProperty(name));
+			}
+			return this;
+		}
+
+		public Builder scriptsLocation(Path scriptsLocation) {
+			return property("app.scripts.location", scriptsLocation.toString());
+		}
+
+		/**
+		 * Folder holding the logs and the history journal of the deployer.
+		 */
+		public Builder home(Path home) {
+			return property("app.scripts.deployer.home", home.toString());
+		}
+
+		/**
+		 * Adds a template variable substituted in scripts as ${name}.
+		 */
+		public Builder variable(String name, String value) {
+			variables.put(name, value);
+			return this;
+		}
+
+		public Builder historyStore(ScriptHistoryRepository historyStore) {
+			this.historyStore = historyStore;
+			return this;
+		}
+
+		/**
+		 * Runs scripts in process instead of through the console command.
+		 */
+		public Builder executor(ScriptExecutor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		public ScriptDeployer build() {
+			Properties settings = defaults();
+			settings.putAll(properties);
+			if (!variables.isEmpty()) {
+				String declared = settings.getProperty("app.script.template.variables", "");
+				settings.setProperty("app.script.template.variables",
+						StringUtils.isBlank(declared) ? String.join(",", variables.keySet())
+								: declared + "," + String.join(",", variables.keySet()));
+				settings.putAll(variables);
+			}
+			AppSettings appSettings = appSettings(settings);
+
+			ScriptHistoryRepository history = historyStore;
+			if (history == null) {
+				history = new JournalScriptHistoryRepository(Paths.get(appSettings.getHistoryJournalFile()));
+			}
+			if (executor == null) {
+				try {
+					// variables are substituted into a file of the logs folder before the command runs
+					Files.createDirectories(Paths.get(appSettings.getLogDir()));
+				} catch (IOException ex) {
+					throw new RuntimeException(
+							String.format("Logs folder [%s] can't be created.", appSettings.getLogDir()), ex);
+				}
+			}
+			DeploymentMetrics deploymentMetrics = new DeploymentMetrics(appSettings);
+			RunTrace runTrace = new RunTrace(appSettings);
+			FileProcessorService fileProcessorService = new FileProcessorService(appSettings,
+					variablesSubstitutor(appSettings, settings), history, new DeploymentState(appSettings),
+					deploymentMetrics, runTrace, new DeploymentThrottle(appSettings),
+					new DeploymentPlanner(appSettings, history, deploymentMetrics, runTrace), executor);
+			return new ScriptDeployer(appSettings, fileProcessorService, new VariablesValidator(appSettings), history,
+					historyStore == null);
+		}
+
+		/**
+		 * Binds the settings the way the application does, placeholders and their defaults included, through a bare
+		 * bean factory.
+		 */
+		private static AppSettings appSettings(Properties settings) {
+			MutablePropertySources propertySources = new MutablePropertySources();
+			propertySources.addFirst(new PropertiesPropertySource("deployer", settings));
+			PropertySourcesPropertyResolver resolver = new PropertySourcesPropertyResolver(propertySources);
+			DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+			beanFactory.setAutowireCandidateResolver(new QualifierAnnotationAutowireCandidateResolver());
+			beanFactory.addEmbeddedValueResolver(resolver::resolveRequiredPlaceholders);
+			AutowiredAnnotationBeanPostProcessor valueInjection = new AutowiredAnnotationBeanPostProcessor();
+			valueInjection.setBeanFactory(beanFactory);
+			beanFactory.addBeanPostProcessor(valueInjection);
+			return beanFactory.createBean(AppSettings.class);
+		}
+
+		/**
+		 * Same variables as the Spring application gets, looked up in the settings.
+		 */
+		private static StringSubstitutor variablesSubstitutor(AppSettings appSettings, Properties settings) {
+			String[] variableNames = appSettings.getScriptVariables().split(",");
+			Map<String, String> scriptVariables = new HashMap<>(variableNames.length);
+			for (String variableName : variableNames) {
+				scriptVariables.put(variableName.trim(), settings.getProperty(variableName.trim()));
+			}
+			return new StringSubstitutor(scriptVariables);
+		}
+
+		/**
+		 * @return settings of the application.properties shipped with the deployer, told apart from the one an
+		 *         embedding application may have by its deployer home.
+		 */
+		private static Properties defaults() {
+			try {
+				Enumeration<URL> resources = ScriptDeployer.class.getClassLoader().getResources(DEFAULTS);
+				while (resources.hasMoreElements()) {
+					Properties defaults = new Properties();
+					try (InputStream input = resources.nextElement().openStream()) {
+						defaults.load(input);
+					}
+					if (defaults.getProperty("app.scripts.deployer.home") != null) {
+						return defaults;
+					}
+				}
+			} catch (IOException ex) {
+				throw new RuntimeException(String.format("Default settings [%s] can't be read.", DEFAULTS), ex);
+			}
+			throw new RuntimeException(String.format("Default settings [%s] not found on the classpath.", DEFAULTS));
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.techyplanet.scriptdeployer.common;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Lets through only the log events emitted while deploying to one target of a fan-out run.
+ */
+public class TargetLogFilter extends Filter<ILoggingEvent> {
+
+	public static final String TARGET_KEY = "target";
+
+	@Override
+	public FilterReply decide(ILoggingEvent event) {
+		return event.getMDCPropertyMap().containsKey(TARGET_KEY) ? FilterReply.NEUTRAL : FilterReply.DENY;
+	}
+}
@@ -1,5 +1,6 @@
 package com.techyplanet.scriptdeployer.component;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -39,6 +40,9 @@ public class AppSettings {
 	@Value("${app.script.execute.command.log}")
 	private String consoleCommandLogging;
 
+	@Value("${app.script.execute.command.stdin}")
+	private String consoleStdinCommand;
+
 	@Value("${app.script.execute.command.output}")
 	private boolean consoleCommandOutputEnabled;
 
@@ -66,6 +70,123 @@ public class AppSettings {
 	@Value("${app.scripts.db.metadata.spool}")
 	private boolean scriptMetadataSpoolEnabled;
 
+	@Value("${app.scripts.checksum.threads}")
+	private int checksumThreads;
+
+	@Value("${app.pipeline.depth}")
+	private int pipelineDepth;
+
+	@Value("${app.plan.file}")
+	private String planFile;
+
+	@Value("${app.scripts.deployer.home}/db/deployer.state")
+	private String stateFile;
+
+	@Value("${app.scripts.git.incremental}")
+	private boolean gitIncremental;
+
+	@Value("${app.scripts.tree.incremental}")
+	private boolean treeIncremental;
+
+	@Value("${app.scripts.manifest}")
+	private String scriptsManifest;
+
+	@Value("${app.scripts.compressed}")
+	private boolean scriptsCompressed;
+
+	@Value("${app.targets.file}")
+	private String targetsFile;
+
+	@Value("${app.targets.parallelism}")
+	private int targetsParallelism;
+
+	@Value("${app.run.journal.file}")
+	private String runJournalFile;
+
+	@Value("${app.run.journal.inflight}")
+	private String runJournalInFlight;
+
+	@Value("${app.metrics.export}")
+	private boolean metricsExportEnabled;
+
+	@Value("${app.script.error.patterns}")
+	private String scriptErrorPatterns;
+
+	@Value("${app.script.output.files}")
+	private boolean scriptOutputFilesEnabled;
+
+	@Value("${app.script.output.tail.kb}")
+	private int scriptOutputTailKb;
+
+	@Value("${app.script.output.spill}")
+	private boolean scriptOutputSpill;
+
+	@Value("${app.progress.log}")
+	private boolean progressLogEnabled;
+
+	@Value("${app.script.slow.factor}")
+	private double slowScriptFactor;
+
+	@Value("${app.trace.enabled}")
+	private boolean traceEnabled;
+
+	@Value("${app.jfr.record}")
+	private boolean jfrRecordEnabled;
+
+	@Value("${app.jfr.dump.threshold.seconds}")
+	private long jfrDumpThresholdSeconds;
+
+	@Value("${app.script.retry.max}")
+	private int retryMax;
+
+	@Value("${app.script.retry.scripts}")
+	private String retryScripts;
+
+	@Value("${app.script.retry.output.patterns}")
+	private String retryOutputPatterns;
+
+	@Value("${app.script.retry.exit.codes}")
+	private String retryExitCodes;
+
+	@Value("${app.script.retry.backoff.ms}")
+	private long retryBackoffMillis;
+
+	@Value("${app.script.retry.backoff.max.ms}")
+	private long retryMaxBackoffMillis;
+
+	@Value("${app.throttle.adaptive}")
+	private boolean throttleAdaptive;
+
+	@Value("${app.throttle.latency.factor}")
+	private double throttleLatencyFactor;
+
+	@Value("${app.throttle.error.rate}")
+	private double throttleErrorRate;
+
+	@Value("${app.throttle.pause.ms}")
+	private long throttlePauseMillis;
+
+	@Value("${app.throttle.windows}")
+	private String throttleWindows;
+
+	@Value("${app.history.store}")
+	private String historyStore;
+
+	@Value("${app.history.journal.file}")
+	private String historyJournalFile;
+
+	@Value("${app.server.port}")
+	private int serverPort;
+
+	@Value("${app.server.queue.size}")
+	private int serverQueueSize;
+
+	@Value("${app.server.token}")
+	private String serverToken;
+
+	@Value("${app.server.token.file}")
+	private String serverTokenFile;
+
 	public boolean isTraceRequired() {
 		return traceRequired;
 	}
@@ -106,6 +227,10 @@ public class AppSettings {
 		return consoleCommandLogging;
 	}
 
+	public String getConsoleStdinCommand() {
+		return consoleStdinCommand;
+	}
+
 	public boolean isConsoleCommandOutputEnabled() {
 		return consoleCommandOutputEnabled;
 	}
@@ -146,4 +271,163 @@ public class AppSettings {
 		return reqNumber;
 	}
 
+	public int getChecksumThreads() {
+		return checksumThreads;
+	}
+
+	public int getPipelineDepth() {
+		return pipelineDepth;
+	}
+
+	public String getPlanFile() {
+		return planFile;
+	}
+
+	public String getStateFile() {
+		return stateFile;
+	}
+
+	public boolean isGitIncremental() {
+		return gitIncremental;
+	}
+
+	public boolean isTreeIncremental() {
+		return treeIncremental;
+	}
+
+	public String getScriptsManifest() {
+		return scriptsManifest;
+	}
+
+	public boolean isScriptsCompressed() {
+		return scriptsCompressed;
+	}
+
+	public String getTargetsFile() {
+		return targetsFile;
+	}
+
+	public int getTargetsParallelism() {
+		return targetsParallelism;
+	}
+
+	public String getRunJournalFile() {
+		return runJournalFile;
+	}
+
+	public String getRunJournalInFlight() {
+		return runJournalInFlight;
+	}
+
+	public boolean isMetricsExportEnabled() {
+		return metricsExportEnabled;
+	}
+
+	public String getScriptErrorPatterns() {
+		return scriptErrorPatterns;
+	}
+
+	public boolean isScriptOutputFilesEnabled() {
+		return scriptOutputFilesEnabled;
+	}
+
+	public int getScriptOutputTailKb() {
+		return scriptOutputTailKb;
+	}
+
+	public boolean isScriptOutputSpill() {
+		return scriptOutputSpill;
+	}
+
+	public boolean isProgressLogEnabled() {
+		return progressLogEnabled;
+	}
+
+	public double getSlowScriptFactor() {
+		return slowScriptFactor;
+	}
+
+	public boolean isTraceEnabled() {
+		return traceEnabled;
+	}
+
+	public boolean isJfrRecordEnabled() {
+		return jfrRecordEnabled;
+	}
+
+	public long getJfrDumpThresholdSeconds() {
+		return jfrDumpThresholdSeconds;
+	}
+
+	public int getServerPort() {
+		return serverPort;
+	}
+
+	public int getServerQueueSize() {
+		return serverQueueSize;
+	}
+
+	public String getServerToken() {
+		return serverToken;
+	}
+
+	public String getServerTokenFile() {
+		return serverTokenFile;
+	}
+
+	/**
+	 * @return true if the history is kept in a journal file rather than in the database.
+	 */
+	public boolean isHistoryJournal() {
+		return "journal".equalsIgnoreCase(StringUtils.trimToEmpty(historyStore));
+	}
+
+	public String getHistoryJournalFile() {
+		return historyJournalFile;
+	}
+
+	public int getRetryMax() {
+		return retryMax;
+	}
+
+	public String getRetryScripts() {
+		return retryScripts;
+	}
+
+	public String getRetryOutputPatterns() {
+		return retryOutputPatterns;
+	}
+
+	public String getRetryExitCodes() {
+		return retryExitCodes;
+	}
+
+	public long getRetryBackoffMillis() {
+		return retryBackoffMillis;
+	}
+
+	public long getRetryMaxBackoffMillis() {
+		return retryMaxBackoffMillis;
+	}
+
+	public boolean isThrottleAdaptive() {
+		return throttleAdaptive;
+	}
+
+	public double getThrottleLatencyFactor() {
+		return throttleLatencyFactor;
+	}
+
+	public double getThrottleErrorRate() {
+		return throttleErrorRate;
+	}
+
+	public long getThrottlePauseMillis() {
+		return throttlePauseMillis;
+	}
+
+	public String getThrottleWindows() {
+		return throttleWindows;
+	}
+
 }
@@ -23,9 +23,16 @@ public class DBSpooler {
 	@Autowired
 	private AppSettings appSettings;
 
+	@Autowired
+	private DeploymentMetrics deploymentMetrics;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(DBSpooler.class);
 
 	public void spoolDB(String filePrefix) {
+		spoolDB(filePrefix, scriptHistoryRepository);
+	}
+
+	public void spoolDB(String filePrefix, ScriptHistoryRepository scriptHistoryRepository) {
 		if (!appSettings.isScriptMetadataSpoolEnabled()) {
 			LOGGER.info(" ----- Spooling DB is disabled ----- {}");
 			return;
@@ -33,18 +40,21 @@ public class DBSpooler {
 		String spoolFileName = appSettings.getLogDir() + "/" + filePrefix + "db_dump_"
 				+ new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".csv";
 		LOGGER.info(" ----- Spooling DB table in a CSV file ----- {}", spoolFileName);
+		long start = System.nanoTime();
 		Iterable<ScriptHistory> records = scriptHistoryRepository.findAll();
 		File csvOutputFile = new File(spoolFileName);
 		try (PrintWriter pw = new PrintWriter(csvOutputFile)) {
-			pw.println("path,type,sequence,version,checksum,create date,update date,deployment request no");
+			pw.println("path,type,sequence,version,checksum,create date,update date,deployment request no,duration ms,output bytes");
 			for (ScriptHistory r : records) {
-				pw.println(String.format("%s,%s,%d,%d,%s,%s,%s,%s", r.getFileId().getPath(), r.getType(),
+				pw.println(String.format("%s,%s,%d,%d,%s,%s,%s,%s,%d,%d", r.getFileId().getPath(), r.getType(),
 						r.getSequence(), r.getVersion(), r.getChecksum(), r.getCreateDate(),
-						r.getFileId().getUpdateDate(), r.getDeploymentReqNo()));
+						r.getFileId().getUpdateDate(), r.getDeploymentReqNo(), r.getDurationMillis(),
+						r.getOutputBytes()));
 			}
 		} catch (FileNotFoundException ex) {
 			LOGGER.error("Failed to write DB Dump in csv file.");
 		}
+		deploymentMetrics.record(DeploymentMetrics.SPOOL, System.nanoTime() - start);
 	}
 
 }
@@ -0,0 +1,472 @@
+package com.techyplanet.scriptdeployer.component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP API of a deployer kept running between deployments, so that the JVM, the Spring context and the
+ * history connection are paid for once. Requests are queued and run one at a time, in the order they came in, as
+ * they all share the same history. Every request has to carry the token of the server in the X-Deployer-Token
+ * header, and requests sent by a browser, which carry an Origin header, are turned down, so that neither another
+ * local user nor a web page can trigger a deployment or read about one. Plan files are taken from the folder of
+ * app.plan.file only.
+ */
+@Component
+public class DeployerServer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeployerServer.class);
+
+	/** How many finished requests are kept for status queries. */
+	private static final int MAX_FINISHED = 100;
+
+	static final String TOKEN_HEADER = "X-Deployer-Token";
+
+	@Autowired
+	private AppSettings appSettings;
+
+	private final AtomicLong requestIds = new AtomicLong();
+
+	private final Map<Long, Request> requests = new LinkedHashMap<>();
+
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private ThreadPoolExecutor executor;
+
+	private HttpServer server;
+
+	private ExecutorService httpExecutor;
+
+	private Date startDate;
+
+	private byte[] token;
+
+	/** Token file written at start, deleted at stop. */
+	private Path tokenFile;
+
+	/**
+	 * Runs a deployer command, throwing if it fails.
+	 */
+	public interface CommandRunner {
+
+		void run(String command, Path planFile);
+	}
+
+	/**
+	 * Request received through the API, with its progress.
+	 */
+	public static class Request {
+
+		private final long id;
+		private final String command;
+		private final Path planFile;
+		private final Date submitted = new Date();
+		private final CountDownLatch finished = new CountDownLatch(1);
+		private volatile String state = "queued";
+		private volatile Date started;
+		private volatile Date ended;
+		private volatile String message;
+
+		Request(long id, String command, Path planFile) {
+			this.id = id;
+			this.command = command;
+			this.planFile = planFile;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		String toJson() {
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+			StringBuilder json = new StringBuilder("{\"id\":").append(id);
+			json.append(",\"command\":").append(DeploymentMetrics.quote(command));
+			if (planFile != null) {
+				json.append(",\"plan\":").append(DeploymentMetrics.quote(planFile.toString()));
+			}
+			json.append(",\"state\":").append(DeploymentMetrics.quote(state));
+			json.append(",\"submitted\":").append(DeploymentMetrics.quote(format.format(submitted)));
+			if (started != null) {
+				json.append(",\"started\":").append(DeploymentMetrics.quote(format.format(started)));
+			}
+			if (ended != null) {
+				json.append(",\"finished\":").append(DeploymentMetrics.quote(format.format(ended)));
+			}
+			if (message != null) {
+				json.append(",\"message\":").append(DeploymentMetrics.quote(message));
+			}
+			return json.append('}').toString();
+		}
+	}
+
+	/**
+	 * Serves requests on the loopback interface until a shutdown request comes in.
+	 */
+	public void serve(CommandRunner runner) {
+		start(runner);
+		try {
+			stopped.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		stop();
+	}
+
+	/**
+	 * @return port the server listens to.
+	 */
+	public int start(CommandRunner runner) {
+		token = token().getBytes(StandardCharsets.UTF_8);
+		executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, appSettings.getServerQueueSize())));
+		try {
+			server = HttpServer.create(
+					new InetSocketAddress(InetAddress.getLoopbackAddress(), appSettings.getServerPort()), 0);
+		} catch (IOException ex) {
+			throw new RuntimeException(
+					String.format("Deployer server can't listen to port [%d].", appSettings.getServerPort()), ex);
+		}
+		server.createContext("/", exchange -> {
+			try {
+				handle(exchange, runner);
+			} catch (RuntimeException ex) {
+				LOGGER.error("<-- server --> request failed", ex);
+				respond(exchange, 500,
+						"{\"error\":" + DeploymentMetrics.quote(String.valueOf(ex.getMessage())) + "}");
+			} finally {
+				exchange.close();
+			}
+		});
+		// requests waiting for their deployment mustn't hold status requests back
+		httpExecutor = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, "deployer-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(httpExecutor);
+		server.start();
+		startDate = new Date();
+		LOGGER.info("<-- server --> listening on http://{}:{}", InetAddress.getLoopbackAddress().getHostAddress(),
+				server.getAddress().getPort());
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops taking requests and waits for the queued ones to be processed.
+	 */
+	public void stop() {
+		if (server == null) {
+			return;
+		}
+		// requests coming in meanwhile are turned down, the ones waiting for their result still get it
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		server.stop(1);
+		server = null;
+		httpExecutor.shutdown();
+		if (tokenFile != null) {
+			try {
+				Files.deleteIfExists(tokenFile);
+			} catch (IOException ex) {
+				LOGGER.warn("<-- server --> token file {} can't be deleted: {}", tokenFile, ex.getMessage());
+			}
+			tokenFile = null;
+		}
+		LOGGER.info("<-- server --> stopped");
+	}
+
+	private void handle(HttpExchange exchange, CommandRunner runner) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+		boolean post = "POST".equalsIgnoreCase(exchange.getRequestMethod());
+		if (exchange.getRequestHeaders().containsKey("Origin")) {
+			respond(exchange, 403, "{\"error\":\"cross-origin requests are not allowed\"}");
+			return;
+		}
+		if (!hasToken(exchange)) {
+			respond(exchange, 401, "{\"error\":\"" + TOKEN_HEADER + " header missing or wrong\"}");
+			return;
+		}
+		switch (path) {
+		case "/deploy":
+		case "/plan":
+		case "/apply":
+			if (!post) {
+				respond(exchange, 405, "{\"error\":\"POST expected\"}");
+				return;
+			}
+			String planName = parameters.get("plan");
+			Path planFile = planName == null ? null : planFile(planName);
+			if (planName != null && planFile == null) {
+				respond(exchange, 400, "{\"error\":\"plan must name a file of the plan folder\"}");
+				return;
+			}
+			Request request = submit(path.substring(1), planFile, runner);
+			if (request == null) {
+				respond(exchange, 503, "{\"error\":\"queue full\"}");
+				return;
+			}
+			if (Boolean.parseBoolean(parameters.get("wait"))) {
+				try {
+					request.finished.await();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				respond(exchange, "failed".equals(request.state) ? 500 : 200, request.toJson());
+			} else {
+				respond(exchange, 202, request.toJson());
+			}
+			return;
+		case "/status":
+			respond(exchange, 200, status());
+			return;
+		case "/shutdown":
+			if (!post) {
+				respond(exchange, 405, "{\"error\":\"POST expected\"}");
+				return;
+			}
+			respond(exchange, 202, "{\"state\":\"stopping\"}");
+			stopped.countDown();
+			return;
+		default:
+			if (path.startsWith("/requests/")) {
+				Request found;
+				synchronized (requests) {
+					found = requests.get(parseId(path.substring("/requests/".length())));
+				}
+				if (found != null) {
+					respond(exchange, 200, found.toJson());
+					return;
+				}
+			}
+			respond(exchange, 404, "{\"error\":\"not found\"}");
+		}
+	}
+
+	/**
+	 * @return plan file named by a request, resolved against the folder of app.plan.file, null if the name is absolute
+	 *         or climbs out of that folder.
+	 */
+	private Path planFile(String name) {
+		Path planDir = Paths.get(appSettings.getPlanFile()).toAbsolutePath().normalize().getParent();
+		Path relative;
+		try {
+			relative = Paths.get(name);
+		} catch (InvalidPathException ex) {
+			return null;
+		}
+		if (StringUtils.isBlank(name) || relative.isAbsolute() || relative.getRoot() != null) {
+			return null;
+		}
+		for (Path part : relative) {
+			if ("..".equals(part.toString())) {
+				return null;
+			}
+		}
+		Path planFile = planDir.resolve(relative).normalize();
+		return planFile.startsWith(planDir) && !planFile.equals(planDir) ? planFile : null;
+	}
+
+	private boolean hasToken(HttpExchange exchange) {
+		String sent = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+		return sent != null && MessageDigest.isEqual(token, sent.trim().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return token of app.server.token, or else a random one written to app.server.token.file, readable by the
+	 *         owner only, for clients to read it from.
+	 */
+	private String token() {
+		if (StringUtils.isNotBlank(appSettings.getServerToken())) {
+			return appSettings.getServerToken().trim();
+		}
+		byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		String generated = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+		Path file = Paths.get(appSettings.getServerTokenFile());
+		try {
+			if (file.toAbsolutePath().getParent() != null) {
+				Files.createDirectories(file.toAbsolutePath().getParent());
+			}
+			Files.deleteIfExists(file);
+			if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+				Files.createFile(file,
+						PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			} else if (file.getFileSystem().supportedFileAttributeViews().contains("acl")) {
+				Files.createFile(file);
+				restrictToOwner(file);
+			} else {
+				LOGGER.warn("<-- server --> token file {} can't be restricted to its owner, set app.server.token "
+						+ "instead if other users can read the folder", file);
+			}
+			Files.write(file, generated.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Server token file [%s] can't be written.", file), ex);
+		}
+		tokenFile = file;
+		LOGGER.info("<-- server --> token written to {}", file);
+		return generated;
+	}
+
+	/**
+	 * Replaces the inherited access list of the file by a single entry granting its owner full access.
+	 */
+	private static void restrictToOwner(Path file) throws IOException {
+		AclFileAttributeView view = Files.getFileAttributeView(file, AclFileAttributeView.class);
+		view.setAcl(List.of(AclEntry.newBuilder().setType(AclEntryType.ALLOW).setPrincipal(view.getOwner())
+				.setPermissions(AclEntryPermission.values()).build()));
+	}
+
+	/**
+	 * @return queued request, null if the queue is full.
+	 */
+	Request submit(String command, Path planFile, CommandRunner runner) {
+		Request request = new Request(requestIds.incrementAndGet(), command, planFile);
+		synchronized (requests) {
+			requests.put(request.id, request);
+			prune();
+		}
+		try {
+			executor.execute(() -> run(request, runner));
+		} catch (RejectedExecutionException ex) {
+			synchronized (requests) {
+				requests.remove(request.id);
+			}
+			return null;
+		}
+		LOGGER.info("<-- server --> request {} queued: {}", request.id, command);
+		return request;
+	}
+
+	private void run(Request request, CommandRunner runner) {
+		request.started = new Date();
+		request.state = "running";
+		LOGGER.info("<-- server --> request {} started: {}", request.id, request.command);
+		try {
+			runner.run(request.command, request.planFile);
+			request.state = "succeeded";
+		} catch (RuntimeException ex) {
+			request.state = "failed";
+			request.message = ex.getMessage();
+		} finally {
+			request.ended = new Date();
+			request.finished.countDown();
+			LOGGER.info("<-- server --> request {} {}", request.id, request.state);
+		}
+	}
+
+	private String status() {
+		List<String> entries = new ArrayList<>();
+		synchronized (requests) {
+			for (Request request : requests.values()) {
+				entries.add(request.toJson());
+			}
+		}
+		return "{\"started\":" + DeploymentMetrics.quote(
+				new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(startDate)) + ",\"queued\":"
+				+ executor.getQueue().size() + ",\"requests\":[" + String.join(",", entries) + "]}";
+	}
+
+	/**
+	 * Forgets the oldest finished requests beyond the ones kept for status queries.
+	 */
+	private void prune() {
+		int finished = 0;
+		for (Request request : requests.values()) {
+			if (request.ended != null) {
+				finished++;
+			}
+		}
+		Iterator<Request> iterator = requests.values().iterator();
+		while (finished > MAX_FINISHED && iterator.hasNext()) {
+			if (iterator.next().ended != null) {
+				iterator.remove();
+				finished--;
+			}
+		}
+	}
+
+	private static long parseId(String id) {
+		try {
+			return Long.parseLong(id);
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	private static Map<String, String> parameters(String query) {
+		Map<String, String> parameters = new HashMap<>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String parameter : query.split("&")) {
+			int separator = parameter.indexOf('=');
+			String name = separator < 0 ? parameter : parameter.substring(0, separator);
+			String value = separator < 0 ? "true" : parameter.substring(separator + 1);
+			parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+					URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return parameters;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.techyplanet.scriptdeployer.component;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+
+/**
+ * Timers and counters of each deployment stage, tagged with script class and pattern, written to the logs folder
+ * in Prometheus text and JSON formats when the run ends.
+ */
+@Component
+public class DeploymentMetrics {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeploymentMetrics.class);
+
+	public static final String SCAN = "deployer.scan";
+
+	public static final String CHECKSUM = "deployer.checksum";
+
+	public static final String HISTORY_LOOKUP = "deployer.history.lookup";
+
+	public static final String SUBSTITUTION = "deployer.substitution";
+
+	public static final String PROCESS_SPAWN = "deployer.process.spawn";
+
+	public static final String EXECUTION = "deployer.script.execution";
+
+	public static final String HISTORY_SAVE = "deployer.history.save";
+
+	public static final String SPOOL = "deployer.spool";
+
+	public static final String PLANNED = "deployer.scripts.planned";
+
+	public static final String SLOW = "deployer.scripts.slow";
+
+	public static final String RETRIED = "deployer.scripts.retried";
+
+	public static final String THROTTLE_WAIT = "deployer.throttle.wait";
+
+	private final AppSettings appSettings;
+
+	private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+	@Autowired
+	public DeploymentMetrics(AppSettings appSettings) {
+		this.appSettings = appSettings;
+	}
+
+	/**
+	 * Records the duration of a stage for one script, or for one pattern in the case of the scan.
+	 */
+	public void record(String stage, ScriptPhase phase, String pattern, long nanos) {
+		Timer.builder(stage).tags("phase", phase.name(), "pattern", pattern)
+				.publishPercentileHistogram(!SCAN.equals(stage)).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the duration of a stage which isn't about scripts, such as the history spool.
+	 */
+	public void record(String stage, long nanos) {
+		Timer.builder(stage).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void record(String stage, ScriptPhase phase, String pattern, String outcome, long nanos) {
+		Timer.builder(stage).tags("phase", phase.name(), "pattern", pattern, "outcome", outcome)
+				.publishPercentileHistogram().register(registry).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void planned(ScriptPhase phase, String pattern, String action) {
+		Counter.builder(PLANNED).tags("phase", phase.name(), "pattern", pattern, "action", action).register(registry)
+				.increment();
+	}
+
+	public void slow(ScriptPhase phase, String pattern) {
+		Counter.builder(SLOW).tags("phase", phase.name(), "pattern", pattern).register(registry).increment();
+	}
+
+	public void retried(ScriptPhase phase, String pattern) {
+		Counter.builder(RETRIED).tags("phase", phase.name(), "pattern", pattern).register(registry).increment();
+	}
+
+	public List<Meter> getMeters() {
+		return registry.getMeters();
+	}
+
+	/**
+	 * Writes every meter recorded so far next to the log files, does nothing when export is disabled.
+	 */
+	public void export() {
+		if (!appSettings.isMetricsExportEnabled()) {
+			return;
+		}
+		String fileName = "metrics." + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+		Path promFile = Paths.get(appSettings.getLogDir(), fileName + ".prom");
+		Path jsonFile = Paths.get(appSettings.getLogDir(), fileName + ".json");
+		try {
+			Files.createDirectories(promFile.getParent());
+			Files.writeString(promFile, registry.scrape(), StandardCharsets.UTF_8);
+			try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8))) {
+				writeJson(pw);
+			}
+			LOGGER.info(" ----- Metrics written ----- {}, {}", promFile, jsonFile);
+		} catch (IOException ex) {
+			LOGGER.error("Failed to write metrics in {}.", promFile.getParent());
+		}
+	}
+
+	private void writeJson(PrintWriter pw) {
+		pw.println("{\"meters\":[");
+		List<Meter> meters = registry.getMeters();
+		for (int i = 0; i < meters.size(); i++) {
+			Meter meter = meters.get(i);
+			StringBuilder json = new StringBuilder();
+			json.append("{\"name\":").append(quote(meter.getId().getName()));
+			json.append(",\"type\":").append(quote(meter.getId().getType().name()));
+			json.append(",\"tags\":{");
+			List<Tag> tags = meter.getId().getTags();
+			for (int t = 0; t < tags.size(); t++) {
+				json.append(t > 0 ? "," : "").append(quote(tags.get(t).getKey())).append(':')
+						.append(quote(tags.get(t).getValue()));
+			}
+			json.append("},\"measurements\":{");
+			boolean first = true;
+			for (Measurement measurement : meter.measure()) {
+				json.append(first ? "" : ",").append(quote(measurement.getStatistic().name())).append(':')
+						.append(number(measurement.getValue()));
+				first = false;
+			}
+			if (meter instanceof Timer) {
+				json.append(first ? "" : ",").append("\"MEAN\":")
+						.append(number(((Timer) meter).mean(TimeUnit.SECONDS)));
+			}
+			json.append("}}");
+			pw.println(json.append(i < meters.size() - 1 ? "," : ""));
+		}
+		pw.println("]}");
+	}
+
+	private static String number(double value) {
+		return Double.isFinite(value) ? String.valueOf(value) : "null";
+	}
+
+	static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
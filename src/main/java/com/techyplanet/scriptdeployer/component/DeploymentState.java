@@ -0,0 +1,72 @@
+package com.techyplanet.scriptdeployer.component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Small key/value store kept next to the embedded history database, holding facts about the last successful
+ * deployment which are not part of the script history itself.
+ */
+@Component
+public class DeploymentState {
+
+	private final AppSettings appSettings;
+
+	private Properties properties;
+
+	@Autowired
+	public DeploymentState(AppSettings appSettings) {
+		this.appSettings = appSettings;
+	}
+
+	public synchronized String get(String key) {
+		return load().getProperty(key);
+	}
+
+	public synchronized void put(String key, String value) {
+		if (value == null) {
+			load().remove(key);
+		} else {
+			load().setProperty(key, value);
+		}
+		store();
+	}
+
+	private Properties load() {
+		if (properties == null) {
+			properties = new Properties();
+			Path stateFile = Paths.get(appSettings.getStateFile());
+			if (Files.isRegularFile(stateFile)) {
+				try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+					properties.load(reader);
+				} catch (IOException ex) {
+					throw new RuntimeException(String.format("Deployment state [%s] can't be read.", stateFile), ex);
+				}
+			}
+		}
+		return properties;
+	}
+
+	private void store() {
+		Path stateFile = Paths.get(appSettings.getStateFile());
+		try {
+			if (stateFile.getParent() != null) {
+				Files.createDirectories(stateFile.getParent());
+			}
+			try (Writer writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8)) {
+				properties.store(writer, "script deployer state, do not edit");
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Deployment state [%s] can't be written.", stateFile), ex);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package com.techyplanet.scriptdeployer.component;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gate every script goes through before running, shared by the targets deployed in parallel, so that a busy
+ * database isn't hurt by the deployment. Scripts only start within the deployment windows and at least
+ * app.throttle.pause.ms apart. When adaptive, the number of scripts running at once grows by one per round of
+ * healthy scripts up to app.targets.parallelism, and is halved as soon as a script runs much slower than its
+ * historical median or the recent error rate gets too high.
+ */
+@Component
+public class DeploymentThrottle {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeploymentThrottle.class);
+
+	/** Share of the scripts still allowed to run at once after a slowdown. */
+	private static final double DECREASE_FACTOR = 0.5;
+
+	/** Weight of the latest outcome in the error rate. */
+	private static final double ERROR_RATE_WEIGHT = 0.2;
+
+	/** Longest single wait outside of a window, so that clock changes are noticed. */
+	private static final long MAX_WINDOW_WAIT_MILLIS = 60_000L;
+
+	private final AppSettings appSettings;
+
+	private double limit = 1;
+
+	private int running;
+
+	/** Incremented at each decrease, so that scripts started before it don't decrease the limit again. */
+	private long epoch;
+
+	private double errorRate;
+
+	private long nextStartNanos = System.nanoTime();
+
+	private List<LocalTime[]> windows;
+
+	@Autowired
+	public DeploymentThrottle(AppSettings appSettings) {
+		this.appSettings = appSettings;
+	}
+
+	/**
+	 * Waits until the script may start.
+	 */
+	public synchronized Permit acquire(String path) {
+		boolean announced = false;
+		try {
+			while (true) {
+				long windowWait = millisToWindow(LocalTime.now());
+				if (windowWait > 0) {
+					if (!announced) {
+						LOGGER.info("<-- throttle --> {} waits {} for the next deployment window", path,
+								Duration.ofMillis(windowWait));
+						announced = true;
+					}
+					wait(Math.min(windowWait, MAX_WINDOW_WAIT_MILLIS));
+					continue;
+				}
+				if (appSettings.isThrottleAdaptive() && running >= (int) limit) {
+					wait();
+					continue;
+				}
+				long pause = TimeUnit.NANOSECONDS.toMillis(nextStartNanos - System.nanoTime());
+				if (pause > 0) {
+					wait(pause);
+					continue;
+				}
+				break;
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(String.format("Wait of script [%s] to start interrupted.", path), ex);
+		}
+		running++;
+		nextStartNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(appSettings.getThrottlePauseMillis());
+		return new Permit(epoch);
+	}
+
+	/**
+	 * Lets the next script start, and adapts the concurrency to how the script went.
+	 *
+	 * @param medianMillis median duration of the previous runs of the script, null if it was never measured.
+	 */
+	public synchronized void release(Permit permit, String path, long durationMillis, boolean succeeded,
+			Long medianMillis) {
+		running--;
+		if (appSettings.isThrottleAdaptive()) {
+			errorRate = errorRate * (1 - ERROR_RATE_WEIGHT) + (succeeded ? 0 : ERROR_RATE_WEIGHT);
+			String congestion = null;
+			if (errorRate > appSettings.getThrottleErrorRate()) {
+				congestion = String.format("error rate %.0f%%", errorRate * 100);
+			} else if (succeeded && medianMillis != null && appSettings.getThrottleLatencyFactor() > 0
+					&& durationMillis > medianMillis * appSettings.getThrottleLatencyFactor()) {
+				congestion = String.format("%s took %d ms, median %d ms", path, durationMillis, medianMillis);
+			}
+			int previous = (int) limit;
+			if (congestion != null) {
+				if (permit.epoch == epoch) {
+					limit = Math.max(1, limit * DECREASE_FACTOR);
+					epoch++;
+					LOGGER.warn("<-- throttle --> concurrency {} -> {}, {}", previous, (int) limit, congestion);
+				}
+			} else if (limit < maxConcurrency()) {
+				// one more script at once after a round of as many healthy scripts as run at once
+				limit = Math.min(maxConcurrency(), limit + 1 / limit);
+				if ((int) limit > previous) {
+					LOGGER.info("<-- throttle --> concurrency {} -> {}", previous, (int) limit);
+				}
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @return number of scripts currently allowed to run at once.
+	 */
+	public synchronized int getConcurrency() {
+		return appSettings.isThrottleAdaptive() ? (int) limit : maxConcurrency();
+	}
+
+	/**
+	 * @return how long to wait from the given time until a deployment window opens, 0 if one is open or none is set.
+	 */
+	synchronized long millisToWindow(LocalTime time) {
+		long wait = Long.MAX_VALUE;
+		for (LocalTime[] window : windows()) {
+			LocalTime start = window[0];
+			LocalTime end = window[1];
+			boolean open = start.isBefore(end) ? !time.isBefore(start) && time.isBefore(end)
+					: !time.isBefore(start) || time.isBefore(end);
+			if (open) {
+				return 0;
+			}
+			long untilStart = Duration.between(time, start).toMillis();
+			wait = Math.min(wait, untilStart < 0 ? untilStart + TimeUnit.DAYS.toMillis(1) : untilStart);
+		}
+		return wait == Long.MAX_VALUE ? 0 : wait;
+	}
+
+	private int maxConcurrency() {
+		return Math.max(1, appSettings.getTargetsParallelism());
+	}
+
+	/**
+	 * Windows of app.throttle.windows, HH:mm-HH:mm in local time separated by commas, ending on the next day when
+	 * they end before they start.
+	 */
+	private List<LocalTime[]> windows() {
+		if (windows == null) {
+			List<LocalTime[]> parsed = new ArrayList<>();
+			if (StringUtils.isNotBlank(appSettings.getThrottleWindows())) {
+				for (String window : appSettings.getThrottleWindows().split(",")) {
+					String[] bounds = window.trim().split("-");
+					LocalTime[] bounded = null;
+					if (bounds.length == 2) {
+						try {
+							bounded = new LocalTime[] { LocalTime.parse(bounds[0].trim()),
+									LocalTime.parse(bounds[1].trim()) };
+						} catch (DateTimeParseException ex) {
+							// reported below
+						}
+					}
+					if (bounded == null) {
+						throw new RuntimeException(String.format(
+								"Invalid deployment window [%s], expected HH:mm-HH:mm, for example 22:00-06:00.",
+								window.trim()));
+					}
+					parsed.add(bounded);
+				}
+			}
+			windows = parsed;
+		}
+		return windows;
+	}
+
+	/**
+	 * Right of a script to run, given back once it ended.
+	 */
+	public static class Permit {
+
+		private final long epoch;
+
+		private final long startNanos = System.nanoTime();
+
+		private Permit(long epoch) {
+			this.epoch = epoch;
+		}
+
+		public long elapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.techyplanet.scriptdeployer.component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * In-process flight recording of the run, kept in memory and only written to the logs folder when the run failed
+ * or took longer than the configured threshold.
+ */
+@Component
+public class FlightRecording {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecording.class);
+
+	@Autowired
+	private AppSettings appSettings;
+
+	private Recording recording;
+
+	private long startNanos;
+
+	public void start() {
+		if (!appSettings.isJfrRecordEnabled()) {
+			return;
+		}
+		try {
+			recording = new Recording(Configuration.getConfiguration("default"));
+		} catch (IOException | ParseException ex) {
+			throw new RuntimeException("Flight recording configuration can't be loaded.", ex);
+		}
+		recording.setName("script-deployer");
+		recording.setToDisk(true);
+		startNanos = System.nanoTime();
+		recording.start();
+	}
+
+	/**
+	 * Stops the recording and dumps it when the run failed or was slow, discards it otherwise.
+	 *
+	 * @return the dumped file, null if nothing was written.
+	 */
+	public Path finish(boolean failed) {
+		if (recording == null) {
+			return null;
+		}
+		long elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000L;
+		Path jfrFile = null;
+		try {
+			recording.stop();
+			if (failed || elapsedSeconds >= appSettings.getJfrDumpThresholdSeconds()) {
+				jfrFile = Paths.get(appSettings.getLogDir(),
+						"deployer." + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".jfr");
+				Files.createDirectories(jfrFile.getParent());
+				recording.dump(jfrFile);
+				LOGGER.info(" ----- Flight recording written ----- {} ({} run, {}s)", jfrFile,
+						failed ? "failed" : "slow", elapsedSeconds);
+			}
+		} catch (IOException ex) {
+			LOGGER.error("Failed to write flight recording in {}.", appSettings.getLogDir());
+			jfrFile = null;
+		} finally {
+			recording.close();
+			recording = null;
+		}
+		return jfrFile;
+	}
+}
@@ -0,0 +1,300 @@
+package com.techyplanet.scriptdeployer.component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.service.DeploymentListener;
+import com.techyplanet.scriptdeployer.utils.PlanFileUtils;
+
+/**
+ * Append-only journal of the current run: the plan, then the start and the end of each script, synced to disk as
+ * they happen. A run which died without reaching its end can be resumed from it, without discovering, hashing or
+ * deciding again.
+ */
+@Component
+public class RunJournal implements DeploymentListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RunJournal.class);
+
+	private static final String STARTED = "#started";
+
+	private static final String ENDED = "#ended";
+
+	private static final String COMPLETED = "#completed";
+
+	private static final String ABORTED = "#aborted";
+
+	/** Marks the journal of a run planning its scripts while applying them, each of them journaled once decided. */
+	private static final String PIPELINED = "#pipelined";
+
+	private static final String PLANNED = "#planned";
+
+	private static final String PLAN_COMPLETED = "#plan-completed";
+
+	private static final String OK = "ok";
+
+	@Autowired
+	private AppSettings appSettings;
+
+	@Autowired
+	private ScriptHistoryRepository scriptHistoryRepository;
+
+	private FileChannel channel;
+
+	public boolean isEnabled() {
+		return StringUtils.isNotBlank(appSettings.getRunJournalFile());
+	}
+
+	/**
+	 * @return plan of a run on the same scripts location which died before its end, with the scripts it already
+	 *         processed turned into skips, null if there is nothing to resume.
+	 */
+	public DeploymentPlan resume(File scriptsDir) {
+		if (!isEnabled()) {
+			return null;
+		}
+		Path journalFile = Paths.get(appSettings.getRunJournalFile());
+		if (!Files.isRegularFile(journalFile)) {
+			return null;
+		}
+
+		Map<Integer, Long> started = new HashMap<>();
+		Set<Integer> ended = new HashSet<>();
+		Set<Integer> failed = new HashSet<>();
+		List<PlannedScript> planned = new ArrayList<>();
+		boolean pipelined = false;
+		boolean planCompleted = false;
+		try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] cols = line.split("\t");
+				try {
+					if (COMPLETED.equals(cols[0]) || ABORTED.equals(cols[0])) {
+						return null;
+					} else if (STARTED.equals(cols[0]) && cols.length == 3) {
+						started.put(Integer.valueOf(cols[1]), Long.valueOf(cols[2]));
+					} else if (ENDED.equals(cols[0]) && cols.length == 4) {
+						// failed scripts were recorded nowhere and are run again
+						(OK.equals(cols[2]) ? ended : failed).add(Integer.valueOf(cols[1]));
+					} else if (PIPELINED.equals(cols[0])) {
+						pipelined = true;
+					} else if (PLAN_COMPLETED.equals(cols[0])) {
+						planCompleted = true;
+					} else if (PLANNED.equals(cols[0])) {
+						planned.add(PlanFileUtils.parseEntry(line.substring(PLANNED.length() + 1),
+								journalFile.toString()));
+					}
+				} catch (RuntimeException ex) {
+					// last line torn by the crash
+				}
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Run journal [%s] can't be read.", journalFile), ex);
+		}
+
+		DeploymentPlan journaled = PlanFileUtils.read(journalFile);
+		if (!scriptsDir.getAbsolutePath().equals(journaled.getScriptsLocation())) {
+			LOGGER.warn("<-- journal --> unfinished run on another scripts location [{}], starting a new run",
+					journaled.getScriptsLocation());
+			return null;
+		}
+
+		DeploymentPlan plan = new DeploymentPlan(journaled.getScriptsLocation(), journaled.getHistoryFingerprint(),
+				journaled.getCreateDate());
+		plan.getPhases().addAll(journaled.getPhases());
+		plan.setVerifyChecksums(true);
+		plan.setSelection(journaled.getSelection());
+		if (pipelined && !planCompleted) {
+			// the scripts which weren't planned yet are left to the next run, which mustn't take them as deployed
+			LOGGER.warn("<-- journal --> the run stopped before planning all scripts, the next run will plan the others");
+			plan.setSelection(
+					StringUtils.defaultIfBlank(journaled.getSelection(), "scripts planned before the run stopped"));
+		}
+		planned.addAll(0, journaled.getScripts());
+		for (PlannedScript plannedScript : planned) {
+			if (ended.contains(plannedScript.getOrder())) {
+				plan.add(plannedScript.withAction(ScriptAction.SKIP));
+			} else if (failed.contains(plannedScript.getOrder())) {
+				plan.add(plannedScript);
+			} else if (started.containsKey(plannedScript.getOrder())) {
+				plan.add(inFlight(plannedScript, journaled.getCreateDate()));
+			} else {
+				plan.add(plannedScript);
+			}
+		}
+		LOGGER.info("<-- journal --> resuming run planned at {}, {} script(s) processed before it stopped",
+				journaled.getCreateDate(), ended.size());
+		return plan;
+	}
+
+	/**
+	 * Applies the in-flight policy to a script which was started but whose end wasn't journaled.
+	 */
+	private PlannedScript inFlight(PlannedScript plannedScript, Date planDate) {
+		ScriptHistory entry = scriptHistoryRepository.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(
+				plannedScript.getPath());
+		if (entry != null && entry.getChecksum() != null && entry.getChecksum().equals(plannedScript.getChecksum())
+				&& entry.getVersion() != null && entry.getVersion().equals(plannedScript.getVersion())
+				&& !entry.getFileId().getUpdateDate().before(planDate)) {
+			LOGGER.info("<-- journal --> {} was in flight and is recorded in the history, not running it again",
+					plannedScript.getPath());
+			return plannedScript.withAction(ScriptAction.SKIP);
+		}
+
+		String policy = appSettings.getRunJournalInFlight();
+		boolean repeatable = plannedScript.getPhase() != ScriptPhase.S;
+		if ("retry".equals(policy) || ("retry-repeatable".equals(policy) && repeatable)) {
+			LOGGER.warn("<-- journal --> {} was in flight when the run stopped, running it again",
+					plannedScript.getPath());
+			return plannedScript;
+		}
+		if ("skip".equals(policy)) {
+			LOGGER.warn("<-- journal --> {} was in flight when the run stopped, it will be recorded as deployed",
+					plannedScript.getPath());
+			return plannedScript.withAction(ScriptAction.RESET_HASH);
+		}
+		throw new RuntimeException(String.format(
+				"Script [%s] was in flight when the previous run stopped and may be partially applied. Check the target, then set app.run.journal.inflight to retry or skip to resume.",
+				plannedScript.getPath()));
+	}
+
+	/**
+	 * Starts a new journal holding the given plan, replacing the one of the previous run.
+	 */
+	public void begin(DeploymentPlan plan) {
+		if (!isEnabled()) {
+			return;
+		}
+		Path journalFile = Paths.get(appSettings.getRunJournalFile());
+		try {
+			close();
+			if (journalFile.getParent() != null) {
+				Files.createDirectories(journalFile.getParent());
+			}
+			Path tmpFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+			try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8))) {
+				PlanFileUtils.write(plan, pw);
+			}
+			Files.move(tmpFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			open(journalFile);
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Run journal [%s] can't be written.", journalFile), ex);
+		}
+	}
+
+	/**
+	 * Continues the journal of a resumed run.
+	 */
+	public void reopen() {
+		if (!isEnabled()) {
+			return;
+		}
+		Path journalFile = Paths.get(appSettings.getRunJournalFile());
+		try {
+			close();
+			open(journalFile);
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Run journal [%s] can't be written.", journalFile), ex);
+		}
+	}
+
+	@Override
+	public void planStarted(DeploymentPlan plan) {
+		begin(plan);
+		append(PIPELINED + "\t" + System.currentTimeMillis());
+	}
+
+	@Override
+	public void scriptPlanned(PlannedScript script) {
+		append(PLANNED + "\t" + PlanFileUtils.entry(script));
+	}
+
+	@Override
+	public void planCompleted() {
+		append(PLAN_COMPLETED + "\t" + System.currentTimeMillis());
+	}
+
+	@Override
+	public void scriptStarted(PlannedScript script) {
+		append(STARTED + "\t" + script.getOrder() + "\t" + System.currentTimeMillis());
+	}
+
+	@Override
+	public void scriptFinished(PlannedScript script, boolean succeeded) {
+		append(ENDED + "\t" + script.getOrder() + "\t" + (succeeded ? OK : "failed") + "\t"
+				+ System.currentTimeMillis());
+	}
+
+	/**
+	 * Marks the run as having reached its end, so that the next run plans again.
+	 */
+	public void completed(boolean succeeded) {
+		append(COMPLETED + "\t" + (succeeded ? "ok" : "failed") + "\t" + System.currentTimeMillis());
+		close();
+	}
+
+	/**
+	 * Marks the run as stopped on an error it reported, so that the next run plans again.
+	 */
+	public void aborted() {
+		append(ABORTED + "\t" + System.currentTimeMillis());
+		close();
+	}
+
+	private void open(Path journalFile) throws IOException {
+		channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private synchronized void append(String line) {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+			channel.force(false);
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Run journal [%s] can't be written.", appSettings.getRunJournalFile()),
+					ex);
+		}
+	}
+
+	private synchronized void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				LOGGER.warn("Run journal [{}] can't be closed.", appSettings.getRunJournalFile());
+			}
+			channel = null;
+		}
+	}
+}
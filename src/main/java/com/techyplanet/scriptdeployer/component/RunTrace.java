@@ -0,0 +1,166 @@
+package com.techyplanet.scriptdeployer.component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timeline of the run in the Chrome trace-event format, one track per thread, written to the logs folder as spans
+ * end so that large runs don't hold them in memory. Open it in Perfetto or chrome://tracing.
+ */
+@Component
+public class RunTrace {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RunTrace.class);
+
+	public static final String PHASE = "phase";
+
+	public static final String PLAN = "plan";
+
+	public static final String SCAN = "scan";
+
+	public static final String CHECKSUM = "checksum";
+
+	public static final String HISTORY = "history";
+
+	public static final String SUBSTITUTION = "substitution";
+
+	public static final String PROCESS = "process";
+
+	private final AppSettings appSettings;
+
+	private final AtomicInteger lastThreadId = new AtomicInteger();
+
+	private final ThreadLocal<Integer> threadId = ThreadLocal.withInitial(this::registerThread);
+
+	private long originNanos;
+
+	private Path traceFile;
+
+	private BufferedWriter writer;
+
+	private boolean firstEvent;
+
+	@Autowired
+	public RunTrace(AppSettings appSettings) {
+		this.appSettings = appSettings;
+	}
+
+	public synchronized void start() {
+		if (!appSettings.isTraceEnabled()) {
+			return;
+		}
+		traceFile = Paths.get(appSettings.getLogDir(),
+				"trace." + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".json");
+		try {
+			Files.createDirectories(traceFile.getParent());
+			writer = Files.newBufferedWriter(traceFile, StandardCharsets.UTF_8);
+			writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Trace file [%s] can't be created.", traceFile), ex);
+		}
+		originNanos = System.nanoTime();
+		firstEvent = true;
+		event("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":\"script-deployer\"}}");
+	}
+
+	public boolean isRecording() {
+		return writer != null;
+	}
+
+	/**
+	 * Records a span which just ended on the current thread.
+	 *
+	 * @param args key and value pairs shown with the span.
+	 */
+	public void span(String category, String name, long durationNanos, Object... args) {
+		if (writer == null) {
+			return;
+		}
+		long endNanos = System.nanoTime();
+		write(category, name, endNanos - durationNanos, endNanos, args);
+	}
+
+	/**
+	 * Records a span which started at the given System.nanoTime() and just ended on the current thread.
+	 */
+	public void spanSince(String category, String name, long startNanos, Object... args) {
+		if (writer == null) {
+			return;
+		}
+		write(category, name, startNanos, System.nanoTime(), args);
+	}
+
+	private void write(String category, String name, long startNanos, long endNanos, Object... args) {
+		StringBuilder json = new StringBuilder(160);
+		json.append("{\"name\":").append(DeploymentMetrics.quote(name));
+		json.append(",\"cat\":\"").append(category).append("\",\"ph\":\"X\",\"pid\":1,\"tid\":")
+				.append(threadId.get());
+		json.append(",\"ts\":").append(micros(startNanos - originNanos));
+		json.append(",\"dur\":").append(micros(endNanos - startNanos));
+		if (args.length > 0) {
+			json.append(",\"args\":{");
+			for (int i = 0; i + 1 < args.length; i += 2) {
+				json.append(i > 0 ? "," : "").append(DeploymentMetrics.quote(String.valueOf(args[i]))).append(':')
+						.append(DeploymentMetrics.quote(String.valueOf(args[i + 1])));
+			}
+			json.append('}');
+		}
+		event(json.append('}').toString());
+	}
+
+	/**
+	 * Closes the trace file, does nothing when tracing is disabled.
+	 */
+	public synchronized void finish() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.write("\n]}\n");
+			writer.close();
+			LOGGER.info(" ----- Trace written ----- {}", traceFile);
+		} catch (IOException ex) {
+			LOGGER.error("Failed to write trace in {}.", traceFile);
+		} finally {
+			writer = null;
+		}
+	}
+
+	private Integer registerThread() {
+		int id = lastThreadId.incrementAndGet();
+		event("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + id + ",\"args\":{\"name\":"
+				+ DeploymentMetrics.quote(Thread.currentThread().getName()) + "}}");
+		return id;
+	}
+
+	private synchronized void event(String json) {
+		if (writer == null) {
+			return;
+		}
+		try {
+			if (!firstEvent) {
+				writer.write(",\n");
+			}
+			writer.write(json);
+			firstEvent = false;
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Trace file [%s] can't be written.", traceFile), ex);
+		}
+	}
+
+	private static String micros(long nanos) {
+		return String.format("%d.%03d", nanos / 1000, Math.abs(nanos % 1000));
+	}
+}
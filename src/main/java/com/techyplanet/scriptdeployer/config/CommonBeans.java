@@ -1,14 +1,20 @@
 package com.techyplanet.scriptdeployer.config;
 
+import java.nio.file.Paths;
+
 import org.hibernate.boot.model.naming.ImplicitNamingStrategy;
 import org.hibernate.boot.model.naming.ImplicitNamingStrategyLegacyJpaImpl;
 import org.hibernate.boot.model.naming.PhysicalNamingStrategy;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import com.techyplanet.scriptdeployer.common.PrefixPhysicalNamingStrategy;
 import com.techyplanet.scriptdeployer.component.AppSettings;
+import com.techyplanet.scriptdeployer.repository.JournalScriptHistoryRepository;
 
 @Configuration
 public class CommonBeans {
@@ -25,4 +31,14 @@ public class CommonBeans {
 	public ImplicitNamingStrategy implicit() {
 		return new ImplicitNamingStrategyLegacyJpaImpl();
 	}
+
+	/**
+	 * History kept in a journal file instead of H2, closed with the context.
+	 */
+	@Bean
+	@Primary
+	@ConditionalOnProperty(name = "app.history.store", havingValue = HistoryStoreEnvironmentPostProcessor.JOURNAL)
+	public JournalScriptHistoryRepository journalScriptHistoryRepository() {
+		return new JournalScriptHistoryRepository(Paths.get(appSettings.getHistoryJournalFile()));
+	}
 }
@@ -0,0 +1,36 @@
+package com.techyplanet.scriptdeployer.config;
+
+import java.util.Collections;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Leaves the datasource and JPA out of the context when the history is kept in a journal, so that H2 is neither
+ * opened nor updated.
+ */
+public class HistoryStoreEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+	public static final String JOURNAL = "journal";
+
+	static final String EXCLUDED_AUTO_CONFIGURATIONS = "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+			+ "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration,"
+			+ "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration";
+
+	private static final String EXCLUDE_PROPERTY = "spring.autoconfigure.exclude";
+
+	@Override
+	public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+		if (!JOURNAL.equalsIgnoreCase(StringUtils.trimToEmpty(environment.getProperty("app.history.store")))) {
+			return;
+		}
+		String excluded = environment.getProperty(EXCLUDE_PROPERTY);
+		environment.getPropertySources().addFirst(new MapPropertySource("historyStore",
+				Collections.singletonMap(EXCLUDE_PROPERTY, StringUtils.isBlank(excluded)
+						? EXCLUDED_AUTO_CONFIGURATIONS
+						: excluded + "," + EXCLUDED_AUTO_CONFIGURATIONS)));
+	}
+}
@@ -19,6 +19,8 @@ public class ScriptHistory {
 	private String pattern;
 	private Date createDate;
 	private String deploymentReqNo;
+	private Long durationMillis;
+	private Long outputBytes;
 
 	public ScriptHistory() {
 		super();
@@ -89,6 +91,28 @@ public class ScriptHistory {
 		return deploymentReqNo;
 	}
 
+	/**
+	 * @return wall-clock time the script took to execute, null when it wasn't executed or measured.
+	 */
+	public Long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public void setDurationMillis(Long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * @return bytes the script wrote to its output, null when it wasn't executed or measured.
+	 */
+	public Long getOutputBytes() {
+		return outputBytes;
+	}
+
+	public void setOutputBytes(Long outputBytes) {
+		this.outputBytes = outputBytes;
+	}
+
 	public FileId getFileId() {
 		return fileId;
 	}
@@ -97,7 +121,7 @@ public class ScriptHistory {
 	public String toString() {
 		return "ScriptHistory [path=" + getFileId().getPath() + ", type=" + type + ", sequence=" + sequence
 				+ ", version=" + version + ", checksum=" + checksum + ", pattern=" + pattern + ", createDate="
-				+ createDate + ", updateDate=" + getFileId().getUpdateDate() + "]";
+				+ createDate + ", updateDate=" + getFileId().getUpdateDate() + ", durationMillis=" + durationMillis + "]";
 	}
 
 	@Embeddable
@@ -0,0 +1,24 @@
+package com.techyplanet.scriptdeployer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.techyplanet.scriptdeployer.ChecksumComputed")
+@Label("Checksum Computed")
+@Description("Checksum of a script file computed")
+@Category("Script Deployer")
+@StackTrace(false)
+public class ChecksumComputedEvent extends jdk.jfr.Event {
+
+	@Label("Path")
+	public String path;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+
+}
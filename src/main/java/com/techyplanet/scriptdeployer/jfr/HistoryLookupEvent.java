@@ -0,0 +1,27 @@
+package com.techyplanet.scriptdeployer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.techyplanet.scriptdeployer.HistoryLookup")
+@Label("History Lookup")
+@Description("Latest history entry of a script looked up by path or by sequence and pattern")
+@Category("Script Deployer")
+@StackTrace(false)
+public class HistoryLookupEvent extends jdk.jfr.Event {
+
+	@Label("Key")
+	@Description("path, or sequence|pattern")
+	public String key;
+
+	@Label("Found")
+	public boolean found;
+
+	@Label("Planned")
+	@Description("Entry came from scripts planned earlier in the same run, not from the repository")
+	public boolean planned;
+
+}
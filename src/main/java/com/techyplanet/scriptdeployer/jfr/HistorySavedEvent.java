@@ -0,0 +1,22 @@
+package com.techyplanet.scriptdeployer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.techyplanet.scriptdeployer.HistorySaved")
+@Label("History Saved")
+@Description("History entry of a processed script recorded")
+@Category("Script Deployer")
+@StackTrace(false)
+public class HistorySavedEvent extends jdk.jfr.Event {
+
+	@Label("Path")
+	public String path;
+
+	@Label("Version")
+	public long version;
+
+}
@@ -0,0 +1,25 @@
+package com.techyplanet.scriptdeployer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.techyplanet.scriptdeployer.ScriptDiscovered")
+@Label("Script Discovered")
+@Description("Script found in the scripts location by one of the file patterns")
+@Category("Script Deployer")
+@StackTrace(false)
+public class ScriptDiscoveredEvent extends jdk.jfr.Event {
+
+	@Label("Phase")
+	public String phase;
+
+	@Label("Pattern")
+	public String pattern;
+
+	@Label("Path")
+	public String path;
+
+}
@@ -0,0 +1,26 @@
+package com.techyplanet.scriptdeployer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.techyplanet.scriptdeployer.ScriptExecuted")
+@Label("Script Executed")
+@Description("Client process run for a script, from spawn to exit")
+@Category("Script Deployer")
+@StackTrace(false)
+public class ScriptExecutedEvent extends jdk.jfr.Event {
+
+	@Label("Phase")
+	public String phase;
+
+	@Label("Path")
+	public String path;
+
+	@Label("Exit Code")
+	@Description("-1 if the process couldn't be started")
+	public int exitCode;
+
+}
@@ -0,0 +1,84 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ordered list of scripts with the decision taken for each of them, computed against the history as it was when
+ * the plan was created.
+ */
+public class DeploymentPlan {
+
+	private final String scriptsLocation;
+	private final String historyFingerprint;
+	private final Date createDate;
+	private final Set<ScriptPhase> phases = EnumSet.noneOf(ScriptPhase.class);
+	private final List<PlannedScript> scripts = new ArrayList<>();
+	private boolean verifyChecksums;
+	private String selection;
+
+	public DeploymentPlan(String scriptsLocation, String historyFingerprint, Date createDate) {
+		super();
+		this.scriptsLocation = scriptsLocation;
+		this.historyFingerprint = historyFingerprint;
+		this.createDate = createDate;
+	}
+
+	public void add(PlannedScript script) {
+		scripts.add(script);
+	}
+
+	/**
+	 * Script classes covered by this plan, including the ones for which no script was found.
+	 */
+	public Set<ScriptPhase> getPhases() {
+		return phases;
+	}
+
+	public List<PlannedScript> getScripts() {
+		return scripts;
+	}
+
+	public String getScriptsLocation() {
+		return scriptsLocation;
+	}
+
+	public String getHistoryFingerprint() {
+		return historyFingerprint;
+	}
+
+	public Date getCreateDate() {
+		return createDate;
+	}
+
+	/**
+	 * Whether file checksums have to be verified right before a script is processed, which is the case for plans
+	 * computed earlier or elsewhere.
+	 */
+	public boolean isVerifyChecksums() {
+		return verifyChecksums;
+	}
+
+	public void setVerifyChecksums(boolean verifyChecksums) {
+		this.verifyChecksums = verifyChecksums;
+	}
+
+	/**
+	 * Description of the part of the scripts the plan is limited to, null if it covers all of them.
+	 */
+	public String getSelection() {
+		return selection;
+	}
+
+	public void setSelection(String selection) {
+		this.selection = selection;
+	}
+
+	public long count(ScriptAction action) {
+		return scripts.stream().filter(s -> s.getAction() == action).count();
+	}
+
+}
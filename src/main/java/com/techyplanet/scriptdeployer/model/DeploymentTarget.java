@@ -0,0 +1,42 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One database among many the same scripts get deployed to, with the history table and variables of its own.
+ */
+public class DeploymentTarget {
+
+	private final String name;
+	private final String tableNamePrefix;
+	private final String consoleCommand;
+	private final Map<String, String> variables = new LinkedHashMap<>();
+
+	/**
+	 * @param consoleCommand command running the scripts of this target, null for app.script.execute.command.
+	 */
+	public DeploymentTarget(String name, String tableNamePrefix, String consoleCommand) {
+		super();
+		this.name = name;
+		this.tableNamePrefix = tableNamePrefix;
+		this.consoleCommand = consoleCommand;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTableNamePrefix() {
+		return tableNamePrefix;
+	}
+
+	public String getConsoleCommand() {
+		return consoleCommand;
+	}
+
+	public Map<String, String> getVariables() {
+		return variables;
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.io.File;
+
+/**
+ * Script file found under the scripts location for one of the configured patterns.
+ */
+public class DiscoveredScript {
+
+	private final ScriptPhase phase;
+	private final String pattern;
+	private final File file;
+	private final String relativePath;
+	private final Long sequence;
+	private final String checksum;
+	private final Long size;
+
+	public DiscoveredScript(ScriptPhase phase, String pattern, File file, String relativePath, Long sequence) {
+		this(phase, pattern, file, relativePath, sequence, null);
+	}
+
+	public DiscoveredScript(ScriptPhase phase, String pattern, File file, String relativePath, Long sequence,
+			String checksum) {
+		this(phase, pattern, file, relativePath, sequence, checksum, null);
+	}
+
+	/**
+	 * @param size size of the script when the file isn't on disk yet, null to take it from the file.
+	 */
+	public DiscoveredScript(ScriptPhase phase, String pattern, File file, String relativePath, Long sequence,
+			String checksum, Long size) {
+		super();
+		this.phase = phase;
+		this.pattern = pattern;
+		this.file = file;
+		this.relativePath = relativePath;
+		this.sequence = sequence;
+		this.checksum = checksum;
+		this.size = size;
+	}
+
+	public ScriptPhase getPhase() {
+		return phase;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getRelativePath() {
+		return relativePath;
+	}
+
+	public Long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return checksum known from the source the script was discovered from, null when it still has to be computed.
+	 */
+	public String getChecksum() {
+		return checksum;
+	}
+
+	public long getSize() {
+		return size != null ? size : file.length();
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.util.Date;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+
+/**
+ * One script of a {@link DeploymentPlan} along with the history entry to be recorded once it is processed.
+ */
+public class PlannedScript {
+
+	private final int order;
+	private final ScriptPhase phase;
+	private final String pattern;
+	private final String path;
+	private final Long sequence;
+	private final String checksum;
+	private final long size;
+	private final ScriptAction action;
+	private final String type;
+	private final Long version;
+	private final String historyPattern;
+	private final Date createDate;
+
+	public PlannedScript(int order, ScriptPhase phase, String pattern, String path, Long sequence, String checksum,
+			long size, ScriptAction action, String type, Long version, String historyPattern, Date createDate) {
+		super();
+		this.order = order;
+		this.phase = phase;
+		this.pattern = pattern;
+		this.path = path;
+		this.sequence = sequence;
+		this.checksum = checksum;
+		this.size = size;
+		this.action = action;
+		this.type = type;
+		this.version = version;
+		this.historyPattern = historyPattern;
+		this.createDate = createDate;
+	}
+
+	public ScriptHistory toHistory(Date updateDate, String deploymentReqNo) {
+		return new ScriptHistory(path, type, sequence, version, checksum, historyPattern,
+				createDate != null ? createDate : updateDate, updateDate, deploymentReqNo);
+	}
+
+	/**
+	 * @return history entry of an execution, with how long it took and how much output it produced.
+	 */
+	public ScriptHistory toHistory(Date updateDate, String deploymentReqNo, Long durationMillis, Long outputBytes) {
+		ScriptHistory history = toHistory(updateDate, deploymentReqNo);
+		history.setDurationMillis(durationMillis);
+		history.setOutputBytes(outputBytes);
+		return history;
+	}
+
+	public PlannedScript withAction(ScriptAction newAction) {
+		return new PlannedScript(order, phase, pattern, path, sequence, checksum, size, newAction, type, version,
+				historyPattern, createDate);
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public ScriptPhase getPhase() {
+		return phase;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public Long getSequence() {
+		return sequence;
+	}
+
+	public String getChecksum() {
+		return checksum;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public ScriptAction getAction() {
+		return action;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public String getHistoryPattern() {
+		return historyPattern;
+	}
+
+	public Date getCreateDate() {
+		return createDate;
+	}
+
+	@Override
+	public String toString() {
+		return "PlannedScript [order=" + order + ", phase=" + phase + ", path=" + path + ", action=" + action
+				+ ", version=" + version + ", checksum=" + checksum + "]";
+	}
+
+}
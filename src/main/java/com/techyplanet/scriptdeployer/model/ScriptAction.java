@@ -0,0 +1,31 @@
+package com.techyplanet.scriptdeployer.model;
+
+/**
+ * Decision taken for a script while planning a deployment.
+ */
+public enum ScriptAction {
+
+	FIRST_RUN("first run", true),
+	CHANGED("changed", true),
+	ALWAYS("always", true),
+	RESET_HASH("reset-hash", false),
+	SKIP("skip", false);
+
+	private final String reason;
+
+	private final boolean executable;
+
+	private ScriptAction(String reason, boolean executable) {
+		this.reason = reason;
+		this.executable = executable;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public boolean isExecutable() {
+		return executable;
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Scripts found in a scripts location, in execution order and hashed, independent of any deployment history. A
+ * script without checksum is known to be unchanged since the last deployment and wasn't hashed.
+ */
+public class ScriptCatalog {
+
+	private final File scriptsDir;
+	private final Set<ScriptPhase> phases = EnumSet.noneOf(ScriptPhase.class);
+	private final List<DiscoveredScript> scripts = new ArrayList<>();
+	private boolean verifyChecksums;
+	private String selection;
+
+	public ScriptCatalog(File scriptsDir) {
+		super();
+		this.scriptsDir = scriptsDir;
+	}
+
+	public File getScriptsDir() {
+		return scriptsDir;
+	}
+
+	public Set<ScriptPhase> getPhases() {
+		return phases;
+	}
+
+	public List<DiscoveredScript> getScripts() {
+		return scripts;
+	}
+
+	/**
+	 * Whether checksums were taken from a source computed earlier, so scripts have to be verified before they run.
+	 */
+	public boolean isVerifyChecksums() {
+		return verifyChecksums;
+	}
+
+	public void setVerifyChecksums(boolean verifyChecksums) {
+		this.verifyChecksums = verifyChecksums;
+	}
+
+	/**
+	 * Description of the part of the scripts the catalog is limited to, null if it covers all of them.
+	 */
+	public String getSelection() {
+		return selection;
+	}
+
+	public void setSelection(String selection) {
+		this.selection = selection;
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scripts of a release precomputed at build time, in execution order and with their checksums, along with the
+ * patterns used to classify them.
+ */
+public class ScriptManifest {
+
+	private final String patternsFingerprint;
+	private final List<DiscoveredScript> scripts = new ArrayList<>();
+	private final Map<String, Set<String>> tags = new HashMap<>();
+
+	public ScriptManifest(String patternsFingerprint) {
+		super();
+		this.patternsFingerprint = patternsFingerprint;
+	}
+
+	public String getPatternsFingerprint() {
+		return patternsFingerprint;
+	}
+
+	public List<DiscoveredScript> getScripts() {
+		return scripts;
+	}
+
+	/**
+	 * @return tags of the scripts by relative path, scripts without tags left out.
+	 */
+	public Map<String, Set<String>> getTags() {
+		return tags;
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.techyplanet.scriptdeployer.model;
+
+/**
+ * Script classes in the order they are deployed, together with the type stored in history for each of them.
+ */
+public enum ScriptPhase {
+
+	PRE("REP", "=========== checking pre scripts for each run ======="),
+	S("SEQ", "=========== checking one time scripts ==========="),
+	R("REP", "=========== checking repeatable scripts ========="),
+	POST("REP", "=========== checking post scripts for each run =======");
+
+	private final String historyType;
+
+	private final String banner;
+
+	private ScriptPhase(String historyType, String banner) {
+		this.historyType = historyType;
+		this.banner = banner;
+	}
+
+	public String getHistoryType() {
+		return historyType;
+	}
+
+	public String getBanner() {
+		return banner;
+	}
+
+}
@@ -0,0 +1,307 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Part of the scripts a run is limited to, by path, tag, sequence range and class. Scripts outside of it are neither
+ * discovered nor hashed, nor planned. Paths are relative to the scripts location and matched by globs: * within a
+ * folder, ** across folders, {a,b} either alternative, and a glob without wildcard selects a script or a whole folder.
+ */
+public class ScriptSelection {
+
+	public static final ScriptSelection ALL = new ScriptSelection(Collections.emptyList(), Collections.emptySet(), null,
+			null, EnumSet.allOf(ScriptPhase.class));
+
+	private static final Pattern SEQUENCE_RANGE = Pattern.compile("(\\d*)\\s*-\\s*(\\d*)|(\\d+)");
+
+	private final List<String> globs;
+	private final List<Pattern> pathPatterns = new ArrayList<>();
+	private final Set<String> tags;
+	private final Long fromSequence;
+	private final Long toSequence;
+	private final Set<ScriptPhase> phases;
+
+	public ScriptSelection(List<String> globs, Set<String> tags, Long fromSequence, Long toSequence,
+			Set<ScriptPhase> phases) {
+		this.globs = globs;
+		this.tags = tags;
+		this.fromSequence = fromSequence;
+		this.toSequence = toSequence;
+		this.phases = phases;
+		for (String glob : globs) {
+			pathPatterns.add(Pattern.compile(regex(glob)));
+		}
+	}
+
+	/**
+	 * @param only     path globs, separated by commas outside of braces or repeated.
+	 * @param tags     tags, comma separated or repeated; a script is selected if it has any of them.
+	 * @param seqRange [from]-[to], either bound optional, or a single sequence number.
+	 * @param classes  script classes (PRE, S, R, POST), comma separated or repeated.
+	 */
+	public static ScriptSelection parse(List<String> only, List<String> tags, String seqRange, List<String> classes) {
+		List<String> globs = new ArrayList<>();
+		if (only != null) {
+			for (String option : only) {
+				globs.addAll(topLevelValues(option));
+			}
+		}
+		Set<String> selectedTags = new LinkedHashSet<>();
+		for (String tag : values(tags)) {
+			selectedTags.add(tag.toLowerCase());
+		}
+		Long fromSequence = null;
+		Long toSequence = null;
+		if (seqRange != null && !seqRange.trim().isEmpty()) {
+			Matcher matcher = SEQUENCE_RANGE.matcher(seqRange.trim());
+			if (!matcher.matches()) {
+				throw new RuntimeException(String.format(
+						"Invalid sequence range [%s], expected [from]-[to], for example 1200-1300.", seqRange));
+			}
+			if (matcher.group(3) != null) {
+				fromSequence = Long.valueOf(matcher.group(3));
+				toSequence = fromSequence;
+			} else {
+				fromSequence = matcher.group(1).isEmpty() ? null : Long.valueOf(matcher.group(1));
+				toSequence = matcher.group(2).isEmpty() ? null : Long.valueOf(matcher.group(2));
+			}
+		}
+		Set<ScriptPhase> phases = EnumSet.noneOf(ScriptPhase.class);
+		for (String scriptClass : values(classes)) {
+			try {
+				phases.add(ScriptPhase.valueOf(scriptClass.toUpperCase()));
+			} catch (IllegalArgumentException ex) {
+				throw new RuntimeException(String.format("Unknown script class [%s], expected one of [PRE, S, R, POST].",
+						scriptClass));
+			}
+		}
+		return new ScriptSelection(globs, selectedTags, fromSequence, toSequence,
+				phases.isEmpty() ? EnumSet.allOf(ScriptPhase.class) : phases);
+	}
+
+	/**
+	 * @return true if nothing is left out.
+	 */
+	public boolean isAll() {
+		return globs.isEmpty() && tags.isEmpty() && fromSequence == null && toSequence == null
+				&& phases.size() == ScriptPhase.values().length;
+	}
+
+	/**
+	 * @return the given classes which are selected, in the given order.
+	 */
+	public ScriptPhase[] phases(ScriptPhase... wanted) {
+		List<ScriptPhase> selected = new ArrayList<>();
+		for (ScriptPhase phase : wanted) {
+			if (phases.contains(phase)) {
+				selected.add(phase);
+			}
+		}
+		return selected.toArray(new ScriptPhase[0]);
+	}
+
+	/**
+	 * @return folders or files, relative to the scripts location, holding every selected path; empty when the whole
+	 *         location has to be looked into.
+	 */
+	public List<String> roots() {
+		List<String> roots = new ArrayList<>();
+		for (String glob : globs) {
+			String normalized = normalize(glob);
+			int wildcard = firstWildcard(normalized);
+			String root = wildcard < 0 ? normalized : normalized.substring(0, normalized.lastIndexOf('/', wildcard) + 1);
+			if (root.isEmpty()) {
+				return Collections.emptyList();
+			}
+			roots.add(root);
+		}
+		return roots;
+	}
+
+	/**
+	 * @return true if the path matches one of the globs, or if there is none.
+	 */
+	public boolean selectsPath(String relativePath) {
+		if (pathPatterns.isEmpty()) {
+			return true;
+		}
+		for (Pattern pathPattern : pathPatterns) {
+			if (pathPattern.matcher(relativePath).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the script is selected by path, sequence and class, tags left aside.
+	 */
+	public boolean selects(DiscoveredScript script) {
+		if (!phases.contains(script.getPhase()) || !selectsPath(script.getRelativePath())) {
+			return false;
+		}
+		if (fromSequence == null && toSequence == null) {
+			return true;
+		}
+		// scripts without sequence number are outside of any range
+		return script.getPattern().contains("<seq_num>") && script.getSequence() != null
+				&& (fromSequence == null || script.getSequence() >= fromSequence)
+				&& (toSequence == null || script.getSequence() <= toSequence);
+	}
+
+	public boolean hasTags() {
+		return !tags.isEmpty();
+	}
+
+	/**
+	 * @return true if the script has one of the selected tags, or if no tag is selected.
+	 */
+	public boolean selectsTags(Collection<String> scriptTags) {
+		if (tags.isEmpty()) {
+			return true;
+		}
+		for (String scriptTag : scriptTags) {
+			if (tags.contains(scriptTag.toLowerCase())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		if (isAll()) {
+			return "all";
+		}
+		List<String> parts = new ArrayList<>();
+		if (!globs.isEmpty()) {
+			parts.add("only=" + String.join(",", globs));
+		}
+		if (!tags.isEmpty()) {
+			parts.add("tags=" + String.join(",", tags));
+		}
+		if (fromSequence != null || toSequence != null) {
+			parts.add("seq-range=" + (fromSequence == null ? "" : fromSequence) + "-"
+					+ (toSequence == null ? "" : toSequence));
+		}
+		if (phases.size() != ScriptPhase.values().length) {
+			List<String> classes = new ArrayList<>();
+			for (ScriptPhase phase : phases) {
+				classes.add(phase.name());
+			}
+			parts.add("class=" + String.join(",", classes));
+		}
+		return String.join(" ", parts);
+	}
+
+	private static List<String> values(List<String> options) {
+		List<String> values = new ArrayList<>();
+		if (options == null) {
+			return values;
+		}
+		for (String option : options) {
+			for (String value : option.split(",")) {
+				if (!value.trim().isEmpty()) {
+					values.add(value.trim());
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return values of a comma separated option, commas within braces being part of a glob.
+	 */
+	private static List<String> topLevelValues(String option) {
+		List<String> values = new ArrayList<>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i <= option.length(); i++) {
+			char c = i < option.length() ? option.charAt(i) : ',';
+			if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				depth--;
+			}
+			if (depth < 0 || (i == option.length() && depth > 0)) {
+				throw new RuntimeException(String.format("Invalid path glob [%s], braces don't match.", option));
+			}
+			if (c == ',' && depth == 0) {
+				String value = option.substring(start, i).trim();
+				if (!value.isEmpty()) {
+					values.add(value);
+				}
+				start = i + 1;
+			}
+		}
+		return values;
+	}
+
+	private static String normalize(String glob) {
+		String normalized = glob.replace('\\', '/');
+		while (normalized.startsWith("./") || normalized.startsWith("/")) {
+			normalized = normalized.substring(normalized.startsWith("/") ? 1 : 2);
+		}
+		return normalized;
+	}
+
+	private static int firstWildcard(String glob) {
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?' || c == '[' || c == '{') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return regex of the paths matched by the glob, a glob without wildcard matching everything under it too.
+	 */
+	private static String regex(String glob) {
+		String normalized = normalize(glob);
+		if (firstWildcard(normalized) < 0) {
+			String path = normalized.endsWith("/") ? normalized.substring(0, normalized.length() - 1) : normalized;
+			return Pattern.quote(path) + "(/.*)?";
+		}
+		StringBuilder regex = new StringBuilder();
+		int depth = 0;
+		for (int i = 0; i < normalized.length(); i++) {
+			char c = normalized.charAt(i);
+			if (c == '*' && i + 1 < normalized.length() && normalized.charAt(i + 1) == '*') {
+				// **/ also matches no folder at all
+				boolean slash = i + 2 < normalized.length() && normalized.charAt(i + 2) == '/';
+				regex.append(slash ? "(.*/)?" : ".*");
+				i += slash ? 2 : 1;
+			} else if (c == '*') {
+				regex.append("[^/]*");
+			} else if (c == '?') {
+				regex.append("[^/]");
+			} else if (c == '{') {
+				depth++;
+				regex.append("(?:");
+			} else if (c == '}' && depth > 0) {
+				depth--;
+				regex.append(')');
+			} else if (c == ',' && depth > 0) {
+				regex.append('|');
+			} else if (c == '[' || c == ']') {
+				regex.append(c);
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		if (depth > 0) {
+			throw new RuntimeException(String.format("Invalid path glob [%s], braces don't match.", glob));
+		}
+		return regex.toString();
+	}
+}
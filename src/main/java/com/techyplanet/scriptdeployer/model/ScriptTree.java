@@ -0,0 +1,88 @@
+package com.techyplanet.scriptdeployer.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Merkle tree of the scripts location: the checksum of each file, with the size and modification time it was
+ * computed for, and the hash of each folder, built from the names and hashes of its children. Paths are relative to
+ * the scripts location, the location itself being the empty path.
+ */
+public class ScriptTree {
+
+	/** Size:modification time and checksum of each file. */
+	private final Map<String, String[]> files = new HashMap<>();
+
+	private final Map<String, String> folders = new HashMap<>();
+
+	/** Files and folders directly in each folder. */
+	private final Map<String, List<String>> children = new HashMap<>();
+
+	public void addFile(String path, String stamp, String checksum) {
+		if (files.put(path, new String[] { stamp, checksum }) == null) {
+			addChild(path);
+		}
+	}
+
+	public void addFolder(String path, String hash) {
+		if (folders.put(path, hash) == null && !path.isEmpty()) {
+			addChild(path);
+		}
+	}
+
+	/**
+	 * @return size:modification time and checksum of the file, null if it isn't in the tree.
+	 */
+	public String[] getFile(String path) {
+		return files.get(path);
+	}
+
+	public Map<String, String[]> getFiles() {
+		return files;
+	}
+
+	public Map<String, String> getFolders() {
+		return folders;
+	}
+
+	public String getRootHash() {
+		return folders.get("");
+	}
+
+	/**
+	 * Compares folder hashes top-down, subtrees with the same hash in both trees being left out.
+	 *
+	 * @return files which are new or whose checksum changed since the previous tree.
+	 */
+	public Set<String> changedPaths(ScriptTree previous) {
+		Set<String> changedPaths = new LinkedHashSet<>();
+		collectChanges("", previous, changedPaths);
+		return changedPaths;
+	}
+
+	private void collectChanges(String folder, ScriptTree previous, Set<String> changedPaths) {
+		if (Objects.equals(folders.get(folder), previous.folders.get(folder))) {
+			return;
+		}
+		for (String child : children.getOrDefault(folder, new ArrayList<>())) {
+			if (folders.containsKey(child)) {
+				collectChanges(child, previous, changedPaths);
+			} else {
+				String[] previousFile = previous.files.get(child);
+				if (previousFile == null || !previousFile[1].equals(files.get(child)[1])) {
+					changedPaths.add(child);
+				}
+			}
+		}
+	}
+
+	private void addChild(String path) {
+		int slash = path.lastIndexOf('/');
+		children.computeIfAbsent(slash < 0 ? "" : path.substring(0, slash), folder -> new ArrayList<>()).add(path);
+	}
+}
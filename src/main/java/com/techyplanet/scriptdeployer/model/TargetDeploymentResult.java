@@ -0,0 +1,50 @@
+package com.techyplanet.scriptdeployer.model;
+
+/**
+ * Outcome of the deployment to one target of a fan-out run.
+ */
+public class TargetDeploymentResult {
+
+	private final String name;
+	private final boolean succeeded;
+	private final String message;
+	private final long plannedScripts;
+	private final long durationMillis;
+
+	public TargetDeploymentResult(String name, boolean succeeded, String message, long plannedScripts,
+			long durationMillis) {
+		super();
+		this.name = name;
+		this.succeeded = succeeded;
+		this.message = message;
+		this.plannedScripts = plannedScripts;
+		this.durationMillis = durationMillis;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * @return reason of the failure, null if the deployment succeeded.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return number of scripts which had to run or have their hash reset, -1 if planning failed.
+	 */
+	public long getPlannedScripts() {
+		return plannedScripts;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+}
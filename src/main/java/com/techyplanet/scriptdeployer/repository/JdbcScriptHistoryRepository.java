@@ -0,0 +1,181 @@
+package com.techyplanet.scriptdeployer.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+
+/**
+ * Script history kept in a table chosen at runtime, with the same layout as the Schema_History entity, so that
+ * several targets can record their deployments side by side in the same database.
+ */
+public class JdbcScriptHistoryRepository implements ScriptHistoryRepository {
+
+	private static final String COLUMNS = "path, updateDate, type, sequence, version, checksum, pattern, createDate, deploymentReqNo, durationMillis, outputBytes";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final String tableName;
+
+	private final RowMapper<ScriptHistory> rowMapper = this::mapRow;
+
+	public JdbcScriptHistoryRepository(JdbcTemplate jdbcTemplate, String tableNamePrefix) {
+		super();
+		if (!tableNamePrefix.matches("[A-Za-z0-9_]*")) {
+			throw new RuntimeException(String.format(
+					"Table name prefix [%s] can only contain letters, digits and underscores.", tableNamePrefix));
+		}
+		this.jdbcTemplate = jdbcTemplate;
+		this.tableName = tableNamePrefix + "Schema_History";
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public void createTableIfMissing() {
+		jdbcTemplate.execute("create table if not exists " + tableName
+				+ " (path varchar(255) not null, updateDate timestamp(6) not null, type varchar(255), sequence bigint,"
+				+ " version bigint, checksum varchar(255), pattern varchar(255), createDate timestamp(6),"
+				+ " deploymentReqNo varchar(255), durationMillis bigint, outputBytes bigint, primary key (path, updateDate))");
+		// tables created before durations were recorded
+		jdbcTemplate.execute("alter table " + tableName + " add column if not exists durationMillis bigint");
+		jdbcTemplate.execute("alter table " + tableName + " add column if not exists outputBytes bigint");
+	}
+
+	@Override
+	public ScriptHistory findFirstBySequenceAndPatternOrderByVersionDesc(Long sequence, String pattern) {
+		return first("select " + COLUMNS + " from " + tableName
+				+ " where sequence = ? and pattern = ? order by version desc fetch first 1 rows only", sequence,
+				pattern);
+	}
+
+	@Override
+	public ScriptHistory findFirstByFileIdPathOrderByFileIdUpdateDateDesc(String path) {
+		return first("select " + COLUMNS + " from " + tableName
+				+ " where path = ? order by updateDate desc fetch first 1 rows only", path);
+	}
+
+	@Override
+	public ScriptHistory findFirstByOrderByFileIdUpdateDateDesc() {
+		return first("select " + COLUMNS + " from " + tableName + " order by updateDate desc fetch first 1 rows only");
+	}
+
+	@Override
+	public List<ScriptHistory> findTop10ByFileIdPathAndDurationMillisNotNullOrderByFileIdUpdateDateDesc(String path) {
+		return jdbcTemplate.query("select " + COLUMNS + " from " + tableName
+				+ " where path = ? and durationMillis is not null order by updateDate desc fetch first 10 rows only",
+				rowMapper, path);
+	}
+
+	@Override
+	public <S extends ScriptHistory> S save(S entity) {
+		Timestamp updateDate = timestamp(entity.getFileId().getUpdateDate());
+		int updated = jdbcTemplate.update("update " + tableName
+				+ " set type = ?, sequence = ?, version = ?, checksum = ?, pattern = ?, createDate = ?, deploymentReqNo = ?,"
+				+ " durationMillis = ?, outputBytes = ? where path = ? and updateDate = ?", entity.getType(),
+				entity.getSequence(), entity.getVersion(), entity.getChecksum(), entity.getPattern(),
+				timestamp(entity.getCreateDate()), entity.getDeploymentReqNo(), entity.getDurationMillis(),
+				entity.getOutputBytes(), entity.getFileId().getPath(), updateDate);
+		if (updated == 0) {
+			jdbcTemplate.update("insert into " + tableName + " (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+					entity.getFileId().getPath(), updateDate, entity.getType(), entity.getSequence(),
+					entity.getVersion(), entity.getChecksum(), entity.getPattern(), timestamp(entity.getCreateDate()),
+					entity.getDeploymentReqNo(), entity.getDurationMillis(), entity.getOutputBytes());
+		}
+		return entity;
+	}
+
+	@Override
+	public <S extends ScriptHistory> Iterable<S> saveAll(Iterable<S> entities) {
+		List<S> saved = new ArrayList<>();
+		for (S entity : entities) {
+			saved.add(save(entity));
+		}
+		return saved;
+	}
+
+	@Override
+	public Optional<ScriptHistory> findById(Long id) {
+		return Optional.empty();
+	}
+
+	@Override
+	public boolean existsById(Long id) {
+		return false;
+	}
+
+	@Override
+	public Iterable<ScriptHistory> findAll() {
+		return jdbcTemplate.query("select " + COLUMNS + " from " + tableName, rowMapper);
+	}
+
+	@Override
+	public Iterable<ScriptHistory> findAllById(Iterable<Long> ids) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public long count() {
+		Long count = jdbcTemplate.queryForObject("select count(*) from " + tableName, Long.class);
+		return count == null ? 0 : count;
+	}
+
+	@Override
+	public void deleteById(Long id) {
+	}
+
+	@Override
+	public void delete(ScriptHistory entity) {
+		jdbcTemplate.update("delete from " + tableName + " where path = ? and updateDate = ?",
+				entity.getFileId().getPath(), timestamp(entity.getFileId().getUpdateDate()));
+	}
+
+	@Override
+	public void deleteAllById(Iterable<? extends Long> ids) {
+	}
+
+	@Override
+	public void deleteAll(Iterable<? extends ScriptHistory> entities) {
+		for (ScriptHistory entity : entities) {
+			delete(entity);
+		}
+	}
+
+	@Override
+	public void deleteAll() {
+		jdbcTemplate.update("delete from " + tableName);
+	}
+
+	private ScriptHistory first(String sql, Object... args) {
+		List<ScriptHistory> entries = jdbcTemplate.query(sql, rowMapper, args);
+		return entries.isEmpty() ? null : entries.get(0);
+	}
+
+	private ScriptHistory mapRow(ResultSet rs, int rowNum) throws SQLException {
+		ScriptHistory entry = new ScriptHistory(rs.getString("path"), rs.getString("type"), longValue(rs, "sequence"),
+				longValue(rs, "version"), rs.getString("checksum"), rs.getString("pattern"),
+				rs.getTimestamp("createDate"), rs.getTimestamp("updateDate"), rs.getString("deploymentReqNo"));
+		entry.setDurationMillis(longValue(rs, "durationMillis"));
+		entry.setOutputBytes(longValue(rs, "outputBytes"));
+		return entry;
+	}
+
+	private static Long longValue(ResultSet rs, String column) throws SQLException {
+		long value = rs.getLong(column);
+		return rs.wasNull() ? null : value;
+	}
+
+	private static Timestamp timestamp(Date date) {
+		return date == null ? null : new Timestamp(date.getTime());
+	}
+}
@@ -0,0 +1,588 @@
+package com.techyplanet.scriptdeployer.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+
+/**
+ * Script history kept in an append-only journal file instead of a database, for single node installs. Every save or
+ * delete appends a checksummed record to the memory-mapped file, and the whole history is indexed in memory when the
+ * journal is opened. Once enough records were replaced or deleted, by count or by size, the journal is rewritten as a
+ * snapshot of the live records only.
+ */
+public class JournalScriptHistoryRepository implements ScriptHistoryRepository, AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JournalScriptHistoryRepository.class);
+
+	private static final int MAGIC = 0x53444a48;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_SIZE = 8;
+
+	/** Payload length and checksum in front of every record. */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final int INITIAL_SIZE = 1024 * 1024;
+
+	/** Records replaced or deleted from which the journal may be compacted. */
+	static final int COMPACT_MIN_DEAD = 1024;
+
+	/** Bytes of records replaced or deleted from which the journal may be compacted. */
+	static final int COMPACT_MIN_DEAD_BYTES = 1024 * 1024;
+
+	private static final byte SAVE = 1;
+
+	private static final byte DELETE = 2;
+
+	private static final byte DELETE_ALL = 3;
+
+	private static final Comparator<ScriptHistory> BY_UPDATE_DATE = Comparator
+			.comparing(entry -> entry.getFileId().getUpdateDate());
+
+	private static final Comparator<ScriptHistory> BY_VERSION = Comparator.comparing(ScriptHistory::getVersion)
+			.thenComparing(BY_UPDATE_DATE);
+
+	private static final String NO_ID = "History journal entries have no id, they are keyed by path and update date.";
+
+	private final Path file;
+
+	private final Map<String, ScriptHistory> entries = new LinkedHashMap<>();
+
+	/** Length of the record of each live entry, header included. */
+	private final Map<String, Integer> lengths = new HashMap<>();
+
+	private final Map<String, List<ScriptHistory>> byPath = new HashMap<>();
+
+	private final Map<String, List<ScriptHistory>> bySequence = new HashMap<>();
+
+	private ScriptHistory latest;
+
+	private FileChannel channel;
+
+	private FileLock lock;
+
+	private MappedByteBuffer buffer;
+
+	private int position;
+
+	private long records;
+
+	/** Bytes of the records of the live entries. */
+	private long liveBytes;
+
+	public JournalScriptHistoryRepository(Path file) {
+		this.file = file;
+		open();
+		compactIfNeeded();
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public synchronized ScriptHistory findFirstBySequenceAndPatternOrderByVersionDesc(Long sequence, String pattern) {
+		List<ScriptHistory> sequenceEntries = bySequence.get(sequenceKey(sequence, pattern));
+		return sequenceEntries == null ? null : Collections.max(sequenceEntries, BY_VERSION);
+	}
+
+	@Override
+	public synchronized ScriptHistory findFirstByFileIdPathOrderByFileIdUpdateDateDesc(String path) {
+		List<ScriptHistory> pathEntries = byPath.get(path);
+		return pathEntries == null ? null : Collections.max(pathEntries, BY_UPDATE_DATE);
+	}
+
+	@Override
+	public synchronized ScriptHistory findFirstByOrderByFileIdUpdateDateDesc() {
+		return latest;
+	}
+
+	@Override
+	public synchronized List<ScriptHistory> findTop10ByFileIdPathAndDurationMillisNotNullOrderByFileIdUpdateDateDesc(
+			String path) {
+		List<ScriptHistory> measured = new ArrayList<>();
+		for (ScriptHistory entry : byPath.getOrDefault(path, Collections.emptyList())) {
+			if (entry.getDurationMillis() != null) {
+				measured.add(entry);
+			}
+		}
+		measured.sort(BY_UPDATE_DATE.reversed());
+		return measured.size() > 10 ? new ArrayList<>(measured.subList(0, 10)) : measured;
+	}
+
+	@Override
+	public synchronized <S extends ScriptHistory> S save(S entity) {
+		ScriptHistory entry = copy(entity);
+		byte[] payload = encode(entry);
+		append(payload);
+		index(entry, payload.length);
+		compactIfNeeded();
+		return entity;
+	}
+
+	@Override
+	public <S extends ScriptHistory> Iterable<S> saveAll(Iterable<S> entities) {
+		List<S> saved = new ArrayList<>();
+		for (S entity : entities) {
+			saved.add(save(entity));
+		}
+		return saved;
+	}
+
+	@Override
+	public Optional<ScriptHistory> findById(Long id) {
+		throw new UnsupportedOperationException(NO_ID);
+	}
+
+	@Override
+	public boolean existsById(Long id) {
+		throw new UnsupportedOperationException(NO_ID);
+	}
+
+	@Override
+	public synchronized Iterable<ScriptHistory> findAll() {
+		return new ArrayList<>(entries.values());
+	}
+
+	@Override
+	public Iterable<ScriptHistory> findAllById(Iterable<Long> ids) {
+		throw new UnsupportedOperationException(NO_ID);
+	}
+
+	@Override
+	public synchronized long count() {
+		return entries.size();
+	}
+
+	@Override
+	public void deleteById(Long id) {
+		throw new UnsupportedOperationException(NO_ID);
+	}
+
+	@Override
+	public synchronized void delete(ScriptHistory entity) {
+		String key = key(entity.getFileId().getPath(), entity.getFileId().getUpdateDate());
+		if (!entries.containsKey(key)) {
+			return;
+		}
+		append(encodeDelete(entity.getFileId().getPath(), entity.getFileId().getUpdateDate()));
+		unindex(key);
+		compactIfNeeded();
+	}
+
+	@Override
+	public void deleteAllById(Iterable<? extends Long> ids) {
+		throw new UnsupportedOperationException(NO_ID);
+	}
+
+	@Override
+	public void deleteAll(Iterable<? extends ScriptHistory> entities) {
+		for (ScriptHistory entity : entities) {
+			delete(entity);
+		}
+	}
+
+	@Override
+	public synchronized void deleteAll() {
+		append(new byte[] { DELETE_ALL });
+		clearIndex();
+		compactIfNeeded();
+	}
+
+	/**
+	 * Rewrites the journal with the live records only, replacing it once the snapshot is safely on disk.
+	 */
+	public synchronized void compact() {
+		Path snapshot = file.resolveSibling(file.getFileName() + ".compact");
+		try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION);
+			header.flip();
+			out.write(header);
+			for (ScriptHistory entry : entries.values()) {
+				byte[] payload = encode(entry);
+				ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length).putInt(payload.length)
+						.putInt(crc(payload)).put(payload);
+				record.flip();
+				out.write(record);
+			}
+			out.force(true);
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("History journal snapshot [%s] can't be written.", snapshot), ex);
+		}
+		long deadRecords = records - entries.size();
+		release();
+		try {
+			Files.move(snapshot, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOGGER.debug("History journal [{}] compacted, {} record(s) dropped", file, deadRecords);
+		} catch (IOException ex) {
+			// the journal is still whole, it will be compacted another time
+			LOGGER.warn("History journal [{}] can't be replaced by its snapshot: {}", file, ex.getMessage());
+			try {
+				Files.deleteIfExists(snapshot);
+			} catch (IOException deleteEx) {
+				LOGGER.warn("History journal snapshot [{}] can't be deleted.", snapshot);
+			}
+		}
+		clearIndex();
+		records = 0;
+		open();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (channel == null) {
+			return;
+		}
+		int end = position;
+		release();
+		// the mapping grows the file ahead of the records, the rest is dropped when possible
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			out.truncate(end);
+		} catch (IOException ex) {
+			LOGGER.debug("History journal [{}] can't be truncated: {}", file, ex.getMessage());
+		}
+	}
+
+	private void open() {
+		try {
+			if (file.toAbsolutePath().getParent() != null) {
+				Files.createDirectories(file.toAbsolutePath().getParent());
+			}
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				lock = channel.tryLock();
+			} catch (OverlappingFileLockException ex) {
+				lock = null;
+			}
+			if (lock == null) {
+				channel.close();
+				channel = null;
+				throw new RuntimeException(String.format("History journal [%s] is used by another process.", file));
+			}
+			long size = channel.size();
+			map(Math.max(size, INITIAL_SIZE));
+			if (size == 0) {
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, FORMAT_VERSION);
+				buffer.force();
+				position = HEADER_SIZE;
+			} else {
+				replay();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("History journal [%s] can't be opened.", file), ex);
+		}
+	}
+
+	private void replay() {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+			throw new RuntimeException(String.format("[%s] is not a history journal.", file));
+		}
+		int offset = HEADER_SIZE;
+		while (isRecord(offset)) {
+			int length = buffer.getInt(offset);
+			byte[] payload = new byte[length];
+			buffer.get(offset + RECORD_HEADER_SIZE, payload);
+			decode(payload, length);
+			records++;
+			offset += RECORD_HEADER_SIZE + length;
+		}
+		if (offset + RECORD_HEADER_SIZE <= buffer.capacity() && buffer.getInt(offset) != 0) {
+			// only the last record can be torn by a crash, a damaged one followed by others is corruption
+			for (int next = offset + 1; next + RECORD_HEADER_SIZE <= buffer.capacity(); next++) {
+				if (isRecord(next)) {
+					release();
+					throw new RuntimeException(String.format(
+							"History journal [%s] is corrupted at offset %d, records follow the damaged one. "
+									+ "Restore the journal from a backup.",
+							file, offset));
+				}
+			}
+			LOGGER.warn("History journal [{}] ends with a record torn at offset {}, ignored", file, offset);
+		}
+		position = offset;
+		if (position + 4 <= buffer.capacity() && buffer.getInt(position) != 0) {
+			// the next record mustn't be followed by what is left of the torn one
+			for (int i = position; i < buffer.capacity(); i++) {
+				buffer.put(i, (byte) 0);
+			}
+			buffer.force();
+		}
+	}
+
+	/**
+	 * @return whether a whole record, with a valid length and checksum, starts at the offset.
+	 */
+	private boolean isRecord(int offset) {
+		if (offset + RECORD_HEADER_SIZE > buffer.capacity()) {
+			return false;
+		}
+		int length = buffer.getInt(offset);
+		if (length <= 0 || length > buffer.capacity() - offset - RECORD_HEADER_SIZE) {
+			return false;
+		}
+		ByteBuffer payload = buffer.duplicate();
+		payload.limit(offset + RECORD_HEADER_SIZE + length).position(offset + RECORD_HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue() == buffer.getInt(offset + 4);
+	}
+
+	private void append(byte[] payload) {
+		int size = RECORD_HEADER_SIZE + payload.length;
+		if ((long) position + size + 4 > buffer.capacity()) {
+			grow((long) position + size + 4);
+		}
+		buffer.putInt(position + 4, crc(payload));
+		buffer.put(position + RECORD_HEADER_SIZE, payload);
+		buffer.putInt(position, payload.length);
+		buffer.force(position, size);
+		position += size;
+		records++;
+	}
+
+	private void grow(long required) {
+		if (required > Integer.MAX_VALUE) {
+			throw new RuntimeException(String.format("History journal [%s] is full.", file));
+		}
+		long capacity = Math.min(Integer.MAX_VALUE, Math.max((long) buffer.capacity() * 2, required));
+		try {
+			map(capacity);
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("History journal [%s] can't grow.", file), ex);
+		}
+	}
+
+	private void map(long capacity) throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	private void release() {
+		buffer = null;
+		try {
+			lock.release();
+			channel.close();
+		} catch (IOException ex) {
+			LOGGER.warn("History journal [{}] can't be closed: {}", file, ex.getMessage());
+		}
+		lock = null;
+		channel = null;
+	}
+
+	private void compactIfNeeded() {
+		long deadRecords = records - entries.size();
+		long deadBytes = position - HEADER_SIZE - liveBytes;
+		if (deadRecords >= COMPACT_MIN_DEAD || deadBytes >= COMPACT_MIN_DEAD_BYTES) {
+			compact();
+		}
+	}
+
+	private void decode(byte[] payload, int length) {
+		switch (payload[0]) {
+		case SAVE:
+			index(decodeEntry(payload), length);
+			break;
+		case DELETE:
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1))) {
+				unindex(key(in.readUTF(), new Date(in.readLong())));
+			} catch (IOException ex) {
+				throw new RuntimeException(String.format("History journal [%s] is corrupted.", file), ex);
+			}
+			break;
+		case DELETE_ALL:
+			clearIndex();
+			break;
+		default:
+			throw new RuntimeException(
+					String.format("History journal [%s] has a record of unknown type [%d].", file, payload[0]));
+		}
+	}
+
+	private void index(ScriptHistory entry, int length) {
+		String key = key(entry.getFileId().getPath(), entry.getFileId().getUpdateDate());
+		ScriptHistory replaced = entries.put(key, entry);
+		Integer replacedLength = lengths.put(key, RECORD_HEADER_SIZE + length);
+		liveBytes += RECORD_HEADER_SIZE + length - (replacedLength == null ? 0 : replacedLength);
+		if (replaced != null) {
+			unindexEntry(replaced);
+		}
+		byPath.computeIfAbsent(entry.getFileId().getPath(), path -> new ArrayList<>(1)).add(entry);
+		if (entry.getSequence() != null) {
+			bySequence.computeIfAbsent(sequenceKey(entry.getSequence(), entry.getPattern()),
+					sequenceKey -> new ArrayList<>(1)).add(entry);
+		}
+		if (latest == null || BY_UPDATE_DATE.compare(entry, latest) > 0) {
+			latest = entry;
+		}
+	}
+
+	private void unindex(String key) {
+		ScriptHistory removed = entries.remove(key);
+		if (removed != null) {
+			liveBytes -= lengths.remove(key);
+			unindexEntry(removed);
+		}
+	}
+
+	/**
+	 * Drops an entry replaced or deleted from the buckets of its path and of its sequence, the latest entry being
+	 * looked for again only if it was that one.
+	 */
+	private void unindexEntry(ScriptHistory removed) {
+		removeFrom(byPath, removed.getFileId().getPath(), removed);
+		if (removed.getSequence() != null) {
+			removeFrom(bySequence, sequenceKey(removed.getSequence(), removed.getPattern()), removed);
+		}
+		if (removed == latest) {
+			latest = entries.isEmpty() ? null : Collections.max(entries.values(), BY_UPDATE_DATE);
+		}
+	}
+
+	private static void removeFrom(Map<String, List<ScriptHistory>> buckets, String key, ScriptHistory entry) {
+		List<ScriptHistory> bucket = buckets.get(key);
+		if (bucket == null) {
+			return;
+		}
+		bucket.removeIf(bucketEntry -> bucketEntry == entry);
+		if (bucket.isEmpty()) {
+			buckets.remove(key);
+		}
+	}
+
+	private void clearIndex() {
+		entries.clear();
+		lengths.clear();
+		liveBytes = 0;
+		byPath.clear();
+		bySequence.clear();
+		latest = null;
+	}
+
+	private static byte[] encode(ScriptHistory entry) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(SAVE);
+			out.writeUTF(entry.getFileId().getPath());
+			out.writeLong(entry.getFileId().getUpdateDate().getTime());
+			writeString(out, entry.getType());
+			writeLong(out, entry.getSequence());
+			writeLong(out, entry.getVersion());
+			writeString(out, entry.getChecksum());
+			writeString(out, entry.getPattern());
+			writeLong(out, entry.getCreateDate() == null ? null : entry.getCreateDate().getTime());
+			writeString(out, entry.getDeploymentReqNo());
+			writeLong(out, entry.getDurationMillis());
+			writeLong(out, entry.getOutputBytes());
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("History entry [%s] can't be encoded.", entry), ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	private ScriptHistory decodeEntry(byte[] payload) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1))) {
+			String path = in.readUTF();
+			Date updateDate = new Date(in.readLong());
+			String type = readString(in);
+			Long sequence = readLong(in);
+			Long version = readLong(in);
+			String checksum = readString(in);
+			String pattern = readString(in);
+			Long createDate = readLong(in);
+			String deploymentReqNo = readString(in);
+			ScriptHistory entry = new ScriptHistory(path, type, sequence, version, checksum, pattern,
+					createDate == null ? null : new Date(createDate), updateDate, deploymentReqNo);
+			entry.setDurationMillis(readLong(in));
+			entry.setOutputBytes(readLong(in));
+			return entry;
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("History journal [%s] is corrupted.", file), ex);
+		}
+	}
+
+	private static byte[] encodeDelete(String path, Date updateDate) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(DELETE);
+			out.writeUTF(path);
+			out.writeLong(updateDate.getTime());
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("History entry [%s] can't be encoded.", path), ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static void writeLong(DataOutputStream out, Long value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeLong(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static Long readLong(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readLong() : null;
+	}
+
+	private static ScriptHistory copy(ScriptHistory entity) {
+		ScriptHistory entry = new ScriptHistory(entity.getFileId().getPath(), entity.getType(), entity.getSequence(),
+				entity.getVersion(), entity.getChecksum(), entity.getPattern(), entity.getCreateDate(),
+				entity.getFileId().getUpdateDate(), entity.getDeploymentReqNo());
+		entry.setDurationMillis(entity.getDurationMillis());
+		entry.setOutputBytes(entity.getOutputBytes());
+		return entry;
+	}
+
+	private static int crc(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	private static String key(String path, Date updateDate) {
+		return path + '\0' + updateDate.getTime();
+	}
+
+	private static String sequenceKey(Long sequence, String pattern) {
+		return sequence + "|" + pattern;
+	}
+}
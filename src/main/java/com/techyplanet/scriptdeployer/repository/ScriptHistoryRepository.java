@@ -1,5 +1,7 @@
 package com.techyplanet.scriptdeployer.repository;
 
+import java.util.List;
+
 import org.springframework.data.repository.CrudRepository;
 
 import com.techyplanet.scriptdeployer.entity.ScriptHistory;
@@ -9,4 +11,11 @@ public interface ScriptHistoryRepository extends CrudRepository<ScriptHistory, L
 	ScriptHistory findFirstBySequenceAndPatternOrderByVersionDesc(Long sequence, String pattern);
 
 	ScriptHistory findFirstByFileIdPathOrderByFileIdUpdateDateDesc(String path);
+
+	ScriptHistory findFirstByOrderByFileIdUpdateDateDesc();
+
+	/**
+	 * @return latest measured executions of a script, most recent first.
+	 */
+	List<ScriptHistory> findTop10ByFileIdPathAndDurationMillisNotNullOrderByFileIdUpdateDateDesc(String path);
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package com.techyplanet.scriptdeployer.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.model.DiscoveredScript;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+
+/**
+ * Latest history entry of every path and of every sequence, read in a single query so that the scripts of all
+ * classes can be checked against each other and against the history before anything gets executed.
+ */
+public class ConflictIndex {
+
+	/** How many conflicts are listed in the error, the rest being only counted. */
+	static final int MAX_REPORTED = 50;
+
+	private final Map<String, ScriptHistory> byPath = new HashMap<>();
+
+	private final Map<String, ScriptHistory> bySequence = new HashMap<>();
+
+	public ConflictIndex(Iterable<ScriptHistory> history) {
+		for (ScriptHistory entry : history) {
+			byPath.merge(entry.getFileId().getPath(), entry, (a, b) -> isLater(b, a) ? b : a);
+			if (entry.getSequence() != null) {
+				bySequence.merge(key(entry.getSequence(), entry.getPattern()), entry,
+						(a, b) -> b.getVersion() > a.getVersion()
+								|| (b.getVersion().equals(a.getVersion()) && isLater(b, a)) ? b : a);
+			}
+		}
+	}
+
+	/**
+	 * @return latest history entry of the path, null if it was never deployed.
+	 */
+	public ScriptHistory findByPath(String path) {
+		return byPath.get(path);
+	}
+
+	/**
+	 * @return highest version deployed with the sequence number and pattern, null if none.
+	 */
+	public ScriptHistory findBySequence(Long sequence, String pattern) {
+		return bySequence.get(key(sequence, pattern));
+	}
+
+	public int size() {
+		return byPath.size();
+	}
+
+	/**
+	 * Looks in one pass for paths matched by more than one pattern, one time scripts sharing a sequence number with
+	 * another script of the same pattern, and, when pattern conflicts are errors, scripts previously deployed with
+	 * another pattern.
+	 *
+	 * @return every conflict found, in discovery order.
+	 */
+	public List<String> conflicts(List<DiscoveredScript> scripts, boolean patternConflictError) {
+		List<String> conflicts = new ArrayList<>();
+		Map<String, DiscoveredScript> discoveredPaths = new HashMap<>();
+		Map<String, DiscoveredScript> discoveredSequences = new HashMap<>();
+		for (DiscoveredScript script : scripts) {
+			String path = script.getRelativePath();
+			DiscoveredScript samePath = discoveredPaths.putIfAbsent(path, script);
+			if (samePath != null) {
+				if (patternConflictError) {
+					conflicts.add(String.format("File [%s] matches both pattern [%s] (%s) and pattern [%s] (%s)", path,
+							samePath.getPattern(), samePath.getPhase(), script.getPattern(), script.getPhase()));
+				}
+				continue;
+			}
+
+			ScriptHistory previousEntry = byPath.get(path);
+			if (script.getPhase() == ScriptPhase.S) {
+				DiscoveredScript sameSequence = discoveredSequences
+						.putIfAbsent(key(script.getSequence(), script.getPattern()), script);
+				ScriptHistory sameSequenceEntry = findBySequence(script.getSequence(), script.getPattern());
+				if (sameSequence != null) {
+					conflicts.add(String.format("Files [%s] and [%s] have the same sequence number [%d] of pattern [%s]",
+							sameSequence.getRelativePath(), path, script.getSequence(), script.getPattern()));
+				} else if (sameSequenceEntry != null && !path.equals(sameSequenceEntry.getFileId().getPath())) {
+					conflicts.add(String.format(
+							"[%s] file was executed in previous runs with same sequence number, [%s] can't use same sequence number.",
+							sameSequenceEntry.getFileId().getPath(), path));
+				} else if (sameSequenceEntry == null && previousEntry != null && patternConflictError) {
+					conflicts.add(patternConflict(script, previousEntry));
+				}
+			} else if (previousEntry != null && patternConflictError
+					&& !script.getPattern().equals(previousEntry.getPattern())) {
+				conflicts.add(patternConflict(script, previousEntry));
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Fails listing every conflict of the scripts, if any.
+	 */
+	public void check(List<DiscoveredScript> scripts, boolean patternConflictError) {
+		List<String> conflicts = conflicts(scripts, patternConflictError);
+		if (conflicts.isEmpty()) {
+			return;
+		}
+		StringBuilder message = new StringBuilder(
+				String.format("%d conflict(s) found, nothing was executed:", conflicts.size()));
+		for (String conflict : conflicts.subList(0, Math.min(conflicts.size(), MAX_REPORTED))) {
+			message.append(System.lineSeparator()).append("  ").append(conflict);
+		}
+		if (conflicts.size() > MAX_REPORTED) {
+			message.append(System.lineSeparator())
+					.append(String.format("  ... and %d more", conflicts.size() - MAX_REPORTED));
+		}
+		throw new RuntimeException(message.toString());
+	}
+
+	private static String patternConflict(DiscoveredScript script, ScriptHistory previousEntry) {
+		return String.format(
+				"File [%s] execution with pattern [%s] conflicts with previous execution of file having pattern [%s]",
+				script.getRelativePath(), script.getPattern(), previousEntry.getPattern());
+	}
+
+	private static boolean isLater(ScriptHistory entry, ScriptHistory than) {
+		return entry.getFileId().getUpdateDate().after(than.getFileId().getUpdateDate());
+	}
+
+	private static String key(Long sequence, String pattern) {
+		return sequence + "|" + pattern;
+	}
+}
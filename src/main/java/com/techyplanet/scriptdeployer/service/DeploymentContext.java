@@ -0,0 +1,85 @@
+package com.techyplanet.scriptdeployer.service;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.text.StringSubstitutor;
+
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+
+/**
+ * What a deployment is done against: the history it is recorded into, the variables substituted into the scripts
+ * and the command running them.
+ */
+public class DeploymentContext {
+
+	private final String name;
+	private final ScriptHistoryRepository scriptHistoryRepository;
+	private final StringSubstitutor variablesSubstitutor;
+	private final boolean substituteVariables;
+	private final String consoleCommand;
+	private final String consoleCommandLogging;
+	private final String consoleStdinCommand;
+	private final String scriptTmpFileName;
+	private final Map<String, List<String>> scriptTemplates;
+
+	/**
+	 * @param name            target name, null for the single target configured in the application properties.
+	 * @param consoleStdinCommand command running compressed scripts fed to its standard input, blank to decompress
+	 *                            them into a temporary file run by the console command.
+	 * @param scriptTemplates     script lines shared with other contexts of the same run, null to read each script
+	 *                            when it runs.
+	 */
+	public DeploymentContext(String name, ScriptHistoryRepository scriptHistoryRepository,
+			StringSubstitutor variablesSubstitutor, boolean substituteVariables, String consoleCommand,
+			String consoleCommandLogging, String consoleStdinCommand, String scriptTmpFileName,
+			Map<String, List<String>> scriptTemplates) {
+		super();
+		this.name = name;
+		this.scriptHistoryRepository = scriptHistoryRepository;
+		this.variablesSubstitutor = variablesSubstitutor;
+		this.substituteVariables = substituteVariables;
+		this.consoleCommand = consoleCommand;
+		this.consoleCommandLogging = consoleCommandLogging;
+		this.consoleStdinCommand = consoleStdinCommand;
+		this.scriptTmpFileName = scriptTmpFileName;
+		this.scriptTemplates = scriptTemplates;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ScriptHistoryRepository getScriptHistoryRepository() {
+		return scriptHistoryRepository;
+	}
+
+	public StringSubstitutor getVariablesSubstitutor() {
+		return variablesSubstitutor;
+	}
+
+	public boolean isSubstituteVariables() {
+		return substituteVariables;
+	}
+
+	public String getConsoleCommand() {
+		return consoleCommand;
+	}
+
+	public String getConsoleCommandLogging() {
+		return consoleCommandLogging;
+	}
+
+	public String getConsoleStdinCommand() {
+		return consoleStdinCommand;
+	}
+
+	public String getScriptTmpFileName() {
+		return scriptTmpFileName;
+	}
+
+	public Map<String, List<String>> getScriptTemplates() {
+		return scriptTemplates;
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.techyplanet.scriptdeployer.service;
+
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+
+/**
+ * Notified as the scripts of a plan are processed. Skipped scripts aren't reported.
+ */
+public interface DeploymentListener {
+
+	DeploymentListener NONE = new DeploymentListener() {
+	};
+
+	/**
+	 * Called before the first script of a plan decided while it is applied, the plan holding no script yet.
+	 */
+	default void planStarted(DeploymentPlan plan) {
+	}
+
+	/**
+	 * Called as each script of such a plan is decided, before it is processed.
+	 */
+	default void scriptPlanned(PlannedScript script) {
+	}
+
+	/**
+	 * Called once every script of such a plan is decided.
+	 */
+	default void planCompleted() {
+	}
+
+	default void scriptStarted(PlannedScript script) {
+	}
+
+	/**
+	 * Called once the outcome of the script is recorded in the history, not called if processing the script threw.
+	 */
+	default void scriptFinished(PlannedScript script, boolean succeeded) {
+	}
+}
@@ -0,0 +1,383 @@
+package com.techyplanet.scriptdeployer.service;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.techyplanet.scriptdeployer.component.AppSettings;
+import com.techyplanet.scriptdeployer.component.DeploymentMetrics;
+import com.techyplanet.scriptdeployer.component.RunTrace;
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.jfr.HistoryLookupEvent;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.DiscoveredScript;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptCatalog;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.utils.ScriptArchiveUtils;
+
+/**
+ * Decides what has to be done with each script of a catalog against the deployment history, and checks a plan
+ * computed earlier is still valid before it gets applied.
+ */
+@Service
+public class DeploymentPlanner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeploymentPlanner.class);
+
+	private final AppSettings appSettings;
+
+	private final ScriptHistoryRepository scriptHistoryRepository;
+
+	private final DeploymentMetrics deploymentMetrics;
+
+	private final RunTrace runTrace;
+
+	@Autowired
+	public DeploymentPlanner(AppSettings appSettings, ScriptHistoryRepository scriptHistoryRepository,
+			DeploymentMetrics deploymentMetrics, RunTrace runTrace) {
+		this.appSettings = appSettings;
+		this.scriptHistoryRepository = scriptHistoryRepository;
+		this.deploymentMetrics = deploymentMetrics;
+		this.runTrace = runTrace;
+	}
+
+	/**
+	 * Decides, against the history of the given context, what has to be done with each script of the catalog.
+	 */
+	public DeploymentPlan plan(ScriptCatalog catalog, DeploymentContext context) {
+		ScriptHistoryRepository history = context.getScriptHistoryRepository();
+		DeploymentPlan plan = newPlan(catalog, history);
+		long planStart = System.nanoTime();
+		// scripts known to be unchanged since the last deployment are skipped without looking at the history
+		PlanningHistory planningHistory = catalog.getScripts().stream().anyMatch(s -> s.getChecksum() != null)
+				? planningHistory(catalog, history)
+				: null;
+		int order = 0;
+		for (DiscoveredScript discoveredScript : catalog.getScripts()) {
+			plan.add(plan(++order, discoveredScript, planningHistory, plan.getCreateDate()));
+		}
+		for (PlannedScript plannedScript : plan.getScripts()) {
+			deploymentMetrics.planned(plannedScript.getPhase(), plannedScript.getPattern(),
+					plannedScript.getAction().getReason());
+		}
+		runTrace.spanSince(RunTrace.PLAN, "plan", planStart, "scripts", plan.getScripts().size());
+		return plan;
+	}
+
+	DeploymentPlan newPlan(ScriptCatalog catalog, ScriptHistoryRepository history) {
+		DeploymentPlan plan = new DeploymentPlan(catalog.getScriptsDir().getAbsolutePath(), historyFingerprint(history),
+				new Date());
+		plan.getPhases().addAll(catalog.getPhases());
+		plan.setVerifyChecksums(catalog.isVerifyChecksums());
+		plan.setSelection(catalog.getSelection());
+		return plan;
+	}
+
+	/**
+	 * Checks the scripts of the catalog for conflicts with the history, which is read once for the whole plan.
+	 */
+	PlanningHistory planningHistory(ScriptCatalog catalog, ScriptHistoryRepository history) {
+		long start = System.nanoTime();
+		ConflictIndex conflictIndex = new ConflictIndex(history.findAll());
+		conflictIndex.check(catalog.getScripts(), "error".equalsIgnoreCase(appSettings.getFilePatternConflict()));
+		runTrace.spanSince(RunTrace.HISTORY, "conflict index", start, "paths", conflictIndex.size());
+		LOGGER.debug("{} scripts checked for conflicts against {} historical paths in {} ms",
+				catalog.getScripts().size(), conflictIndex.size(), (System.nanoTime() - start) / 1_000_000);
+		return new PlanningHistory(conflictIndex);
+	}
+
+	/**
+	 * Decides what has to be done with one script, the scripts planned before it being taken as deployed.
+	 */
+	PlannedScript plan(int order, DiscoveredScript discoveredScript, PlanningHistory planningHistory,
+			Date planDate) {
+		if (discoveredScript.getChecksum() == null) {
+			return unchanged(order, discoveredScript);
+		}
+		long start = System.nanoTime();
+		PlannedScript plannedScript = decide(order, discoveredScript, discoveredScript.getChecksum(),
+				planningHistory);
+		long lookupNanos = System.nanoTime() - start;
+		deploymentMetrics.record(DeploymentMetrics.HISTORY_LOOKUP, discoveredScript.getPhase(),
+				discoveredScript.getPattern(), lookupNanos);
+		runTrace.span(RunTrace.HISTORY, discoveredScript.getRelativePath(), lookupNanos, "query", "lookup",
+				"action", plannedScript.getAction().getReason());
+		if (plannedScript.getAction() != ScriptAction.SKIP) {
+			planningHistory.add(plannedScript.toHistory(planDate, appSettings.getReqNumber()));
+		}
+		return plannedScript;
+	}
+
+	/**
+	 * Decides a script again against the history as it stands, when its decision took as deployed a script which
+	 * then failed: the failed script is left out of the history the same way as when scripts are decided one after
+	 * the other.
+	 *
+	 * @return the planned script, or the new decision if a failed script was involved in it.
+	 */
+	PlannedScript replan(PlannedScript plannedScript, FailedScripts failed, File scriptsDir,
+			DeploymentContext context) {
+		if (plannedScript.getChecksum() == null || !failed.affects(plannedScript)) {
+			return plannedScript;
+		}
+		DiscoveredScript script = new DiscoveredScript(plannedScript.getPhase(), plannedScript.getPattern(),
+				new File(scriptsDir, plannedScript.getPath()), plannedScript.getPath(), plannedScript.getSequence(),
+				plannedScript.getChecksum(), plannedScript.getSize());
+		PlannedScript replanned = decide(plannedScript.getOrder(), script, plannedScript.getChecksum(),
+				new PlanningHistory(context.getScriptHistoryRepository()));
+		if (replanned.getAction() != plannedScript.getAction()) {
+			LOGGER.info("<-- replan --> {} {} instead of {}, a script planned before it failed", script.getRelativePath(),
+					replanned.getAction().getReason(), plannedScript.getAction().getReason());
+		}
+		return replanned;
+	}
+
+	private PlannedScript unchanged(int order, DiscoveredScript script) {
+		return new PlannedScript(order, script.getPhase(), script.getPattern(), script.getRelativePath(),
+				script.getSequence(), null, script.getSize(), ScriptAction.SKIP,
+				script.getPhase().getHistoryType(), null, script.getPattern(), null);
+	}
+
+	/**
+	 * Cheap staleness check of a plan computed earlier: history must not have changed in between and every planned
+	 * script must still be there with the same size. Checksums are verified right before each script is processed.
+	 */
+	public void validatePlan(DeploymentPlan plan, File scriptsDir) {
+		String historyFingerprint = historyFingerprint(scriptHistoryRepository);
+		if (!historyFingerprint.equals(plan.getHistoryFingerprint())) {
+			throw new RuntimeException(String.format(
+					"Plan is stale, deployment history changed since the plan was computed [%s] --> [%s].",
+					plan.getHistoryFingerprint(), historyFingerprint));
+		}
+		Map<String, Long> archivedSizes = ScriptArchiveUtils.isArchive(scriptsDir)
+				? ScriptArchiveUtils.sizes(scriptsDir)
+				: null;
+		for (PlannedScript plannedScript : plan.getScripts()) {
+			File scriptFile = new File(scriptsDir, plannedScript.getPath());
+			Long size = archivedSizes != null ? archivedSizes.get(plannedScript.getPath())
+					: scriptFile.isFile() ? Long.valueOf(scriptFile.length()) : null;
+			if (size == null) {
+				throw new RuntimeException(
+						String.format("Planned script [%s] doesn't exist anymore.", plannedScript.getPath()));
+			}
+			if (size != plannedScript.getSize()) {
+				throw new RuntimeException(String.format("Planned script [%s] was modified after the plan was computed.",
+						plannedScript.getPath()));
+			}
+		}
+	}
+
+	private PlannedScript decide(int order, DiscoveredScript script, String checksum, PlanningHistory planningHistory) {
+		switch (script.getPhase()) {
+		case S:
+			return decideOneTime(order, script, checksum, planningHistory);
+		case R:
+			return decideRepeatable(order, script, checksum, planningHistory);
+		default:
+			return decideRunAllTime(order, script, checksum, planningHistory);
+		}
+	}
+
+	private PlannedScript decideOneTime(int order, DiscoveredScript script, String checksum,
+			PlanningHistory planningHistory) {
+		String relativePath = script.getRelativePath();
+		String oneTimeFilePattern = script.getPattern();
+		long size = script.getSize();
+
+		ScriptHistory sameSequenceEntry = planningHistory.findBySequence(script.getSequence(), oneTimeFilePattern);
+		if (sameSequenceEntry == null) {
+			ScriptHistory sameFileEntry = planningHistory.findByPath(relativePath);
+			if (sameFileEntry != null && "error".equalsIgnoreCase(appSettings.getFilePatternConflict())) {
+				throw new RuntimeException(String.format(
+						"File [%s] execution with pattern [%s] conflicts with previous execution of file having pattern [%s]",
+						relativePath, oneTimeFilePattern, sameFileEntry.getPattern()));
+			}
+			return new PlannedScript(order, script.getPhase(), oneTimeFilePattern, relativePath, script.getSequence(),
+					checksum, size, ScriptAction.FIRST_RUN, script.getPhase().getHistoryType(), 1L,
+					oneTimeFilePattern, null);
+		} else if (!relativePath.equals(sameSequenceEntry.getFileId().getPath())) {
+			throw new RuntimeException(String.format(
+					"[%s] file was executed in previous runs with same sequence number, [%s] can't use same sequence number.",
+					sameSequenceEntry.getFileId().getPath(), relativePath));
+		} else if (!checksum.equals(sameSequenceEntry.getChecksum())) {
+			if ("reset-hash".equals(appSettings.getFileModifyError())) {
+				return next(order, script, checksum, size, ScriptAction.RESET_HASH, sameSequenceEntry,
+						sameSequenceEntry.getVersion() + 1, sameSequenceEntry.getPattern());
+			} else {
+				throw new RuntimeException(String.format(
+						"File modification is not allowed for sequential file [%s], it can't be re-deployed with changes.",
+						relativePath));
+			}
+		} else {
+			return next(order, script, checksum, size, ScriptAction.SKIP, sameSequenceEntry,
+					sameSequenceEntry.getVersion(), sameSequenceEntry.getPattern());
+		}
+	}
+
+	private PlannedScript decideRepeatable(int order, DiscoveredScript script, String checksum,
+			PlanningHistory planningHistory) {
+		String relativePath = script.getRelativePath();
+		String repeatableFilePattern = script.getPattern();
+		long size = script.getSize();
+
+		ScriptHistory previousEntry = planningHistory.findByPath(relativePath);
+		if (previousEntry == null) {
+			return new PlannedScript(order, script.getPhase(), repeatableFilePattern, relativePath,
+					script.getSequence(), checksum, size, ScriptAction.FIRST_RUN, script.getPhase().getHistoryType(),
+					1L, repeatableFilePattern, null);
+		} else if ("error".equalsIgnoreCase(appSettings.getFilePatternConflict())
+				&& !repeatableFilePattern.equals(previousEntry.getPattern())) {
+			throw new RuntimeException(String.format(
+					"File [%s] execution with pattern [%s] conflicts with previous execution of file having pattern [%s]",
+					relativePath, repeatableFilePattern, previousEntry.getPattern()));
+		} else if (!checksum.equals(previousEntry.getChecksum())) {
+			return next(order, script, checksum, size, ScriptAction.CHANGED, previousEntry,
+					previousEntry.getVersion() + 1, repeatableFilePattern);
+		} else {
+			return next(order, script, checksum, size, ScriptAction.SKIP, previousEntry, previousEntry.getVersion(),
+					previousEntry.getPattern());
+		}
+	}
+
+	private PlannedScript decideRunAllTime(int order, DiscoveredScript script, String checksum,
+			PlanningHistory planningHistory) {
+		String relativePath = script.getRelativePath();
+		String allTimeFilePattern = script.getPattern();
+		long size = script.getSize();
+
+		ScriptHistory previousEntry = planningHistory.findByPath(relativePath);
+		if (previousEntry == null) {
+			return new PlannedScript(order, script.getPhase(), allTimeFilePattern, relativePath, script.getSequence(),
+					checksum, size, ScriptAction.FIRST_RUN, script.getPhase().getHistoryType(), 1L,
+					allTimeFilePattern, null);
+		} else if ("error".equalsIgnoreCase(appSettings.getFilePatternConflict())
+				&& !allTimeFilePattern.equals(previousEntry.getPattern())) {
+			throw new RuntimeException(String.format(
+					"File [%s] execution with pattern [%s] conflicts with previous execution of file having pattern [%s]",
+					relativePath, allTimeFilePattern, previousEntry.getPattern()));
+		} else {
+			long newVersion = previousEntry.getVersion();
+			if (!checksum.equals(previousEntry.getChecksum())) {
+				newVersion++;
+			}
+			return next(order, script, checksum, size, ScriptAction.ALWAYS, previousEntry, newVersion,
+					previousEntry.getPattern());
+		}
+	}
+
+	private PlannedScript next(int order, DiscoveredScript script, String checksum, long size, ScriptAction action,
+			ScriptHistory previousEntry, long version, String historyPattern) {
+		return new PlannedScript(order, script.getPhase(), script.getPattern(), previousEntry.getFileId().getPath(),
+				previousEntry.getSequence(), checksum, size, action, previousEntry.getType(), version, historyPattern,
+				previousEntry.getCreateDate());
+	}
+
+	static String historyFingerprint(ScriptHistoryRepository history) {
+		ScriptHistory latestEntry = history.findFirstByOrderByFileIdUpdateDateDesc();
+		return history.count() + ":"
+				+ (latestEntry == null ? 0 : latestEntry.getFileId().getUpdateDate().getTime());
+	}
+
+	/**
+	 * History as it will look once the scripts planned so far are processed, so that a file matching more than one
+	 * pattern is judged the same way as when scripts are executed one after the other.
+	 */
+	static class PlanningHistory {
+
+		private final ConflictIndex conflictIndex;
+
+		private final ScriptHistoryRepository history;
+
+		private final Map<String, ScriptHistory> byPath = new HashMap<>();
+
+		private final Map<String, ScriptHistory> bySequence = new HashMap<>();
+
+		PlanningHistory(ConflictIndex conflictIndex) {
+			this.conflictIndex = conflictIndex;
+			this.history = null;
+		}
+
+		/**
+		 * History as it stands in the repository, each lookup being a query.
+		 */
+		PlanningHistory(ScriptHistoryRepository history) {
+			this.conflictIndex = null;
+			this.history = history;
+		}
+
+		ScriptHistory findByPath(String path) {
+			HistoryLookupEvent event = new HistoryLookupEvent();
+			event.begin();
+			ScriptHistory entry = byPath.get(path);
+			boolean planned = entry != null;
+			if (!planned) {
+				entry = conflictIndex != null ? conflictIndex.findByPath(path)
+						: history.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(path);
+			}
+			commit(event, path, entry, planned);
+			return entry;
+		}
+
+		ScriptHistory findBySequence(Long sequence, String pattern) {
+			HistoryLookupEvent event = new HistoryLookupEvent();
+			event.begin();
+			String key = sequence + "|" + pattern;
+			ScriptHistory entry = bySequence.get(key);
+			boolean planned = entry != null;
+			if (!planned) {
+				entry = conflictIndex != null ? conflictIndex.findBySequence(sequence, pattern)
+						: history.findFirstBySequenceAndPatternOrderByVersionDesc(sequence, pattern);
+			}
+			commit(event, key, entry, planned);
+			return entry;
+		}
+
+		private void commit(HistoryLookupEvent event, String key, ScriptHistory entry, boolean planned) {
+			if (event.shouldCommit()) {
+				event.key = key;
+				event.found = entry != null;
+				event.planned = planned;
+				event.commit();
+			}
+		}
+
+		void add(ScriptHistory entry) {
+			byPath.put(entry.getFileId().getPath(), entry);
+			bySequence.put(entry.getSequence() + "|" + entry.getPattern(), entry);
+		}
+	}
+
+	/**
+	 * Scripts of a run which failed although the plan took them as deployed, by path and by sequence number.
+	 */
+	static class FailedScripts {
+
+		private final Set<String> paths = new HashSet<>();
+
+		private final Set<String> sequences = new HashSet<>();
+
+		void add(PlannedScript plannedScript) {
+			paths.add(plannedScript.getPath());
+			sequences.add(plannedScript.getSequence() + "|" + plannedScript.getHistoryPattern());
+		}
+
+		/**
+		 * @return true if the decision taken for the script looked up the history of a failed script.
+		 */
+		boolean affects(PlannedScript plannedScript) {
+			return paths.contains(plannedScript.getPath()) || plannedScript.getPhase() == ScriptPhase.S
+					&& sequences.contains(plannedScript.getSequence() + "|" + plannedScript.getPattern());
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.techyplanet.scriptdeployer.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+
+/**
+ * Progress of a plan being applied, estimating the time left from how long each script took in its previous runs
+ * and flagging the scripts which got much slower than usual.
+ */
+public class DeploymentProgress {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeploymentProgress.class);
+
+	private final double slowFactor;
+
+	private final boolean logProgress;
+
+	/** Median duration of the previous runs of the scripts left, null for the ones never measured. */
+	private final Map<Integer, Long> remaining = new LinkedHashMap<>();
+
+	private final Map<String, Long> medians = new HashMap<>();
+
+	private final ScriptHistoryRepository scriptHistoryRepository;
+
+	private int total;
+
+	private final long start = System.nanoTime();
+
+	private int executed;
+
+	private long executedMillis;
+
+	/**
+	 * @param slowFactor  how many times its historical median a script may take before being flagged, 0 to disable.
+	 * @param logProgress whether progress and time left are logged after each script.
+	 */
+	public DeploymentProgress(DeploymentPlan plan, ScriptHistoryRepository scriptHistoryRepository,
+			double slowFactor, boolean logProgress) {
+		this.slowFactor = slowFactor;
+		this.logProgress = logProgress;
+		this.scriptHistoryRepository = scriptHistoryRepository;
+		for (PlannedScript plannedScript : plan.getScripts()) {
+			planned(plannedScript);
+		}
+	}
+
+	/**
+	 * Adds a script to the ones left, for plans decided while they are applied.
+	 */
+	public void planned(PlannedScript plannedScript) {
+		if (!plannedScript.getAction().isExecutable()) {
+			return;
+		}
+		Long median = medians.computeIfAbsent(plannedScript.getPath(), path -> median(scriptHistoryRepository
+				.findTop10ByFileIdPathAndDurationMillisNotNullOrderByFileIdUpdateDateDesc(path)));
+		remaining.put(plannedScript.getOrder(), median);
+		total++;
+	}
+
+	/**
+	 * @return median duration of the previous runs of a script of the plan, null if it was never measured.
+	 */
+	public Long getMedianMillis(String path) {
+		return medians.get(path);
+	}
+
+	/**
+	 * Records a script execution, logs the progress and warns if the script was slow.
+	 *
+	 * @return true if the script took longer than its historical median times the slow factor.
+	 */
+	public boolean executed(PlannedScript plannedScript, long durationMillis, boolean succeeded) {
+		remaining.remove(plannedScript.getOrder());
+		executed++;
+		executedMillis += durationMillis;
+
+		boolean slow = false;
+		Long median = medians.get(plannedScript.getPath());
+		if (succeeded && slowFactor > 0 && median != null && durationMillis > median * slowFactor) {
+			LOGGER.warn("\t<-- slow script --> {} took {}, {} times its median of {}", plannedScript.getPath(),
+					format(durationMillis), String.format("%.1f", (double) durationMillis / Math.max(median, 1)),
+					format(median));
+			slow = true;
+		}
+		if (logProgress) {
+			Long eta = getEtaMillis();
+			LOGGER.info("\t<-- progress --> {}/{} scripts, elapsed {}, ETA {}", executed, total,
+					format((System.nanoTime() - start) / 1_000_000L), eta == null ? "unknown" : format(eta));
+		}
+		return slow;
+	}
+
+	/**
+	 * @return estimated time left, null when none of the scripts left was ever measured and nothing ran yet.
+	 */
+	public Long getEtaMillis() {
+		long known = 0;
+		int unknown = 0;
+		for (Long median : remaining.values()) {
+			if (median == null) {
+				unknown++;
+			} else {
+				known += median;
+			}
+		}
+		if (unknown == 0) {
+			return known;
+		}
+		Long unknownEstimate = executed > 0 ? Long.valueOf(executedMillis / executed) : averageMedian();
+		return unknownEstimate == null ? null : known + unknown * unknownEstimate;
+	}
+
+	private Long averageMedian() {
+		long sum = 0;
+		int count = 0;
+		for (Long median : medians.values()) {
+			if (median != null) {
+				sum += median;
+				count++;
+			}
+		}
+		return count == 0 ? null : sum / count;
+	}
+
+	static Long median(List<ScriptHistory> entries) {
+		if (entries.isEmpty()) {
+			return null;
+		}
+		List<Long> durations = new ArrayList<>(entries.size());
+		for (ScriptHistory entry : entries) {
+			durations.add(entry.getDurationMillis());
+		}
+		Collections.sort(durations);
+		int middle = durations.size() / 2;
+		return durations.size() % 2 == 1 ? durations.get(middle) : (durations.get(middle - 1) + durations.get(middle)) / 2;
+	}
+
+	private static String format(long millis) {
+		return DurationFormatUtils.formatDuration(millis, "HH:mm:ss.SSS");
+	}
+}
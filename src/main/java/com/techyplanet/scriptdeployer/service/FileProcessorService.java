@@ -1,311 +1,1176 @@
 package com.techyplanet.scriptdeployer.service;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Stream;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.IOFileFilter;
-import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringSubstitutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import com.techyplanet.scriptdeployer.component.AppSettings;
+import com.techyplanet.scriptdeployer.component.DeploymentMetrics;
+import com.techyplanet.scriptdeployer.component.DeploymentState;
+import com.techyplanet.scriptdeployer.component.DeploymentThrottle;
+import com.techyplanet.scriptdeployer.component.RunTrace;
 import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.jfr.HistorySavedEvent;
+import com.techyplanet.scriptdeployer.jfr.ScriptDiscoveredEvent;
+import com.techyplanet.scriptdeployer.jfr.ScriptExecutedEvent;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.DiscoveredScript;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptCatalog;
+import com.techyplanet.scriptdeployer.model.ScriptManifest;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import com.techyplanet.scriptdeployer.model.ScriptSelection;
+import com.techyplanet.scriptdeployer.model.ScriptTree;
 import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
 import com.techyplanet.scriptdeployer.utils.CommandUtils;
 import com.techyplanet.scriptdeployer.utils.CommonUtils;
+import com.techyplanet.scriptdeployer.utils.CompressedFileUtils;
+import com.techyplanet.scriptdeployer.utils.GitUtils;
+import com.techyplanet.scriptdeployer.utils.LineMappingInputStream;
+import com.techyplanet.scriptdeployer.utils.ManifestFileUtils;
+import com.techyplanet.scriptdeployer.utils.RetryPolicy;
+import com.techyplanet.scriptdeployer.utils.ScriptArchiveUtils;
+import com.techyplanet.scriptdeployer.utils.ScriptDiscoveryUtils;
+import com.techyplanet.scriptdeployer.utils.ScriptTagUtils;
+import com.techyplanet.scriptdeployer.utils.ScriptTreeUtils;
 
 @Service
 public class FileProcessorService {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileProcessorService.class);
 
-	@Autowired
-	private AppSettings appSettings;
+	private static final String GIT_COMMIT_STATE = "git.commit";
 
-	@Autowired
-	private StringSubstitutor scriptVariablesSubstitutor;
+	private static final String GIT_HISTORY_STATE = "git.history";
+
+	private static final String GIT_PATTERNS_STATE = "git.patterns";
+
+	private static final String TREE_HISTORY_STATE = "tree.history";
+
+	private static final String TREE_PATTERNS_STATE = "tree.patterns";
+
+	private static final long MAX_SHARED_SCRIPT_SIZE = 1024 * 1024;
+
+	private final AppSettings appSettings;
+
+	private final StringSubstitutor scriptVariablesSubstitutor;
+
+	private final ScriptHistoryRepository scriptHistoryRepository;
+
+	private final DeploymentState deploymentState;
+
+	private final DeploymentMetrics deploymentMetrics;
+
+	private final RunTrace runTrace;
+
+	private final DeploymentThrottle deploymentThrottle;
+
+	private final DeploymentPlanner deploymentPlanner;
+
+	/** Runs scripts in process instead of through the console command, null if none. */
+	private final ScriptExecutor scriptExecutor;
+
+	private volatile List<Pattern> errorPatterns;
+
+	private volatile RetryPolicy retryPolicy;
+
+	private volatile String runTimestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+
+	private int runs;
+
+	/** Tree of the scripts location scanned by the last plan, its checksums reused when the deployment is recorded. */
+	private volatile ScriptTree scannedTree;
+
+	/** Checksum and size:modification time of the files hashed so far, null unless caching was asked for. */
+	private volatile Map<Path, String[]> checksumCache;
 
 	@Autowired
-	private ScriptHistoryRepository scriptHistoryRepository;
+	public FileProcessorService(AppSettings appSettings, StringSubstitutor scriptVariablesSubstitutor,
+			ScriptHistoryRepository scriptHistoryRepository, DeploymentState deploymentState,
+			DeploymentMetrics deploymentMetrics, RunTrace runTrace, DeploymentThrottle deploymentThrottle,
+			DeploymentPlanner deploymentPlanner, @Nullable ScriptExecutor scriptExecutor) {
+		this.appSettings = appSettings;
+		this.scriptVariablesSubstitutor = scriptVariablesSubstitutor;
+		this.scriptHistoryRepository = scriptHistoryRepository;
+		this.deploymentState = deploymentState;
+		this.deploymentMetrics = deploymentMetrics;
+		this.runTrace = runTrace;
+		this.deploymentThrottle = deploymentThrottle;
+		this.deploymentPlanner = deploymentPlanner;
+		this.scriptExecutor = scriptExecutor;
+	}
+
+	/**
+	 * Starts another run of a process deploying more than once, so that its script outputs and extracted scripts get
+	 * folders of their own.
+	 */
+	public synchronized void newRun() {
+		runTimestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + "_" + (++runs);
+		scannedTree = null;
+	}
+
+	/**
+	 * Keeps the checksum of every file hashed, for the next runs of the process to reuse as long as the file keeps the
+	 * same size and modification time.
+	 */
+	public void cacheChecksums() {
+		checksumCache = new ConcurrentHashMap<>();
+	}
 
 	public void processOneTimeFiles(File scriptsDir) {
+		apply(plan(scriptsDir, ScriptPhase.S), scriptsDir);
+	}
 
-		LOGGER.info("=========== checking one time scripts ===========");
-		String oneTimeFilePatternProp = appSettings.getOneTimeFilePattern();
-		if (StringUtils.isBlank(oneTimeFilePatternProp)) {
-			LOGGER.info(
-					"<-- Skipping --> No pattern defined for sequential scripts [app.scripts.oneTime.file.pattern], hence skipping one time scripts deployment.");
-			return;
-		}
+	public void processRepeatableFiles(File scriptsDir) {
+		apply(plan(scriptsDir, ScriptPhase.R), scriptsDir);
+	}
 
-		String[] oneTimeFilePatterns = oneTimeFilePatternProp.split(appSettings.getFilePatternDelimiter());
-		for (String oneTimeFilePattern : oneTimeFilePatterns) {
-			processOneTimeFile(scriptsDir, oneTimeFilePattern);
-		}
+	public void processPreRunFiles(File scriptsDir) {
+		apply(plan(scriptsDir, ScriptPhase.PRE), scriptsDir);
 	}
 
-	private void processOneTimeFile(File scriptsDir, String oneTimeFilePattern) {
-		if (!oneTimeFilePattern.contains("<seq_num>")) {
-			throw new RuntimeException(String
-					.format("'<seq_num>' must be defined as part of one time file pattern [%s]", oneTimeFilePattern));
-		}
+	public void processPostRunFiles(File scriptsDir) {
+		apply(plan(scriptsDir, ScriptPhase.POST), scriptsDir);
+	}
+
+	public DeploymentPlan plan(File scriptsDir) {
+		return plan(scriptsDir, ScriptPhase.values());
+	}
+
+	/**
+	 * Discovers and hashes the scripts of the given classes and decides, against the deployment history, what has
+	 * to be done with each of them. Nothing gets executed or recorded.
+	 */
+	public DeploymentPlan plan(File scriptsDir, ScriptPhase... phases) {
+		return plan(catalog(scriptsDir, isIncremental(), ScriptSelection.ALL, phases), defaultContext());
+	}
 
-		LOGGER.info("<-- Pattern Lookup  --> {}", oneTimeFilePattern);
+	/**
+	 * Plans the selected scripts only, in the order and with the rules they would follow in a full deployment.
+	 * Scripts outside of the selection are neither discovered nor hashed.
+	 */
+	public DeploymentPlan plan(File scriptsDir, ScriptSelection selection) {
+		return plan(catalog(scriptsDir, isIncremental(), selection,
+				selection.phases(ScriptPhase.values())), defaultContext());
+	}
 
-		String oneTimeFileRegexPattern = oneTimeFilePattern.replace("<seq_num>", "(\\d+)");
-		IOFileFilter oneTimeFilesFilter = new RegexFileFilter(oneTimeFileRegexPattern);
-		List<File> oneTimeFiles = (List<File>) FileUtils.listFiles(scriptsDir, oneTimeFilesFilter,
-				TrueFileFilter.INSTANCE);
+	/**
+	 * Discovers and hashes the scripts of the given classes once, for plans against any number of histories.
+	 */
+	public ScriptCatalog catalog(File scriptsDir, ScriptPhase... phases) {
+		return catalog(scriptsDir, false, ScriptSelection.ALL, phases);
+	}
 
-		Collections.sort(oneTimeFiles, CommonUtils.scriptPrioritySorter(oneTimeFileRegexPattern, false));
+	public ScriptCatalog catalog(File scriptsDir, ScriptSelection selection) {
+		return catalog(scriptsDir, false, selection, selection.phases(ScriptPhase.values()));
+	}
 
-		for (File oneTimeFile : oneTimeFiles) {
-			String oneTimeFilePath = oneTimeFile.getAbsolutePath();
-			String fileName = oneTimeFile.getName();
+	private ScriptCatalog catalog(File scriptsDir, boolean incremental, ScriptSelection selection,
+			ScriptPhase... phases) {
+		ScriptCatalog catalog = new ScriptCatalog(scriptsDir);
+		List<DiscoveredScript> toHash = discoverScripts(catalog, incremental, selection, phases);
+		Map<Path, String> checksums = checksums(toHash);
+		catalog.getScripts().replaceAll(s -> withChecksum(s, checksums.get(s.getFile().toPath())));
+		return catalog;
+	}
 
-			String relativePath = scriptsDir.toURI().relativize(oneTimeFile.toURI()).getPath();
-			String checksum = CommonUtils.generateFileChecksum(oneTimeFile.toPath());
-			Long sequence = CommonUtils.getFileSequence(oneTimeFileRegexPattern, fileName);
+	/**
+	 * Discovers the scripts of the given classes into the catalog, with the checksums known up front.
+	 *
+	 * @return scripts of the catalog which have to be hashed, in execution order.
+	 */
+	private List<DiscoveredScript> discoverScripts(ScriptCatalog catalog, boolean incremental,
+			ScriptSelection selection, ScriptPhase... phases) {
+		File scriptsDir = catalog.getScriptsDir();
+		boolean fromArchive = ScriptArchiveUtils.isArchive(scriptsDir);
+		List<DiscoveredScript> discoveredScripts = fromArchive ? archiveScripts(scriptsDir, selection, phases)
+				: manifestScripts(scriptsDir, selection, phases);
+		boolean fromManifest = !fromArchive && discoveredScripts != null;
+		if (discoveredScripts == null) {
+			Collection<File> candidates = selectedFiles(scriptsDir, selection);
+			discoveredScripts = new ArrayList<>();
+			for (ScriptPhase phase : phases) {
+				discoveredScripts.addAll(discover(scriptsDir, phase, candidates));
+			}
+			// tags are read from the headers of the scripts left, before any of them gets hashed
+			discoveredScripts.removeIf(script -> !selection.selects(script) || !selection.selectsTags(
+					selection.hasTags() ? ScriptTagUtils.read(script.getFile().toPath(), appSettings.isScriptsCompressed()) : Collections.emptySet()));
+		}
+		if (!selection.isAll()) {
+			LOGGER.info("<-- selection --> {} script(s) selected by [{}]", discoveredScripts.size(), selection);
+		}
 
-			Date currentDate = new Date();
-			ScriptHistory sameSequenceEntry = scriptHistoryRepository.findFirstBySequenceAndPatternOrderByVersionDesc(sequence,
-					oneTimeFilePattern);
-			ScriptHistory sameFileEntry = scriptHistoryRepository
-					.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(relativePath);
+		Set<String> changedPaths = incremental && !fromManifest && !fromArchive
+				? changedPaths(scriptsDir, DeploymentPlanner.historyFingerprint(scriptHistoryRepository))
+				: null;
 
-			if (sameSequenceEntry == null) {
-				if (sameFileEntry != null && "error".equalsIgnoreCase(appSettings.getFilePatternConflict())) {
-					throw new RuntimeException(String.format(
-							"File [%s] execution with pattern [%s] conflicts with previous execution of file having pattern [%s]",
-							relativePath, oneTimeFilePattern, sameFileEntry.getPattern()));
-				}
+		ScriptTree tree = incremental && appSettings.isTreeIncremental() && !fromManifest && !fromArchive
+				? scannedTree
+				: null;
+		if (tree != null) {
+			// changed files were hashed by the scan of the tree moments ago
+			discoveredScripts.replaceAll(s -> {
+				String[] file = s.getChecksum() == null && !isUnchanged(s, changedPaths)
+						? tree.getFile(s.getRelativePath())
+						: null;
+				return withChecksum(s, file == null ? null : file[1]);
+			});
+		}
 
-				LOGGER.info("\t<-- first run --> {}", relativePath);
-				if (executeScript(oneTimeFilePath) == true) {
-					scriptHistoryRepository.save(new ScriptHistory(relativePath, "SEQ", sequence, 1L, checksum,
-							oneTimeFilePattern, currentDate, currentDate, appSettings.getReqNumber()));
+		catalog.getPhases().addAll(Arrays.asList(phases));
+		// manifest and archive checksums are trusted for planning, the ones of scripts about to run are checked
+		// against the file
+		catalog.setVerifyChecksums(fromManifest || fromArchive);
+		catalog.setSelection(selection.isAll() ? null : selection.toString());
+		catalog.getScripts().addAll(discoveredScripts);
+		List<DiscoveredScript> toHash = new ArrayList<>(discoveredScripts.size());
+		for (DiscoveredScript discoveredScript : discoveredScripts) {
+			if (discoveredScript.getChecksum() == null && !isUnchanged(discoveredScript, changedPaths)) {
+				toHash.add(discoveredScript);
+			}
+		}
+		return toHash;
+	}
+
+	/**
+	 * Hashes the given scripts on the checksum threads, files cached since a previous run and left untouched aside.
+	 */
+	private Map<Path, String> checksums(List<DiscoveredScript> scripts) {
+		List<Path> paths = new ArrayList<>(scripts.size());
+		Map<Path, DiscoveredScript> byPath = new HashMap<>(scripts.size());
+		for (DiscoveredScript discoveredScript : scripts) {
+			paths.add(discoveredScript.getFile().toPath());
+			byPath.putIfAbsent(discoveredScript.getFile().toPath(), discoveredScript);
+		}
+		Map<Path, String> cachedChecksums = new HashMap<>();
+		Map<Path, String> fileStamps = new HashMap<>();
+		Map<Path, String[]> cache = checksumCache;
+		if (cache != null) {
+			paths.removeIf(path -> {
+				String fileStamp = fileStamp(path);
+				String[] cached = cache.get(path);
+				if (cached != null && cached[1].equals(fileStamp)) {
+					cachedChecksums.put(path, cached[0]);
+					return true;
 				}
-			} else if (!relativePath.equals(sameSequenceEntry.getFileId().getPath())) {
-				throw new RuntimeException(String.format(
-						"[%s] file was executed in previous runs with same sequence number, [%s] can't use same sequence number.",
-						sameSequenceEntry.getFileId().getPath(), relativePath));
-			} else if (!checksum.equals(sameSequenceEntry.getChecksum())) {
-				if ("reset-hash".equals(appSettings.getFileModifyError())) {
-					ScriptHistory newSeqEntry = new ScriptHistory(sameSequenceEntry.getFileId().getPath(),
-							sameSequenceEntry.getType(), sameSequenceEntry.getSequence(),
-							sameSequenceEntry.getVersion() + 1, checksum, sameSequenceEntry.getPattern(),
-							sameSequenceEntry.getCreateDate(), currentDate, appSettings.getReqNumber());
-					LOGGER.info("<-- reset-hash --> {}", relativePath);
-					scriptHistoryRepository.save(newSeqEntry);
-				} else {
-					throw new RuntimeException(String.format(
-							"File modification is not allowed for sequential file [%s], it can't be re-deployed with changes.",
-							relativePath));
+				fileStamps.put(path, fileStamp);
+				return false;
+			});
+		}
+		Map<Path, String> checksums = CommonUtils.generateFileChecksums(paths, appSettings.getChecksumThreads(),
+				appSettings.isScriptsCompressed(),
+				(path, nanos) -> {
+					DiscoveredScript discoveredScript = byPath.get(path);
+					deploymentMetrics.record(DeploymentMetrics.CHECKSUM, discoveredScript.getPhase(),
+							discoveredScript.getPattern(), nanos);
+					runTrace.span(RunTrace.CHECKSUM, discoveredScript.getRelativePath(), nanos);
+				});
+		if (cache != null) {
+			for (Map.Entry<Path, String> checksum : checksums.entrySet()) {
+				String fileStamp = fileStamps.get(checksum.getKey());
+				if (fileStamp != null) {
+					cache.put(checksum.getKey(), new String[] { checksum.getValue(), fileStamp });
 				}
-			} else {
-				if (appSettings.isLogSkipScriptEnabled()) {
-					LOGGER.info("\t<-- Skipping  --> {}", relativePath);
+			}
+			checksums.putAll(cachedChecksums);
+		}
+		return checksums;
+	}
+
+	/**
+	 * Hashes a single script, for plans computed while they are applied.
+	 */
+	private String checksum(DiscoveredScript script) {
+		Path path = script.getFile().toPath();
+		Map<Path, String[]> cache = checksumCache;
+		String fileStamp = cache == null ? null : fileStamp(path);
+		if (cache != null) {
+			String[] cached = cache.get(path);
+			if (cached != null && cached[1].equals(fileStamp)) {
+				return cached[0];
+			}
+		}
+		long start = System.nanoTime();
+		String checksum = CommonUtils.generateFileChecksum(path, appSettings.isScriptsCompressed());
+		long nanos = System.nanoTime() - start;
+		deploymentMetrics.record(DeploymentMetrics.CHECKSUM, script.getPhase(), script.getPattern(), nanos);
+		runTrace.span(RunTrace.CHECKSUM, script.getRelativePath(), nanos);
+		if (cache != null && fileStamp != null) {
+			cache.put(path, new String[] { checksum, fileStamp });
+		}
+		return checksum;
+	}
+
+	private static DiscoveredScript withChecksum(DiscoveredScript s, String checksum) {
+		return checksum == null ? s
+				: new DiscoveredScript(s.getPhase(), s.getPattern(), s.getFile(), s.getRelativePath(), s.getSequence(),
+						checksum);
+	}
+
+	/**
+	 * @return files under the folders holding the selected paths, null to scan the whole scripts folder.
+	 */
+	private static Collection<File> selectedFiles(File scriptsDir, ScriptSelection selection) {
+		List<String> roots = selection.roots();
+		if (roots.isEmpty()) {
+			return null;
+		}
+		Set<File> files = new LinkedHashSet<>();
+		for (String root : roots) {
+			File rootFile = new File(scriptsDir, root);
+			if (rootFile.isFile()) {
+				files.add(rootFile);
+			} else if (rootFile.isDirectory()) {
+				files.addAll(FileUtils.listFiles(rootFile, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE));
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @return size and modification time of the file, taken before hashing it, null if they can't be read.
+	 */
+	private static String fileStamp(Path path) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Scripts of a release archive, hashed in a single pass over it without extracting anything. Their files point to
+	 * where they get extracted if they have to run.
+	 */
+	private List<DiscoveredScript> archiveScripts(File scriptsLocation, ScriptSelection selection,
+			ScriptPhase... phases) {
+		if (selection.hasTags()) {
+			throw new RuntimeException("Tag selection isn't supported for release archives.");
+		}
+		List<Pattern> filePatterns = new ArrayList<>();
+		for (ScriptPhase phase : phases) {
+			String filePatternProp = filePatternProp(phase);
+			if (StringUtils.isBlank(filePatternProp)) {
+				continue;
+			}
+			for (String filePattern : filePatternProp.split(appSettings.getFilePatternDelimiter())) {
+				filePatterns.add(Pattern.compile(filePattern.replace("<seq_num>", "(\\d+)")));
+			}
+		}
+
+		long start = System.nanoTime();
+		Map<String, ScriptArchiveUtils.ArchivedScript> archivedScripts = ScriptArchiveUtils.scan(scriptsLocation,
+				relativePath -> {
+					if (!selection.selectsPath(relativePath)) {
+						return false;
+					}
+					String name = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+					String logicalName = appSettings.isScriptsCompressed() ? CompressedFileUtils.logicalName(name)
+							: name;
+					return filePatterns.stream().anyMatch(filePattern -> filePattern.matcher(logicalName).matches());
+				}, appSettings.isScriptsCompressed());
+		runTrace.spanSince(RunTrace.CHECKSUM, "archive", start, "scripts", archivedScripts.size());
+		LOGGER.info("<-- archive --> {} script(s) hashed in {}", archivedScripts.size(), scriptsLocation);
+
+		File archiveDir = archiveDir();
+		List<File> files = new ArrayList<>(archivedScripts.size());
+		for (String relativePath : archivedScripts.keySet()) {
+			files.add(new File(archiveDir, relativePath));
+		}
+		List<DiscoveredScript> discoveredScripts = new ArrayList<>();
+		for (ScriptPhase phase : phases) {
+			for (DiscoveredScript s : discover(archiveDir, phase, files)) {
+				if (!selection.selects(s)) {
+					continue;
 				}
+				ScriptArchiveUtils.ArchivedScript archivedScript = archivedScripts.get(s.getRelativePath());
+				discoveredScripts.add(new DiscoveredScript(s.getPhase(), s.getPattern(), s.getFile(),
+						s.getRelativePath(), s.getSequence(), archivedScript.getChecksum(), archivedScript.getSize()));
 			}
+		}
+		return discoveredScripts;
+	}
 
+	/**
+	 * Folder the scripts of a release archive get extracted to when they have to run, one per run.
+	 */
+	private File archiveDir() {
+		File archiveDir = Paths.get(appSettings.getLogDir(), "archive", runTimestamp).toFile();
+		if (!archiveDir.isDirectory() && !archiveDir.mkdirs()) {
+			throw new RuntimeException(String.format("Archive folder [%s] can't be created.", archiveDir));
 		}
+		return archiveDir;
 	}
 
-	public void processRepeatableFiles(File scriptsDir) {
+	/**
+	 * Extracts the scripts of the plan which have to be processed, once per run whatever the number of targets.
+	 *
+	 * @return folder holding the extracted scripts.
+	 */
+	private synchronized File extract(DeploymentPlan plan, File scriptsLocation) {
+		File archiveDir = archiveDir();
+		List<String> relativePaths = new ArrayList<>();
+		for (PlannedScript plannedScript : plan.getScripts()) {
+			if (plannedScript.getAction() != ScriptAction.SKIP
+					&& !new File(archiveDir, plannedScript.getPath()).isFile()) {
+				relativePaths.add(plannedScript.getPath());
+			}
+		}
+		if (!relativePaths.isEmpty()) {
+			long start = System.nanoTime();
+			ScriptArchiveUtils.extract(scriptsLocation, relativePaths, archiveDir.toPath());
+			runTrace.spanSince(RunTrace.SCAN, "extract", start, "scripts", relativePaths.size());
+			LOGGER.info("<-- archive --> {} script(s) extracted to {}", relativePaths.size(), archiveDir);
+		}
+		return archiveDir;
+	}
 
-		LOGGER.info("=========== checking repeatable scripts =========");
-		String repeatableFilePatternProp = appSettings.getRepeatableFilePattern();
-		if (StringUtils.isBlank(repeatableFilePatternProp)) {
-			LOGGER.info(
-					"<-- Skipping --> No pattern defined for rerunnable scripts [app.scripts.repeatable.file.pattern], hence skipping re-runnable scripts deployment.");
+	/**
+	 * Decides, against the history of the given context, what has to be done with each script of the catalog.
+	 */
+	public DeploymentPlan plan(ScriptCatalog catalog, DeploymentContext context) {
+		return deploymentPlanner.plan(catalog, context);
+	}
+
+	/**
+	 * Remembers the tree of the scripts location, or the commit checked out in its git working tree, once
+	 * everything in it got deployed, so that the next run only has to look at the paths changed since then.
+	 */
+	public void recordDeployment(File scriptsDir) {
+		if (ScriptArchiveUtils.isArchive(scriptsDir)) {
+			return;
+		}
+		if (appSettings.isTreeIncremental()) {
+			recordTree(scriptsDir);
+		}
+		if (!appSettings.isGitIncremental()) {
+			return;
+		}
+		String headCommit = GitUtils.headCommit(scriptsDir);
+		if (headCommit == null || !GitUtils.isClean(scriptsDir)) {
+			LOGGER.info("<-- git --> scripts have uncommitted changes or aren't in a git working tree, next run will check all scripts");
+			deploymentState.put(GIT_COMMIT_STATE, null);
 			return;
 		}
+		deploymentState.put(GIT_COMMIT_STATE, headCommit);
+		deploymentState.put(GIT_HISTORY_STATE, DeploymentPlanner.historyFingerprint(scriptHistoryRepository));
+		deploymentState.put(GIT_PATTERNS_STATE, patternsFingerprint());
+		LOGGER.info("<-- git --> deployed commit {}", headCommit);
+	}
+
+	/**
+	 * @return scripts of the given classes listed in the manifest shipped with the scripts, null if there is none
+	 *         usable and the scripts location has to be scanned.
+	 */
+	private List<DiscoveredScript> manifestScripts(File scriptsDir, ScriptSelection selection,
+			ScriptPhase... phases) {
+		if (StringUtils.isBlank(appSettings.getScriptsManifest())) {
+			return null;
+		}
+		Path manifestFile = scriptsDir.toPath().resolve(appSettings.getScriptsManifest());
+		if (!Files.isRegularFile(manifestFile)) {
+			return null;
+		}
+		ScriptManifest manifest = ManifestFileUtils.read(manifestFile, scriptsDir);
+		if (!patternsFingerprint().equals(manifest.getPatternsFingerprint())) {
+			LOGGER.warn("<-- manifest --> {} was built with different file patterns, scanning scripts location",
+					manifestFile);
+			return null;
+		}
+
+		List<ScriptPhase> wantedPhases = Arrays.asList(phases);
+		List<DiscoveredScript> discoveredScripts = new ArrayList<>();
+		for (DiscoveredScript discoveredScript : manifest.getScripts()) {
+			if (!wantedPhases.contains(discoveredScript.getPhase()) || !selection.selects(discoveredScript)) {
+				continue;
+			}
+			if (!discoveredScript.getFile().isFile()) {
+				throw new RuntimeException(String.format("Script [%s] listed in manifest [%s] doesn't exist.",
+						discoveredScript.getRelativePath(), manifestFile));
+			}
+			// manifests built before tags were listed leave them to the script headers
+			if (selection.hasTags() && !selection.selectsTags(manifest.getTags().isEmpty()
+					? ScriptTagUtils.read(discoveredScript.getFile().toPath(), appSettings.isScriptsCompressed())
+					: manifest.getTags().getOrDefault(discoveredScript.getRelativePath(), Collections.emptySet()))) {
+				continue;
+			}
+			discoveredScripts.add(discoveredScript);
+		}
+		LOGGER.info("<-- manifest --> {} script(s) listed in {}", discoveredScripts.size(), manifestFile);
+		return discoveredScripts;
+	}
+
+	/**
+	 * Records the tree the plan was built from, the scripts location being only scanned again when there is none.
+	 */
+	private void recordTree(File scriptsDir) {
+		ScriptTree tree = scannedTree;
+		if (tree == null) {
+			tree = scanTree(scriptsDir, Files.isRegularFile(treeFile()) ? ScriptTreeUtils.read(treeFile()) : null);
+		}
+		ScriptTreeUtils.write(tree, treeFile());
+		deploymentState.put(TREE_HISTORY_STATE, DeploymentPlanner.historyFingerprint(scriptHistoryRepository));
+		deploymentState.put(TREE_PATTERNS_STATE, patternsFingerprint());
+		LOGGER.info("<-- tree --> deployed tree {} recorded", tree.getRootHash());
+	}
+
+	private boolean isIncremental() {
+		return appSettings.isTreeIncremental() || appSettings.isGitIncremental();
+	}
+
+	/**
+	 * @return paths changed since the last deployment, null if every script has to be checked.
+	 */
+	private Set<String> changedPaths(File scriptsDir, String historyFingerprint) {
+		return appSettings.isTreeIncremental() ? treeChangedPaths(scriptsDir, historyFingerprint)
+				: gitChangedPaths(scriptsDir, historyFingerprint);
+	}
 
-		String[] repeatableFilePatterns = repeatableFilePatternProp.split(appSettings.getFilePatternDelimiter());
-		for (String repeatableFilePattern : repeatableFilePatterns) {
-			processRepeatableFile(scriptsDir, repeatableFilePattern);
+	/**
+	 * Scans the scripts location, rehashing only the files whose size or modification time changed, and compares
+	 * its folder hashes with the ones of the tree recorded by the last deployment.
+	 */
+	private Set<String> treeChangedPaths(File scriptsDir, String historyFingerprint) {
+		long start = System.nanoTime();
+		ScriptTree deployedTree = Files.isRegularFile(treeFile()) ? ScriptTreeUtils.read(treeFile()) : null;
+		ScriptTree tree = scanTree(scriptsDir, deployedTree);
+		scannedTree = tree;
+		runTrace.spanSince(RunTrace.SCAN, "tree", start, "files", tree.getFiles().size());
+		if (deployedTree == null) {
+			LOGGER.info("<-- tree --> no deployed tree recorded, checking all scripts");
+			return null;
+		}
+		if (!historyFingerprint.equals(deploymentState.get(TREE_HISTORY_STATE))
+				|| !patternsFingerprint().equals(deploymentState.get(TREE_PATTERNS_STATE))) {
+			LOGGER.info("<-- tree --> history or patterns changed since the tree was deployed, checking all scripts");
+			return null;
 		}
+		if (tree.getRootHash().equals(deployedTree.getRootHash())) {
+			LOGGER.info("<-- tree --> nothing changed since the last deployment");
+			return Collections.emptySet();
+		}
+		Set<String> changedPaths = tree.changedPaths(deployedTree);
+		LOGGER.info("<-- tree --> {} path(s) changed since the last deployment", changedPaths.size());
+		return changedPaths;
+	}
+
+	/**
+	 * Scans the files of the scripts location matching a file pattern, the others never being run.
+	 */
+	private ScriptTree scanTree(File scriptsDir, ScriptTree previous) {
+		return ScriptTreeUtils.scan(scriptsDir, previous,
+				ScriptDiscoveryUtils.scriptNameFilter(appSettings.isScriptsCompressed(),
+						appSettings.getFilePatternDelimiter(), appSettings.getPreRunFilePattern(),
+						appSettings.getOneTimeFilePattern(), appSettings.getRepeatableFilePattern(),
+						appSettings.getPostRunFilePattern()),
+				appSettings.isScriptsCompressed());
 	}
 
-	private void processRepeatableFile(File scriptsDir, String repeatableFilePattern) {
+	/**
+	 * @return tree of the scripts location recorded by the last deployment, next to the deployment state.
+	 */
+	private Path treeFile() {
+		return Paths.get(appSettings.getStateFile()).resolveSibling("scripts.tree");
+	}
 
-		boolean seqNumApplicable = false;
-		if (repeatableFilePattern.contains("<seq_num>")) {
-			seqNumApplicable = true;
+	private Set<String> gitChangedPaths(File scriptsDir, String historyFingerprint) {
+		String deployedCommit = deploymentState.get(GIT_COMMIT_STATE);
+		if (deployedCommit == null) {
+			LOGGER.info("<-- git --> no deployed commit recorded, checking all scripts");
+			return null;
+		}
+		if (!historyFingerprint.equals(deploymentState.get(GIT_HISTORY_STATE))
+				|| !patternsFingerprint().equals(deploymentState.get(GIT_PATTERNS_STATE))) {
+			LOGGER.info("<-- git --> history or patterns changed since commit {} was deployed, checking all scripts",
+					deployedCommit);
+			return null;
+		}
+		Set<String> changedPaths = GitUtils.changedPaths(scriptsDir, deployedCommit);
+		if (changedPaths == null) {
+			LOGGER.warn("<-- git --> deployed commit {} not found in the scripts repository, checking all scripts",
+					deployedCommit);
+			return null;
 		}
+		LOGGER.info("<-- git --> {} path(s) changed since deployed commit {}", changedPaths.size(), deployedCommit);
+		return changedPaths;
+	}
 
-		LOGGER.info("<-- Pattern Lookup  --> {}", repeatableFilePattern);
+	private boolean isUnchanged(DiscoveredScript script, Set<String> changedPaths) {
+		return changedPaths != null && (script.getPhase() == ScriptPhase.S || script.getPhase() == ScriptPhase.R)
+				&& !changedPaths.contains(script.getRelativePath());
+	}
 
-		String repeatableFileRegexPattern = repeatableFilePattern.replace("<seq_num>", "(\\d+)");
-		IOFileFilter repeatableFilesFilter = new RegexFileFilter(repeatableFileRegexPattern);
-		List<File> repeatableFiles = (List<File>) FileUtils.listFiles(scriptsDir, repeatableFilesFilter,
-				TrueFileFilter.INSTANCE);
+	private String patternsFingerprint() {
+		return ScriptDiscoveryUtils.patternsFingerprint(appSettings.getPreRunFilePattern(),
+				appSettings.getOneTimeFilePattern(), appSettings.getRepeatableFilePattern(),
+				appSettings.getPostRunFilePattern(), appSettings.getFilePatternDelimiter());
+	}
 
-		Collections.sort(repeatableFiles,
-				CommonUtils.scriptPrioritySorter(repeatableFileRegexPattern, seqNumApplicable, true));
+	/**
+	 * Cheap staleness check of a plan computed earlier, see {@link DeploymentPlanner#validatePlan}.
+	 */
+	public void validatePlan(DeploymentPlan plan, File scriptsDir) {
+		deploymentPlanner.validatePlan(plan, scriptsDir);
+	}
 
-		for (File repeatableFile : repeatableFiles) {
-			String repeatableFilePath = repeatableFile.getAbsolutePath();
-			String fileName = repeatableFile.getName();
+	/**
+	 * @return true if every script of the plan which had to run got executed successfully.
+	 */
+	public boolean apply(DeploymentPlan plan, File scriptsDir) {
+		return apply(plan, scriptsDir, defaultContext(), DeploymentListener.NONE);
+	}
 
-			String relativePath = scriptsDir.toURI().relativize(repeatableFile.toURI()).getPath();
-			String checksum = CommonUtils.generateFileChecksum(repeatableFile.toPath());
-			Long sequence = CommonUtils.getFileSequence(repeatableFileRegexPattern, fileName, seqNumApplicable);
+	public boolean apply(DeploymentPlan plan, File scriptsDir, DeploymentListener listener) {
+		return apply(plan, scriptsDir, defaultContext(), listener);
+	}
 
-			Date currentDate = new Date();
-			ScriptHistory previousEntry = scriptHistoryRepository
-					.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(relativePath);
-			if (previousEntry == null) {
-				LOGGER.info("\t<-- first run --> {}", relativePath);
-				if (executeScript(repeatableFilePath) == true) {
-					scriptHistoryRepository.save(new ScriptHistory(relativePath, "REP", sequence, 1L, checksum,
-							repeatableFilePattern, currentDate, currentDate, appSettings.getReqNumber()));
-				}
-			} else if ("error".equalsIgnoreCase(appSettings.getFilePatternConflict())
-					&& !repeatableFilePattern.equals(previousEntry.getPattern())) {
-				throw new RuntimeException(String.format(
-						"File [%s] execution with pattern [%s] conflicts with previous execution of file having pattern [%s]",
-						relativePath, repeatableFilePattern, previousEntry.getPattern()));
-			} else if (!checksum.equals(previousEntry.getChecksum())) {
-				ScriptHistory newEntry = new ScriptHistory(previousEntry.getFileId().getPath(), previousEntry.getType(),
-						previousEntry.getSequence(), previousEntry.getVersion() + 1, checksum, repeatableFilePattern,
-						previousEntry.getCreateDate(), currentDate, appSettings.getReqNumber());
-				LOGGER.info("<-- run --> {}", relativePath);
-				if (executeScript(repeatableFilePath) == true) {
-					scriptHistoryRepository.save(newEntry);
+	/**
+	 * @return true if every script of the plan which had to run got executed successfully against the given context.
+	 */
+	public boolean apply(DeploymentPlan plan, File scriptsDir, DeploymentContext context) {
+		return apply(plan, scriptsDir, context, DeploymentListener.NONE);
+	}
+
+	public boolean apply(DeploymentPlan plan, File scriptsDir, DeploymentContext context,
+			DeploymentListener listener) {
+		if (ScriptArchiveUtils.isArchive(scriptsDir)) {
+			scriptsDir = extract(plan, scriptsDir);
+		}
+		boolean succeeded = true;
+		DeploymentPlanner.FailedScripts failed = new DeploymentPlanner.FailedScripts();
+		DeploymentProgress progress = new DeploymentProgress(plan, context.getScriptHistoryRepository(),
+				appSettings.getSlowScriptFactor(), appSettings.isProgressLogEnabled());
+		for (ScriptPhase phase : ScriptPhase.values()) {
+			if (!plan.getPhases().contains(phase)) {
+				continue;
+			}
+			LOGGER.info(phase.getBanner());
+			long phaseStart = System.nanoTime();
+			String pattern = null;
+			for (PlannedScript plannedScript : plan.getScripts()) {
+				if (plannedScript.getPhase() != phase) {
+					continue;
 				}
-			} else {
-				if (appSettings.isLogSkipScriptEnabled()) {
-					LOGGER.info("\t<-- Skipping  --> {}", relativePath);
+				if (!plannedScript.getPattern().equals(pattern)) {
+					pattern = plannedScript.getPattern();
+					LOGGER.info("<-- Pattern Lookup  --> {}", pattern);
 				}
+				succeeded &= apply(plannedScript, scriptsDir, plan.isVerifyChecksums(), context, listener, progress,
+						failed);
 			}
+			runTrace.spanSince(RunTrace.PHASE, phase.name(), phaseStart);
 		}
+		return succeeded;
 	}
 
-	public void processPreRunFiles(File scriptsDir) {
-		LOGGER.info("=========== checking pre scripts for each run =======");
-		String preRunFilePattern = appSettings.getPreRunFilePattern();
-		if (StringUtils.isBlank(preRunFilePattern)) {
-			LOGGER.info("<-- Skipping --> No pattern defined for scripts [app.scripts.pre.run.file.pattern]");
-			return;
+	/**
+	 * @return true if deployments of the scripts location plan and apply in one pipelined pass.
+	 */
+	public boolean isPipelined(File scriptsDir) {
+		// archive scripts get extracted up front from the whole plan
+		return appSettings.getPipelineDepth() > 0 && !ScriptArchiveUtils.isArchive(scriptsDir);
+	}
+
+	/**
+	 * Plans and applies the selected scripts in one pass: while a script runs, the next ones are hashed on the
+	 * checksum threads and decided on a planning thread, up to app.pipeline.depth scripts ahead. Scripts still run one
+	 * at a time in plan order, with the decisions a plan computed up front would take, but a script failing to be
+	 * planned stops the run when its turn comes instead of before the first script.
+	 *
+	 * @return true if every script which had to run got executed successfully.
+	 */
+	public boolean applyPipelined(File scriptsDir, ScriptSelection selection, DeploymentListener listener) {
+		int depth = Math.max(1, appSettings.getPipelineDepth());
+		ScriptCatalog catalog = new ScriptCatalog(scriptsDir);
+		Set<DiscoveredScript> toHash = new HashSet<>(discoverScripts(catalog, isIncremental(),
+				selection, selection.phases(ScriptPhase.values())));
+		DeploymentContext context = defaultContext();
+		ScriptHistoryRepository history = context.getScriptHistoryRepository();
+		DeploymentPlan plan = deploymentPlanner.newPlan(catalog, history);
+		DeploymentPlanner.PlanningHistory planningHistory = deploymentPlanner.planningHistory(catalog, history);
+		int total = catalog.getScripts().size();
+		listener.planStarted(plan);
+		if (total == 0) {
+			listener.planCompleted();
 		}
 
-		String[] preRunFilePatterns = preRunFilePattern.split(appSettings.getFilePatternDelimiter());
-		for (String preRunFilePatternEntry : preRunFilePatterns) {
-			processRunAllTimeFile(scriptsDir, preRunFilePatternEntry);
+		BlockingQueue<Future<PlannedScript>> planned = new ArrayBlockingQueue<>(depth);
+		int hashThreads = appSettings.getChecksumThreads() > 0 ? appSettings.getChecksumThreads()
+				: Runtime.getRuntime().availableProcessors();
+		ExecutorService hashers = Executors.newFixedThreadPool(hashThreads);
+		ExecutorService planner = Executors.newSingleThreadExecutor();
+		planner.execute(() -> planAhead(catalog.getScripts(), toHash, depth, planningHistory, plan.getCreateDate(),
+				hashers, planned));
+		try {
+			boolean succeeded = true;
+			DeploymentPlanner.FailedScripts failed = new DeploymentPlanner.FailedScripts();
+			DeploymentProgress progress = new DeploymentProgress(plan, history, appSettings.getSlowScriptFactor(),
+					appSettings.isProgressLogEnabled());
+			PhaseBanners banners = new PhaseBanners(plan.getPhases());
+			String pattern = null;
+			for (int i = 0; i < total; i++) {
+				PlannedScript plannedScript = next(planned);
+				plan.add(plannedScript);
+				listener.scriptPlanned(plannedScript);
+				if (i == total - 1) {
+					listener.planCompleted();
+				}
+				deploymentMetrics.planned(plannedScript.getPhase(), plannedScript.getPattern(),
+						plannedScript.getAction().getReason());
+				progress.planned(plannedScript);
+				if (banners.enter(plannedScript.getPhase())) {
+					pattern = null;
+				}
+				if (!plannedScript.getPattern().equals(pattern)) {
+					pattern = plannedScript.getPattern();
+					LOGGER.info("<-- Pattern Lookup  --> {}", pattern);
+				}
+				succeeded &= apply(plannedScript, scriptsDir, plan.isVerifyChecksums(), context, listener, progress,
+						failed);
+			}
+			banners.finish();
+			return succeeded;
+		} finally {
+			planner.shutdownNow();
+			hashers.shutdownNow();
 		}
+	}
 
+	/**
+	 * Planning stage of a pipelined run: hashes and decides the scripts in execution order, handing each decision
+	 * over as soon as it is taken. Hashing runs at most [depth] scripts ahead of the decisions, which wait while
+	 * [depth] of them are still to be applied.
+	 */
+	private void planAhead(List<DiscoveredScript> scripts, Set<DiscoveredScript> toHash, int depth,
+			DeploymentPlanner.PlanningHistory planningHistory, Date planDate, ExecutorService hashers,
+			BlockingQueue<Future<PlannedScript>> planned) {
+		List<Future<String>> checksums = new ArrayList<>(scripts.size());
+		try {
+			for (int i = 0; i < scripts.size(); i++) {
+				while (checksums.size() < Math.min(scripts.size(), i + depth)) {
+					DiscoveredScript script = scripts.get(checksums.size());
+					checksums.add(toHash.contains(script) ? hashers.submit(() -> checksum(script))
+							: CompletableFuture.completedFuture(script.getChecksum()));
+				}
+				DiscoveredScript script = withChecksum(scripts.get(i), checksums.get(i).get());
+				planned.put(CompletableFuture.completedFuture(deploymentPlanner.plan(i + 1, script, planningHistory,
+						planDate)));
+			}
+		} catch (InterruptedException ex) {
+			// the run stopped before all scripts got planned
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | RuntimeException ex) {
+			CompletableFuture<PlannedScript> failed = new CompletableFuture<>();
+			failed.completeExceptionally(ex instanceof ExecutionException ? ex.getCause() : ex);
+			try {
+				planned.put(failed);
+			} catch (InterruptedException interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
-	public void processPostRunFiles(File scriptsDir) {
+	/**
+	 * @return next script decided by the planning stage, waiting for it if needed.
+	 */
+	private static PlannedScript next(BlockingQueue<Future<PlannedScript>> planned) {
+		try {
+			return planned.take().get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Deployment interrupted.", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new RuntimeException("Script can't be planned.", ex.getCause());
+		}
+	}
 
-		LOGGER.info("=========== checking post scripts for each run =======");
-		String postRunFilePattern = appSettings.getPostRunFilePattern();
-		if (StringUtils.isBlank(postRunFilePattern)) {
-			LOGGER.info("<-- Skipping --> No pattern defined for scripts [app.scripts.post.run.file.pattern]");
-			return;
+	/**
+	 * Logs the banner of each class of a pipelined run as its scripts come up, the classes without any script
+	 * included, and traces how long each class took.
+	 */
+	private class PhaseBanners {
+
+		private final Set<ScriptPhase> phases;
+
+		private int index = -1;
+
+		private long start;
+
+		PhaseBanners(Set<ScriptPhase> phases) {
+			this.phases = phases;
 		}
 
-		String[] postRunFilePatterns = postRunFilePattern.split(appSettings.getFilePatternDelimiter());
-		for (String postRunFilePatternEntry : postRunFilePatterns) {
-			processRunAllTimeFile(scriptsDir, postRunFilePatternEntry);
+		/**
+		 * @return true if the script class changed.
+		 */
+		boolean enter(ScriptPhase phase) {
+			if (index == phase.ordinal()) {
+				return false;
+			}
+			while (index < phase.ordinal()) {
+				close();
+				index++;
+				if (phases.contains(ScriptPhase.values()[index])) {
+					LOGGER.info(ScriptPhase.values()[index].getBanner());
+					start = System.nanoTime();
+				}
+			}
+			return true;
+		}
+
+		void finish() {
+			enter(ScriptPhase.values()[ScriptPhase.values().length - 1]);
+			close();
+			index = ScriptPhase.values().length;
+		}
+
+		private void close() {
+			if (index >= 0 && index < ScriptPhase.values().length && phases.contains(ScriptPhase.values()[index])) {
+				runTrace.spanSince(RunTrace.PHASE, ScriptPhase.values()[index].name(), start);
+			}
 		}
 	}
 
-	private void processRunAllTimeFile(File scriptsDir, String allTimeFilePattern) {
+	/**
+	 * Applies a script in its turn, decided again first when its decision took a script which failed as deployed.
+	 */
+	private boolean apply(PlannedScript plannedScript, File scriptsDir, boolean verifyChecksum,
+			DeploymentContext context, DeploymentListener listener, DeploymentProgress progress,
+			DeploymentPlanner.FailedScripts failed) {
+		PlannedScript script = deploymentPlanner.replan(plannedScript, failed, scriptsDir, context);
+		boolean succeeded = apply(script, scriptsDir, verifyChecksum, context, listener, progress);
+		if (!succeeded) {
+			failed.add(script);
+		}
+		return succeeded;
+	}
+
+	private boolean apply(PlannedScript plannedScript, File scriptsDir, boolean verifyChecksum,
+			DeploymentContext context, DeploymentListener listener, DeploymentProgress progress) {
+		String relativePath = plannedScript.getPath();
+		File scriptFile = new File(scriptsDir, relativePath);
+		Date currentDate = new Date();
+
+		switch (plannedScript.getAction()) {
+		case SKIP:
+			if (appSettings.isLogSkipScriptEnabled()) {
+				LOGGER.info("\t<-- Skipping  --> {}", relativePath);
+			}
+			return true;
+		case RESET_HASH:
+			if (verifyChecksum) {
+				verifyChecksum(plannedScript, scriptFile);
+			}
+			LOGGER.info("<-- reset-hash --> {}", relativePath);
+			listener.scriptStarted(plannedScript);
+			saveHistory(plannedScript.toHistory(currentDate, appSettings.getReqNumber()), plannedScript, context);
+			listener.scriptFinished(plannedScript, true);
+			return true;
+		case FIRST_RUN:
+			LOGGER.info("\t<-- first run --> {}", relativePath);
+			break;
+		default:
+			LOGGER.info("<-- run --> {}", relativePath);
+		}
 
-		boolean seqNumApplicable = false;
-		if (allTimeFilePattern.contains("<seq_num>")) {
-			seqNumApplicable = true;
+		if (verifyChecksum) {
+			verifyChecksum(plannedScript, scriptFile);
+		}
+		DeploymentThrottle.Permit permit = acquire(plannedScript);
+		listener.scriptStarted(plannedScript);
+		ScriptExecution execution = null;
+		try {
+			execution = executeWithRetries(plannedScript, scriptFile, context);
+		} finally {
+			deploymentThrottle.release(permit, relativePath,
+					execution != null ? execution.durationMillis : permit.elapsedMillis(),
+					execution != null && execution.succeeded, progress.getMedianMillis(relativePath));
 		}
+		if (progress.executed(plannedScript, execution.durationMillis, execution.succeeded)) {
+			deploymentMetrics.slow(plannedScript.getPhase(), plannedScript.getPattern());
+		}
+		if (execution.succeeded) {
+			saveHistory(plannedScript.toHistory(currentDate, appSettings.getReqNumber(), execution.durationMillis,
+					execution.outputBytes), plannedScript, context);
+			listener.scriptFinished(plannedScript, true);
+			return true;
+		}
+		listener.scriptFinished(plannedScript, false);
+		return false;
+	}
 
-		LOGGER.info("<-- Pattern Lookup  --> {}", allTimeFilePattern);
+	/**
+	 * Waits for the throttle to let the script run, the wait being traced and measured when there is one.
+	 */
+	private DeploymentThrottle.Permit acquire(PlannedScript plannedScript) {
+		long start = System.nanoTime();
+		DeploymentThrottle.Permit permit = deploymentThrottle.acquire(plannedScript.getPath());
+		long waitNanos = System.nanoTime() - start;
+		if (waitNanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+			deploymentMetrics.record(DeploymentMetrics.THROTTLE_WAIT, waitNanos);
+			runTrace.span(RunTrace.PROCESS, "throttle wait", waitNanos);
+		}
+		return permit;
+	}
 
-		String allTimeFileRegexPattern = allTimeFilePattern.replace("<seq_num>", "(\\d+)");
-		IOFileFilter allTimeFilesFilter = new RegexFileFilter(allTimeFileRegexPattern);
-		List<File> allTimeFiles = (List<File>) FileUtils.listFiles(scriptsDir, allTimeFilesFilter,
-				TrueFileFilter.INSTANCE);
+	private void saveHistory(ScriptHistory history, PlannedScript plannedScript, DeploymentContext context) {
+		HistorySavedEvent event = new HistorySavedEvent();
+		event.begin();
+		long start = System.nanoTime();
+		context.getScriptHistoryRepository().save(history);
+		if (event.shouldCommit()) {
+			event.path = plannedScript.getPath();
+			event.version = plannedScript.getVersion();
+			event.commit();
+		}
+		long saveNanos = System.nanoTime() - start;
+		deploymentMetrics.record(DeploymentMetrics.HISTORY_SAVE, plannedScript.getPhase(), plannedScript.getPattern(),
+				saveNanos);
+		runTrace.span(RunTrace.HISTORY, plannedScript.getPath(), saveNanos, "query", "save");
+	}
 
-		Collections.sort(allTimeFiles,
-				CommonUtils.scriptPrioritySorter(allTimeFileRegexPattern, seqNumApplicable, true));
+	private void verifyChecksum(PlannedScript plannedScript, File scriptFile) {
+		String checksum = CommonUtils.generateFileChecksum(scriptFile.toPath(), appSettings.isScriptsCompressed());
+		if (!checksum.equals(plannedScript.getChecksum())) {
+			throw new RuntimeException(String.format(
+					"File [%s] was modified after the plan was computed, expected checksum [%s] but found [%s].",
+					plannedScript.getPath(), plannedScript.getChecksum(), checksum));
+		}
+	}
 
-		for (File allTimeFile : allTimeFiles) {
-			String allTimeFilePath = allTimeFile.getAbsolutePath();
-			String fileName = allTimeFile.getName();
+	/**
+	 * @return configured patterns of a class of scripts, separated by the pattern delimiter.
+	 */
+	private String filePatternProp(ScriptPhase phase) {
+		switch (phase) {
+		case S:
+			return appSettings.getOneTimeFilePattern();
+		case R:
+			return appSettings.getRepeatableFilePattern();
+		case PRE:
+			return appSettings.getPreRunFilePattern();
+		default:
+			return appSettings.getPostRunFilePattern();
+		}
+	}
 
-			String relativePath = scriptsDir.toURI().relativize(allTimeFile.toURI()).getPath();
-			String checksum = CommonUtils.generateFileChecksum(allTimeFile.toPath());
-			Long sequence = CommonUtils.getFileSequence(allTimeFileRegexPattern, fileName, seqNumApplicable);
+	/**
+	 * @param files files to look into, null to scan the scripts folder.
+	 */
+	private List<DiscoveredScript> discover(File scriptsDir, ScriptPhase phase, Collection<File> files) {
+		String filePatternProp;
+		switch (phase) {
+		case S:
+			filePatternProp = appSettings.getOneTimeFilePattern();
+			if (StringUtils.isBlank(filePatternProp)) {
+				LOGGER.info(
+						"<-- Skipping --> No pattern defined for sequential scripts [app.scripts.oneTime.file.pattern], hence skipping one time scripts deployment.");
+				return Collections.emptyList();
+			}
+			break;
+		case R:
+			filePatternProp = appSettings.getRepeatableFilePattern();
+			if (StringUtils.isBlank(filePatternProp)) {
+				LOGGER.info(
+						"<-- Skipping --> No pattern defined for rerunnable scripts [app.scripts.repeatable.file.pattern], hence skipping re-runnable scripts deployment.");
+				return Collections.emptyList();
+			}
+			break;
+		case PRE:
+			filePatternProp = appSettings.getPreRunFilePattern();
+			if (StringUtils.isBlank(filePatternProp)) {
+				LOGGER.info("<-- Skipping --> No pattern defined for scripts [app.scripts.pre.run.file.pattern]");
+				return Collections.emptyList();
+			}
+			break;
+		default:
+			filePatternProp = appSettings.getPostRunFilePattern();
+			if (StringUtils.isBlank(filePatternProp)) {
+				LOGGER.info("<-- Skipping --> No pattern defined for scripts [app.scripts.post.run.file.pattern]");
+				return Collections.emptyList();
+			}
+		}
 
-			Date currentDate = new Date();
-			ScriptHistory previousEntry = scriptHistoryRepository
-					.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(relativePath);
-			if (previousEntry == null) {
-				LOGGER.info("\t<-- first run --> {}", relativePath);
-				if (executeScript(allTimeFilePath) == true) {
-					scriptHistoryRepository.save(new ScriptHistory(relativePath, "REP", sequence, 1L, checksum,
-							allTimeFilePattern, currentDate, currentDate, appSettings.getReqNumber()));
-				}
-			} else if ("error".equalsIgnoreCase(appSettings.getFilePatternConflict())
-					&& !allTimeFilePattern.equals(previousEntry.getPattern())) {
-				throw new RuntimeException(String.format(
-						"File [%s] execution with pattern [%s] conflicts with previous execution of file having pattern [%s]",
-						relativePath, allTimeFilePattern, previousEntry.getPattern()));
-			} else {
-				LOGGER.info("<-- run --> {}", relativePath);
-				long newVersion = previousEntry.getVersion();
-				if (!checksum.equals(previousEntry.getChecksum())) {
-					newVersion++;
-				}
-				if (executeScript(allTimeFilePath) == true) {
-					ScriptHistory newEntry = new ScriptHistory(previousEntry.getFileId().getPath(), previousEntry.getType(),
-							previousEntry.getSequence(), newVersion, checksum, previousEntry.getPattern(),
-							previousEntry.getCreateDate(), currentDate, appSettings.getReqNumber());
-					scriptHistoryRepository.save(newEntry);
+		List<DiscoveredScript> discoveredScripts = new ArrayList<>();
+		for (String filePattern : filePatternProp.split(appSettings.getFilePatternDelimiter())) {
+			long start = System.nanoTime();
+			List<DiscoveredScript> patternScripts = ScriptDiscoveryUtils.discover(scriptsDir, phase, filePattern, files,
+					appSettings.isScriptsCompressed());
+			long scanNanos = System.nanoTime() - start;
+			deploymentMetrics.record(DeploymentMetrics.SCAN, phase, filePattern, scanNanos);
+			runTrace.span(RunTrace.SCAN, filePattern, scanNanos, "phase", phase, "scripts", patternScripts.size());
+			for (DiscoveredScript discoveredScript : patternScripts) {
+				ScriptDiscoveredEvent event = new ScriptDiscoveredEvent();
+				if (event.isEnabled()) {
+					event.phase = phase.name();
+					event.pattern = filePattern;
+					event.path = discoveredScript.getRelativePath();
+					event.commit();
 				}
 			}
+			discoveredScripts.addAll(patternScripts);
 		}
+		discoveredScripts.removeIf(script -> script.getRelativePath().equals(appSettings.getScriptsManifest()));
+		return discoveredScripts;
 	}
 
-	private boolean executeScript(final String srcScript) {
-		String srcScriptPath = srcScript;
-		String consoleCommand = appSettings.getConsoleCommand();
-		String loggingPattern = appSettings.getConsoleCommandLogging();
-		boolean stopOnScriptFail = appSettings.isStopOnScriptFail();
+	private DeploymentContext defaultContext() {
+		return new DeploymentContext(null, scriptHistoryRepository, scriptVariablesSubstitutor,
+				StringUtils.isNotBlank(appSettings.getScriptVariables()), appSettings.getConsoleCommand(),
+				appSettings.getConsoleCommandLogging(), appSettings.getConsoleStdinCommand(), "scriptTmpFile.txt",
+				null);
+	}
 
-		LOGGER.info("\t<-- Executing --> {}", loggingPattern.replace("<script>", srcScriptPath));
+	/**
+	 * Runs the script, and runs it again after a backoff as long as it fails for a transient reason and retries are
+	 * left. Nothing else is rescanned nor replanned. Scripts run in process aren't retried.
+	 */
+	private ScriptExecution executeWithRetries(PlannedScript plannedScript, File scriptFile,
+			DeploymentContext context) {
+		if (scriptExecutor != null) {
+			return executeInProcess(plannedScript, scriptFile, context);
+		}
+		RetryPolicy policy = retryPolicy();
+		if (!policy.applies(plannedScript.getPath())) {
+			return executeScript(plannedScript, scriptFile.getAbsolutePath(), context, null);
+		}
+		for (int attempt = 1;; attempt++) {
+			RetryPolicy.Classifier classifier = policy.classifier();
+			ScriptExecution execution = executeScript(plannedScript, scriptFile.getAbsolutePath(), context,
+					classifier);
+			if (execution.succeeded) {
+				return execution;
+			}
+			String reason = classifier.transientReason(execution.exitCode);
+			if (reason == null || attempt > policy.getMaxRetries()) {
+				if (appSettings.isStopOnScriptFail()) {
+					throw new RuntimeException(String.format("Script [%s] failed after %d attempt(s)%s.",
+							plannedScript.getPath(), attempt, reason == null ? "" : ", last failure " + reason));
+				}
+				return execution;
+			}
+			long backoff = policy.backoffMillis(attempt, ThreadLocalRandom.current().nextDouble());
+			LOGGER.warn("\t<-- retry {}/{} --> {} in {} ms, transient failure: {}", attempt, policy.getMaxRetries(),
+					plannedScript.getPath(), backoff, reason);
+			deploymentMetrics.retried(plannedScript.getPhase(), plannedScript.getPattern());
+			runTrace.span(RunTrace.PROCESS, "retry backoff", TimeUnit.MILLISECONDS.toNanos(backoff));
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(String.format("Retry of script [%s] interrupted.", plannedScript.getPath()),
+						ex);
+			}
+		}
+	}
 
-		String scriptVariables = appSettings.getScriptVariables();
+	/**
+	 * @param classifier watches the output of a retryable attempt, whose failure is then reported rather than thrown.
+	 */
+	private ScriptExecution executeScript(PlannedScript plannedScript, final String srcScript,
+			DeploymentContext context, RetryPolicy.Classifier classifier) {
+		String srcScriptPath = srcScript;
+		String consoleCommand = context.getConsoleCommand();
+		String loggingPattern = context.getConsoleCommandLogging();
 
 		File srcScriptFile = new File(srcScriptPath);
 		File scriptToBeExecuted = srcScriptFile;
+		boolean compressed = appSettings.isScriptsCompressed() && CompressedFileUtils.isCompressed(srcScriptFile);
+
+		if (compressed && StringUtils.isNotBlank(context.getConsoleStdinCommand())) {
+			LOGGER.info("\t<-- Executing --> {} streamed to standard input", srcScriptPath);
+			try (InputStream input = scriptInput(srcScriptFile, context)) {
+				return executeCommand(plannedScript,
+						context.getConsoleStdinCommand().replace("<script>", srcScriptPath), input, context,
+						classifier);
+			} catch (IOException ex) {
+				throw new RuntimeException(String.format("Compressed script [%s] can't be read.", srcScriptPath), ex);
+			}
+		}
+
+		LOGGER.info("\t<-- Executing --> {}", loggingPattern.replace("<script>", srcScriptPath));
 
-		if (StringUtils.isNotBlank(scriptVariables)) {
+		if (compressed && !context.isSubstituteVariables()) {
+			srcScriptPath = appSettings.getLogDir() + "/" + context.getScriptTmpFileName();
+			scriptToBeExecuted = new File(srcScriptPath);
+			try (InputStream input = CompressedFileUtils.open(srcScriptFile.toPath())) {
+				Files.copy(input, scriptToBeExecuted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException ex) {
+				throw new RuntimeException("Script decompression failed.", ex);
+			}
+			if (appSettings.isValidateScriptFileSize() && scriptToBeExecuted.length() == 0) {
+				throw new RuntimeException("Script is empty --> " + srcScriptFile.toPath());
+			}
+		} else if (context.isSubstituteVariables()) {
 
 			String logDir = appSettings.getLogDir();
-			srcScriptPath = logDir + "/scriptTmpFile.txt";
+			srcScriptPath = logDir + "/" + context.getScriptTmpFileName();
 			scriptToBeExecuted = new File(srcScriptPath);
 
+			long start = System.nanoTime();
 			try (PrintWriter pw = new PrintWriter(srcScriptPath);
-					Stream<String> lines = Files.lines(srcScriptFile.toPath(), StandardCharsets.UTF_8)) {
+					Stream<String> lines = scriptLines(srcScriptFile, context)) {
 				lines.forEach(line -> {
-					pw.println(scriptVariablesSubstitutor.replace(line));
+					pw.println(context.getVariablesSubstitutor().replace(line));
 				});
 			} catch (Exception ex) {
 				throw new RuntimeException("Script place holder replacement failed.", ex);
 			}
+			long substitutionNanos = System.nanoTime() - start;
+			deploymentMetrics.record(DeploymentMetrics.SUBSTITUTION, plannedScript.getPhase(),
+					plannedScript.getPattern(), substitutionNanos);
+			runTrace.span(RunTrace.SUBSTITUTION, plannedScript.getPath(), substitutionNanos);
 
 			if (appSettings.isValidateScriptFileSize() && scriptToBeExecuted.length() == 0) {
 				throw new RuntimeException("Script is empty after variable replacement --> " + srcScriptFile.toPath());
@@ -314,13 +1179,244 @@ public class FileProcessorService {
 			throw new RuntimeException("Script is empty --> " + srcScriptFile.toPath());
 		}
 
-		String commandToExecute = consoleCommand.replace("<script>", scriptToBeExecuted.getPath());
+		return executeCommand(plannedScript, consoleCommand.replace("<script>", scriptToBeExecuted.getPath()), null,
+				context, classifier);
+	}
+
+	/**
+	 * Hands the content of the script to the in-process executor instead of a console command.
+	 */
+	private ScriptExecution executeInProcess(PlannedScript plannedScript, File scriptFile,
+			DeploymentContext context) {
+		LOGGER.info("\t<-- Executing --> {} in process", scriptFile.getPath());
+		ScriptExecution execution = new ScriptExecution();
+		ScriptExecutedEvent event = new ScriptExecutedEvent();
+		event.begin();
+		long start = System.nanoTime();
+		Exception failure = null;
+		try (InputStream input = scriptInput(scriptFile, context)) {
+			execution.succeeded = scriptExecutor.execute(plannedScript, input);
+		} catch (Exception ex) {
+			failure = ex;
+			execution.succeeded = false;
+		}
+		long nanos = System.nanoTime() - start;
+		execution.durationMillis = nanos / 1_000_000L;
+		execution.exitCode = execution.succeeded ? 0 : 1;
+		runTrace.span(RunTrace.PROCESS, plannedScript.getPath(), nanos, "exitCode", execution.exitCode);
+		deploymentMetrics.record(DeploymentMetrics.EXECUTION, plannedScript.getPhase(), plannedScript.getPattern(),
+				execution.succeeded ? "success" : "failure", nanos);
+		if (event.shouldCommit()) {
+			event.phase = plannedScript.getPhase().name();
+			event.path = plannedScript.getPath();
+			event.exitCode = execution.exitCode;
+			event.commit();
+		}
+		if (!execution.succeeded) {
+			if (appSettings.isStopOnScriptFail()) {
+				throw new RuntimeException(String.format("Script [%s] failed.", plannedScript.getPath()), failure);
+			}
+			LOGGER.error("\t<-- failed --> {}", plannedScript.getPath(), failure);
+		}
+		return execution;
+	}
 
+	/**
+	 * @param input fed to the standard input of the command, null for none.
+	 */
+	private ScriptExecution executeCommand(PlannedScript plannedScript, String commandToExecute, InputStream input,
+			DeploymentContext context, RetryPolicy.Classifier classifier) {
+		boolean stopOnScriptFail = appSettings.isStopOnScriptFail() && classifier == null;
 		LOGGER.debug("final command to execute --> [{}]", commandToExecute);
-		if (appSettings.isConsoleCommandOutputEnabled()) {
-			return CommandUtils.execute(commandToExecute, stopOnScriptFail);
+		ScriptExecution execution = new ScriptExecution();
+		ScriptExecutedEvent event = new ScriptExecutedEvent();
+		event.begin();
+		CommandUtils.ExecutionListener executionListener = new CommandUtils.ExecutionListener() {
+
+			@Override
+			public void processStarted(long spawnNanos) {
+				deploymentMetrics.record(DeploymentMetrics.PROCESS_SPAWN, plannedScript.getPhase(),
+						plannedScript.getPattern(), spawnNanos);
+				runTrace.span(RunTrace.PROCESS, "spawn", spawnNanos);
+			}
+
+			@Override
+			public void processEnded(int exitCode, long nanos) {
+				execution.durationMillis = nanos / 1_000_000L;
+				execution.exitCode = exitCode;
+				runTrace.span(RunTrace.PROCESS, plannedScript.getPath(), nanos, "exitCode", exitCode);
+				deploymentMetrics.record(DeploymentMetrics.EXECUTION, plannedScript.getPhase(),
+						plannedScript.getPattern(), exitCode == 0 ? "success" : "failure", nanos);
+				if (event.shouldCommit()) {
+					event.phase = plannedScript.getPhase().name();
+					event.path = plannedScript.getPath();
+					event.exitCode = exitCode;
+					event.commit();
+				}
+			}
+
+			@Override
+			public void outputCaptured(long bytes) {
+				execution.outputBytes = bytes;
+			}
+
+			@Override
+			public OutputStream outputWatcher() {
+				return classifier;
+			}
+		};
+		if (appSettings.isScriptOutputFilesEnabled()) {
+			File outputFile = outputFile(plannedScript, context);
+			LOGGER.info("\t<-- output --> {}", outputFile);
+			execution.succeeded = CommandUtils.executeToFile(commandToExecute, stopOnScriptFail, outputFile,
+					executionListener, errorPatterns(), input);
+		} else if (appSettings.isConsoleCommandOutputEnabled()) {
+			execution.succeeded = CommandUtils.execute(commandToExecute, stopOnScriptFail, executionListener,
+					errorPatterns(), input);
 		} else {
-			return CommandUtils.executeAndPrintOnFail(commandToExecute, stopOnScriptFail);
+			execution.succeeded = CommandUtils.executeAndPrintOnFail(commandToExecute, stopOnScriptFail,
+					executionListener, appSettings.getScriptOutputTailKb() * 1024, appSettings.isScriptOutputSpill(),
+					errorPatterns(), input);
+		}
+		return execution;
+	}
+
+	/**
+	 * Output lines which fail a script as soon as they are printed, compiled once per run.
+	 */
+	private List<Pattern> errorPatterns() {
+		List<Pattern> patterns = errorPatterns;
+		if (patterns == null) {
+			patterns = new ArrayList<>();
+			if (StringUtils.isNotBlank(appSettings.getScriptErrorPatterns())) {
+				for (String errorPattern : appSettings.getScriptErrorPatterns()
+						.split(appSettings.getFilePatternDelimiter())) {
+					try {
+						patterns.add(Pattern.compile(errorPattern));
+					} catch (PatternSyntaxException ex) {
+						throw new RuntimeException(String.format("Invalid error pattern [%s].", errorPattern), ex);
+					}
+				}
+			}
+			errorPatterns = patterns;
+		}
+		return patterns;
+	}
+
+	/**
+	 * Retry settings, parsed once per run.
+	 */
+	private RetryPolicy retryPolicy() {
+		RetryPolicy policy = retryPolicy;
+		if (policy == null) {
+			List<Pattern> outputPatterns = new ArrayList<>();
+			if (StringUtils.isNotBlank(appSettings.getRetryOutputPatterns())) {
+				for (String outputPattern : appSettings.getRetryOutputPatterns()
+						.split(appSettings.getFilePatternDelimiter())) {
+					try {
+						outputPatterns.add(Pattern.compile(outputPattern));
+					} catch (PatternSyntaxException ex) {
+						throw new RuntimeException(String.format("Invalid retry pattern [%s].", outputPattern), ex);
+					}
+				}
+			}
+			Set<Integer> exitCodes = new HashSet<>();
+			if (StringUtils.isNotBlank(appSettings.getRetryExitCodes())) {
+				for (String exitCode : appSettings.getRetryExitCodes().split(",")) {
+					try {
+						exitCodes.add(Integer.valueOf(exitCode.trim()));
+					} catch (NumberFormatException ex) {
+						throw new RuntimeException(String.format("Invalid retry exit code [%s].", exitCode), ex);
+					}
+				}
+			}
+			Pattern scripts;
+			try {
+				scripts = Pattern.compile(StringUtils.defaultIfBlank(appSettings.getRetryScripts(), ".*"));
+			} catch (PatternSyntaxException ex) {
+				throw new RuntimeException(
+						String.format("Invalid retry scripts pattern [%s].", appSettings.getRetryScripts()), ex);
+			}
+			policy = new RetryPolicy(appSettings.getRetryMax(), scripts, outputPatterns, exitCodes,
+					appSettings.getRetryBackoffMillis(), appSettings.getRetryMaxBackoffMillis());
+			retryPolicy = policy;
+		}
+		return policy;
+	}
+
+	/**
+	 * File receiving the output of a script: logs/scripts/[run]/[target]/[script path].log
+	 */
+	private File outputFile(PlannedScript plannedScript, DeploymentContext context) {
+		Path runDir = Paths.get(appSettings.getLogDir(), "scripts", runTimestamp);
+		if (context.getName() != null) {
+			runDir = runDir.resolve(context.getName());
+		}
+		Path outputFile = runDir.resolve(plannedScript.getPath() + ".log");
+		try {
+			Files.createDirectories(outputFile.getParent());
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Output folder [%s] can't be created.", outputFile.getParent()),
+					ex);
 		}
+		return outputFile.toFile();
+	}
+
+	/**
+	 * Lines of a script to substitute variables into, read once per run when the context shares them with others.
+	 */
+	private Stream<String> scriptLines(File scriptFile, DeploymentContext context) throws IOException {
+		if (appSettings.isScriptsCompressed() && CompressedFileUtils.isCompressed(scriptFile)) {
+			// never shared, the content may be much larger than the file
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(CompressedFileUtils.open(scriptFile.toPath()), StandardCharsets.UTF_8));
+			return reader.lines().onClose(() -> {
+				try {
+					reader.close();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		}
+		Map<String, List<String>> scriptTemplates = context.getScriptTemplates();
+		if (scriptTemplates == null || scriptFile.length() > MAX_SHARED_SCRIPT_SIZE) {
+			return Files.lines(scriptFile.toPath(), StandardCharsets.UTF_8);
+		}
+		try {
+			return scriptTemplates.computeIfAbsent(scriptFile.getAbsolutePath(), path -> {
+				try {
+					return Files.readAllLines(scriptFile.toPath(), StandardCharsets.UTF_8);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}).stream();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * Decompressed content of a script, with variables substituted line by line if the context has any.
+	 */
+	private InputStream scriptInput(File scriptFile, DeploymentContext context) throws IOException {
+		InputStream input = CompressedFileUtils.open(scriptFile.toPath(), appSettings.isScriptsCompressed());
+		if (!context.isSubstituteVariables()) {
+			return input;
+		}
+		return new LineMappingInputStream(input, line -> context.getVariablesSubstitutor().replace(line));
+	}
+
+	/**
+	 * Outcome and measurements of a script execution.
+	 */
+	private static class ScriptExecution {
+
+		private boolean succeeded;
+
+		private long durationMillis;
+
+		private Long outputBytes;
+
+		private int exitCode = -1;
 	}
 }
@@ -0,0 +1,19 @@
+package com.techyplanet.scriptdeployer.service;
+
+import java.io.InputStream;
+
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+
+/**
+ * Runs scripts in process, for instance over a JDBC connection of the embedding application, instead of through the
+ * configured console command.
+ */
+public interface ScriptExecutor {
+
+	/**
+	 * @param script  script to run, as planned.
+	 * @param content content of the script, decompressed and with template variables substituted.
+	 * @return true if the script succeeded; a false return or an exception fails it.
+	 */
+	boolean execute(PlannedScript script, InputStream content) throws Exception;
+}
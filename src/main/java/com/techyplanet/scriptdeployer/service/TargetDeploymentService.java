@@ -0,0 +1,199 @@
+package com.techyplanet.scriptdeployer.service;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringSubstitutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.techyplanet.scriptdeployer.common.TargetLogFilter;
+import com.techyplanet.scriptdeployer.component.AppSettings;
+import com.techyplanet.scriptdeployer.component.DBSpooler;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.DeploymentTarget;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptCatalog;
+import com.techyplanet.scriptdeployer.model.ScriptSelection;
+import com.techyplanet.scriptdeployer.model.TargetDeploymentResult;
+import com.techyplanet.scriptdeployer.repository.JdbcScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.repository.JournalScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.utils.TargetFileUtils;
+
+/**
+ * Deploys the same scripts to every target listed in app.targets.file, a bounded number of them at a time. Scripts
+ * are discovered and hashed once for all targets, and a failing target doesn't stop the others.
+ */
+@Service
+public class TargetDeploymentService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TargetDeploymentService.class);
+
+	@Autowired
+	private AppSettings appSettings;
+
+	@Autowired
+	private FileProcessorService fileProcessorService;
+
+	@Autowired
+	private DBSpooler dbSpooler;
+
+	@Autowired
+	private Environment env;
+
+	@Autowired
+	private ScriptHistoryRepository scriptHistoryRepository;
+
+	// absent when the history is kept in journal files
+	@Autowired(required = false)
+	private JdbcTemplate jdbcTemplate;
+
+	public boolean isEnabled() {
+		return StringUtils.isNotBlank(appSettings.getTargetsFile());
+	}
+
+	/**
+	 * @return outcome of each target, in the order of the targets file.
+	 */
+	public List<TargetDeploymentResult> deploy(File scriptsDir) {
+		return deploy(scriptsDir, ScriptSelection.ALL);
+	}
+
+	/**
+	 * @return outcome of each target for the selected scripts, in the order of the targets file.
+	 */
+	public List<TargetDeploymentResult> deploy(File scriptsDir, ScriptSelection selection) {
+		List<DeploymentTarget> targets = TargetFileUtils.read(Paths.get(appSettings.getTargetsFile()));
+		int parallelism = Math.max(1, Math.min(appSettings.getTargetsParallelism(), targets.size()));
+
+		ScriptCatalog catalog = fileProcessorService.catalog(scriptsDir, selection);
+		LOGGER.info("<-- targets --> {} script(s) found, deploying to {} target(s), {} at a time",
+				catalog.getScripts().size(), targets.size(), parallelism);
+
+		Map<String, List<String>> scriptTemplates = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<TargetDeploymentResult>> futures = new ArrayList<>(targets.size());
+			for (DeploymentTarget target : targets) {
+				futures.add(executor.submit(() -> deploy(target, catalog, scriptTemplates)));
+			}
+			List<TargetDeploymentResult> results = new ArrayList<>(targets.size());
+			for (Future<TargetDeploymentResult> future : futures) {
+				results.add(future.get());
+			}
+			logSummary(results);
+			return results;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Deployment to targets interrupted.", ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private TargetDeploymentResult deploy(DeploymentTarget target, ScriptCatalog catalog,
+			Map<String, List<String>> scriptTemplates) {
+		long start = System.currentTimeMillis();
+		long plannedScripts = -1;
+		DeploymentContext context = null;
+		try (MDC.MDCCloseable mdc = MDC.putCloseable(TargetLogFilter.TARGET_KEY, target.getName())) {
+			try {
+				LOGGER.info("<-- target --> {} started", target.getName());
+				context = context(target, scriptTemplates);
+				dbSpooler.spoolDB("before_" + target.getName() + "_", context.getScriptHistoryRepository());
+				DeploymentPlan plan = fileProcessorService.plan(catalog, context);
+				plannedScripts = plan.getScripts().size() - plan.count(ScriptAction.SKIP);
+				boolean succeeded = fileProcessorService.apply(plan, catalog.getScriptsDir(), context);
+				dbSpooler.spoolDB("after_" + target.getName() + "_", context.getScriptHistoryRepository());
+				LOGGER.info("<-- target --> {} {}", target.getName(), succeeded ? "finished" : "finished with failures");
+				return new TargetDeploymentResult(target.getName(), succeeded,
+						succeeded ? null : "one or more scripts failed", plannedScripts,
+						System.currentTimeMillis() - start);
+			} catch (Exception ex) {
+				if (appSettings.isTraceRequired()) {
+					LOGGER.error("<-- target --> " + target.getName() + " failed: " + ex.getMessage(), ex);
+				} else {
+					LOGGER.error("<-- target --> {} failed: {}", target.getName(), ex.getMessage());
+				}
+				return new TargetDeploymentResult(target.getName(), false, ex.getMessage(), plannedScripts,
+						System.currentTimeMillis() - start);
+			} finally {
+				if (context != null && context.getScriptHistoryRepository() != scriptHistoryRepository
+						&& context.getScriptHistoryRepository() instanceof JournalScriptHistoryRepository) {
+					((JournalScriptHistoryRepository) context.getScriptHistoryRepository()).close();
+				}
+			}
+		}
+	}
+
+	private DeploymentContext context(DeploymentTarget target, Map<String, List<String>> scriptTemplates) {
+		Map<String, String> scriptVariables = new HashMap<>();
+		if (StringUtils.isNotBlank(appSettings.getScriptVariables())) {
+			for (String variableName : appSettings.getScriptVariables().split(",")) {
+				scriptVariables.put(variableName.trim(), env.getProperty(variableName));
+			}
+		}
+		scriptVariables.putAll(target.getVariables());
+		StringSubstitutor variablesSubstitutor = new StringSubstitutor(scriptVariables);
+
+		String consoleCommand = target.getConsoleCommand() != null ? target.getConsoleCommand()
+				: appSettings.getConsoleCommand();
+		String consoleCommandLogging = target.getConsoleCommand() != null ? target.getConsoleCommand()
+				: appSettings.getConsoleCommandLogging();
+		return new DeploymentContext(target.getName(), historyRepository(target), variablesSubstitutor,
+				!scriptVariables.isEmpty(), variablesSubstitutor.replace(consoleCommand), consoleCommandLogging,
+				variablesSubstitutor.replace(appSettings.getConsoleStdinCommand()),
+				"scriptTmpFile." + target.getName() + ".txt", scriptTemplates);
+	}
+
+	protected ScriptHistoryRepository historyRepository(DeploymentTarget target) {
+		if (appSettings.isHistoryJournal()) {
+			// [prefix]history.journal next to the main journal, the main journal itself without prefix
+			Path journalFile = Paths.get(appSettings.getHistoryJournalFile());
+			Path targetJournalFile = journalFile.resolveSibling(target.getTableNamePrefix() + journalFile.getFileName());
+			if (targetJournalFile.equals(journalFile)) {
+				return scriptHistoryRepository;
+			}
+			return new JournalScriptHistoryRepository(targetJournalFile);
+		}
+		JdbcScriptHistoryRepository scriptHistoryRepository = new JdbcScriptHistoryRepository(jdbcTemplate,
+				target.getTableNamePrefix());
+		scriptHistoryRepository.createTableIfMissing();
+		return scriptHistoryRepository;
+	}
+
+	private void logSummary(List<TargetDeploymentResult> results) {
+		long failed = results.stream().filter(r -> !r.isSucceeded()).count();
+		LOGGER.info("=================================================");
+		LOGGER.info("Targets summary [succeeded: {}, failed: {}]", results.size() - failed, failed);
+		for (TargetDeploymentResult result : results) {
+			if (result.isSucceeded()) {
+				LOGGER.info("\t<-- ok     --> {} [{} script(s), {} ms]", result.getName(), result.getPlannedScripts(),
+						result.getDurationMillis());
+			} else {
+				LOGGER.error("\t<-- failed --> {} [{} ms] {}", result.getName(), result.getDurationMillis(),
+						result.getMessage());
+			}
+		}
+		LOGGER.info("=================================================");
+	}
+}
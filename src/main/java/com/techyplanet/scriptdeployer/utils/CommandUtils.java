@@ -1,13 +1,24 @@
 package com.techyplanet.scriptdeployer.utils;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteException;
 import org.apache.commons.exec.ExecuteStreamHandler;
 import org.apache.commons.exec.LogOutputStream;
 import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,26 +30,134 @@ public class CommandUtils {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(CommandUtils.class);
 
+	public static final int DEFAULT_TAIL_BYTES = 64 * 1024;
+
+	/**
+	 * Timings of a command execution, durations in nanoseconds.
+	 */
+	public interface ExecutionListener {
+
+		/**
+		 * @param spawnNanos time it took to start the process.
+		 */
+		void processStarted(long spawnNanos);
+
+		/**
+		 * @param exitCode exit code of the process, -1 if it couldn't be started.
+		 */
+		void processEnded(int exitCode, long nanos);
+
+		/**
+		 * @param bytes bytes the process wrote to its standard and error outputs.
+		 */
+		default void outputCaptured(long bytes) {
+		}
+
+		/**
+		 * @return stream the output of the process is copied to as it arrives, null for none.
+		 */
+		default OutputStream outputWatcher() {
+			return null;
+		}
+	}
+
 	public static final boolean executeAndPrintOnFail(String command, boolean stopOnScriptFail) {
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream);
+		return executeAndPrintOnFail(command, stopOnScriptFail, null);
+	}
+
+	public static final boolean executeAndPrintOnFail(String command, boolean stopOnScriptFail,
+			ExecutionListener listener) {
+		return executeAndPrintOnFail(command, stopOnScriptFail, listener, DEFAULT_TAIL_BYTES, false,
+				Collections.emptyList());
+	}
+
+	public static final boolean executeAndPrintOnFail(String command, boolean stopOnScriptFail,
+			ExecutionListener listener, int tailBytes, boolean spill, List<Pattern> errorPatterns) {
+		return executeAndPrintOnFail(command, stopOnScriptFail, listener, tailBytes, spill, errorPatterns, null);
+	}
+
+	/**
+	 * @param tailBytes     last bytes of the output kept in memory and printed if the command fails.
+	 * @param spill         whether the whole output is also kept in a temporary file, deleted if the command
+	 *                      succeeds.
+	 * @param errorPatterns output lines failing the command as soon as they are printed.
+	 * @param input         fed to the standard input of the command, null for none.
+	 */
+	public static final boolean executeAndPrintOnFail(String command, boolean stopOnScriptFail,
+			ExecutionListener listener, int tailBytes, boolean spill, List<Pattern> errorPatterns, InputStream input) {
+		TailOutputStream outputStream;
+		try {
+			outputStream = new TailOutputStream(tailBytes, spill);
+		} catch (IOException ex) {
+			throw new RuntimeException("Temporary file for the command output can't be created.", ex);
+		}
+		ErrorPatternDetector detector = detector(errorPatterns);
+		PumpStreamHandler streamHandler = streamHandler(watched(outputStream, detector, listener), input);
+		boolean succeeded = false;
 		try {
-			checkOSAndExecute(command, streamHandler);
+			checkOSAndExecute(command, streamHandler, listener, detector);
+			succeeded = true;
 			return true;
 		} catch (Exception ex) {
+			closeQuietly(outputStream);
 			LOGGER.error(
-					"Error occured in command execution.\n=============================Error Output===========================\n\n{}\n\n====================================================================",
-					outputStream.toString());
+					"Error occured in command execution.\n=============================Error Output===========================\n{}\n{}\n\n====================================================================",
+					outputStream.isTruncated()
+							? String.format("(last %d of %d bytes%s)\n", tailBytes, outputStream.getCount(),
+									spill ? ", whole output in " + outputStream.getSpillFile() : "")
+							: "",
+					outputStream.tail());
 			if (stopOnScriptFail) {
 				throw new RuntimeException(ex);
 			}
 			return false;
+		} finally {
+			if (listener != null) {
+				listener.outputCaptured(outputStream.getCount());
+			}
+			closeQuietly(outputStream);
+			if (succeeded || !outputStream.isTruncated()) {
+				try {
+					outputStream.deleteSpillFile();
+				} catch (IOException ex) {
+					LOGGER.warn("Temporary output file [{}] can't be deleted.", outputStream.getSpillFile());
+				}
+			}
+		}
+	}
+
+	private static void closeQuietly(OutputStream outputStream) {
+		try {
+			outputStream.close();
+		} catch (IOException ex) {
+			LOGGER.warn("Command output can't be closed.", ex);
 		}
 	}
 
 	public static final boolean execute(String command, boolean stopOnScriptFail) {
+		return execute(command, stopOnScriptFail, null);
+	}
+
+	public static final boolean execute(String command, boolean stopOnScriptFail, ExecutionListener listener) {
+		return execute(command, stopOnScriptFail, listener, Collections.emptyList());
+	}
+
+	public static final boolean execute(String command, boolean stopOnScriptFail, ExecutionListener listener,
+			List<Pattern> errorPatterns) {
+		return execute(command, stopOnScriptFail, listener, errorPatterns, null);
+	}
+
+	/**
+	 * @param errorPatterns output lines failing the command as soon as they are printed.
+	 * @param input         fed to the standard input of the command, null for none.
+	 */
+	public static final boolean execute(String command, boolean stopOnScriptFail, ExecutionListener listener,
+			List<Pattern> errorPatterns, InputStream input) {
+		CountingOutputStream outputStream = new CountingOutputStream(dynmaicLogOutputStream());
+		ErrorPatternDetector detector = detector(errorPatterns);
 		try {
-			checkOSAndExecute(command, dynmaicLogStreamHandler());
+			checkOSAndExecute(command, streamHandler(watched(outputStream, detector, listener), input), listener,
+					detector);
 			return true;
 		} catch (Exception ex) {
 			LOGGER.error("Error occured in command execution.");
@@ -46,10 +165,65 @@ public class CommandUtils {
 				throw new RuntimeException(ex);
 			}
 			return false;
+		} finally {
+			if (listener != null) {
+				listener.outputCaptured(outputStream.getByteCount());
+			}
+		}
+	}
+
+	public static final boolean executeToFile(String command, boolean stopOnScriptFail, File outputFile,
+			ExecutionListener listener, List<Pattern> errorPatterns) {
+		return executeToFile(command, stopOnScriptFail, outputFile, listener, errorPatterns, null);
+	}
+
+	/**
+	 * Runs the command with its output written to the given file only, keeping it out of the deployment log.
+	 *
+	 * @param input fed to the standard input of the command, null for none.
+	 */
+	public static final boolean executeToFile(String command, boolean stopOnScriptFail, File outputFile,
+			ExecutionListener listener, List<Pattern> errorPatterns, InputStream input) {
+		try (CountingOutputStream outputStream = new CountingOutputStream(
+				new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+			ErrorPatternDetector detector = detector(errorPatterns);
+			try {
+				checkOSAndExecute(command, streamHandler(watched(outputStream, detector, listener), input), listener,
+						detector);
+				return true;
+			} catch (Exception ex) {
+				LOGGER.error("Error occured in command execution, output in [{}].", outputFile);
+				if (stopOnScriptFail) {
+					throw new RuntimeException(ex);
+				}
+				return false;
+			} finally {
+				if (listener != null) {
+					listener.outputCaptured(outputStream.getByteCount());
+				}
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Output file [%s] can't be written.", outputFile), ex);
 		}
 	}
 
-	private static final int checkOSAndExecute(String command, ExecuteStreamHandler executeStreamHandler) {
+	private static PumpStreamHandler streamHandler(OutputStream outputStream, InputStream input) {
+		return new PumpStreamHandler(outputStream, outputStream, input);
+	}
+
+	private static ErrorPatternDetector detector(List<Pattern> errorPatterns) {
+		return errorPatterns == null || errorPatterns.isEmpty() ? null : new ErrorPatternDetector(errorPatterns);
+	}
+
+	private static OutputStream watched(OutputStream outputStream, ErrorPatternDetector detector,
+			ExecutionListener listener) {
+		OutputStream watched = detector == null ? outputStream : new TeeOutputStream(outputStream, detector);
+		OutputStream outputWatcher = listener == null ? null : listener.outputWatcher();
+		return outputWatcher == null ? watched : new TeeOutputStream(watched, outputWatcher);
+	}
+
+	private static final int checkOSAndExecute(String command, ExecuteStreamHandler executeStreamHandler,
+			ExecutionListener listener, ErrorPatternDetector detector) {
 		CommandLine commandLine = null;
 		if (SystemUtils.IS_OS_WINDOWS) {
 			commandLine = CommandLine.parse("cmd.exe ");
@@ -60,27 +234,100 @@ public class CommandUtils {
 			commandLine.addArgument("-c");
 			commandLine.addArgument(command, false);
 		}
-		int exitCode = executeCommand(commandLine, executeStreamHandler);
+		int exitCode;
+		try {
+			exitCode = executeCommand(commandLine, executeStreamHandler, listener, detector);
+		} catch (RuntimeException ex) {
+			throw detector != null && detector.hasMatched() ? errorMatched(detector) : ex;
+		}
+		if (detector != null && detector.hasMatched()) {
+			// the command may have ended on its own before being killed
+			throw errorMatched(detector);
+		}
 		return exitCode;
 
 	}
 
-	private static final int executeCommand(CommandLine commandLine, ExecuteStreamHandler executeStreamHandler) {
+	private static RuntimeException errorMatched(ErrorPatternDetector detector) {
+		LOGGER.error("Output matched error pattern [{}], command killed --> {}", detector.getMatchedPattern(),
+				detector.getMatchedLine());
+		return new RuntimeException(String.format("Output matched error pattern [%s]: %s",
+				detector.getMatchedPattern(), detector.getMatchedLine()));
+	}
+
+	private static final int executeCommand(CommandLine commandLine, ExecuteStreamHandler executeStreamHandler,
+			ExecutionListener listener, ErrorPatternDetector detector) {
 		DefaultExecutor defaultExecutor = new DefaultExecutor();
+		if (detector != null) {
+			defaultExecutor.setWatchdog(detector.getWatchdog());
+		}
 
+		long start = System.nanoTime();
 		defaultExecutor.setExitValue(0);
-		defaultExecutor.setStreamHandler(executeStreamHandler);
+		defaultExecutor.setStreamHandler(
+				listener == null ? executeStreamHandler : new TimedStreamHandler(executeStreamHandler, start, listener));
 
+		int exitCode = -1;
 		try {
-			return defaultExecutor.execute(commandLine);
+			exitCode = defaultExecutor.execute(commandLine);
+			return exitCode;
+		} catch (ExecuteException ex) {
+			exitCode = ex.getExitValue();
+			throw new RuntimeException(ex);
 		} catch (Exception ex) {
 			throw new RuntimeException(ex);
+		} finally {
+			if (listener != null) {
+				listener.processEnded(exitCode, System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Reports the process as started when its streams start being pumped, which happens right after it is spawned.
+	 */
+	private static class TimedStreamHandler implements ExecuteStreamHandler {
+
+		private final ExecuteStreamHandler delegate;
+		private final long start;
+		private final ExecutionListener listener;
+
+		TimedStreamHandler(ExecuteStreamHandler delegate, long start, ExecutionListener listener) {
+			this.delegate = delegate;
+			this.start = start;
+			this.listener = listener;
+		}
+
+		@Override
+		public void setProcessInputStream(OutputStream os) throws IOException {
+			delegate.setProcessInputStream(os);
+		}
+
+		@Override
+		public void setProcessErrorStream(InputStream is) throws IOException {
+			delegate.setProcessErrorStream(is);
+		}
+
+		@Override
+		public void setProcessOutputStream(InputStream is) throws IOException {
+			delegate.setProcessOutputStream(is);
+		}
+
+		@Override
+		public void start() throws IOException {
+			listener.processStarted(System.nanoTime() - start);
+			delegate.start();
+		}
+
+		@Override
+		public void stop() throws IOException {
+			delegate.stop();
 		}
 	}
 
-	private static PumpStreamHandler dynmaicLogStreamHandler() {
+	private static LogOutputStream dynmaicLogOutputStream() {
 		final Map<String, String> loggerContextMap = MDC.getCopyOfContextMap();
-		return new PumpStreamHandler(new LogOutputStream() {
+		return new LogOutputStream() {
 			@Override
 			protected void processLine(String logLine, int logLevel) {
 				if (loggerContextMap != null)
@@ -95,6 +342,6 @@ public class CommandUtils {
 					LOGGER.info(logLine);
 				}
 			}
-		});
+		};
 	}
 }
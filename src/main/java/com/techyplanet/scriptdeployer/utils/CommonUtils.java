@@ -2,18 +2,31 @@ package com.techyplanet.scriptdeployer.utils;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ObjLongConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.HexFormat;
 
+import com.techyplanet.scriptdeployer.jfr.ChecksumComputedEvent;
+
 
 public class CommonUtils {
 
+	private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
 	public static Comparator<File> scriptPrioritySorter(String fileRegexPattern, boolean sameSequenceAllowed) {
 		return scriptPrioritySorter(fileRegexPattern, true, sameSequenceAllowed);
 	}
@@ -68,19 +81,101 @@ public class CommonUtils {
 	}
 
 	public static String generateFileChecksum(Path path) {
+		return generateFileChecksum(path, false);
+	}
+
+	/**
+	 * @param decompress whether compressed scripts are hashed by their logical content, as they decompress.
+	 */
+	public static String generateFileChecksum(Path path, boolean decompress) {
+		ChecksumComputedEvent event = new ChecksumComputedEvent();
+		event.begin();
+		long[] bytes = new long[1];
+		String checksum;
+		try (InputStream content = CompressedFileUtils.open(path, decompress)) {
+			checksum = generateChecksum(content, bytes);
+		} catch (IOException ex) {
+			throw new RuntimeException("Checksum of file can't be generated.", ex);
+		}
+		if (event.shouldCommit()) {
+			event.path = path.toString();
+			event.bytes = bytes[0];
+			event.commit();
+		}
+		return checksum;
+	}
+
+	/**
+	 * @return checksum of everything left in the stream, which is read but not closed.
+	 */
+	public static String generateChecksum(InputStream content) throws IOException {
+		return generateChecksum(content, new long[1]);
+	}
+
+	private static String generateChecksum(InputStream content, long[] bytes) throws IOException {
 		MessageDigest messageDigest;
-		byte[] digest;
 		try {
 			messageDigest = MessageDigest.getInstance("MD5");
-			messageDigest.update(Files.readAllBytes(path));
-			digest = messageDigest.digest();
-		} catch (NoSuchAlgorithmException | IOException ex) {
+		} catch (NoSuchAlgorithmException ex) {
 			throw new RuntimeException("Checksum of file can't be generated.", ex);
 		}
-		String checksum = HexFormat.of().formatHex(digest).toUpperCase();
-		if (checksum == null) {
-			throw new RuntimeException("Checksum of file can't be generated.");
+		byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+		int read;
+		while ((read = content.read(buffer)) != -1) {
+			messageDigest.update(buffer, 0, read);
+			bytes[0] += read;
+		}
+		return HexFormat.of().formatHex(messageDigest.digest()).toUpperCase();
+	}
+
+	public static Map<Path, String> generateFileChecksums(Collection<Path> paths, int threads, boolean decompress) {
+		return generateFileChecksums(paths, threads, decompress, null);
+	}
+
+	/**
+	 * @param timing told, from the hashing thread, how many nanoseconds each file took to hash. May be null.
+	 */
+	public static Map<Path, String> generateFileChecksums(Collection<Path> paths, int threads, boolean decompress,
+			ObjLongConsumer<Path> timing) {
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		Map<Path, String> checksums = new HashMap<>(paths.size());
+		if (poolSize == 1 || paths.size() <= 1) {
+			for (Path path : paths) {
+				checksums.put(path, generateFileChecksum(path, decompress, timing));
+			}
+			return checksums;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(poolSize, paths.size()));
+		try {
+			Map<Path, Future<String>> futures = new LinkedHashMap<>(paths.size());
+			for (Path path : paths) {
+				futures.put(path, executor.submit(() -> generateFileChecksum(path, decompress, timing)));
+			}
+			for (Map.Entry<Path, Future<String>> future : futures.entrySet()) {
+				checksums.put(future.getKey(), future.getValue().get());
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Checksum generation interrupted.", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new RuntimeException("Checksum of file can't be generated.", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return checksums;
+	}
+
+	private static String generateFileChecksum(Path path, boolean decompress, ObjLongConsumer<Path> timing) {
+		if (timing == null) {
+			return generateFileChecksum(path, decompress);
 		}
+		long start = System.nanoTime();
+		String checksum = generateFileChecksum(path, decompress);
+		timing.accept(path, System.nanoTime() - start);
 		return checksum;
 	}
 }
@@ -0,0 +1,79 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+
+/**
+ * Scripts kept compressed on disk, [name].gz or [name].zst, are matched, hashed and executed by their logical name
+ * and content, decompressed as a stream whenever they are read. Only done when app.scripts.compressed is set, the
+ * callers telling whether it is.
+ */
+public class CompressedFileUtils {
+
+	public static final String GZIP_EXTENSION = ".gz";
+
+	public static final String ZSTD_EXTENSION = ".zst";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	public static boolean isCompressed(String fileName) {
+		return fileName.endsWith(GZIP_EXTENSION) || fileName.endsWith(ZSTD_EXTENSION);
+	}
+
+	public static boolean isCompressed(File file) {
+		return isCompressed(file.getName());
+	}
+
+	/**
+	 * @return name of the file once decompressed, the name itself if it isn't compressed.
+	 */
+	public static String logicalName(String fileName) {
+		if (fileName.endsWith(GZIP_EXTENSION)) {
+			return fileName.substring(0, fileName.length() - GZIP_EXTENSION.length());
+		}
+		if (fileName.endsWith(ZSTD_EXTENSION)) {
+			return fileName.substring(0, fileName.length() - ZSTD_EXTENSION.length());
+		}
+		return fileName;
+	}
+
+	/**
+	 * @return logical content of the file, decompressed on the fly if needed.
+	 */
+	public static InputStream open(Path path) throws IOException {
+		return decompressed(path.getFileName().toString(),
+				new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+	}
+
+	/**
+	 * @param decompress whether compressed files are decompressed, false reading every file as it is.
+	 */
+	public static InputStream open(Path path, boolean decompress) throws IOException {
+		return decompress ? open(path) : new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+	}
+
+	/**
+	 * @return logical content of a file read from the given stream, closed if it can't be decompressed.
+	 */
+	public static InputStream decompressed(String fileName, InputStream in) throws IOException {
+		try {
+			if (fileName.endsWith(GZIP_EXTENSION)) {
+				return new GZIPInputStream(in, BUFFER_SIZE);
+			}
+			if (fileName.endsWith(ZSTD_EXTENSION)) {
+				return new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE);
+			}
+			return in;
+		} catch (IOException | RuntimeException ex) {
+			in.close();
+			throw ex;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.LogOutputStream;
+
+/**
+ * Watches the output of a command line by line as it arrives, and kills the command as soon as a line matches one of
+ * the error patterns, instead of waiting for the client to give up on its own.
+ */
+public class ErrorPatternDetector extends LogOutputStream {
+
+	private final List<Pattern> errorPatterns;
+
+	private final ExecuteWatchdog watchdog = new ProcessTreeWatchdog();
+
+	private volatile Pattern matchedPattern;
+
+	private volatile String matchedLine;
+
+	public ErrorPatternDetector(List<Pattern> errorPatterns) {
+		this.errorPatterns = errorPatterns;
+	}
+
+	@Override
+	protected void processLine(String line, int logLevel) {
+		if (matchedPattern != null) {
+			return;
+		}
+		for (Pattern errorPattern : errorPatterns) {
+			if (errorPattern.matcher(line).find()) {
+				matchedLine = line;
+				matchedPattern = errorPattern;
+				watchdog.destroyProcess();
+				return;
+			}
+		}
+	}
+
+	// standard and error outputs are pumped by two threads, lines mustn't be mixed
+	@Override
+	public synchronized void write(int cc) throws IOException {
+		super.write(cc);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		super.write(b, off, len);
+	}
+
+	@Override
+	public synchronized void flush() {
+		super.flush();
+	}
+
+	public ExecuteWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	public boolean hasMatched() {
+		return matchedPattern != null;
+	}
+
+	public Pattern getMatchedPattern() {
+		return matchedPattern;
+	}
+
+	public String getMatchedLine() {
+		return matchedLine;
+	}
+
+	/**
+	 * Kills the children of the shell running the command as well, so that the client doesn't keep the output open
+	 * after the shell is gone.
+	 */
+	private static class ProcessTreeWatchdog extends ExecuteWatchdog {
+
+		private Process process;
+
+		ProcessTreeWatchdog() {
+			super(ExecuteWatchdog.INFINITE_TIMEOUT);
+		}
+
+		@Override
+		public synchronized void start(Process processToMonitor) {
+			process = processToMonitor;
+			notifyAll();
+			super.start(processToMonitor);
+		}
+
+		@Override
+		public synchronized void destroyProcess() {
+			// output may be read before the executor hands over the process
+			while (process == null) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			process.descendants().forEach(ProcessHandle::destroyForcibly);
+			super.destroyProcess();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.eclipse.jgit.api.DiffCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+/**
+ * Read only queries against the local git repository holding the scripts, no remote is ever contacted.
+ */
+public class GitUtils {
+
+	/**
+	 * @return id of the commit checked out in the repository holding the given directory, null if the directory is
+	 *         not part of a git working tree.
+	 */
+	public static String headCommit(File dir) {
+		try (Repository repository = open(dir)) {
+			if (repository == null) {
+				return null;
+			}
+			ObjectId head = repository.resolve(Constants.HEAD);
+			return head == null ? null : head.getName();
+		} catch (IOException | RevisionSyntaxException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if no tracked file under the given directory differs from the checked out commit.
+	 */
+	public static boolean isClean(File dir) {
+		try (Repository repository = open(dir); Git git = repository == null ? null : new Git(repository)) {
+			if (repository == null) {
+				return false;
+			}
+			return status(git, pathFilter(prefix(repository, dir))).getUncommittedChanges().isEmpty();
+		} catch (IOException | GitAPIException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Paths, relative to the given directory, which may differ from their content in the given commit: committed
+	 * changes since then plus uncommitted, untracked and ignored files of the working tree.
+	 *
+	 * @return changed paths, null if they can't be determined (not a git working tree, unknown commit).
+	 */
+	public static Set<String> changedPaths(File dir, String sinceCommit) {
+		try (Repository repository = open(dir); Git git = repository == null ? null : new Git(repository)) {
+			if (repository == null) {
+				return null;
+			}
+			ObjectId sinceTree = repository.resolve(sinceCommit + "^{tree}");
+			ObjectId headTree = repository.resolve(Constants.HEAD + "^{tree}");
+			if (sinceTree == null || headTree == null) {
+				return null;
+			}
+
+			String prefix = prefix(repository, dir);
+			Set<String> changedPaths = new HashSet<>();
+			try (ObjectReader reader = repository.newObjectReader()) {
+				CanonicalTreeParser oldTree = new CanonicalTreeParser();
+				oldTree.reset(reader, sinceTree);
+				CanonicalTreeParser newTree = new CanonicalTreeParser();
+				newTree.reset(reader, headTree);
+				DiffCommand diff = git.diff().setOldTree(oldTree).setNewTree(newTree).setShowNameAndStatusOnly(true);
+				if (!prefix.isEmpty()) {
+					diff.setPathFilter(PathFilter.create(pathFilter(prefix)));
+				}
+				for (DiffEntry entry : diff.call()) {
+					addRelative(changedPaths, prefix, entry.getOldPath());
+					addRelative(changedPaths, prefix, entry.getNewPath());
+				}
+			}
+
+			Status status = status(git, pathFilter(prefix));
+			for (String path : status.getUncommittedChanges()) {
+				addRelative(changedPaths, prefix, path);
+			}
+			for (String path : status.getUntracked()) {
+				addRelative(changedPaths, prefix, path);
+			}
+			for (String path : status.getIgnoredNotInIndex()) {
+				addIgnored(changedPaths, prefix, repository.getWorkTree().toPath().resolve(path), path);
+			}
+			return changedPaths;
+		} catch (IOException | GitAPIException | RevisionSyntaxException ex) {
+			return null;
+		}
+	}
+
+	private static Repository open(File dir) throws IOException {
+		FileRepositoryBuilder builder = new FileRepositoryBuilder().findGitDir(dir.getAbsoluteFile());
+		if (builder.getGitDir() == null) {
+			return null;
+		}
+		Repository repository = builder.build();
+		if (repository.isBare()) {
+			repository.close();
+			return null;
+		}
+		return repository;
+	}
+
+	private static Status status(Git git, String pathFilter) throws GitAPIException {
+		StatusCommand statusCommand = git.status();
+		if (!pathFilter.isEmpty()) {
+			statusCommand.addPath(pathFilter);
+		}
+		return statusCommand.call();
+	}
+
+	/**
+	 * @return location of the directory inside the working tree with a trailing '/', empty for the work tree root.
+	 */
+	private static String prefix(Repository repository, File dir) throws IOException {
+		Path workTree = repository.getWorkTree().toPath().toRealPath();
+		Path scriptsDir = dir.toPath().toRealPath();
+		String prefix = workTree.relativize(scriptsDir).toString().replace(File.separatorChar, '/');
+		return prefix.isEmpty() ? prefix : prefix + "/";
+	}
+
+	private static String pathFilter(String prefix) {
+		return prefix.isEmpty() ? prefix : prefix.substring(0, prefix.length() - 1);
+	}
+
+	private static void addRelative(Set<String> changedPaths, String prefix, String path) {
+		if (path != null && !DiffEntry.DEV_NULL.equals(path) && path.startsWith(prefix)) {
+			changedPaths.add(path.substring(prefix.length()));
+		}
+	}
+
+	private static void addIgnored(Set<String> changedPaths, String prefix, Path ignored, String path)
+			throws IOException {
+		if (!Files.isDirectory(ignored)) {
+			addRelative(changedPaths, prefix, path);
+			return;
+		}
+		try (Stream<Path> files = Files.walk(ignored)) {
+			files.filter(Files::isRegularFile).forEach(file -> addRelative(changedPaths, prefix,
+					path + "/" + ignored.relativize(file).toString().replace(File.separatorChar, '/')));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+/**
+ * UTF-8 text read line by line and mapped on the fly, each line ended the way {@link java.io.PrintWriter#println()}
+ * does, so that a script can be substituted while it is streamed.
+ */
+public class LineMappingInputStream extends InputStream {
+
+	private final BufferedReader reader;
+
+	private final UnaryOperator<String> mapper;
+
+	private byte[] line = new byte[0];
+
+	private int position;
+
+	public LineMappingInputStream(InputStream in, UnaryOperator<String> mapper) {
+		this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		this.mapper = mapper;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return line[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int read = Math.min(len, line.length - position);
+		System.arraycopy(line, position, b, off, read);
+		position += read;
+		return read;
+	}
+
+	private boolean fill() throws IOException {
+		while (position == line.length) {
+			String next = reader.readLine();
+			if (next == null) {
+				return false;
+			}
+			line = (mapper.apply(next) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+			position = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,86 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+
+import com.techyplanet.scriptdeployer.model.DiscoveredScript;
+import com.techyplanet.scriptdeployer.model.ScriptManifest;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+
+/**
+ * Reads and writes script manifests as tab separated text, one script per line in execution order. Version 1
+ * manifests, without tags, are still read.
+ */
+public class ManifestFileUtils {
+
+	private static final String HEADER = "#script-deployer-manifest";
+
+	private static final String VERSION = "2";
+
+	private static final String VERSION_WITHOUT_TAGS = "1";
+
+	private static final String COLUMNS = "phase\tpattern\tpath\tsequence\tchecksum\ttags";
+
+	public static void write(ScriptManifest manifest, Path manifestFile) {
+		try {
+			if (manifestFile.getParent() != null) {
+				Files.createDirectories(manifestFile.getParent());
+			}
+			try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8))) {
+				pw.println(HEADER + "\t" + VERSION);
+				pw.println("#patterns\t" + manifest.getPatternsFingerprint().replace("\n", "\t"));
+				pw.println("#" + COLUMNS);
+				for (DiscoveredScript s : manifest.getScripts()) {
+					Set<String> tags = manifest.getTags().getOrDefault(s.getRelativePath(), Collections.emptySet());
+					pw.println(String.join("\t", s.getPhase().name(), s.getPattern(), s.getRelativePath(),
+							String.valueOf(s.getSequence()), s.getChecksum(), String.join(",", tags)));
+				}
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Manifest file [%s] can't be written.", manifestFile), ex);
+		}
+	}
+
+	/**
+	 * @param scriptsDir directory the paths of the manifest are relative to.
+	 */
+	public static ScriptManifest read(Path manifestFile, File scriptsDir) {
+		try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			boolean withTags = (HEADER + "\t" + VERSION).equals(header);
+			if (!withTags && !(HEADER + "\t" + VERSION_WITHOUT_TAGS).equals(header)) {
+				throw new RuntimeException(String.format("[%s] is not a script manifest file.", manifestFile));
+			}
+			String patterns = reader.readLine();
+			if (patterns == null || !patterns.startsWith("#patterns\t")) {
+				throw new RuntimeException(String.format("Manifest file [%s] is missing patterns header.", manifestFile));
+			}
+			ScriptManifest manifest = new ScriptManifest(patterns.substring("#patterns\t".length()).replace("\t", "\n"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] cols = line.split("\t", -1);
+				if (cols.length != (withTags ? 6 : 5)) {
+					throw new RuntimeException(String.format("Invalid entry in manifest file [%s] --> %s", manifestFile, line));
+				}
+				manifest.getScripts().add(new DiscoveredScript(ScriptPhase.valueOf(cols[0]), cols[1],
+						new File(scriptsDir, cols[2]), cols[2], Long.valueOf(cols[3]), cols[4]));
+				if (withTags && !cols[5].isEmpty()) {
+					manifest.getTags().put(cols[2], ScriptTagUtils.parse(cols[5]));
+				}
+			}
+			return manifest;
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Manifest file [%s] can't be read.", manifestFile), ex);
+		}
+	}
+}
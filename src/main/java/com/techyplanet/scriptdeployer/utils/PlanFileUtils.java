@@ -0,0 +1,138 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.stream.Collectors;
+
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+
+/**
+ * Reads and writes deployment plans as tab separated text, one script per line.
+ */
+public class PlanFileUtils {
+
+	private static final String HEADER = "#script-deployer-plan";
+
+	private static final String VERSION = "1";
+
+	private static final String COLUMNS = "order\tphase\taction\tpath\tpattern\ttype\tsequence\tversion\tchecksum\tsize\thistory pattern\tcreate date";
+
+	private static final String NONE = "-";
+
+	/** Optional header of plans limited to part of the scripts. */
+	private static final String SELECTION = "#selection";
+
+	public static void write(DeploymentPlan plan, Path planFile) {
+		try {
+			if (planFile.getParent() != null) {
+				Files.createDirectories(planFile.getParent());
+			}
+			try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(planFile, StandardCharsets.UTF_8))) {
+				write(plan, pw);
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Plan file [%s] can't be written.", planFile), ex);
+		}
+	}
+
+	public static void write(DeploymentPlan plan, PrintWriter pw) {
+		pw.println(HEADER + "\t" + VERSION);
+		pw.println("#location\t" + plan.getScriptsLocation());
+		pw.println("#history\t" + plan.getHistoryFingerprint());
+		pw.println("#created\t" + plan.getCreateDate().getTime());
+		pw.println("#phases\t" + plan.getPhases().stream().map(ScriptPhase::name).collect(Collectors.joining(",")));
+		if (plan.getSelection() != null) {
+			pw.println(SELECTION + "\t" + plan.getSelection());
+		}
+		pw.println("#" + COLUMNS);
+		for (PlannedScript s : plan.getScripts()) {
+			pw.println(entry(s));
+		}
+	}
+
+	/**
+	 * @return line of the script in a plan file.
+	 */
+	public static String entry(PlannedScript s) {
+		return String.join("\t", String.valueOf(s.getOrder()), s.getPhase().name(), s.getAction().name(),
+				s.getPath(), s.getPattern(), s.getType(), value(s.getSequence()),
+				value(s.getVersion()), value(s.getChecksum()), String.valueOf(s.getSize()),
+				s.getHistoryPattern(), s.getCreateDate() == null ? NONE : String.valueOf(s.getCreateDate().getTime()));
+	}
+
+	public static DeploymentPlan read(Path planFile) {
+		try (BufferedReader reader = Files.newBufferedReader(planFile, StandardCharsets.UTF_8)) {
+			return read(reader, planFile.toString());
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Plan file [%s] can't be read.", planFile), ex);
+		}
+	}
+
+	public static DeploymentPlan read(BufferedReader reader, String source) throws IOException {
+		String header = reader.readLine();
+		if (header == null || !header.equals(HEADER + "\t" + VERSION)) {
+			throw new RuntimeException(String.format("[%s] is not a deployment plan file.", source));
+		}
+		String location = headerValue(reader.readLine(), "#location", source);
+		String history = headerValue(reader.readLine(), "#history", source);
+		String created = headerValue(reader.readLine(), "#created", source);
+		String phases = headerValue(reader.readLine(), "#phases", source);
+
+		DeploymentPlan plan = new DeploymentPlan(location, history, new Date(Long.parseLong(created)));
+		for (String phase : phases.split(",")) {
+			if (!phase.isEmpty()) {
+				plan.getPhases().add(ScriptPhase.valueOf(phase));
+			}
+		}
+		plan.setVerifyChecksums(true);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith(SELECTION + "\t")) {
+				plan.setSelection(line.substring(SELECTION.length() + 1));
+				continue;
+			}
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			plan.add(parseEntry(line, source));
+		}
+		return plan;
+	}
+
+	/**
+	 * @return script of a line of a plan file.
+	 */
+	public static PlannedScript parseEntry(String line, String source) {
+		String[] cols = line.split("\t", -1);
+		if (cols.length != 12) {
+			throw new RuntimeException(String.format("Invalid entry in plan file [%s] --> %s", source, line));
+		}
+		return new PlannedScript(Integer.parseInt(cols[0]), ScriptPhase.valueOf(cols[1]), cols[4], cols[3],
+				longValue(cols[6]), NONE.equals(cols[8]) ? null : cols[8], Long.parseLong(cols[9]),
+				ScriptAction.valueOf(cols[2]), cols[5], longValue(cols[7]), cols[10],
+				NONE.equals(cols[11]) ? null : new Date(Long.parseLong(cols[11])));
+	}
+
+	private static String value(Object value) {
+		return value == null ? NONE : value.toString();
+	}
+
+	private static Long longValue(String value) {
+		return NONE.equals(value) ? null : Long.valueOf(value);
+	}
+
+	private static String headerValue(String line, String key, String source) {
+		if (line == null || !line.startsWith(key + "\t")) {
+			throw new RuntimeException(String.format("Plan file [%s] is missing [%s] header.", source, key));
+		}
+		return line.substring(key.length() + 1);
+	}
+}
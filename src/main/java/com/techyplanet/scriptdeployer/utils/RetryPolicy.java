@@ -0,0 +1,129 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.exec.LogOutputStream;
+
+/**
+ * Tells which script failures are transient, such as lock timeouts or a database out of connections, and how long to
+ * wait before running the script again. Delays grow exponentially from the initial backoff up to the maximum one, and
+ * are jittered so that targets failing together don't retry together.
+ */
+public class RetryPolicy {
+
+	private final int maxRetries;
+
+	private final Pattern scripts;
+
+	private final List<Pattern> outputPatterns;
+
+	private final Set<Integer> exitCodes;
+
+	private final long backoffMillis;
+
+	private final long maxBackoffMillis;
+
+	/**
+	 * @param maxRetries     times a failed script is run again, 0 never retries.
+	 * @param scripts        paths of the scripts which may be retried.
+	 * @param outputPatterns output lines marking a failure as transient.
+	 * @param exitCodes      exit codes marking a failure as transient. Without any pattern nor exit code, every
+	 *                       failure is.
+	 */
+	public RetryPolicy(int maxRetries, Pattern scripts, List<Pattern> outputPatterns, Set<Integer> exitCodes,
+			long backoffMillis, long maxBackoffMillis) {
+		this.maxRetries = maxRetries;
+		this.scripts = scripts;
+		this.outputPatterns = outputPatterns;
+		this.exitCodes = exitCodes;
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = Math.max(backoffMillis, maxBackoffMillis);
+	}
+
+	/**
+	 * @return true if failures of the script may be retried at all.
+	 */
+	public boolean applies(String relativePath) {
+		return maxRetries > 0 && scripts.matcher(relativePath).matches();
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * @return watcher of the output of one attempt, telling afterwards whether its failure is transient.
+	 */
+	public Classifier classifier() {
+		return new Classifier();
+	}
+
+	/**
+	 * @param retry  1 for the first retry.
+	 * @param random uniformly distributed in [0, 1).
+	 * @return delay before the retry, between half and all of the exponential backoff.
+	 */
+	public long backoffMillis(int retry, double random) {
+		long backoff = backoffMillis;
+		for (int i = 1; i < retry && backoff < maxBackoffMillis; i++) {
+			backoff *= 2;
+		}
+		backoff = Math.min(backoff, maxBackoffMillis);
+		return backoff / 2 + (long) (random * (backoff - backoff / 2));
+	}
+
+	/**
+	 * Output watcher of one attempt.
+	 */
+	public class Classifier extends LogOutputStream {
+
+		private volatile String matchedLine;
+
+		@Override
+		protected void processLine(String line, int logLevel) {
+			if (matchedLine != null) {
+				return;
+			}
+			for (Pattern outputPattern : outputPatterns) {
+				if (outputPattern.matcher(line).find()) {
+					matchedLine = line;
+					return;
+				}
+			}
+		}
+
+		// standard and error outputs are pumped by two threads, lines mustn't be mixed
+		@Override
+		public synchronized void write(int cc) throws IOException {
+			super.write(cc);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			super.write(b, off, len);
+		}
+
+		@Override
+		public synchronized void flush() {
+			super.flush();
+		}
+
+		/**
+		 * @param exitCode exit code of the failed attempt.
+		 * @return reason why the failure is transient, null if it isn't.
+		 */
+		public String transientReason(int exitCode) {
+			flush();
+			if (matchedLine != null) {
+				return "output [" + matchedLine + "]";
+			}
+			if (exitCodes.contains(exitCode)) {
+				return "exit code [" + exitCode + "]";
+			}
+			return outputPatterns.isEmpty() && exitCodes.isEmpty() ? "exit code [" + exitCode + "]" : null;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+/**
+ * Scripts location pointing at a release archive, [archive].zip or [archive].tar.gz, optionally followed by
+ * !/[folder] when the scripts are in a folder of the archive. Entries are read in place, nothing gets extracted but
+ * the scripts which have to run.
+ */
+public class ScriptArchiveUtils {
+
+	public static final String ENTRY_SEPARATOR = "!";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Size and checksum of a script read from an archive.
+	 */
+	public static class ArchivedScript {
+
+		private final long size;
+		private final String checksum;
+
+		public ArchivedScript(long size, String checksum) {
+			this.size = size;
+			this.checksum = checksum;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getChecksum() {
+			return checksum;
+		}
+	}
+
+	private interface EntryContent {
+
+		InputStream open() throws IOException;
+	}
+
+	private interface EntryVisitor {
+
+		void visit(String relativePath, long size, EntryContent content) throws IOException;
+	}
+
+	/**
+	 * @return true if the scripts location is an archive rather than a folder.
+	 */
+	public static boolean isArchive(File scriptsLocation) {
+		Path archive = archivePath(scriptsLocation);
+		String name = archive.getFileName() == null ? "" : archive.getFileName().toString().toLowerCase();
+		return (name.endsWith(".zip") || name.endsWith(".tar.gz") || name.endsWith(".tgz"))
+				&& Files.isRegularFile(archive);
+	}
+
+	/**
+	 * Reads the archive once, hashing the logical content of the scripts accepted by the filter.
+	 *
+	 * @param wanted     tells, from its path relative to the scripts folder of the archive, whether an entry is a
+	 *                   script.
+	 * @param decompress whether compressed scripts are hashed by their logical content.
+	 * @return scripts by path relative to the scripts folder of the archive, in archive order.
+	 */
+	public static Map<String, ArchivedScript> scan(File scriptsLocation, Predicate<String> wanted,
+			boolean decompress) {
+		Map<String, ArchivedScript> scripts = new LinkedHashMap<>();
+		forEachEntry(scriptsLocation, (relativePath, size, content) -> {
+			if (!wanted.test(relativePath)) {
+				return;
+			}
+			try (InputStream in = decompress ? CompressedFileUtils.decompressed(relativePath, content.open())
+					: content.open()) {
+				scripts.put(relativePath, new ArchivedScript(size, CommonUtils.generateChecksum(in)));
+			}
+		});
+		return scripts;
+	}
+
+	/**
+	 * @return size of every file of the scripts folder of the archive, by relative path.
+	 */
+	public static Map<String, Long> sizes(File scriptsLocation) {
+		Map<String, Long> sizes = new LinkedHashMap<>();
+		forEachEntry(scriptsLocation, (relativePath, size, content) -> sizes.put(relativePath, size));
+		return sizes;
+	}
+
+	/**
+	 * Extracts the given scripts, as they are in the archive, under the given folder.
+	 */
+	public static void extract(File scriptsLocation, Collection<String> relativePaths, Path dir) {
+		Set<String> remaining = new HashSet<>(relativePaths);
+		Path root = dir.toAbsolutePath().normalize();
+		forEachEntry(scriptsLocation, (relativePath, size, content) -> {
+			if (!remaining.remove(relativePath)) {
+				return;
+			}
+			Path target = root.resolve(relativePath).normalize();
+			if (!target.startsWith(root)) {
+				throw new RuntimeException(
+						String.format("Archive entry [%s] points outside of the extraction folder.", relativePath));
+			}
+			Files.createDirectories(target.getParent());
+			Path tmpFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+			try (InputStream in = content.open()) {
+				Files.copy(in, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(tmpFile, target, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(tmpFile);
+			}
+		});
+		if (!remaining.isEmpty()) {
+			throw new RuntimeException(String.format("Scripts %s not found in archive [%s].", remaining,
+					archivePath(scriptsLocation)));
+		}
+	}
+
+	private static void forEachEntry(File scriptsLocation, EntryVisitor visitor) {
+		Path archive = archivePath(scriptsLocation);
+		String folder = folder(scriptsLocation);
+		String name = archive.getFileName().toString().toLowerCase();
+		try {
+			if (name.endsWith(".zip")) {
+				try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+					Enumeration<? extends ZipEntry> entries = zipFile.entries();
+					while (entries.hasMoreElements()) {
+						ZipEntry entry = entries.nextElement();
+						String relativePath = relativePath(entry.getName(), folder);
+						if (!entry.isDirectory() && relativePath != null) {
+							visitor.visit(relativePath, entry.getSize(), () -> zipFile.getInputStream(entry));
+						}
+					}
+				}
+			} else {
+				try (TarArchiveInputStream tar = new TarArchiveInputStream(new GZIPInputStream(
+						new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE), BUFFER_SIZE))) {
+					TarArchiveEntry entry;
+					while ((entry = tar.getNextEntry()) != null) {
+						String relativePath = relativePath(entry.getName(), folder);
+						if (entry.isFile() && relativePath != null) {
+							visitor.visit(relativePath, entry.getSize(), () -> CloseShieldInputStream.wrap(tar));
+						}
+					}
+				}
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Archive [%s] can't be read.", archive), ex);
+		}
+	}
+
+	/**
+	 * @return path of the entry relative to the scripts folder, null if it's outside of it.
+	 */
+	private static String relativePath(String entryName, String folder) {
+		String path = entryName.replace('\\', '/');
+		while (path.startsWith("./") || path.startsWith("/")) {
+			path = path.substring(path.startsWith("/") ? 1 : 2);
+		}
+		if (!path.startsWith(folder) || path.length() == folder.length()) {
+			return null;
+		}
+		return path.substring(folder.length());
+	}
+
+	private static Path archivePath(File scriptsLocation) {
+		String location = scriptsLocation.getPath();
+		int separator = location.indexOf(ENTRY_SEPARATOR);
+		return Paths.get(separator < 0 ? location : location.substring(0, separator));
+	}
+
+	/**
+	 * @return folder of the archive holding the scripts, ending with '/', empty for the archive root.
+	 */
+	private static String folder(File scriptsLocation) {
+		String location = scriptsLocation.getPath();
+		int separator = location.indexOf(ENTRY_SEPARATOR);
+		if (separator < 0) {
+			return "";
+		}
+		String folder = location.substring(separator + ENTRY_SEPARATOR.length()).replace('\\', '/');
+		while (folder.startsWith("/")) {
+			folder = folder.substring(1);
+		}
+		return folder.isEmpty() || folder.endsWith("/") ? folder : folder + "/";
+	}
+}
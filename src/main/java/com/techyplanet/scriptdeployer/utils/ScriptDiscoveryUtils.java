@@ -0,0 +1,131 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.AbstractFileFilter;
+import org.apache.commons.io.filefilter.IOFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.commons.lang3.StringUtils;
+
+import com.techyplanet.scriptdeployer.model.DiscoveredScript;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+
+public class ScriptDiscoveryUtils {
+
+	/**
+	 * Lists the scripts of one class in execution order: pattern after pattern, each pattern sorted by sequence then
+	 * by name.
+	 *
+	 * @param compressed whether [name].gz and [name].zst files are matched by their logical name [name].
+	 */
+	public static List<DiscoveredScript> discover(File scriptsDir, ScriptPhase phase, String filePatternProp,
+			String filePatternDelimiter, boolean compressed) {
+		if (StringUtils.isBlank(filePatternProp)) {
+			return Collections.emptyList();
+		}
+		List<DiscoveredScript> discoveredScripts = new ArrayList<>();
+		for (String filePattern : filePatternProp.split(filePatternDelimiter)) {
+			discoveredScripts.addAll(discover(scriptsDir, phase, filePattern, compressed));
+		}
+		return discoveredScripts;
+	}
+
+	public static List<DiscoveredScript> discover(File scriptsDir, ScriptPhase phase, String filePattern,
+			boolean compressed) {
+		return discover(scriptsDir, phase, filePattern, (Collection<File>) null, compressed);
+	}
+
+	/**
+	 * @param candidates files under the scripts folder to match, null to list the folder.
+	 */
+	public static List<DiscoveredScript> discover(File scriptsDir, ScriptPhase phase, String filePattern,
+			Collection<File> candidates, boolean compressed) {
+		boolean seqNumApplicable = filePattern.contains("<seq_num>");
+		if (phase == ScriptPhase.S && !seqNumApplicable) {
+			throw new RuntimeException(
+					String.format("'<seq_num>' must be defined as part of one time file pattern [%s]", filePattern));
+		}
+
+		String fileRegexPattern = filePattern.replace("<seq_num>", "(\\d+)");
+		IOFileFilter filesFilter = logicalNameFilter(Pattern.compile(fileRegexPattern), compressed);
+		List<File> files;
+		if (candidates == null) {
+			files = (List<File>) FileUtils.listFiles(scriptsDir, filesFilter, TrueFileFilter.INSTANCE);
+		} else {
+			files = new ArrayList<>();
+			for (File candidate : candidates) {
+				if (filesFilter.accept(candidate)) {
+					files.add(candidate);
+				}
+			}
+		}
+
+		Collections.sort(files,
+				CommonUtils.scriptPrioritySorter(fileRegexPattern, seqNumApplicable, phase != ScriptPhase.S));
+
+		List<DiscoveredScript> discoveredScripts = new ArrayList<>(files.size());
+		for (File file : files) {
+			String relativePath = scriptsDir.toURI().relativize(file.toURI()).getPath();
+			String name = compressed ? CompressedFileUtils.logicalName(file.getName()) : file.getName();
+			Long sequence = CommonUtils.getFileSequence(fileRegexPattern, name, seqNumApplicable);
+			discoveredScripts.add(new DiscoveredScript(phase, filePattern, file, relativePath, sequence));
+		}
+		return discoveredScripts;
+	}
+
+	/**
+	 * @return test of whether a file name matches any of the given file patterns, as the scripts discovered from them.
+	 */
+	public static Predicate<String> scriptNameFilter(boolean compressed, String filePatternDelimiter,
+			String... filePatternProps) {
+		List<Pattern> patterns = new ArrayList<>();
+		for (String filePatternProp : filePatternProps) {
+			if (StringUtils.isNotBlank(filePatternProp)) {
+				for (String filePattern : filePatternProp.split(filePatternDelimiter)) {
+					patterns.add(Pattern.compile(filePattern.replace("<seq_num>", "(\\d+)")));
+				}
+			}
+		}
+		return name -> {
+			String logicalName = compressed ? CompressedFileUtils.logicalName(name) : name;
+			return patterns.stream().anyMatch(pattern -> pattern.matcher(logicalName).matches());
+		};
+	}
+
+	/**
+	 * Matches files by their name once decompressed when compressed scripts are supported, so that [name].gz and
+	 * [name].zst follow the pattern of [name].
+	 */
+	private static IOFileFilter logicalNameFilter(Pattern fileRegexPattern, boolean compressed) {
+		return new AbstractFileFilter() {
+
+			@Override
+			public boolean accept(File file) {
+				return accept(file.getParentFile(), file.getName());
+			}
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return fileRegexPattern.matcher(compressed ? CompressedFileUtils.logicalName(name) : name).matches();
+			}
+		};
+	}
+
+	/**
+	 * @return single value identifying the configured patterns, used to tell whether scripts discovered earlier were
+	 *         classified the same way as they would be now.
+	 */
+	public static String patternsFingerprint(String preRunFilePattern, String oneTimeFilePattern,
+			String repeatableFilePattern, String postRunFilePattern, String filePatternDelimiter) {
+		return String.join("\n", StringUtils.trimToEmpty(preRunFilePattern), StringUtils.trimToEmpty(oneTimeFilePattern),
+				StringUtils.trimToEmpty(repeatableFilePattern), StringUtils.trimToEmpty(postRunFilePattern),
+				filePatternDelimiter);
+	}
+}
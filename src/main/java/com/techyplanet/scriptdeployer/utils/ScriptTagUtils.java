@@ -0,0 +1,58 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the tags of a script, declared in a comment of its header whatever the comment syntax, for example
+ * "-- @tags: billing, hotfix".
+ */
+public class ScriptTagUtils {
+
+	/** How many lines of a script are looked into for its tags. */
+	private static final int HEADER_LINES = 20;
+
+	private static final Pattern TAGS = Pattern.compile("@tags\\s*:?\\s*(.*)$");
+
+	/**
+	 * @return tags of the script in lower case, empty if it has none.
+	 */
+	public static Set<String> read(Path script, boolean decompress) {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(CompressedFileUtils.open(script, decompress), StandardCharsets.UTF_8))) {
+			String line;
+			for (int i = 0; i < HEADER_LINES && (line = reader.readLine()) != null; i++) {
+				Matcher matcher = TAGS.matcher(line);
+				if (matcher.find()) {
+					return parse(matcher.group(1));
+				}
+			}
+			return Collections.emptySet();
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Tags of script [%s] can't be read.", script), ex);
+		}
+	}
+
+	/**
+	 * @param tags tags separated by commas or spaces.
+	 */
+	public static Set<String> parse(String tags) {
+		Set<String> parsed = new LinkedHashSet<>();
+		for (String tag : tags.split("[,\\s]+")) {
+			// closing block comments aren't part of the tags
+			String trimmed = tag.replace("*/", "").replace("-->", "").trim();
+			if (!trimmed.isEmpty()) {
+				parsed.add(trimmed.toLowerCase());
+			}
+		}
+		return parsed;
+	}
+}
@@ -0,0 +1,141 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.techyplanet.scriptdeployer.model.ScriptTree;
+
+/**
+ * Scans the scripts location into a Merkle tree, and reads and writes such trees as tab separated text.
+ */
+public class ScriptTreeUtils {
+
+	private static final String HEADER = "#script-deployer-tree\t1";
+
+	private static final String FILE = "f";
+
+	private static final String FOLDER = "d";
+
+	/** Folders which aren't part of the scripts. */
+	private static final String GIT_FOLDER = ".git";
+
+	/**
+	 * @param previous tree of an earlier scan whose checksums are reused for files of the same size and modification
+	 *                 time, null to hash every file.
+	 */
+	public static ScriptTree scan(File scriptsDir, ScriptTree previous) {
+		return scan(scriptsDir, previous, name -> true, false);
+	}
+
+	/**
+	 * @param fileNames  names of the files kept in the tree, the others being left out and never hashed.
+	 * @param decompress whether compressed scripts are hashed by their logical content.
+	 */
+	public static ScriptTree scan(File scriptsDir, ScriptTree previous, Predicate<String> fileNames,
+			boolean decompress) {
+		ScriptTree tree = new ScriptTree();
+		scan(scriptsDir, "", previous, fileNames, decompress, tree);
+		return tree;
+	}
+
+	private static String scan(File folder, String folderPath, ScriptTree previous, Predicate<String> fileNames,
+			boolean decompress, ScriptTree tree) {
+		File[] children = folder.listFiles();
+		if (children == null) {
+			throw new RuntimeException(String.format("Folder [%s] can't be listed.", folder));
+		}
+		Arrays.sort(children, Comparator.comparing(File::getName));
+		StringBuilder entries = new StringBuilder();
+		for (File child : children) {
+			String path = folderPath.isEmpty() ? child.getName() : folderPath + "/" + child.getName();
+			if (child.isDirectory()) {
+				if (!GIT_FOLDER.equals(child.getName())) {
+					entries.append(FOLDER).append('\t').append(child.getName()).append('\t')
+							.append(scan(child, path, previous, fileNames, decompress, tree)).append('\n');
+				}
+				continue;
+			}
+			if (!fileNames.test(child.getName())) {
+				continue;
+			}
+			String stamp = stamp(child.toPath());
+			String[] previousFile = previous == null ? null : previous.getFile(path);
+			String checksum = previousFile != null && previousFile[0].equals(stamp) ? previousFile[1]
+					: CommonUtils.generateFileChecksum(child.toPath(), decompress);
+			tree.addFile(path, stamp, checksum);
+			entries.append(FILE).append('\t').append(child.getName()).append('\t').append(checksum).append('\n');
+		}
+		String hash;
+		try {
+			hash = CommonUtils.generateChecksum(
+					new ByteArrayInputStream(entries.toString().getBytes(StandardCharsets.UTF_8)));
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Hash of folder [%s] can't be generated.", folder), ex);
+		}
+		tree.addFolder(folderPath, hash);
+		return hash;
+	}
+
+	private static String stamp(Path path) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Attributes of file [%s] can't be read.", path), ex);
+		}
+	}
+
+	public static void write(ScriptTree tree, Path treeFile) {
+		try {
+			if (treeFile.getParent() != null) {
+				Files.createDirectories(treeFile.getParent());
+			}
+			try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(treeFile, StandardCharsets.UTF_8))) {
+				pw.println(HEADER);
+				for (Map.Entry<String, String> folder : tree.getFolders().entrySet()) {
+					pw.println(String.join("\t", FOLDER, folder.getKey(), folder.getValue()));
+				}
+				for (Map.Entry<String, String[]> file : tree.getFiles().entrySet()) {
+					pw.println(String.join("\t", FILE, file.getKey(), file.getValue()[0], file.getValue()[1]));
+				}
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Script tree file [%s] can't be written.", treeFile), ex);
+		}
+	}
+
+	public static ScriptTree read(Path treeFile) {
+		try (BufferedReader reader = Files.newBufferedReader(treeFile, StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				throw new RuntimeException(String.format("[%s] is not a script tree file.", treeFile));
+			}
+			ScriptTree tree = new ScriptTree();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] columns = line.split("\t", -1);
+				if (FOLDER.equals(columns[0]) && columns.length == 3) {
+					tree.addFolder(columns[1], columns[2]);
+				} else if (FILE.equals(columns[0]) && columns.length == 4) {
+					tree.addFile(columns[1], columns[2], columns[3]);
+				} else {
+					throw new RuntimeException(String.format("Invalid line [%s] in script tree file [%s].", line,
+							treeFile));
+				}
+			}
+			return tree;
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Script tree file [%s] can't be read.", treeFile), ex);
+		}
+	}
+}
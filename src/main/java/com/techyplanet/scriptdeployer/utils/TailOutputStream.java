@@ -0,0 +1,134 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps the last bytes written in a fixed size ring buffer, and optionally the whole output in a temporary file, so
+ * that capturing the output of a command takes the same memory whatever its size. Safe for the threads pumping
+ * the standard output and error of a command into the same stream.
+ */
+public class TailOutputStream extends OutputStream {
+
+	private final byte[] buffer;
+
+	private int position;
+
+	private long count;
+
+	private final Path spillFile;
+
+	private final OutputStream spill;
+
+	/**
+	 * @param tailBytes bytes kept in memory.
+	 * @param spill     whether the whole output is also written to a temporary file.
+	 */
+	public TailOutputStream(int tailBytes, boolean spill) throws IOException {
+		this.buffer = new byte[Math.max(tailBytes, 1)];
+		if (spill) {
+			this.spillFile = Files.createTempFile("script-output", ".log");
+			this.spill = new BufferedOutputStream(Files.newOutputStream(spillFile));
+		} else {
+			this.spillFile = null;
+			this.spill = null;
+		}
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		buffer[position] = (byte) b;
+		position = (position + 1) % buffer.length;
+		count++;
+		if (spill != null) {
+			spill.write(b);
+		}
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (spill != null) {
+			spill.write(b, off, len);
+		}
+		count += len;
+		if (len >= buffer.length) {
+			System.arraycopy(b, off + len - buffer.length, buffer, 0, buffer.length);
+			position = 0;
+			return;
+		}
+		int first = Math.min(len, buffer.length - position);
+		System.arraycopy(b, off, buffer, position, first);
+		System.arraycopy(b, off + first, buffer, 0, len - first);
+		position = (position + len) % buffer.length;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (spill != null) {
+			spill.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (spill != null) {
+			spill.close();
+		}
+	}
+
+	/**
+	 * @return number of bytes written so far.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized boolean isTruncated() {
+		return count > buffer.length;
+	}
+
+	/**
+	 * @return file holding the whole output, null when it isn't spilled.
+	 */
+	public Path getSpillFile() {
+		return spillFile;
+	}
+
+	/**
+	 * Deletes the file holding the whole output, once it is known not to be needed.
+	 */
+	public void deleteSpillFile() throws IOException {
+		if (spillFile != null) {
+			close();
+			Files.deleteIfExists(spillFile);
+		}
+	}
+
+	/**
+	 * @return last bytes written, starting at a line boundary when older output was dropped.
+	 */
+	public synchronized String tail() {
+		byte[] tail;
+		if (isTruncated()) {
+			tail = new byte[buffer.length];
+			System.arraycopy(buffer, position, tail, 0, buffer.length - position);
+			System.arraycopy(buffer, 0, tail, buffer.length - position, position);
+		} else {
+			tail = new byte[(int) count];
+			System.arraycopy(buffer, 0, tail, 0, (int) count);
+		}
+		int start = 0;
+		if (isTruncated()) {
+			while (start < tail.length && tail[start++] != '\n') {
+			}
+			if (start == tail.length) {
+				start = 0;
+			}
+		}
+		return new String(tail, start, tail.length - start, Charset.defaultCharset());
+	}
+}
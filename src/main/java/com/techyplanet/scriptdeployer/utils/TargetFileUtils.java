@@ -0,0 +1,105 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.techyplanet.scriptdeployer.model.DeploymentTarget;
+
+/**
+ * Reads the list of targets of a fan-out deployment: tab separated text, the first line naming the columns. The
+ * first column is the target name, table.prefix and command are optional columns, any other column is a script
+ * variable. Lines starting with '#' are ignored.
+ */
+public class TargetFileUtils {
+
+	public static final String NAME_COLUMN = "name";
+
+	public static final String TABLE_PREFIX_COLUMN = "table.prefix";
+
+	public static final String COMMAND_COLUMN = "command";
+
+	public static List<DeploymentTarget> read(Path targetsFile) {
+		try (BufferedReader reader = Files.newBufferedReader(targetsFile, StandardCharsets.UTF_8)) {
+			return read(reader, targetsFile.toString());
+		} catch (IOException ex) {
+			throw new RuntimeException(String.format("Targets file [%s] can't be read.", targetsFile), ex);
+		}
+	}
+
+	public static List<DeploymentTarget> read(BufferedReader reader, String source) throws IOException {
+		String[] columns = null;
+		List<DeploymentTarget> targets = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		Set<String> tableNamePrefixes = new HashSet<>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] values = line.split("\t", -1);
+			if (columns == null) {
+				if (!NAME_COLUMN.equals(values[0].trim())) {
+					throw new RuntimeException(
+							String.format("First column of targets file [%s] must be [%s].", source, NAME_COLUMN));
+				}
+				columns = values;
+				continue;
+			}
+			if (values.length != columns.length) {
+				throw new RuntimeException(String.format("Invalid entry in targets file [%s] --> %s", source, line));
+			}
+			DeploymentTarget target = parseTarget(columns, values, source);
+			if (!names.add(target.getName())) {
+				throw new RuntimeException(
+						String.format("Target [%s] is listed twice in targets file [%s].", target.getName(), source));
+			}
+			if (!tableNamePrefixes.add(target.getTableNamePrefix().toUpperCase())) {
+				throw new RuntimeException(String.format("Table prefix [%s] of target [%s] is already used by another target.",
+						target.getTableNamePrefix(), target.getName()));
+			}
+			targets.add(target);
+		}
+		if (targets.isEmpty()) {
+			throw new RuntimeException(String.format("No target defined in targets file [%s].", source));
+		}
+		return targets;
+	}
+
+	private static DeploymentTarget parseTarget(String[] columns, String[] values, String source) {
+		String name = values[0].trim();
+		if (!name.matches("[A-Za-z0-9_.-]+")) {
+			throw new RuntimeException(String.format(
+					"Target name [%s] in targets file [%s] can only contain letters, digits, '_', '.' and '-'.", name,
+					source));
+		}
+		String tableNamePrefix = name.replaceAll("[.-]", "_") + "_";
+		String consoleCommand = null;
+		List<String[]> variables = new ArrayList<>();
+		for (int i = 1; i < columns.length; i++) {
+			String column = columns[i].trim();
+			if (TABLE_PREFIX_COLUMN.equals(column)) {
+				if (!values[i].trim().isEmpty()) {
+					tableNamePrefix = values[i].trim();
+				}
+			} else if (COMMAND_COLUMN.equals(column)) {
+				if (!values[i].trim().isEmpty()) {
+					consoleCommand = values[i];
+				}
+			} else {
+				variables.add(new String[] { column, values[i] });
+			}
+		}
+		DeploymentTarget target = new DeploymentTarget(name, tableNamePrefix, consoleCommand);
+		for (String[] variable : variables) {
+			target.getVariables().put(variable[0], variable[1]);
+		}
+		return target;
+	}
+}
@@ -14,8 +14,12 @@ import com.techyplanet.scriptdeployer.component.AppSettings;
 @Component
 public class VariablesValidator {
 
+	private final AppSettings appSettings;
+
 	@Autowired
-	private AppSettings appSettings;
+	public VariablesValidator(AppSettings appSettings) {
+		this.appSettings = appSettings;
+	}
 
 	public void validate() {
 		try {
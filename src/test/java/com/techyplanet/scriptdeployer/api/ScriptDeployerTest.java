@@ -0,0 +1,131 @@
+package com.techyplanet.scriptdeployer.api;
+
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.service.InMemoryScriptHistoryRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScriptDeployerTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    public void deploy_runsScriptsInProcess_withVariablesSubstituted_andSkipsThemNextTime() throws Exception {
+        Path scripts = scripts();
+        InMemoryScriptHistoryRepository repo = new InMemoryScriptHistoryRepository();
+        List<String> executed = new ArrayList<>();
+        try (ScriptDeployer deployer = ScriptDeployer.builder()
+                .scriptsLocation(scripts)
+                .home(tmp.resolve("home"))
+                .variable("schema", "billing")
+                .historyStore(repo)
+                .executor((script, content) -> executed.add(
+                        script.getPath() + ":" + new String(content.readAllBytes(), StandardCharsets.UTF_8).trim()))
+                .build()) {
+
+            DeploymentPlan plan = deployer.plan();
+            assertEquals(2, plan.count(ScriptAction.FIRST_RUN));
+            assertTrue(executed.isEmpty());
+
+            DeploymentResult result = deployer.deploy();
+            assertTrue(result.isSucceeded());
+            assertEquals(2, result.getExecutedScripts());
+            assertEquals(List.of("S_1_create.sql:create schema billing;", "R_1_view.sql:create view v;"), executed);
+
+            DeploymentResult again = deployer.deploy();
+            assertTrue(again.isSucceeded());
+            assertEquals(0, again.getExecutedScripts());
+            assertEquals(2, again.count(ScriptAction.SKIP));
+            assertEquals(2, executed.size());
+        }
+    }
+
+    @Test
+    public void failingScripts_failTheResult_orThrowWhenTheRunStopsOnFailure() throws Exception {
+        Path scripts = scripts();
+        ScriptDeployer.Builder builder = ScriptDeployer.builder()
+                .scriptsLocation(scripts)
+                .home(tmp.resolve("home"))
+                .variable("schema", "billing")
+                .executor((script, content) -> !script.getPath().startsWith("R_"));
+
+        try (ScriptDeployer deployer = builder.property("app.script.execute.stopOnfail", "false")
+                .historyStore(new InMemoryScriptHistoryRepository()).build()) {
+            DeploymentResult result = deployer.deploy();
+            assertFalse(result.isSucceeded());
+        }
+        try (ScriptDeployer deployer = builder.property("app.script.execute.stopOnfail", "true")
+                .historyStore(new InMemoryScriptHistoryRepository()).build()) {
+            RuntimeException ex = assertThrows(RuntimeException.class, deployer::deploy);
+            assertTrue(ex.getMessage().contains("R_1_view.sql"));
+        }
+    }
+
+    @Test
+    public void defaultHistoryStore_isAJournalInTheHome_keptAcrossDeployers() throws Exception {
+        Path scripts = scripts();
+        Path home = tmp.resolve("home");
+        ScriptDeployer.Builder builder = ScriptDeployer.builder()
+                .scriptsLocation(scripts)
+                .home(home)
+                .variable("schema", "billing")
+                .executor((script, content) -> true);
+
+        try (ScriptDeployer deployer = builder.build()) {
+            assertTrue(deployer.deploy().isSucceeded());
+        }
+        assertTrue(Files.isRegularFile(home.resolve("db/history.journal")));
+        try (ScriptDeployer deployer = builder.build()) {
+            assertEquals(2, deployer.plan().count(ScriptAction.SKIP));
+        }
+    }
+
+    @Test
+    public void invalidSettings_areReportedWhenBuilding() {
+        assertThrows(RuntimeException.class, () -> ScriptDeployer.builder()
+                .property("app.scripts.checksum.threads", "many")
+                .historyStore(new InMemoryScriptHistoryRepository())
+                .build());
+    }
+
+    @Test
+    public void settings_resolvePlaceholderDefaults_andTheScriptsLocationIsValidated() throws Exception {
+        Path scripts = scripts();
+        try (ScriptDeployer deployer = ScriptDeployer.builder()
+                .property("app.scripts.location", "${deploy.scripts:" + scripts + "}")
+                .home(tmp.resolve("home"))
+                .variable("schema", "billing")
+                .historyStore(new InMemoryScriptHistoryRepository())
+                .executor((script, content) -> true)
+                .build()) {
+            assertEquals(scripts.toString(), deployer.getAppSettings().getScriptsLocation());
+            assertEquals(2, deployer.plan().count(ScriptAction.FIRST_RUN));
+        }
+
+        try (ScriptDeployer deployer = ScriptDeployer.builder()
+                .scriptsLocation(tmp.resolve("missing"))
+                .home(tmp.resolve("home"))
+                .historyStore(new InMemoryScriptHistoryRepository())
+                .build()) {
+            RuntimeException ex = assertThrows(RuntimeException.class, deployer::deploy);
+            assertTrue(ex.getMessage().startsWith("Validation failed"), ex.getMessage());
+        }
+    }
+
+    private Path scripts() throws Exception {
+        Path scripts = Files.createDirectories(tmp.resolve("scripts"));
+        Files.writeString(scripts.resolve("S_1_create.sql"), "create schema ${schema};\n");
+        Files.writeString(scripts.resolve("R_1_view.sql"), "create view v;\n");
+        return scripts;
+    }
+}
@@ -0,0 +1,179 @@
+package com.techyplanet.scriptdeployer.component;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeployerServerTest {
+
+    @TempDir
+    Path tmp;
+
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private DeployerServer server;
+    private int port;
+    private String token;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        AppSettings settings = new AppSettings();
+        ReflectionTestUtils.setField(settings, "serverPort", 0);
+        ReflectionTestUtils.setField(settings, "serverQueueSize", 1);
+        ReflectionTestUtils.setField(settings, "serverToken", "");
+        ReflectionTestUtils.setField(settings, "serverTokenFile", tmp.resolve("db/server.token").toString());
+        ReflectionTestUtils.setField(settings, "planFile", tmp.resolve("plans/deploy.plan").toString());
+        server = new DeployerServer();
+        ReflectionTestUtils.setField(server, "appSettings", settings);
+        port = server.start(this::run);
+        token = Files.readString(tmp.resolve("db/server.token"));
+    }
+
+    @AfterEach
+    public void teardown() {
+        release.countDown();
+        server.stop();
+    }
+
+    @Test
+    public void deploy_waitsForTheRunAndReportsIt() throws Exception {
+        release.countDown();
+
+        Response response = call("POST", "/deploy?wait=true");
+        assertEquals(200, response.status, response.body);
+        assertTrue(response.body.contains("\"state\":\"succeeded\""), response.body);
+
+        Path missing = tmp.resolve("plans/releases/missing.plan").toAbsolutePath();
+        Response failed = call("POST", "/apply?wait=true&plan=releases/missing.plan");
+        assertEquals(500, failed.status, failed.body);
+        assertTrue(failed.body.contains("not found"), failed.body);
+        assertEquals(List.of("deploy", "apply " + missing), commands);
+
+        Response status = call("GET", "/status");
+        assertEquals(200, status.status);
+        assertTrue(status.body.contains("\"queued\":0"), status.body);
+        assertTrue(status.body.contains("\"id\":2"), status.body);
+        assertEquals(200, call("GET", "/requests/1").status);
+        assertEquals(404, call("GET", "/requests/9").status);
+        assertEquals(405, call("GET", "/plan").status);
+    }
+
+    @Test
+    public void submit_turnsRequestsDownOnceTheQueueIsFull() throws Exception {
+        assertEquals(202, call("POST", "/deploy").status);
+        // the first request runs, blocked, the second one waits in the queue
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (commands.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(202, call("POST", "/plan").status);
+        assertEquals(503, call("POST", "/deploy").status);
+
+        release.countDown();
+        server.stop();
+        assertEquals(List.of("deploy", "plan"), commands);
+    }
+
+    @Test
+    public void requests_needTheToken_andBrowserRequestsAreTurnedDown() throws Exception {
+        release.countDown();
+        String validToken = token;
+        token = null;
+        assertEquals(401, call("POST", "/deploy").status);
+        assertEquals(401, call("POST", "/apply?plan=release.plan").status);
+        assertEquals(401, call("POST", "/shutdown").status);
+        token = "wrong";
+        assertEquals(401, call("POST", "/deploy").status);
+        assertTrue(commands.isEmpty());
+        assertEquals(401, call("GET", "/status").status);
+        assertEquals(401, call("GET", "/requests/1").status);
+
+        String response = rawCall("POST /deploy HTTP/1.1\r\nHost: 127.0.0.1\r\nOrigin: http://example.com\r\n"
+                + DeployerServer.TOKEN_HEADER + ": " + validToken + "\r\n"
+                + "Content-Length: 0\r\nConnection: close\r\n\r\n");
+        assertTrue(response.startsWith("HTTP/1.1 403"), response);
+        assertTrue(rawCall("GET /status HTTP/1.1\r\nHost: 127.0.0.1\r\nOrigin: null\r\nConnection: close\r\n\r\n")
+                .startsWith("HTTP/1.1 403"));
+        assertTrue(commands.isEmpty());
+
+        server.stop();
+        assertFalse(Files.exists(tmp.resolve("db/server.token")), "the token file is dropped with the server");
+    }
+
+    @Test
+    public void plans_areOnlyTakenFromThePlanFolder() throws Exception {
+        release.countDown();
+        assertEquals(400, call("POST", "/apply?plan=" + tmp.resolve("other.plan").toAbsolutePath()).status);
+        assertEquals(400, call("POST", "/apply?plan=../other.plan").status);
+        assertEquals(400, call("POST", "/plan?plan=releases/../../other.plan").status);
+        assertEquals(400, call("POST", "/plan?plan=").status);
+        assertTrue(commands.isEmpty());
+    }
+
+    private String rawCall(String request) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void run(String command, Path planFile) {
+        commands.add(planFile == null ? command : command + " " + planFile);
+        try {
+            release.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (planFile != null) {
+            throw new RuntimeException("plan " + planFile + " not found");
+        }
+    }
+
+    private Response call(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        connection.setRequestMethod(method);
+        if (token != null) {
+            connection.setRequestProperty(DeployerServer.TOKEN_HEADER, token);
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            in.transferTo(body);
+            in.close();
+        }
+        return new Response(status, body.toString(StandardCharsets.UTF_8));
+    }
+
+    private static class Response {
+
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.techyplanet.scriptdeployer.component;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeploymentThrottleTest {
+
+    private AppSettings settings;
+    private DeploymentThrottle throttle;
+
+    @BeforeEach
+    public void setup() {
+        settings = new AppSettings();
+        ReflectionTestUtils.setField(settings, "throttleAdaptive", true);
+        ReflectionTestUtils.setField(settings, "throttleLatencyFactor", 2.0);
+        ReflectionTestUtils.setField(settings, "throttleErrorRate", 0.1);
+        ReflectionTestUtils.setField(settings, "throttleWindows", "");
+        ReflectionTestUtils.setField(settings, "targetsParallelism", 4);
+        throttle = new DeploymentThrottle(settings);
+    }
+
+    @Test
+    public void concurrency_growsWithHealthyScripts_andIsHalvedOnceForScriptsSlowTogether() {
+        assertEquals(1, throttle.getConcurrency());
+        throttle.release(throttle.acquire("a"), "a", 10, true, 10L);
+        assertEquals(2, throttle.getConcurrency());
+        throttle.release(throttle.acquire("b"), "b", 10, true, null);
+        throttle.release(throttle.acquire("c"), "c", 10, true, 10L);
+        assertEquals(2, throttle.getConcurrency());
+        throttle.release(throttle.acquire("c"), "c", 10, true, 10L);
+        assertEquals(3, throttle.getConcurrency());
+
+        DeploymentThrottle.Permit d = throttle.acquire("d");
+        DeploymentThrottle.Permit e = throttle.acquire("e");
+        throttle.release(d, "d", 100, true, 10L);
+        assertEquals(1, throttle.getConcurrency());
+        // started before the decrease, its slowness is already accounted for
+        throttle.release(e, "e", 100, true, 10L);
+        assertEquals(1, throttle.getConcurrency());
+    }
+
+    @Test
+    public void failures_raisingTheErrorRate_backOff() {
+        throttle.release(throttle.acquire("a"), "a", 10, true, null);
+        throttle.release(throttle.acquire("b"), "b", 10, true, null);
+        assertEquals(2, throttle.getConcurrency());
+        throttle.release(throttle.acquire("c"), "c", 10, false, null);
+        assertEquals(1, throttle.getConcurrency());
+    }
+
+    @Test
+    public void scriptsBeyondTheConcurrency_waitForARelease() throws Exception {
+        DeploymentThrottle.Permit first = throttle.acquire("a");
+        CountDownLatch started = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            throttle.acquire("b");
+            started.countDown();
+        });
+        second.start();
+        assertFalse(started.await(200, TimeUnit.MILLISECONDS));
+        throttle.release(first, "a", 10, true, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        second.join();
+    }
+
+    @Test
+    public void pause_spacesScriptStarts() {
+        ReflectionTestUtils.setField(settings, "throttleAdaptive", false);
+        ReflectionTestUtils.setField(settings, "throttlePauseMillis", 200L);
+        throttle.release(throttle.acquire("a"), "a", 1, true, null);
+        long start = System.nanoTime();
+        throttle.acquire("b");
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void windows_mayCrossMidnight_andScriptsWaitForTheNextOneToOpen() {
+        ReflectionTestUtils.setField(settings, "throttleWindows", "22:00-06:00, 12:00-13:00");
+        assertEquals(0, throttle.millisToWindow(LocalTime.of(23, 0)));
+        assertEquals(0, throttle.millisToWindow(LocalTime.of(5, 59)));
+        assertEquals(0, throttle.millisToWindow(LocalTime.of(12, 30)));
+        assertEquals(TimeUnit.HOURS.toMillis(6), throttle.millisToWindow(LocalTime.of(6, 0)));
+        assertEquals(TimeUnit.MINUTES.toMillis(510), throttle.millisToWindow(LocalTime.of(13, 30)));
+
+        ReflectionTestUtils.setField(settings, "throttleWindows", "22:00");
+        DeploymentThrottle invalid = new DeploymentThrottle(settings);
+        assertThrows(RuntimeException.class, () -> invalid.millisToWindow(LocalTime.NOON));
+    }
+}
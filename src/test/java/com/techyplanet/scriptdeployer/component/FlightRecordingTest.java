@@ -0,0 +1,65 @@
+package com.techyplanet.scriptdeployer.component;
+
+import com.techyplanet.scriptdeployer.utils.CommonUtils;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightRecordingTest {
+
+    @TempDir
+    Path tmp;
+
+    private AppSettings settings;
+    private FlightRecording recording;
+
+    @BeforeEach
+    public void setup() {
+        settings = new AppSettings();
+        ReflectionTestUtils.setField(settings, "logDir", tmp.resolve("logs").toString());
+        ReflectionTestUtils.setField(settings, "jfrRecordEnabled", true);
+        ReflectionTestUtils.setField(settings, "jfrDumpThresholdSeconds", 600L);
+        recording = new FlightRecording();
+        ReflectionTestUtils.setField(recording, "appSettings", settings);
+    }
+
+    @Test
+    public void failedRun_dumpsRecordingWithDeployerEvents() throws Exception {
+        Path script = Files.writeString(tmp.resolve("S_1_a.sql"), "select 1;");
+
+        recording.start();
+        CommonUtils.generateFileChecksum(script);
+        Path jfrFile = recording.finish(true);
+
+        assertNotNull(jfrFile);
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfrFile);
+        RecordedEvent checksum = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.techyplanet.scriptdeployer.ChecksumComputed"))
+                .findFirst().orElseThrow();
+        assertEquals(script.toString(), checksum.getString("path"));
+        assertEquals(9L, checksum.getLong("bytes"));
+    }
+
+    @Test
+    public void fastSuccessfulRun_isDiscarded() throws Exception {
+        recording.start();
+        assertNull(recording.finish(false));
+        assertFalse(Files.exists(tmp.resolve("logs")));
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        ReflectionTestUtils.setField(settings, "jfrRecordEnabled", false);
+        recording.start();
+        assertNull(recording.finish(true));
+    }
+}
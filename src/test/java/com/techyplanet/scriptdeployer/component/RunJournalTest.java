@@ -0,0 +1,148 @@
+package com.techyplanet.scriptdeployer.component;
+
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import com.techyplanet.scriptdeployer.service.InMemoryScriptHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RunJournalTest {
+
+    @TempDir
+    Path tmp;
+
+    private AppSettings settings;
+    private InMemoryScriptHistoryRepository repo;
+    private File scriptsDir;
+    private DeploymentPlan plan;
+
+    @BeforeEach
+    public void setup() {
+        settings = new AppSettings();
+        ReflectionTestUtils.setField(settings, "runJournalFile", tmp.resolve("db/run.journal").toString());
+        ReflectionTestUtils.setField(settings, "runJournalInFlight", "fail");
+        ReflectionTestUtils.setField(settings, "reqNumber", "REQ-1");
+        repo = new InMemoryScriptHistoryRepository();
+        scriptsDir = tmp.toFile();
+
+        plan = new DeploymentPlan(scriptsDir.getAbsolutePath(), "0:0", new Date());
+        plan.getPhases().add(ScriptPhase.S);
+        plan.getPhases().add(ScriptPhase.R);
+        plan.add(script(1, ScriptPhase.S, "S_1_a.sql"));
+        plan.add(script(2, ScriptPhase.R, "R_1_b.sql"));
+        plan.add(script(3, ScriptPhase.R, "R_2_c.sql"));
+    }
+
+    @Test
+    public void resume_skipsFinishedScripts_andAppliesInFlightPolicy() {
+        RunJournal crashed = journal();
+        crashed.begin(plan);
+        crashed.scriptStarted(plan.getScripts().get(0));
+        crashed.scriptFinished(plan.getScripts().get(0), true);
+        crashed.scriptStarted(plan.getScripts().get(1));
+        // process dies here
+
+        assertThrows(RuntimeException.class, () -> journal().resume(scriptsDir));
+
+        ReflectionTestUtils.setField(settings, "runJournalInFlight", "retry-repeatable");
+        DeploymentPlan resumed = journal().resume(scriptsDir);
+        assertEquals(ScriptAction.SKIP, resumed.getScripts().get(0).getAction());
+        assertEquals(ScriptAction.FIRST_RUN, resumed.getScripts().get(1).getAction());
+        assertEquals(ScriptAction.FIRST_RUN, resumed.getScripts().get(2).getAction());
+        assertTrue(resumed.isVerifyChecksums());
+
+        // skip leaves the history alone until the resumed plan is applied
+        ReflectionTestUtils.setField(settings, "runJournalInFlight", "skip");
+        resumed = journal().resume(scriptsDir);
+        assertEquals(ScriptAction.RESET_HASH, resumed.getScripts().get(1).getAction());
+        assertNull(repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(plan.getScripts().get(1).getPath()));
+
+        // in flight script got recorded before the crash: nothing to retry
+        repo.save(plan.getScripts().get(1).toHistory(new Date(), "REQ-1"));
+        ReflectionTestUtils.setField(settings, "runJournalInFlight", "fail");
+        resumed = journal().resume(scriptsDir);
+        assertEquals(ScriptAction.SKIP, resumed.getScripts().get(1).getAction());
+        assertEquals(ScriptAction.FIRST_RUN, resumed.getScripts().get(2).getAction());
+    }
+
+    @Test
+    public void resume_runsScriptsWhichFailedBeforeTheCrashAgain() {
+        RunJournal crashed = journal();
+        crashed.begin(plan);
+        crashed.scriptStarted(plan.getScripts().get(0));
+        crashed.scriptFinished(plan.getScripts().get(0), false);
+        crashed.scriptStarted(plan.getScripts().get(1));
+        crashed.scriptFinished(plan.getScripts().get(1), true);
+        // process dies here, the failed script wasn't recorded in the history
+
+        DeploymentPlan resumed = journal().resume(scriptsDir);
+        assertEquals(ScriptAction.FIRST_RUN, resumed.getScripts().get(0).getAction());
+        assertEquals(ScriptAction.SKIP, resumed.getScripts().get(1).getAction());
+        assertEquals(ScriptAction.FIRST_RUN, resumed.getScripts().get(2).getAction());
+    }
+
+    @Test
+    public void resume_startsOver_afterCompletedOrAbortedRun() {
+        RunJournal journal = journal();
+        journal.begin(plan);
+        journal.scriptStarted(plan.getScripts().get(0));
+        journal.aborted();
+        assertNull(journal().resume(scriptsDir));
+
+        journal.begin(plan);
+        journal.completed(true);
+        assertNull(journal().resume(scriptsDir));
+    }
+
+    @Test
+    public void resume_ofPipelinedRun_coversTheScriptsPlannedBeforeItStopped() {
+        DeploymentPlan header = new DeploymentPlan(scriptsDir.getAbsolutePath(), "0:0", new Date());
+        header.getPhases().addAll(plan.getPhases());
+        RunJournal crashed = journal();
+        crashed.planStarted(header);
+        crashed.scriptPlanned(plan.getScripts().get(0));
+        crashed.scriptStarted(plan.getScripts().get(0));
+        crashed.scriptFinished(plan.getScripts().get(0), true);
+        crashed.scriptPlanned(plan.getScripts().get(1));
+        // process dies here, the third script not planned yet
+
+        DeploymentPlan resumed = journal().resume(scriptsDir);
+        assertEquals(2, resumed.getScripts().size());
+        assertEquals(ScriptAction.SKIP, resumed.getScripts().get(0).getAction());
+        assertEquals(ScriptAction.FIRST_RUN, resumed.getScripts().get(1).getAction());
+        assertEquals("R_1_b.sql", resumed.getScripts().get(1).getPath());
+        assertNotNull(resumed.getSelection(), "the scripts left out must not be taken as deployed");
+
+        RunJournal planned = journal();
+        planned.planStarted(header);
+        for (PlannedScript script : plan.getScripts()) {
+            planned.scriptPlanned(script);
+        }
+        planned.planCompleted();
+        resumed = journal().resume(scriptsDir);
+        assertEquals(3, resumed.getScripts().size());
+        assertNull(resumed.getSelection());
+    }
+
+    private RunJournal journal() {
+        RunJournal journal = new RunJournal();
+        ReflectionTestUtils.setField(journal, "appSettings", settings);
+        ReflectionTestUtils.setField(journal, "scriptHistoryRepository", repo);
+        return journal;
+    }
+
+    private static PlannedScript script(int order, ScriptPhase phase, String path) {
+        return new PlannedScript(order, phase, phase.name() + "_<seq_num>_.+\\.sql", path, (long) order, "c" + order,
+                10, ScriptAction.FIRST_RUN, phase.getHistoryType(), 1L, phase.name() + "_<seq_num>_.+\\.sql", null);
+    }
+}
@@ -0,0 +1,62 @@
+package com.techyplanet.scriptdeployer.component;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RunTraceTest {
+
+    @TempDir
+    Path tmp;
+
+    private AppSettings settings;
+    private RunTrace trace;
+
+    @BeforeEach
+    public void setup() {
+        settings = new AppSettings();
+        ReflectionTestUtils.setField(settings, "logDir", tmp.resolve("logs").toString());
+        ReflectionTestUtils.setField(settings, "traceEnabled", true);
+        trace = new RunTrace(settings);
+    }
+
+    @Test
+    public void spans_ofEachThread_goOnTheirOwnTrack() throws Exception {
+        trace.start();
+        trace.span(RunTrace.CHECKSUM, "S_1_\"quoted\".sql", 1_500L, "bytes", 12);
+        Thread worker = new Thread(() -> trace.span(RunTrace.PROCESS, "R_1_view.sql", 2_000_000L, "exitCode", 0),
+                "target-1");
+        worker.start();
+        worker.join();
+        trace.finish();
+
+        List<Path> files;
+        try (var list = Files.list(tmp.resolve("logs"))) {
+            files = list.toList();
+        }
+        assertEquals(1, files.size());
+        String json = Files.readString(files.get(0));
+        assertTrue(json.contains("\"name\":\"S_1_\\\"quoted\\\".sql\",\"cat\":\"checksum\",\"ph\":\"X\",\"pid\":1,\"tid\":1"));
+        assertTrue(json.contains("\"dur\":1.500,\"args\":{\"bytes\":\"12\"}"));
+        assertTrue(json.contains("\"tid\":2,\"args\":{\"name\":\"target-1\"}"));
+        assertTrue(json.contains("\"name\":\"R_1_view.sql\",\"cat\":\"process\",\"ph\":\"X\",\"pid\":1,\"tid\":2"));
+        assertTrue(json.trim().endsWith("]}"));
+    }
+
+    @Test
+    public void disabled_writesNothing() {
+        ReflectionTestUtils.setField(settings, "traceEnabled", false);
+        trace.start();
+        trace.span(RunTrace.PHASE, "S", 10L);
+        trace.finish();
+        assertFalse(trace.isRecording());
+        assertFalse(Files.exists(tmp.resolve("logs")));
+    }
+}
@@ -0,0 +1,82 @@
+package com.techyplanet.scriptdeployer.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScriptSelectionTest {
+
+    @Test
+    public void globs_matchWithinAndAcrossFolders_andPlainPathsSelectWholeFolders() {
+        ScriptSelection selection = ScriptSelection.parse(List.of("billing/*.sql,reports"), null, null, null);
+        assertTrue(selection.selectsPath("billing/S_1_a.sql"));
+        assertFalse(selection.selectsPath("billing/sub/S_1_a.sql"));
+        assertTrue(selection.selectsPath("reports/sub/R_1_a.sql"));
+        assertFalse(selection.selectsPath("reports2/R_1_a.sql"));
+
+        ScriptSelection deep = ScriptSelection.parse(List.of("**/hotfix/S_?_*.sql"), null, null, null);
+        assertTrue(deep.selectsPath("hotfix/S_1_a.sql"));
+        assertTrue(deep.selectsPath("a/b/hotfix/S_2_b.sql"));
+        assertFalse(deep.selectsPath("a/hotfix/S_12_b.sql"));
+    }
+
+    @Test
+    public void commasWithinBraces_areAlternatives_andOnlyTopLevelCommasSeparateGlobs() {
+        ScriptSelection selection = ScriptSelection.parse(List.of("{billing,reports}/*.sql,hotfix"), null, null, null);
+        assertTrue(selection.selectsPath("billing/S_1_a.sql"));
+        assertTrue(selection.selectsPath("reports/R_1_a.sql"));
+        assertTrue(selection.selectsPath("hotfix/sub/S_2_b.sql"));
+        assertFalse(selection.selectsPath("audit/S_1_a.sql"));
+        assertEquals("only={billing,reports}/*.sql,hotfix", selection.toString());
+
+        assertThrows(RuntimeException.class, () -> ScriptSelection.parse(List.of("{billing,reports/*.sql"), null, null, null));
+        assertThrows(RuntimeException.class, () -> ScriptSelection.parse(List.of("billing}/*.sql"), null, null, null));
+    }
+
+    @Test
+    public void roots_stopAtTheFirstWildcard_andAreEmptyWhenTheWholeTreeIsNeeded() {
+        assertEquals(List.of("billing/2024/", "reports/monthly"),
+                ScriptSelection.parse(List.of("./billing/2024/*.sql", "reports/monthly"), null, null, null).roots());
+        assertEquals(Collections.emptyList(),
+                ScriptSelection.parse(List.of("billing/**", "**/hotfix/*.sql"), null, null, null).roots());
+        assertEquals(Collections.emptyList(), ScriptSelection.ALL.roots());
+    }
+
+    @Test
+    public void sequenceRange_andClass_narrowScripts() {
+        ScriptSelection selection = ScriptSelection.parse(null, null, "1200-1300", List.of("s"));
+        assertTrue(selection.selects(script(ScriptPhase.S, "S_1200_a.sql", 1200L)));
+        assertTrue(selection.selects(script(ScriptPhase.S, "S_1300_a.sql", 1300L)));
+        assertFalse(selection.selects(script(ScriptPhase.S, "S_1301_a.sql", 1301L)));
+        assertFalse(selection.selects(script(ScriptPhase.R, "R_1250_a.sql", 1250L)));
+        assertArrayEquals(new ScriptPhase[] { ScriptPhase.S }, selection.phases(ScriptPhase.values()));
+
+        ScriptSelection from = ScriptSelection.parse(null, null, "1200-", null);
+        assertTrue(from.selects(script(ScriptPhase.R, "R_5000_a.sql", 5000L)));
+        assertFalse(from.selects(script(ScriptPhase.R, "R_1_a.sql", 1L)));
+
+        assertThrows(RuntimeException.class, () -> ScriptSelection.parse(null, null, "12a", null));
+        assertThrows(RuntimeException.class, () -> ScriptSelection.parse(null, null, null, List.of("X")));
+    }
+
+    @Test
+    public void tags_matchAnyCaseInsensitively() {
+        ScriptSelection selection = ScriptSelection.parse(null, List.of("Hotfix,billing"), null, null);
+        assertTrue(selection.selectsTags(Set.of("hotfix")));
+        assertTrue(selection.selectsTags(Set.of("BILLING", "other")));
+        assertFalse(selection.selectsTags(Collections.emptySet()));
+        assertTrue(ScriptSelection.ALL.selectsTags(Collections.emptySet()));
+        assertTrue(ScriptSelection.ALL.isAll());
+        assertFalse(selection.isAll());
+    }
+
+    private static DiscoveredScript script(ScriptPhase phase, String path, Long sequence) {
+        String pattern = phase.name() + "_<seq_num>_.+\\.sql";
+        return new DiscoveredScript(phase, pattern, new File(path), path, sequence);
+    }
+}
@@ -0,0 +1,213 @@
+package com.techyplanet.scriptdeployer.repository;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalScriptHistoryRepositoryTest {
+
+    @TempDir
+    Path tmp;
+
+    private JournalScriptHistoryRepository repo;
+
+    @AfterEach
+    public void teardown() {
+        if (repo != null) {
+            repo.close();
+        }
+    }
+
+    @Test
+    public void lookups_areServedFromTheIndexRebuiltOnOpen() {
+        Path file = tmp.resolve("db/history.journal");
+        repo = new JournalScriptHistoryRepository(file);
+        repo.save(entry("S_1_a.sql", 1L, 1L, 1000, 10L));
+        repo.save(entry("S_1_a.sql", 1L, 2L, 2000, null));
+        repo.save(entry("R_1_v.sql", 1L, 1L, 3000, 30L));
+        // same path and update date replaces the entry
+        repo.save(entry("R_1_v.sql", 1L, 1L, 3000, 31L));
+        repo.close();
+
+        repo = new JournalScriptHistoryRepository(file);
+        assertEquals(3, repo.count());
+        assertEquals(Long.valueOf(2L), repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("S_1_a.sql").getVersion());
+        assertEquals(Long.valueOf(2L), repo.findFirstBySequenceAndPatternOrderByVersionDesc(1L, "S_<seq_num>_.+\\.sql").getVersion());
+        assertEquals("R_1_v.sql", repo.findFirstByOrderByFileIdUpdateDateDesc().getFileId().getPath());
+        assertEquals(Long.valueOf(31L), repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("R_1_v.sql").getDurationMillis());
+        List<ScriptHistory> measured = repo.findTop10ByFileIdPathAndDurationMillisNotNullOrderByFileIdUpdateDateDesc("S_1_a.sql");
+        assertEquals(1, measured.size());
+        assertEquals(Long.valueOf(10L), measured.get(0).getDurationMillis());
+        assertNull(repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("missing.sql"));
+    }
+
+    @Test
+    public void deletes_arePersistedAsRecords() {
+        Path file = tmp.resolve("history.journal");
+        repo = new JournalScriptHistoryRepository(file);
+        ScriptHistory first = entry("S_1_a.sql", 1L, 1L, 1000, null);
+        repo.save(first);
+        repo.save(entry("S_2_b.sql", 2L, 1L, 2000, null));
+        repo.delete(first);
+        repo.close();
+
+        repo = new JournalScriptHistoryRepository(file);
+        assertEquals(1, repo.count());
+        assertNull(repo.findFirstBySequenceAndPatternOrderByVersionDesc(1L, "S_<seq_num>_.+\\.sql"));
+        repo.deleteAll();
+        repo.close();
+
+        repo = new JournalScriptHistoryRepository(file);
+        assertEquals(0, repo.count());
+        assertNull(repo.findFirstByOrderByFileIdUpdateDateDesc());
+    }
+
+    @Test
+    public void replacesAndDeletes_updateTheLookupsOfTheEntriesInvolvedOnly() {
+        repo = new JournalScriptHistoryRepository(tmp.resolve("history.journal"));
+        ScriptHistory v1 = entry("S_1_a.sql", 1L, 1L, 1000, null);
+        ScriptHistory v2 = entry("S_1_a.sql", 1L, 2L, 2000, null);
+        ScriptHistory other = entry("S_2_b.sql", 2L, 1L, 3000, null);
+        repo.save(v1);
+        repo.save(v2);
+        repo.save(other);
+
+        repo.delete(v2);
+        assertEquals(Long.valueOf(1L), repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("S_1_a.sql").getVersion());
+        assertEquals(Long.valueOf(1L), repo.findFirstBySequenceAndPatternOrderByVersionDesc(1L, "S_<seq_num>_.+\\.sql").getVersion());
+        assertEquals("S_2_b.sql", repo.findFirstByOrderByFileIdUpdateDateDesc().getFileId().getPath());
+
+        repo.delete(other);
+        assertNull(repo.findFirstBySequenceAndPatternOrderByVersionDesc(2L, "S_<seq_num>_.+\\.sql"));
+        assertEquals("S_1_a.sql", repo.findFirstByOrderByFileIdUpdateDateDesc().getFileId().getPath());
+
+        // same path and update date, moved to another sequence
+        repo.save(entry("S_1_a.sql", 3L, 1L, 1000, 5L));
+        assertEquals(1, repo.count());
+        assertNull(repo.findFirstBySequenceAndPatternOrderByVersionDesc(1L, "S_<seq_num>_.+\\.sql"));
+        assertEquals(Long.valueOf(5L), repo.findFirstBySequenceAndPatternOrderByVersionDesc(3L, "S_<seq_num>_.+\\.sql")
+                .getDurationMillis());
+    }
+
+    @Test
+    public void idLookups_areNotSupported() {
+        repo = new JournalScriptHistoryRepository(tmp.resolve("history.journal"));
+        assertThrows(UnsupportedOperationException.class, () -> repo.findById(1L));
+        assertThrows(UnsupportedOperationException.class, () -> repo.existsById(1L));
+        assertThrows(UnsupportedOperationException.class, () -> repo.findAllById(List.of(1L)));
+        assertThrows(UnsupportedOperationException.class, () -> repo.deleteById(1L));
+        assertThrows(UnsupportedOperationException.class, () -> repo.deleteAllById(List.of(1L)));
+    }
+
+    @Test
+    public void open_ignoresARecordTornByACrash() throws Exception {
+        Path file = tmp.resolve("history.journal");
+        repo = new JournalScriptHistoryRepository(file);
+        repo.save(entry("S_1_a.sql", 1L, 1L, 1000, null));
+        repo.close();
+        long end = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(20).putInt(12).putInt(42).put(new byte[] { 1, 2, 3 }).rewind(), end);
+        }
+
+        repo = new JournalScriptHistoryRepository(file);
+        assertEquals(1, repo.count());
+        repo.save(entry("S_2_b.sql", 2L, 1L, 2000, null));
+        repo.close();
+
+        repo = new JournalScriptHistoryRepository(file);
+        assertEquals(2, repo.count());
+    }
+
+    @Test
+    public void compaction_keepsLiveRecordsOnly() throws Exception {
+        Path file = tmp.resolve("history.journal");
+        repo = new JournalScriptHistoryRepository(file);
+        repo.save(entry("S_1_a.sql", 1L, 1L, 1000, null));
+        for (int i = 0; i <= JournalScriptHistoryRepository.COMPACT_MIN_DEAD; i++) {
+            repo.save(entry("R_1_v.sql", 1L, 1L, 2000, (long) i));
+        }
+        repo.close();
+
+        assertTrue(Files.size(file) < 1024, "replaced records are dropped: " + Files.size(file));
+        repo = new JournalScriptHistoryRepository(file);
+        List<ScriptHistory> all = new ArrayList<>();
+        repo.findAll().forEach(all::add);
+        assertEquals(2, all.size());
+        assertEquals(Long.valueOf(JournalScriptHistoryRepository.COMPACT_MIN_DEAD),
+                repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("R_1_v.sql").getDurationMillis());
+    }
+
+    @Test
+    public void open_failsWithoutTruncating_whenADamagedRecordIsFollowedByValidOnes() throws Exception {
+        Path file = tmp.resolve("history.journal");
+        repo = new JournalScriptHistoryRepository(file);
+        repo.save(entry("S_1_a.sql", 1L, 1L, 1000, null));
+        repo.save(entry("S_2_b.sql", 2L, 1L, 2000, null));
+        repo.save(entry("S_3_c.sql", 3L, 1L, 3000, null));
+        repo.close();
+        repo = null;
+        byte[] content = Files.readAllBytes(file);
+        // flips a byte of the second record's checksum
+        int second = 8 + 8 + ByteBuffer.wrap(content, 8, 4).getInt();
+        content[second + 4] ^= 1;
+        Files.write(file, content);
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> new JournalScriptHistoryRepository(file));
+        assertTrue(ex.getMessage().contains("is corrupted at offset " + second), ex.getMessage());
+        byte[] after = Files.readAllBytes(file);
+        for (int i = 0; i < content.length; i++) {
+            assertEquals(content[i], after[i], "byte " + i);
+        }
+    }
+
+    @Test
+    public void compaction_startsFromACountOfDeadRecords_evenIfLiveOnesOutnumberThem() throws Exception {
+        Path file = tmp.resolve("history.journal");
+        repo = new JournalScriptHistoryRepository(file);
+        int live = 2 * JournalScriptHistoryRepository.COMPACT_MIN_DEAD;
+        for (int i = 0; i < live; i++) {
+            repo.save(entry("S_" + i + "_a.sql", (long) i, 1L, i, 0L));
+        }
+        repo.close();
+        long liveSize = Files.size(file);
+
+        repo = new JournalScriptHistoryRepository(file);
+        for (int i = 0; i < JournalScriptHistoryRepository.COMPACT_MIN_DEAD; i++) {
+            repo.save(entry("S_" + i + "_a.sql", (long) i, 1L, i, 1L));
+        }
+        repo.close();
+
+        assertEquals(liveSize, Files.size(file));
+        repo = new JournalScriptHistoryRepository(file);
+        assertEquals(live, repo.count());
+        assertEquals(Long.valueOf(1L), repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("S_0_a.sql").getDurationMillis());
+    }
+
+    @Test
+    public void open_failsWhileAnotherRepositoryHoldsTheJournal() {
+        Path file = tmp.resolve("history.journal");
+        repo = new JournalScriptHistoryRepository(file);
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> new JournalScriptHistoryRepository(file));
+        assertTrue(ex.getMessage().contains("is used by another process"), ex.getMessage());
+    }
+
+    private static ScriptHistory entry(String path, Long sequence, Long version, long updateDate, Long durationMillis) {
+        ScriptHistory entry = new ScriptHistory(path, path.substring(0, 1), sequence, version, "c" + version,
+                path.charAt(0) + "_<seq_num>_.+\\.sql", new Date(0), new Date(updateDate), "REQ-1");
+        entry.setDurationMillis(durationMillis);
+        return entry;
+    }
+}
@@ -0,0 +1,89 @@
+package com.techyplanet.scriptdeployer.service;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.model.DiscoveredScript;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConflictIndexTest {
+
+    private final List<ScriptHistory> history = new ArrayList<>();
+
+    @Test
+    public void lookups_returnLatestEntries() {
+        history("S_1_a.sql", 1L, 1L, "S_<seq_num>_.+\\.sql", 1000);
+        history("S_1_a.sql", 1L, 2L, "S_<seq_num>_.+\\.sql", 2000);
+        history("R_1_b.sql", 1L, 3L, "R_<seq_num>_.+\\.sql", 3000);
+        history("R_1_b.sql", 1L, 1L, "R_<seq_num>_.+\\.sql", 1000);
+
+        ConflictIndex index = new ConflictIndex(history);
+
+        assertEquals(2, index.size());
+        assertEquals(Long.valueOf(2L), index.findByPath("S_1_a.sql").getVersion());
+        assertEquals(Long.valueOf(3L), index.findByPath("R_1_b.sql").getVersion());
+        assertEquals(Long.valueOf(2L), index.findBySequence(1L, "S_<seq_num>_.+\\.sql").getVersion());
+        assertNull(index.findByPath("missing.sql"));
+        assertNull(index.findBySequence(2L, "S_<seq_num>_.+\\.sql"));
+    }
+
+    @Test
+    public void conflicts_listsEveryConflictAcrossClasses() {
+        history("S_1_old.sql", 1L, 1L, "S_<seq_num>_.+\\.sql", 1000);
+        history("POST_1_x.sql", 1L, 1L, "R_<seq_num>_.+\\.sql", 1000);
+        List<DiscoveredScript> scripts = List.of(
+                script(ScriptPhase.PRE, "PRE__.+\\.sql", "PRE__a.sql", null),
+                script(ScriptPhase.S, "S_<seq_num>_.+\\.sql", "S_1_new.sql", 1L),
+                script(ScriptPhase.S, "S_<seq_num>_.+\\.sql", "S_2_a.sql", 2L),
+                script(ScriptPhase.S, "S_<seq_num>_.+\\.sql", "S_2_b.sql", 2L),
+                script(ScriptPhase.R, "R_<seq_num>_.+\\.sql", "S_2_a.sql", 2L),
+                script(ScriptPhase.POST, "POST_<seq_num>_.+\\.sql", "POST_1_x.sql", 1L));
+
+        List<String> conflicts = new ConflictIndex(history).conflicts(scripts, true);
+
+        assertEquals(4, conflicts.size(), conflicts.toString());
+        assertTrue(conflicts.get(0).contains("[S_1_old.sql] file was executed in previous runs with same sequence number"));
+        assertTrue(conflicts.get(1).contains("[S_2_a.sql] and [S_2_b.sql] have the same sequence number [2]"));
+        assertTrue(conflicts.get(2).contains("File [S_2_a.sql] matches both pattern"));
+        assertTrue(conflicts.get(3).contains("File [POST_1_x.sql] execution with pattern [POST_<seq_num>_.+\\.sql] conflicts"));
+    }
+
+    @Test
+    public void conflicts_ignoresPatternChangesUnlessConfiguredAsError() {
+        history("R_1_b.sql", 1L, 1L, "POST_<seq_num>_.+\\.sql", 1000);
+        List<DiscoveredScript> scripts = List.of(
+                script(ScriptPhase.S, "S_<seq_num>_.+\\.sql", "R_1_b.sql", 1L),
+                script(ScriptPhase.R, "R_<seq_num>_.+\\.sql", "R_1_b.sql", 1L));
+
+        assertTrue(new ConflictIndex(history).conflicts(scripts, false).isEmpty());
+        assertEquals(2, new ConflictIndex(history).conflicts(scripts, true).size());
+    }
+
+    @Test
+    public void check_failsWithAllConflictsInOneMessage() {
+        List<DiscoveredScript> scripts = new ArrayList<>();
+        for (int i = 0; i < ConflictIndex.MAX_REPORTED + 3; i++) {
+            scripts.add(script(ScriptPhase.S, "S_<seq_num>_.+\\.sql", "S_1_" + i + ".sql", 1L));
+        }
+        ConflictIndex index = new ConflictIndex(history);
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> index.check(scripts, true));
+        assertTrue(ex.getMessage().startsWith((ConflictIndex.MAX_REPORTED + 2) + " conflict(s) found"), ex.getMessage());
+        assertTrue(ex.getMessage().endsWith("... and 2 more"), ex.getMessage());
+        index.check(scripts.subList(0, 1), true);
+    }
+
+    private void history(String path, Long sequence, Long version, String pattern, long updateDate) {
+        history.add(new ScriptHistory(path, "S", sequence, version, "c", pattern, new Date(0), new Date(updateDate), "NA"));
+    }
+
+    private static DiscoveredScript script(ScriptPhase phase, String pattern, String path, Long sequence) {
+        return new DiscoveredScript(phase, pattern, new File(path), path, sequence);
+    }
+}
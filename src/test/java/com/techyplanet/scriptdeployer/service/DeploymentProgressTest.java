@@ -0,0 +1,91 @@
+package com.techyplanet.scriptdeployer.service;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeploymentProgressTest {
+
+    private InMemoryScriptHistoryRepository repo;
+    private DeploymentPlan plan;
+
+    @BeforeEach
+    public void setup() {
+        repo = new InMemoryScriptHistoryRepository();
+        plan = new DeploymentPlan("/scripts", "0:0", new Date());
+        plan.add(script(1, "R_1_a.sql", ScriptAction.CHANGED));
+        plan.add(script(2, "R_2_b.sql", ScriptAction.ALWAYS));
+        plan.add(script(3, "R_3_c.sql", ScriptAction.FIRST_RUN));
+        plan.add(script(4, "R_4_d.sql", ScriptAction.SKIP));
+    }
+
+    @Test
+    public void median_usesMeasuredRunsOnly() {
+        history("R_1_a.sql", 1, 100L);
+        history("R_1_a.sql", 2, 300L);
+        history("R_1_a.sql", 3, 200L);
+        history("R_1_a.sql", 4, null);
+        history("R_2_b.sql", 1, 40L);
+        history("R_2_b.sql", 2, 60L);
+
+        DeploymentProgress progress = new DeploymentProgress(plan, repo, 3, true);
+
+        assertEquals(Long.valueOf(200L), progress.getMedianMillis("R_1_a.sql"));
+        assertEquals(Long.valueOf(50L), progress.getMedianMillis("R_2_b.sql"));
+        assertNull(progress.getMedianMillis("R_3_c.sql"));
+    }
+
+    @Test
+    public void eta_estimatesUnmeasuredScriptsFromWhatAlreadyRan() {
+        history("R_1_a.sql", 1, 200L);
+        history("R_2_b.sql", 1, 50L);
+        DeploymentProgress progress = new DeploymentProgress(plan, repo, 3, false);
+
+        // R_3 never ran: estimated with the average median until something runs
+        assertEquals(Long.valueOf(200L + 50L + 125L), progress.getEtaMillis());
+
+        progress.executed(plan.getScripts().get(0), 100L, true);
+        assertEquals(Long.valueOf(50L + 100L), progress.getEtaMillis());
+
+        progress.executed(plan.getScripts().get(1), 50L, true);
+        progress.executed(plan.getScripts().get(2), 10L, true);
+        assertEquals(Long.valueOf(0L), progress.getEtaMillis());
+    }
+
+    @Test
+    public void eta_isUnknownWithoutAnyMeasure() {
+        assertNull(new DeploymentProgress(plan, repo, 3, false).getEtaMillis());
+    }
+
+    @Test
+    public void executed_flagsScriptsSlowerThanFactorTimesMedian() {
+        history("R_1_a.sql", 1, 100L);
+        DeploymentProgress progress = new DeploymentProgress(plan, repo, 3, false);
+
+        assertFalse(progress.executed(plan.getScripts().get(0), 300L, true));
+        assertTrue(progress.executed(plan.getScripts().get(0), 301L, true));
+        assertFalse(progress.executed(plan.getScripts().get(0), 301L, false), "failures aren't timed against history");
+        assertFalse(progress.executed(plan.getScripts().get(2), 100_000L, true), "no history, nothing to compare to");
+        assertFalse(new DeploymentProgress(plan, repo, 0, false).executed(plan.getScripts().get(0), 100_000L, true));
+    }
+
+    private void history(String path, long version, Long durationMillis) {
+        ScriptHistory entry = new ScriptHistory(path, "R", version, version, "c" + version, "R_<seq_num>_.+\\.sql",
+                new Date(0), new Date(version * 1000), "REQ-1");
+        entry.setDurationMillis(durationMillis);
+        repo.save(entry);
+    }
+
+    private static PlannedScript script(int order, String path, ScriptAction action) {
+        return new PlannedScript(order, ScriptPhase.R, "R_<seq_num>_.+\\.sql", path, (long) order, "c", 1L, action,
+                "R", 1L, "R_<seq_num>_.+\\.sql", null);
+    }
+}
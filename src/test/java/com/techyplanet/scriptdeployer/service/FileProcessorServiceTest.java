@@ -1,19 +1,38 @@
 package com.techyplanet.scriptdeployer.service;
 
+import com.techyplanet.scriptdeployer.ManifestGenerator;
 import com.techyplanet.scriptdeployer.component.AppSettings;
+import com.techyplanet.scriptdeployer.component.DeploymentMetrics;
+import com.techyplanet.scriptdeployer.component.DeploymentState;
+import com.techyplanet.scriptdeployer.component.DeploymentThrottle;
+import com.techyplanet.scriptdeployer.component.RunTrace;
 import com.techyplanet.scriptdeployer.entity.ScriptHistory;
-import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+import com.techyplanet.scriptdeployer.model.DeploymentPlan;
+import com.techyplanet.scriptdeployer.model.PlannedScript;
+import com.techyplanet.scriptdeployer.model.ScriptAction;
+import com.techyplanet.scriptdeployer.model.ScriptPhase;
+import com.techyplanet.scriptdeployer.model.ScriptSelection;
+import com.techyplanet.scriptdeployer.model.ScriptTree;
+import com.techyplanet.scriptdeployer.utils.ManifestFileUtils;
+import com.techyplanet.scriptdeployer.utils.PlanFileUtils;
+import com.techyplanet.scriptdeployer.utils.ScriptTreeUtils;
+import io.micrometer.core.instrument.Meter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,6 +44,8 @@ public class FileProcessorServiceTest {
     private AppSettings settings;
     private InMemoryScriptHistoryRepository repo;
     private FileProcessorService service;
+    private DeploymentMetrics metrics;
+    private RunTrace trace;
 
     @BeforeEach
     public void setup() throws Exception {
@@ -48,10 +69,11 @@ public class FileProcessorServiceTest {
 
         repo = new InMemoryScriptHistoryRepository();
 
-        service = new FileProcessorService();
-        ReflectionTestUtils.setField(service, "appSettings", settings);
-        ReflectionTestUtils.setField(service, "scriptVariablesSubstitutor", new org.apache.commons.text.StringSubstitutor(Collections.emptyMap()));
-        ReflectionTestUtils.setField(service, "scriptHistoryRepository", repo);
+        metrics = new DeploymentMetrics(settings);
+        trace = new RunTrace(settings);
+        service = new FileProcessorService(settings, new org.apache.commons.text.StringSubstitutor(Collections.emptyMap()),
+                repo, new DeploymentState(settings), metrics, trace, new DeploymentThrottle(settings),
+                new DeploymentPlanner(settings, repo, metrics, trace), null);
     }
 
     @Test
@@ -165,53 +187,447 @@ public class FileProcessorServiceTest {
         assertEquals(Long.valueOf(2L), third.getVersion());
     }
 
-    private static String rel(File root, File f) {
-        return root.toURI().relativize(f.toURI()).getPath();
+    @Test
+    public void plan_decidesWithoutExecuting_thenApplyRunsExactlyThePlan() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("plan"));
+        File dir = dirPath.toFile();
+        File s1 = new File(dir, "S_1_alpha.sql");
+        File r1 = new File(dir, "R_1_view.sql");
+        write(s1, "create table a(id int);");
+        write(r1, "create view v as select 1;");
+        service.processOneTimeFiles(dir);
+
+        Thread.sleep(5);
+        write(r1, "create view v as select 2;");
+        File s2 = new File(dir, "S_2_beta.sql");
+        write(s2, "create table b(id int);");
+
+        DeploymentPlan plan = service.plan(dir);
+        assertEquals(1, repo.count(), "Planning must not record anything");
+        Map<String, ScriptAction> actions = new HashMap<>();
+        for (PlannedScript p : plan.getScripts()) {
+            actions.put(p.getPath(), p.getAction());
+        }
+        assertEquals(ScriptAction.SKIP, actions.get(rel(dir, s1)));
+        assertEquals(ScriptAction.FIRST_RUN, actions.get(rel(dir, s2)));
+        assertEquals(ScriptAction.FIRST_RUN, actions.get(rel(dir, r1)));
+
+        Path planFile = tmp.resolve("deploy.plan");
+        PlanFileUtils.write(plan, planFile);
+        DeploymentPlan loaded = PlanFileUtils.read(planFile);
+        service.validatePlan(loaded, dir);
+        service.apply(loaded, dir);
+
+        assertEquals(3, repo.count());
+        assertEquals(Long.valueOf(1L), repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(rel(dir, s2)).getVersion());
+        assertThrows(RuntimeException.class, () -> service.validatePlan(loaded, dir), "History changed since planning");
     }
 
-    private static void write(File f, String content) throws Exception {
-        try (FileWriter fw = new FileWriter(f)) { fw.write(content); }
+    @Test
+    public void apply_failsWhenPlannedScriptChangedAfterPlanning() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("stale"));
+        File dir = dirPath.toFile();
+        File r1 = new File(dir, "R_1_view.sql");
+        write(r1, "create view v as select 1;");
+
+        Path planFile = tmp.resolve("deploy.plan");
+        PlanFileUtils.write(service.plan(dir), planFile);
+        write(r1, "create view v as select 9;");
+
+        DeploymentPlan loaded = PlanFileUtils.read(planFile);
+        service.validatePlan(loaded, dir);
+        assertThrows(RuntimeException.class, () -> service.apply(loaded, dir));
+        assertEquals(0, repo.count());
+    }
+
+    @Test
+    public void apply_retriesTransientFailuresOfTheFailingScriptOnly() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("retry"));
+        File dir = dirPath.toFile();
+        write(new File(dir, "R_1_view.sql"), "create view v as select 1;");
+        File attempts = tmp.resolve("attempts").toFile();
+        ReflectionTestUtils.setField(settings, "consoleCommand", "n=$(cat " + attempts + " 2>/dev/null || echo 0); n=$((n+1)); "
+                + "echo $n > " + attempts + "; if [ $n -lt 3 ]; then echo 'ERROR: lock wait timeout exceeded'; exit 1; fi; echo <script>");
+        ReflectionTestUtils.setField(settings, "stopOnScriptFail", true);
+        ReflectionTestUtils.setField(settings, "retryMax", 3);
+        ReflectionTestUtils.setField(settings, "retryScripts", "R_.+");
+        ReflectionTestUtils.setField(settings, "retryOutputPatterns", "lock wait timeout");
+        ReflectionTestUtils.setField(settings, "retryExitCodes", "");
+        ReflectionTestUtils.setField(settings, "retryBackoffMillis", 1L);
+        ReflectionTestUtils.setField(settings, "retryMaxBackoffMillis", 4L);
+
+        assertTrue(service.apply(service.plan(dir), dir));
+        assertEquals("3", Files.readString(attempts.toPath()).trim());
+        assertEquals(1, repo.count());
+        assertTrue(metrics.getMeters().stream().anyMatch(m -> m.getId().getName().equals(DeploymentMetrics.RETRIED)));
+
+        write(new File(dir, "R_1_view.sql"), "create view v as select 2;");
+        Files.writeString(attempts.toPath(), "0");
+        ReflectionTestUtils.setField(settings, "consoleCommand", "n=$(cat " + attempts + "); echo $((n+1)) > " + attempts
+                + "; echo 'ERROR: syntax error'; exit 2");
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> service.apply(service.plan(dir), dir));
+        assertTrue(ex.getMessage().contains("failed after 1 attempt(s)"), ex.getMessage());
+        assertEquals("1", Files.readString(attempts.toPath()).trim(), "permanent failures aren't retried");
+    }
+
+    @Test
+    public void apply_failedOneTimeScript_isNotTakenAsDeployed_byTheScriptsPlannedAfterIt() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("failed"));
+        File dir = dirPath.toFile();
+        File s1 = new File(dir, "S_1_alpha.sql");
+        write(s1, "create table a(id int);");
+        // also picked up as repeatable, which the plan skips as already run by the one time pattern
+        ReflectionTestUtils.setField(settings, "repeatableFilePattern", "S_<seq_num>_.+\\.sql");
+        ReflectionTestUtils.setField(settings, "filePatternConflict", "ignore");
+        File marker = tmp.resolve("failed.marker").toFile();
+        ReflectionTestUtils.setField(settings, "consoleCommand", "if [ ! -f " + marker + " ]; then touch " + marker
+                + "; exit 1; fi; echo <script>");
+
+        DeploymentPlan plan = service.plan(dir);
+        assertEquals(ScriptAction.FIRST_RUN, plan.getScripts().get(0).getAction());
+        assertEquals(ScriptAction.SKIP, plan.getScripts().get(1).getAction());
+
+        assertFalse(service.apply(plan, dir));
+        assertEquals(1, repo.count());
+        ScriptHistory entry = repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(rel(dir, s1));
+        assertEquals(ScriptPhase.R.getHistoryType(), entry.getType(), "repeatable run decided without the failed one");
+        assertEquals(Long.valueOf(1L), entry.getVersion());
+    }
+
+    @Test
+    public void plan_usesManifest_insteadOfScanning_andVerifiesScriptsBeforeRunning() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("manifest"));
+        File dir = dirPath.toFile();
+        File s1 = new File(dir, "S_1_alpha.sql");
+        File r1 = new File(dir, "R_1_view.sql");
+        write(s1, "create table a(id int);");
+        write(r1, "create view v as select 1;");
+
+        Properties properties = new Properties();
+        properties.setProperty("app.scripts.file.pattern.delimiter", ",");
+        properties.setProperty("app.scripts.oneTime.file.pattern", "S_<seq_num>_.+\\.sql");
+        properties.setProperty("app.scripts.repeatable.file.pattern", "R_<seq_num>_.+\\.sql");
+        properties.setProperty("app.scripts.pre.run.file.pattern", "RA_.+\\.sql");
+        properties.setProperty("app.scripts.post.run.file.pattern", "");
+        ManifestFileUtils.write(ManifestGenerator.generate(dir, properties), dirPath.resolve("deployer-manifest.tsv"));
+        ReflectionTestUtils.setField(settings, "scriptsManifest", "deployer-manifest.tsv");
+
+        // not listed in the manifest, so not deployed
+        write(new File(dir, "R_2_late.sql"), "create view w as select 2;");
+        DeploymentPlan plan = service.plan(dir);
+        assertEquals(2, plan.getScripts().size());
+        assertTrue(plan.isVerifyChecksums());
+
+        write(r1, "create view v as select 9;");
+        assertThrows(RuntimeException.class, () -> service.apply(plan, dir));
+        assertEquals(1, repo.count());
+        assertNotNull(repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(rel(dir, s1)));
+    }
+
+    @Test
+    public void plan_withSelection_coversSelectedScriptsOnly_andKeepsTheirOrder() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("selection"));
+        Files.createDirectories(dirPath.resolve("billing"));
+        Files.createDirectories(dirPath.resolve("reports"));
+        File dir = dirPath.toFile();
+        File s1 = new File(dir, "billing/S_1200_alpha.sql");
+        File s2 = new File(dir, "billing/S_1250_beta.sql");
+        File s3 = new File(dir, "billing/S_1400_gamma.sql");
+        File r1 = new File(dir, "billing/R_1_view.sql");
+        write(s2, "-- @tags: hotfix\ncreate table b(id int);");
+        write(s1, "create table a(id int);");
+        write(s3, "-- @tags: Hotfix, billing\ncreate table c(id int);");
+        write(r1, "create view v as select 1;");
+        write(new File(dir, "reports/S_1300_report.sql"), "-- @tags: hotfix\ncreate table r(id int);");
+
+        DeploymentPlan plan = service.plan(dir, ScriptSelection.parse(List.of("billing/"), null, "1200-1300",
+                List.of("S")));
+        List<String> paths = new ArrayList<>();
+        for (PlannedScript p : plan.getScripts()) {
+            paths.add(p.getPath());
+        }
+        assertEquals(List.of(rel(dir, s1), rel(dir, s2)), paths);
+        assertEquals("only=billing/ seq-range=1200-1300 class=S", plan.getSelection());
+
+        DeploymentPlan tagged = service.plan(dir, ScriptSelection.parse(List.of("**/S_*.sql"), List.of("hotfix"), null,
+                null));
+        paths.clear();
+        for (PlannedScript p : tagged.getScripts()) {
+            paths.add(p.getPath());
+        }
+        assertEquals(List.of(rel(dir, s2), "reports/S_1300_report.sql", rel(dir, s3)), paths);
+
+        Path planFile = tmp.resolve("selection.plan");
+        PlanFileUtils.write(plan, planFile);
+        assertEquals(plan.getSelection(), PlanFileUtils.read(planFile).getSelection());
+        assertNull(service.plan(dir).getSelection());
+    }
+
+    @Test
+    public void applyPipelined_runsScriptsInPlanOrder_withTheDecisionsOfAPlanComputedUpFront() throws Exception {
+        ReflectionTestUtils.setField(settings, "pipelineDepth", 2);
+        ReflectionTestUtils.setField(settings, "checksumThreads", 2);
+        Path dirPath = Files.createDirectory(tmp.resolve("pipeline"));
+        File dir = dirPath.toFile();
+        for (int i = 1; i <= 6; i++) {
+            write(new File(dir, "S_" + i + "_table.sql"), "create table t" + i + "(id int);");
+        }
+        write(new File(dir, "R_1_view.sql"), "create view v as select 1;");
+        write(new File(dir, "RA_grants.sql"), "grant all;");
+        service.processOneTimeFiles(dir);
+        write(new File(dir, "S_7_table.sql"), "create table t7(id int);");
+
+        List<String> expected = new ArrayList<>();
+        for (PlannedScript p : service.plan(dir).getScripts()) {
+            expected.add(p.getAction() + " " + p.getPath());
+        }
+        List<String> planned = new ArrayList<>();
+        List<String> started = new ArrayList<>();
+        boolean[] completed = new boolean[1];
+        assertTrue(service.applyPipelined(dir, ScriptSelection.ALL, new DeploymentListener() {
+            @Override
+            public void scriptPlanned(PlannedScript script) {
+                planned.add(script.getAction() + " " + script.getPath());
+            }
+
+            @Override
+            public void planCompleted() {
+                completed[0] = true;
+            }
+
+            @Override
+            public void scriptStarted(PlannedScript script) {
+                started.add(script.getPath());
+            }
+        }));
+        assertEquals(expected, planned);
+        assertTrue(completed[0]);
+        assertEquals(List.of("RA_grants.sql", "S_7_table.sql", "R_1_view.sql"), started);
+        assertEquals(9, repo.count());
+    }
+
+    @Test
+    public void applyPipelined_stopsAtTheScriptWhichCantBePlanned() throws Exception {
+        ReflectionTestUtils.setField(settings, "pipelineDepth", 1);
+        ReflectionTestUtils.setField(settings, "fileModifyError", "error");
+        Path dirPath = Files.createDirectory(tmp.resolve("pipeline_error"));
+        File dir = dirPath.toFile();
+        File s2 = new File(dir, "S_2_beta.sql");
+        write(s2, "create table b(id int);");
+        service.processOneTimeFiles(dir);
+        write(new File(dir, "S_1_alpha.sql"), "create table a(id int);");
+        write(s2, "create table b(id int, v int);");
+
+        assertThrows(RuntimeException.class, () -> service.applyPipelined(dir, ScriptSelection.ALL,
+                DeploymentListener.NONE));
+        assertNotNull(repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("S_1_alpha.sql"),
+                "scripts planned before the failing one still run");
+        assertEquals(2, repo.count());
     }
 
-    private static class InMemoryScriptHistoryRepository implements ScriptHistoryRepository {
-        private final Map<String, List<ScriptHistory>> byPath = new ConcurrentHashMap<>();
+    @Test
+    public void apply_recordsStageTimersTaggedWithPhaseAndPattern() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("metrics"));
+        File dir = dirPath.toFile();
+        write(new File(dir, "R_1_view.sql"), "create view v as select 1;");
+        ReflectionTestUtils.setField(settings, "metricsExportEnabled", true);
+
+        service.processRepeatableFiles(dir);
 
-        @Override
-        public ScriptHistory findFirstBySequenceAndPatternOrderByVersionDesc(Long sequence, String pattern) {
-            return byPath.values().stream()
-                    .flatMap(List::stream)
-                    .filter(h -> Objects.equals(h.getSequence(), sequence) && pattern.equals(h.getPattern()))
-                    .max(Comparator.comparing(h -> h.getVersion()))
-                    .orElse(null);
+        for (String stage : Arrays.asList(DeploymentMetrics.SCAN, DeploymentMetrics.CHECKSUM,
+                DeploymentMetrics.HISTORY_LOOKUP, DeploymentMetrics.PROCESS_SPAWN, DeploymentMetrics.EXECUTION,
+                DeploymentMetrics.HISTORY_SAVE)) {
+            Meter meter = metrics.getMeters().stream().filter(m -> m.getId().getName().equals(stage)).findFirst()
+                    .orElseThrow(() -> new AssertionError("no meter " + stage));
+            assertEquals("R", meter.getId().getTag("phase"));
+            assertEquals("R_<seq_num>_.+\\.sql", meter.getId().getTag("pattern"));
         }
 
-        @Override
-        public ScriptHistory findFirstByFileIdPathOrderByFileIdUpdateDateDesc(String path) {
-            List<ScriptHistory> list = byPath.get(path);
-            if (list == null || list.isEmpty()) return null;
-            return list.stream().max(Comparator.comparing(h -> h.getFileId().getUpdateDate())).orElse(null);
+        metrics.export();
+        try (var files = Files.list(tmp)) {
+            List<String> names = files.map(p -> p.getFileName().toString()).toList();
+            assertTrue(names.stream().anyMatch(n -> n.startsWith("metrics.") && n.endsWith(".prom")));
+            assertTrue(names.stream().anyMatch(n -> n.startsWith("metrics.") && n.endsWith(".json")));
         }
+    }
+
+    @Test
+    public void apply_recordsDurationAndOutputBytes_andFlagsSlowScripts() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("durations"));
+        File dir = dirPath.toFile();
+        File r1 = new File(dir, "R_1_view.sql");
+        write(r1, "create view v as select 1;");
+        ReflectionTestUtils.setField(settings, "slowScriptFactor", 3d);
+        ReflectionTestUtils.setField(settings, "progressLogEnabled", true);
+
+        service.processRepeatableFiles(dir);
+
+        ScriptHistory first = repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(rel(dir, r1));
+        assertNotNull(first.getDurationMillis());
+        // echo prints the script path followed by a new line
+        assertEquals(Long.valueOf(r1.getAbsolutePath().length() + 1), first.getOutputBytes());
+
+        // a history where the script used to take no time at all makes the next run slow
+        first.setDurationMillis(0L);
+        ReflectionTestUtils.setField(settings, "consoleCommand", "sleep 0.05; echo <script>");
+        Thread.sleep(5);
+        write(r1, "create view v as select 2;");
+        service.processRepeatableFiles(dir);
+
+        assertTrue(metrics.getMeters().stream().anyMatch(m -> m.getId().getName().equals(DeploymentMetrics.SLOW)));
+    }
+
+    @Test
+    public void apply_writesTraceSpansForEachStage() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("trace"));
+        File dir = dirPath.toFile();
+        write(new File(dir, "R_1_view.sql"), "create view v as select 1;");
+        ReflectionTestUtils.setField(settings, "traceEnabled", true);
+        ReflectionTestUtils.setField(settings, "scriptVariables", "env=test");
+
+        trace.start();
+        service.processRepeatableFiles(dir);
+        trace.finish();
 
-        @Override
-        public <S extends ScriptHistory> S save(S entity) {
-            byPath.computeIfAbsent(entity.getFileId().getPath(), k -> new ArrayList<>()).add(entity);
-            return entity;
+        Path traceFile;
+        try (var files = Files.list(tmp)) {
+            traceFile = files.filter(p -> p.getFileName().toString().startsWith("trace.")).findFirst().orElseThrow();
         }
+        String json = Files.readString(traceFile);
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(json.trim().endsWith("]}"));
+        for (String category : Arrays.asList(RunTrace.SCAN, RunTrace.CHECKSUM, RunTrace.HISTORY, RunTrace.PLAN,
+                RunTrace.PHASE, RunTrace.SUBSTITUTION, RunTrace.PROCESS)) {
+            assertTrue(json.contains("\"cat\":\"" + category + "\""), "no span for " + category);
+        }
+        assertTrue(json.contains("\"name\":\"thread_name\""));
+    }
 
-        // --- below are unneeded for tests; provide minimal implementations ---
-        @Override public <S extends ScriptHistory> Iterable<S> saveAll(Iterable<S> entities) { for (S e : entities) save(e); return entities; }
-        @Override public Optional<ScriptHistory> findById(Long aLong) { return Optional.empty(); }
-        @Override public boolean existsById(Long aLong) { return false; }
-        @Override public Iterable<ScriptHistory> findAll() { return byPath.values().stream().flatMap(List::stream)::iterator; }
-        @Override public Iterable<ScriptHistory> findAllById(Iterable<Long> longs) { return Collections.emptyList(); }
-        @Override public long count() { return byPath.values().stream().mapToLong(List::size).sum(); }
-        @Override public void deleteById(Long aLong) { }
-        @Override public void delete(ScriptHistory entity) { }
-
-        @Override
-        public void deleteAllById(Iterable<? extends Long> longs) { }
-
-        @Override public void deleteAll(Iterable<? extends ScriptHistory> entities) { }
-        @Override public void deleteAll() { byPath.clear(); }
+    @Test
+    public void compressedScripts_matchByLogicalName_andStreamSubstitutedContentToStdin() throws Exception {
+        Path dirPath = Files.createDirectory(tmp.resolve("compressed"));
+        File dir = dirPath.toFile();
+        File gz = new File(dir, "R_1_seed.sql.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            out.write("insert into ${table} values (1);\ninsert into ${table} values (2);\n".getBytes(StandardCharsets.UTF_8));
+        }
+        File received = tmp.resolve("stdin.sql").toFile();
+        ReflectionTestUtils.setField(settings, "consoleStdinCommand", "cat > " + received.getAbsolutePath());
+        ReflectionTestUtils.setField(settings, "scriptVariables", "table");
+        ReflectionTestUtils.setField(service, "scriptVariablesSubstitutor",
+                new org.apache.commons.text.StringSubstitutor(Map.of("table", "seed")));
+
+        // compressed scripts are only supported once asked for
+        assertEquals(0, service.plan(dir, ScriptPhase.R).getScripts().size());
+        ReflectionTestUtils.setField(settings, "scriptsCompressed", true);
+        service.processRepeatableFiles(dir);
+
+        ScriptHistory history = repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc(rel(dir, gz));
+        assertNotNull(history);
+        assertEquals(String.format("insert into seed values (1);%ninsert into seed values (2);%n"),
+                Files.readString(received.toPath()));
+        assertFalse(new File(tmp.toFile(), "scriptTmpFile.txt").exists(), "no expanded copy is written");
+    }
+
+    @Test
+    public void archive_deploysFromZipFolder_extractingOnlyScriptsToRun() throws Exception {
+        File zip = tmp.resolve("release.zip").toFile();
+        zip(zip, "bundle/files/R_1_view.sql", "create view v as select 1;", "bundle/files/R_2_fn.sql", "select 1;",
+                "bundle/deployer/R_3_other.sql", "select 3;");
+        File location = new File(zip.getPath() + "!/bundle/files");
+
+        service.plan(location).getScripts().forEach(p -> assertEquals(ScriptAction.FIRST_RUN, p.getAction()));
+        service.processRepeatableFiles(location);
+        assertEquals(2, repo.count());
+        assertNotNull(repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("R_1_view.sql"));
+        assertNotNull(repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("R_2_fn.sql"));
+
+        Path archiveDir;
+        try (var dirs = Files.list(tmp.resolve("archive"))) {
+            archiveDir = dirs.findFirst().orElseThrow();
+        }
+        deleteRecursively(archiveDir);
+        Files.createDirectories(archiveDir);
+        Thread.sleep(5);
+        zip(zip, "bundle/files/R_1_view.sql", "create view v as select 1;", "bundle/files/R_2_fn.sql", "select 2;");
+
+        service.processRepeatableFiles(location);
+        assertEquals(Long.valueOf(2L), repo.findFirstByFileIdPathOrderByFileIdUpdateDateDesc("R_2_fn.sql").getVersion());
+        assertTrue(Files.isRegularFile(archiveDir.resolve("R_2_fn.sql")));
+        assertFalse(Files.exists(archiveDir.resolve("R_1_view.sql")), "skipped scripts aren't extracted");
+    }
+
+    @Test
+    public void treeIncremental_plansOnlyChangedBranches_andSkipsNoOpRunsWithoutHashing() throws Exception {
+        ReflectionTestUtils.setField(settings, "treeIncremental", true);
+        ReflectionTestUtils.setField(settings, "stateFile", tmp.resolve("db/deployer.state").toString());
+        File dir = Files.createDirectory(tmp.resolve("tree")).toFile();
+        File billing = Files.createDirectory(dir.toPath().resolve("billing")).toFile();
+        File reports = Files.createDirectory(dir.toPath().resolve("reports")).toFile();
+        write(new File(billing, "S_1_a.sql"), "a");
+        write(new File(reports, "R_1_b.sql"), "b");
+
+        assertTrue(service.apply(service.plan(dir), dir));
+        service.recordDeployment(dir);
+        assertTrue(Files.isRegularFile(tmp.resolve("db/scripts.tree")));
+
+        // touched without changing its content, the script is rehashed for the tree only
+        assertTrue(new File(billing, "S_1_a.sql").setLastModified(System.currentTimeMillis() - 60_000));
+        DeploymentPlan noOp = service.plan(dir);
+        assertEquals(2, noOp.count(ScriptAction.SKIP));
+        assertTrue(noOp.getScripts().stream().allMatch(p -> p.getChecksum() == null), "nothing is planned");
+
+        write(new File(reports, "R_1_b.sql"), "b2");
+        write(new File(billing, "S_2_c.sql"), "c");
+        Map<String, PlannedScript> planned = new HashMap<>();
+        service.plan(dir).getScripts().forEach(p -> planned.put(p.getPath(), p));
+        assertEquals(ScriptAction.SKIP, planned.get("billing/S_1_a.sql").getAction());
+        assertNull(planned.get("billing/S_1_a.sql").getChecksum());
+        assertEquals(ScriptAction.FIRST_RUN, planned.get("billing/S_2_c.sql").getAction());
+        assertEquals(ScriptAction.CHANGED, planned.get("reports/R_1_b.sql").getAction());
+    }
+
+    @Test
+    public void treeIncremental_recordsTheTreeThePlanWasBuiltFrom_withScriptsOnly() throws Exception {
+        ReflectionTestUtils.setField(settings, "treeIncremental", true);
+        ReflectionTestUtils.setField(settings, "stateFile", tmp.resolve("db/deployer.state").toString());
+        File dir = Files.createDirectory(tmp.resolve("tree")).toFile();
+        write(new File(dir, "R_1_b.sql"), "b");
+        write(new File(dir, "notes.txt"), "not a script");
+
+        DeploymentPlan plan = service.plan(dir);
+        assertNotNull(plan.getScripts().get(0).getChecksum());
+        assertTrue(service.apply(plan, dir));
+        // changed while the deployment ran, it wasn't deployed
+        write(new File(dir, "R_1_b.sql"), "b2");
+        service.recordDeployment(dir);
+
+        ScriptTree recorded = ScriptTreeUtils.read(tmp.resolve("db/scripts.tree"));
+        assertNull(recorded.getFile("notes.txt"), "files no pattern matches aren't hashed");
+        assertEquals(ScriptAction.CHANGED, service.plan(dir).getScripts().get(0).getAction());
+    }
+
+    private static void zip(File zip, String... entries) throws Exception {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws Exception {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String rel(File root, File f) {
+        return root.toURI().relativize(f.toURI()).getPath();
+    }
+
+    private static void write(File f, String content) throws Exception {
+        try (FileWriter fw = new FileWriter(f)) { fw.write(content); }
     }
 }
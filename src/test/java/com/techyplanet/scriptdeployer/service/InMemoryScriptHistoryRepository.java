@@ -0,0 +1,66 @@
+package com.techyplanet.scriptdeployer.service;
+
+import com.techyplanet.scriptdeployer.entity.ScriptHistory;
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryScriptHistoryRepository implements ScriptHistoryRepository {
+    private final Map<String, List<ScriptHistory>> byPath = new ConcurrentHashMap<>();
+
+    @Override
+    public ScriptHistory findFirstBySequenceAndPatternOrderByVersionDesc(Long sequence, String pattern) {
+        return byPath.values().stream()
+                .flatMap(List::stream)
+                .filter(h -> Objects.equals(h.getSequence(), sequence) && pattern.equals(h.getPattern()))
+                .max(Comparator.comparing(h -> h.getVersion()))
+                .orElse(null);
+    }
+
+    @Override
+    public ScriptHistory findFirstByFileIdPathOrderByFileIdUpdateDateDesc(String path) {
+        List<ScriptHistory> list = byPath.get(path);
+        if (list == null || list.isEmpty()) return null;
+        return list.stream().max(Comparator.comparing(h -> h.getFileId().getUpdateDate())).orElse(null);
+    }
+
+    @Override
+    public ScriptHistory findFirstByOrderByFileIdUpdateDateDesc() {
+        return byPath.values().stream()
+                .flatMap(List::stream)
+                .max(Comparator.comparing(h -> h.getFileId().getUpdateDate()))
+                .orElse(null);
+    }
+
+    @Override
+    public List<ScriptHistory> findTop10ByFileIdPathAndDurationMillisNotNullOrderByFileIdUpdateDateDesc(String path) {
+        return byPath.getOrDefault(path, Collections.emptyList()).stream()
+                .filter(h -> h.getDurationMillis() != null)
+                .sorted(Comparator.comparing((ScriptHistory h) -> h.getFileId().getUpdateDate()).reversed())
+                .limit(10)
+                .toList();
+    }
+
+    @Override
+    public <S extends ScriptHistory> S save(S entity) {
+        byPath.computeIfAbsent(entity.getFileId().getPath(), k -> new ArrayList<>()).add(entity);
+        return entity;
+    }
+
+    // --- below are unneeded for tests; provide minimal implementations ---
+    @Override public <S extends ScriptHistory> Iterable<S> saveAll(Iterable<S> entities) { for (S e : entities) save(e); return entities; }
+    @Override public Optional<ScriptHistory> findById(Long aLong) { return Optional.empty(); }
+    @Override public boolean existsById(Long aLong) { return false; }
+    @Override public Iterable<ScriptHistory> findAll() { return byPath.values().stream().flatMap(List::stream)::iterator; }
+    @Override public Iterable<ScriptHistory> findAllById(Iterable<Long> longs) { return Collections.emptyList(); }
+    @Override public long count() { return byPath.values().stream().mapToLong(List::size).sum(); }
+    @Override public void deleteById(Long aLong) { }
+    @Override public void delete(ScriptHistory entity) { }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> longs) { }
+
+    @Override public void deleteAll(Iterable<? extends ScriptHistory> entities) { }
+    @Override public void deleteAll() { byPath.clear(); }
+}
@@ -0,0 +1,112 @@
+package com.techyplanet.scriptdeployer.service;
+
+import com.techyplanet.scriptdeployer.component.AppSettings;
+import com.techyplanet.scriptdeployer.component.DBSpooler;
+import com.techyplanet.scriptdeployer.component.DeploymentMetrics;
+import com.techyplanet.scriptdeployer.component.DeploymentThrottle;
+import com.techyplanet.scriptdeployer.component.RunTrace;
+import com.techyplanet.scriptdeployer.model.DeploymentTarget;
+import com.techyplanet.scriptdeployer.model.TargetDeploymentResult;
+import com.techyplanet.scriptdeployer.repository.ScriptHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TargetDeploymentServiceTest {
+
+    @TempDir
+    Path tmp;
+
+    private AppSettings settings;
+    private final Map<String, InMemoryScriptHistoryRepository> repos = new ConcurrentHashMap<>();
+    private TargetDeploymentService service;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        settings = new AppSettings();
+        ReflectionTestUtils.setField(settings, "filePatternDelimiter", ",");
+        ReflectionTestUtils.setField(settings, "oneTimeFilePattern", "S_<seq_num>_.+\\.sql");
+        ReflectionTestUtils.setField(settings, "repeatableFilePattern", "R_<seq_num>_.+\\.sql");
+        ReflectionTestUtils.setField(settings, "preRunFilePattern", "");
+        ReflectionTestUtils.setField(settings, "postRunFilePattern", "");
+        ReflectionTestUtils.setField(settings, "filePatternConflict", "error");
+        ReflectionTestUtils.setField(settings, "consoleCommand", "echo <script>");
+        ReflectionTestUtils.setField(settings, "consoleCommandLogging", "<script>");
+        ReflectionTestUtils.setField(settings, "stopOnScriptFail", true);
+        ReflectionTestUtils.setField(settings, "fileModifyError", "true");
+        ReflectionTestUtils.setField(settings, "scriptVariables", "");
+        ReflectionTestUtils.setField(settings, "logDir", tmp.toAbsolutePath().toString());
+        ReflectionTestUtils.setField(settings, "reqNumber", "REQ-1");
+        ReflectionTestUtils.setField(settings, "targetsParallelism", 2);
+
+        DeploymentMetrics metrics = new DeploymentMetrics(settings);
+        RunTrace trace = new RunTrace(settings);
+        // targets bring their own history and variables, the service's are never used
+        FileProcessorService fileProcessorService = new FileProcessorService(settings, null, null, null, metrics, trace,
+                new DeploymentThrottle(settings), new DeploymentPlanner(settings, null, metrics, trace), null);
+
+        DBSpooler dbSpooler = new DBSpooler();
+        ReflectionTestUtils.setField(dbSpooler, "appSettings", settings);
+        ReflectionTestUtils.setField(dbSpooler, "deploymentMetrics", metrics);
+
+        service = new TargetDeploymentService() {
+            @Override
+            protected ScriptHistoryRepository historyRepository(DeploymentTarget target) {
+                return repos.computeIfAbsent(target.getTableNamePrefix(), k -> new InMemoryScriptHistoryRepository());
+            }
+        };
+        ReflectionTestUtils.setField(service, "appSettings", settings);
+        ReflectionTestUtils.setField(service, "fileProcessorService", fileProcessorService);
+        ReflectionTestUtils.setField(service, "dbSpooler", dbSpooler);
+        ReflectionTestUtils.setField(service, "env", new MockEnvironment());
+    }
+
+    @Test
+    public void deploy_runsEveryTargetWithItsOwnHistoryAndVariables_andIsolatesFailures() throws Exception {
+        File dir = Files.createDirectory(tmp.resolve("scripts")).toFile();
+        Files.writeString(new File(dir, "S_1_table.sql").toPath(), "create table t_${tenant}(id int);\n");
+        Files.writeString(new File(dir, "R_1_view.sql").toPath(), "create view v as select 1;\n");
+        Path out = Files.createDirectory(tmp.resolve("out"));
+
+        Path targets = tmp.resolve("targets.tsv");
+        Files.writeString(targets, String.join("\n",
+                "name\ttable.prefix\tcommand\ttenant",
+                "# tenants",
+                "t1\t\tcat <script> >> " + out + "/${tenant}.sql\tone",
+                "t2\tT2_\tcat <script> >> " + out + "/${tenant}.sql\ttwo",
+                "t3\t\texit 3\tthree",
+                ""));
+        ReflectionTestUtils.setField(settings, "targetsFile", targets.toString());
+        ReflectionTestUtils.setField(settings, "scriptsManifest", "");
+
+        List<TargetDeploymentResult> results = service.deploy(dir);
+
+        assertEquals(Arrays.asList("t1", "t2", "t3"), results.stream().map(TargetDeploymentResult::getName).toList());
+        assertTrue(results.get(0).isSucceeded());
+        assertTrue(results.get(1).isSucceeded());
+        assertFalse(results.get(2).isSucceeded());
+        assertNotNull(results.get(2).getMessage());
+
+        assertEquals(2, repos.get("t1_").count());
+        assertEquals(2, repos.get("T2_").count());
+        assertEquals(0, repos.get("t3_").count());
+        assertTrue(Files.readString(out.resolve("one.sql")).contains("create table t_one(id int);"));
+        assertTrue(Files.readString(out.resolve("two.sql")).contains("create table t_two(id int);"));
+
+        // second run only touches what is missing
+        results = service.deploy(dir);
+        assertEquals(2, repos.get("t1_").count());
+        assertEquals(0, results.get(0).getPlannedScripts());
+        assertFalse(results.get(2).isSucceeded());
+    }
+}
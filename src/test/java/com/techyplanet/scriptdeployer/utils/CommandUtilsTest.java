@@ -2,11 +2,21 @@ package com.techyplanet.scriptdeployer.utils;
 
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CommandUtilsTest {
 
+    @TempDir
+    Path tmp;
+
     private String successCommand() {
         if (SystemUtils.IS_OS_WINDOWS) {
             return "echo hello";
@@ -41,4 +51,53 @@ public class CommandUtilsTest {
     public void executeAndPrintOnFail_throwsOnFailureWhenStopOnFailTrue() {
         assertThrows(RuntimeException.class, () -> CommandUtils.executeAndPrintOnFail(failCommand(), true));
     }
+
+    @Test
+    public void executeToFile_writesOutputToTheFileOnly_andReportsItsSize() throws Exception {
+        File outputFile = tmp.resolve("S_1_a.sql.log").toFile();
+        long[] captured = new long[1];
+        CommandUtils.ExecutionListener listener = new CommandUtils.ExecutionListener() {
+            @Override
+            public void processStarted(long spawnNanos) {
+            }
+
+            @Override
+            public void processEnded(int exitCode, long nanos) {
+            }
+
+            @Override
+            public void outputCaptured(long bytes) {
+                captured[0] = bytes;
+            }
+        };
+
+        assertTrue(CommandUtils.executeToFile(successCommand(), false, outputFile, listener, null));
+        assertEquals("hello", Files.readString(outputFile.toPath()).trim());
+        assertEquals(outputFile.length(), captured[0]);
+
+        assertFalse(CommandUtils.executeToFile(failCommand(), false, outputFile, listener, null));
+        assertThrows(RuntimeException.class, () -> CommandUtils.executeToFile(failCommand(), true, outputFile, null, null));
+    }
+
+    @Test
+    public void errorPattern_killsTheCommandAsSoonAsAMatchingLineIsPrinted() {
+        List<Pattern> errorPatterns = List.of(Pattern.compile("^ERROR:"), Pattern.compile("ORA-[0-9]{5}"));
+        String command = "echo 'creating table'; echo 'ORA-00942: table or view does not exist'; sleep 20; echo done";
+
+        long start = System.nanoTime();
+        assertFalse(CommandUtils.execute(command, false, null, errorPatterns));
+        assertTrue(System.nanoTime() - start < 10_000_000_000L, "the command must not run to its end");
+
+        assertFalse(CommandUtils.executeAndPrintOnFail(command, false, null, 1024, false, errorPatterns));
+        RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> CommandUtils.execute(command, true, null, errorPatterns));
+        assertTrue(ex.getMessage().contains("ORA-00942"));
+    }
+
+    @Test
+    public void errorPattern_failsTheCommandEvenIfItExitsWithZero() {
+        List<Pattern> errorPatterns = List.of(Pattern.compile("^ERROR:"));
+        assertFalse(CommandUtils.execute("echo 'ERROR: syntax error at or near'", false, null, errorPatterns));
+        assertTrue(CommandUtils.execute("echo 'no ERROR: here'", false, null, errorPatterns));
+    }
 }
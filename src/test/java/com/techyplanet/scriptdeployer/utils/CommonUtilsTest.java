@@ -5,10 +5,12 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -80,4 +82,19 @@ public class CommonUtilsTest {
         assertEquals(c1, c2);
         assertTrue(c1.matches("[A-F0-9]{32}"));
     }
+
+    @Test
+    public void generateFileChecksum_hashesLogicalContentOfCompressedFiles() throws Exception {
+        Path plain = tmp.resolve("R_1_data.sql");
+        Files.writeString(plain, "insert into t values (1);\n");
+        Path gz = tmp.resolve("R_2_data.sql.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write(Files.readAllBytes(plain));
+        }
+        assertEquals(CommonUtils.generateFileChecksum(plain), CommonUtils.generateFileChecksum(gz, true));
+        // unless compressed scripts are supported, the file is hashed as it is
+        assertNotEquals(CommonUtils.generateFileChecksum(plain), CommonUtils.generateFileChecksum(gz));
+        assertEquals("R_2_data.sql", CompressedFileUtils.logicalName(gz.getFileName().toString()));
+        assertEquals("R_1_data.sql", CompressedFileUtils.logicalName("R_1_data.sql"));
+    }
 }
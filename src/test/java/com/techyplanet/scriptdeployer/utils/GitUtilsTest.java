@@ -0,0 +1,53 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GitUtilsTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    public void changedPaths_coversCommittedUncommittedAndUntrackedChanges() throws Exception {
+        Path scripts = Files.createDirectories(tmp.resolve("repo/db/scripts"));
+        Files.writeString(scripts.resolve("S_1_a.sql"), "create table a(id int);");
+        Files.writeString(scripts.resolve("R_1_v.sql"), "create view v as select 1;");
+        Files.writeString(tmp.resolve("repo/README.md"), "readme");
+
+        try (Git git = Git.init().setDirectory(tmp.resolve("repo").toFile()).call()) {
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("first").setSign(false).setAuthor("t", "t@t").setCommitter("t", "t@t").call();
+            String deployed = GitUtils.headCommit(scripts.toFile());
+            assertNotNull(deployed);
+            assertTrue(GitUtils.isClean(scripts.toFile()));
+            assertTrue(GitUtils.changedPaths(scripts.toFile(), deployed).isEmpty());
+
+            Files.writeString(scripts.resolve("R_1_v.sql"), "create view v as select 2;");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("second").setSign(false).setAuthor("t", "t@t").setCommitter("t", "t@t").call();
+            Files.writeString(scripts.resolve("S_1_a.sql"), "create table a(id int, v int);");
+            Files.writeString(scripts.resolve("S_2_b.sql"), "create table b(id int);");
+            Files.writeString(tmp.resolve("repo/README.md"), "changed outside of scripts");
+
+            Set<String> changed = GitUtils.changedPaths(scripts.toFile(), deployed);
+            assertEquals(Set.of("R_1_v.sql", "S_1_a.sql", "S_2_b.sql"), changed);
+            assertFalse(GitUtils.isClean(scripts.toFile()));
+        }
+    }
+
+    @Test
+    public void changedPaths_isNullWhenCommitOrRepositoryIsMissing() throws Exception {
+        File plainDir = Files.createDirectories(tmp.resolve("plain")).toFile();
+        assertNull(GitUtils.headCommit(plainDir));
+        assertNull(GitUtils.changedPaths(plainDir, "0123456789abcdef0123456789abcdef01234567"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void applies_onlyToMatchingScriptsWhenRetriesAreEnabled() {
+        RetryPolicy policy = policy(2, List.of(), Set.of());
+        assertTrue(policy.applies("R_1_view.sql"));
+        assertFalse(policy.applies("S_1_table.sql"));
+        assertFalse(policy(0, List.of(), Set.of()).applies("R_1_view.sql"));
+    }
+
+    @Test
+    public void classifier_marksFailuresTransientByOutputOrExitCode() throws Exception {
+        RetryPolicy policy = policy(2, List.of(Pattern.compile("(?i)too many connections")), Set.of(75));
+
+        RetryPolicy.Classifier output = policy.classifier();
+        output.write("connecting\nFATAL: Too many connections".getBytes(StandardCharsets.UTF_8));
+        assertEquals("output [FATAL: Too many connections]", output.transientReason(1));
+
+        RetryPolicy.Classifier exitCode = policy.classifier();
+        exitCode.write("ERROR: deadlock\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("exit code [75]", exitCode.transientReason(75));
+        assertNull(exitCode.transientReason(1));
+
+        assertNotNull(policy(2, Collections.emptyList(), Set.of()).classifier().transientReason(1),
+                "without classification every failure is transient");
+    }
+
+    @Test
+    public void backoff_growsExponentiallyWithJitterUpToTheMaximum() {
+        RetryPolicy policy = new RetryPolicy(10, Pattern.compile(".*"), List.of(), Set.of(), 100, 1000);
+        assertEquals(50, policy.backoffMillis(1, 0));
+        assertEquals(99, policy.backoffMillis(1, 0.99));
+        assertEquals(100, policy.backoffMillis(2, 0));
+        assertEquals(200, policy.backoffMillis(3, 0));
+        assertEquals(500, policy.backoffMillis(5, 0));
+        assertEquals(500, policy.backoffMillis(60, 0));
+        assertTrue(policy.backoffMillis(60, 0.999) < 1000);
+    }
+
+    private static RetryPolicy policy(int maxRetries, List<Pattern> outputPatterns, Set<Integer> exitCodes) {
+        return new RetryPolicy(maxRetries, Pattern.compile("R_.+"), outputPatterns, exitCodes, 1, 10);
+    }
+}
@@ -0,0 +1,73 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScriptArchiveUtilsTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    public void isArchive_acceptsZipAndTarGzWithOptionalFolder() throws Exception {
+        File zip = zip("a.zip", "files/R_1_a.sql", "select 1;");
+        assertTrue(ScriptArchiveUtils.isArchive(zip));
+        assertTrue(ScriptArchiveUtils.isArchive(new File(zip.getPath() + "!/files")));
+        assertFalse(ScriptArchiveUtils.isArchive(tmp.toFile()));
+        assertFalse(ScriptArchiveUtils.isArchive(tmp.resolve("missing.tar.gz").toFile()));
+    }
+
+    @Test
+    public void scan_hashesWantedEntriesOfTheFolderOnly() throws Exception {
+        File zip = zip("b.zip", "./files/R_1_a.sql", "select 1;", "files/sub/R_2_b.sql", "select 2;",
+                "files/readme.txt", "docs", "other/R_3_c.sql", "select 3;");
+        File location = new File(zip.getPath() + "!/files/");
+
+        Map<String, ScriptArchiveUtils.ArchivedScript> scripts = ScriptArchiveUtils.scan(location,
+                path -> path.endsWith(".sql"), true);
+
+        assertEquals(List.of("R_1_a.sql", "sub/R_2_b.sql"), List.copyOf(scripts.keySet()));
+        assertEquals(9, scripts.get("R_1_a.sql").getSize());
+        Path plain = Files.writeString(tmp.resolve("R_1_a.sql"), "select 1;");
+        assertEquals(CommonUtils.generateFileChecksum(plain), scripts.get("R_1_a.sql").getChecksum());
+        assertEquals(3, ScriptArchiveUtils.sizes(location).size());
+    }
+
+    @Test
+    public void extract_writesOnlyRequestedEntries_andRefusesPathsOutsideTheFolder() throws Exception {
+        File zip = zip("c.zip", "R_1_a.sql", "select 1;", "R_2_b.sql", "select 2;", "../evil.sql", "drop;");
+        Path dir = Files.createDirectory(tmp.resolve("out"));
+
+        ScriptArchiveUtils.extract(zip, List.of("R_2_b.sql"), dir);
+        assertEquals("select 2;", Files.readString(dir.resolve("R_2_b.sql")));
+        assertFalse(Files.exists(dir.resolve("R_1_a.sql")));
+
+        assertThrows(RuntimeException.class, () -> ScriptArchiveUtils.extract(zip, List.of("missing.sql"), dir));
+        assertThrows(RuntimeException.class, () -> ScriptArchiveUtils.extract(zip, List.of("../evil.sql"), dir));
+        assertFalse(Files.exists(tmp.resolve("evil.sql")));
+    }
+
+    private File zip(String name, String... entries) throws Exception {
+        File zip = tmp.resolve(name).toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+}
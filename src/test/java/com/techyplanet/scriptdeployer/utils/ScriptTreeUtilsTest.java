@@ -0,0 +1,61 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import com.techyplanet.scriptdeployer.model.ScriptTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScriptTreeUtilsTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    public void folderHashes_dependOnNamesAndContent_andChangesAreFoundTopDown() throws Exception {
+        Path scripts = Files.createDirectories(tmp.resolve("scripts"));
+        Files.createDirectories(scripts.resolve("a/deep"));
+        Files.createDirectories(scripts.resolve("b"));
+        Files.createDirectories(scripts.resolve(".git"));
+        Files.writeString(scripts.resolve("a/deep/S_1_x.sql"), "x");
+        Files.writeString(scripts.resolve("b/S_2_y.sql"), "y");
+        Files.writeString(scripts.resolve(".git/HEAD"), "ref");
+        ScriptTree deployed = ScriptTreeUtils.scan(scripts.toFile(), null);
+        assertNull(deployed.getFile(".git/HEAD"), "git metadata isn't part of the scripts");
+
+        Files.writeString(scripts.resolve(".git/HEAD"), "other ref");
+        ScriptTree same = ScriptTreeUtils.scan(scripts.toFile(), deployed);
+        assertEquals(deployed.getRootHash(), same.getRootHash());
+        assertTrue(same.changedPaths(deployed).isEmpty());
+
+        Files.move(scripts.resolve("b/S_2_y.sql"), scripts.resolve("b/S_3_y.sql"));
+        ScriptTree renamed = ScriptTreeUtils.scan(scripts.toFile(), deployed);
+        assertNotEquals(deployed.getRootHash(), renamed.getRootHash());
+        assertEquals(deployed.getFolders().get("a"), renamed.getFolders().get("a"));
+        assertEquals(Set.of("b/S_3_y.sql"), renamed.changedPaths(deployed));
+    }
+
+    @Test
+    public void writtenTrees_readBackTheSame_andStatTuplesLetChecksumsBeReused() throws Exception {
+        Path scripts = Files.createDirectories(tmp.resolve("scripts"));
+        Files.writeString(scripts.resolve("R_1_a.sql"), "a");
+        ScriptTree tree = ScriptTreeUtils.scan(scripts.toFile(), null);
+        Path treeFile = tmp.resolve("db/scripts.tree");
+        ScriptTreeUtils.write(tree, treeFile);
+
+        ScriptTree read = ScriptTreeUtils.read(treeFile);
+        assertEquals(tree.getRootHash(), read.getRootHash());
+        assertArrayEquals(tree.getFile("R_1_a.sql"), read.getFile("R_1_a.sql"));
+
+        // a checksum recorded for the same size and modification time is trusted
+        read.addFile("R_1_a.sql", read.getFile("R_1_a.sql")[0], "RECORDED");
+        assertEquals("RECORDED", ScriptTreeUtils.scan(scripts.toFile(), read).getFile("R_1_a.sql")[1]);
+
+        Files.writeString(treeFile, "not a tree\n");
+        assertThrows(RuntimeException.class, () -> ScriptTreeUtils.read(treeFile));
+    }
+}
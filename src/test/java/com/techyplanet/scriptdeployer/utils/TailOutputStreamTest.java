@@ -0,0 +1,94 @@
+package com.techyplanet.scriptdeployer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TailOutputStreamTest {
+
+    @Test
+    public void shortOutput_isKeptWhole() throws Exception {
+        TailOutputStream out = new TailOutputStream(64, false);
+        out.write("line 1\nline 2\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+
+        assertFalse(out.isTruncated());
+        assertEquals("line 1\nline 2\n", out.tail());
+        assertEquals(14, out.getCount());
+        assertNull(out.getSpillFile());
+    }
+
+    @Test
+    public void longOutput_keepsLastBytesFromALineBoundary() throws Exception {
+        TailOutputStream out = new TailOutputStream(16, false);
+        for (int i = 1; i <= 1000; i++) {
+            byte[] line = ("line " + i + "\n").getBytes(StandardCharsets.UTF_8);
+            if (i % 2 == 0) {
+                out.write(line);
+            } else {
+                for (byte b : line) {
+                    out.write(b);
+                }
+            }
+        }
+        out.write("last".getBytes(StandardCharsets.UTF_8), 0, 4);
+
+        assertTrue(out.isTruncated());
+        assertEquals("line 1000\nlast", out.tail());
+    }
+
+    @Test
+    public void writeLargerThanBuffer_keepsItsEnd() throws Exception {
+        TailOutputStream out = new TailOutputStream(8, false);
+        out.write("abc".getBytes(StandardCharsets.UTF_8));
+        out.write("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("89abcdef", out.tail());
+        assertEquals(19, out.getCount());
+    }
+
+    @Test
+    public void concurrentWriters_loseNoBytes() throws Exception {
+        TailOutputStream out = new TailOutputStream(1024, true);
+        Thread[] pumps = new Thread[2];
+        for (int t = 0; t < pumps.length; t++) {
+            byte[] line = ("pump " + t + "\n").getBytes(StandardCharsets.UTF_8);
+            pumps[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10000; i++) {
+                        out.write(line);
+                        out.write('.');
+                    }
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            pumps[t].start();
+        }
+        for (Thread pump : pumps) {
+            pump.join();
+        }
+        out.close();
+
+        assertEquals(2 * 10000 * 8, out.getCount());
+        assertEquals(out.getCount(), Files.size(out.getSpillFile()));
+        assertTrue(out.tail().matches("([.]*pump [01]\n[.]*)+"), out.tail());
+        out.deleteSpillFile();
+    }
+
+    @Test
+    public void spill_keepsWholeOutputUntilDeleted() throws Exception {
+        TailOutputStream out = new TailOutputStream(4, true);
+        out.write("first line\nsecond line\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+
+        Path spillFile = out.getSpillFile();
+        assertEquals("first line\nsecond line\n", Files.readString(spillFile));
+        out.deleteSpillFile();
+        assertFalse(Files.exists(spillFile));
+    }
+}
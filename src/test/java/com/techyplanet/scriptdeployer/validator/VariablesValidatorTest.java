@@ -18,8 +18,7 @@ public class VariablesValidatorTest {
     public void validate_passesForExistingDirectory() {
         AppSettings s = new AppSettings();
         ReflectionTestUtils.setField(s, "scriptsLocation", tmp.toAbsolutePath().toString());
-        VariablesValidator v = new VariablesValidator();
-        ReflectionTestUtils.setField(v, "appSettings", s);
+        VariablesValidator v = new VariablesValidator(s);
         v.validate();
     }
 
@@ -27,8 +26,7 @@ public class VariablesValidatorTest {
     public void validate_throwsWhenLocationBlank() {
         AppSettings s = new AppSettings();
         ReflectionTestUtils.setField(s, "scriptsLocation", "");
-        VariablesValidator v = new VariablesValidator();
-        ReflectionTestUtils.setField(v, "appSettings", s);
+        VariablesValidator v = new VariablesValidator(s);
         assertThrows(RuntimeException.class, v::validate);
     }
 
@@ -36,8 +34,7 @@ public class VariablesValidatorTest {
     public void validate_throwsWhenDirectoryDoesNotExist() {
         AppSettings s = new AppSettings();
         ReflectionTestUtils.setField(s, "scriptsLocation", "/path/that/does/not/exist/xyz");
-        VariablesValidator v = new VariablesValidator();
-        ReflectionTestUtils.setField(v, "appSettings", s);
+        VariablesValidator v = new VariablesValidator(s);
         assertThrows(RuntimeException.class, v::validate);
     }
 }